@@ -6,6 +6,12 @@
 }
 
 -keep class com.naver.mei.sdk.core.gif.encoder.MapResult { *; }
+
+# Called from native code
+-keepclassmembers class com.naver.mei.sdk.core.gif.encoder.NativeLZWEncoder {
+    private void drain(int);
+}
+
 -keep class wseemann.media.**{*; }
 
 # Keep 3rd-party classes
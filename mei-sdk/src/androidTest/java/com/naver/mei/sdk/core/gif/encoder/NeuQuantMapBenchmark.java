@@ -0,0 +1,108 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import com.naver.mei.sdk.error.MeiLog;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the per-frame map time and the color error of the map qualities of NativeNeuQuant.
+ * Qualities below 8 map through the inverse color map of the palette, 8 searches the palette for every pixel.
+ * Fails when quality 7 or 6 adds more than 5% of color error to the exact search.
+ * Runs on a device, since the quantizer is native. The numbers are written to the log.
+ */
+public class NeuQuantMapBenchmark {
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 360;
+	private static final int FRAME_COUNT = 10;
+	private static final int EXACT_QUALITY = 8;
+
+	@Test
+	public void inverseMapAgainstDirectSearch() {
+		byte[][] frames = createFrames();
+		NativeNeuQuant quantizer = new NativeNeuQuant();
+		try {
+			byte[] colorTab = quantizer.learn(frames[0], frames[0].length, 10);
+			quantizer.useColorTable(colorTab);
+			map(quantizer, frames, colorTab, EXACT_QUALITY); // warm up
+
+			double exactError = 0;
+			for (int quality = EXACT_QUALITY; quality >= 5; quality--) {
+				double[] result = map(quantizer, frames, colorTab, quality);
+				MeiLog.i(String.format("map quality %d: %.2f ms/frame, mean error %.3f", quality, result[0], result[1]));
+				if (quality == EXACT_QUALITY) {
+					exactError = result[1];
+				} else if (quality >= 6) {
+					// the inverse map gives the nearest color of the cell center, close to the exact search
+					assertTrue("quality " + quality + " error " + result[1], result[1] < exactError * 1.05);
+				}
+			}
+		} finally {
+			quantizer.release();
+		}
+	}
+
+	/**
+	 * Returns the mean map time in ms per frame and the mean absolute channel error of the mapped frames.
+	 */
+	private static double[] map(NativeNeuQuant quantizer, byte[][] frames, byte[] colorTab, int quality) {
+		int pixelCount = WIDTH * HEIGHT;
+		byte[] indexedPixels = new byte[pixelCount];
+		boolean[] usedEntry = new boolean[256];
+		long nanos = 0;
+		double error = 0;
+		for (byte[] frame : frames) {
+			long start = System.nanoTime();
+			quantizer.map(frame, pixelCount, quality, indexedPixels, usedEntry);
+			nanos += System.nanoTime() - start;
+
+			for (int i = 0; i < pixelCount; i++) {
+				int index = (indexedPixels[i] & 0xff) * 3;
+				// frames are BGR, the color table RGB
+				error += Math.abs((frame[i * 3] & 0xff) - (colorTab[index + 2] & 0xff))
+						+ Math.abs((frame[i * 3 + 1] & 0xff) - (colorTab[index + 1] & 0xff))
+						+ Math.abs((frame[i * 3 + 2] & 0xff) - (colorTab[index] & 0xff));
+			}
+		}
+		return new double[]{nanos / 1e6 / frames.length, error / ((double) pixelCount * 3 * frames.length)};
+	}
+
+	/**
+	 * Moving gradients with noise, so that each frame uses most of the palette.
+	 */
+	private static byte[][] createFrames() {
+		Random random = new Random(1);
+		byte[][] frames = new byte[FRAME_COUNT][WIDTH * HEIGHT * 3];
+		for (int f = 0; f < FRAME_COUNT; f++) {
+			byte[] frame = frames[f];
+			for (int i = 0, k = 0; i < WIDTH * HEIGHT; i++) {
+				int x = i % WIDTH;
+				int y = i / WIDTH;
+				frame[k++] = (byte) (((x ^ y) & 63) + random.nextInt(16) + 100);
+				frame[k++] = (byte) (y * 255 / HEIGHT);
+				frame[k++] = (byte) ((x + f * 5) * 255 / (WIDTH + FRAME_COUNT * 5));
+			}
+		}
+		return frames;
+	}
+}
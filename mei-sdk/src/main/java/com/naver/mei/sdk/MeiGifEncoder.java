@@ -21,14 +21,18 @@ package com.naver.mei.sdk;
 
 import android.graphics.Bitmap;
 
+import com.naver.mei.sdk.core.gif.encoder.EncoderMetricsListener;
 import com.naver.mei.sdk.core.gif.encoder.EncodingListener;
 import com.naver.mei.sdk.core.gif.encoder.GifBatchEncoderAsyncTask;
+import com.naver.mei.sdk.core.gif.encoder.GifEncodingOptions;
 import com.naver.mei.sdk.core.gif.encoder.GifQueuingEncodable;
 import com.naver.mei.sdk.core.gif.encoder.GifQueuingEncoderAsyncTask;
+import com.naver.mei.sdk.core.utils.MeiFileUtils;
 import com.naver.mei.sdk.error.MeiLog;
 import com.naver.mei.sdk.error.MeiSDKErrorType;
 import com.naver.mei.sdk.error.MeiSDKException;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.util.List;
@@ -39,9 +43,11 @@ import static com.naver.mei.sdk.error.MeiSDKErrorType.INVALID_COLOR_LEVEL_VALUE;
  * MEI-SDK에서 사용되는 향상된 GIF Encoder
  */
 public class MeiGifEncoder {
-	private int quality = 10;  // (or sampling factor) default 10. (10-30)
-	private int colorLevel = 7; // (or map quality) default 7 (8-6)
+	private GifEncodingOptions encodingOptions = GifEncodingOptions.asDefault();  // quality(10-30), colorLevel(8-6), parallelism
 	private int delay = 100;
+	private long queueMemoryCapacity = GifQueuingEncoderAsyncTask.DEFAULT_MEMORY_CAPACITY;
+	private GifQueuingEncoderAsyncTask.OverflowPolicy queueOverflowPolicy = GifQueuingEncoderAsyncTask.OverflowPolicy.BLOCK;
+	private long queueBlockTimeoutMillis = GifQueuingEncoderAsyncTask.DEFAULT_BLOCK_TIMEOUT_MILLIS;
 
 	private static final int MAX_QUEUE_SIZE = 100;
 	private static final long MAX_QUEUE_CAPACITY = 64 * 1024 * 1024;
@@ -54,15 +60,174 @@ public class MeiGifEncoder {
 	}
 
 	public MeiGifEncoder setQuality(int quality) {
-		this.quality = quality;
+		this.encodingOptions.setQuality(quality);
 		return this;
 	}
 
+	/**
+	 * 팔레트 매핑 시 채널당 비트 수를 설정한다. 8은 픽셀마다 팔레트를 탐색하며, 6-7은 팔레트별 역 색상 테이블을 사용하여
+	 * 색상 오차가 약간 늘어나는 대신 매핑 속도가 빨라진다.
+	 *
+	 * @param colorLevel 6-8
+	 */
 	public MeiGifEncoder setColorLevel(int colorLevel) {
 		if (colorLevel > 8 || colorLevel < 6)
 			throw new MeiSDKException(INVALID_COLOR_LEVEL_VALUE);
 
-		this.colorLevel = colorLevel;
+		this.encodingOptions.setColorLevel(colorLevel);
+		return this;
+	}
+
+	/**
+	 * 프레임 인코딩에 사용할 스레드 수. 기본값 1 (호출 스레드에서 순차 인코딩)
+	 */
+	public MeiGifEncoder setParallelism(int parallelism) {
+		this.encodingOptions.setParallelism(parallelism);
+		return this;
+	}
+
+	/**
+	 * 병렬 인코딩 시 쓰기 대기중인 프레임들이 사용할 수 있는 최대 메모리 (bytes)
+	 */
+	public MeiGifEncoder setMaxBytesInFlight(long maxBytesInFlight) {
+		this.encodingOptions.setMaxBytesInFlight(maxBytesInFlight);
+		return this;
+	}
+
+	/**
+	 * 팔레트 생성 방식. LOCAL(기본값)은 프레임마다 팔레트를 학습하고,
+	 * GLOBAL은 앞쪽 프레임들로 하나의 팔레트를 학습하여 모든 프레임에 사용한다.
+	 * ADAPTIVE는 색상 변화가 기준(setPaletteDriftThreshold) 이하인 동안 이전 팔레트를 재사용한다.
+	 */
+	public MeiGifEncoder setPaletteMode(GifEncodingOptions.PaletteMode paletteMode) {
+		this.encodingOptions.setPaletteMode(paletteMode);
+		return this;
+	}
+
+	/**
+	 * 색상 양자화 알고리즘. NEUQUANT(기본값)가 가장 좋은 색상을 만들며, OCTREE와 MEDIAN_CUT은 큰 프레임에서 훨씬 빠르다.
+	 * WEB_SAFE는 학습 없이 216색 고정 팔레트를 사용한다.
+	 */
+	public MeiGifEncoder setQuantizerType(GifEncodingOptions.QuantizerType quantizerType) {
+		this.encodingOptions.setQuantizerType(quantizerType);
+		return this;
+	}
+
+	/**
+	 * ADAPTIVE 팔레트 모드에서 팔레트를 다시 학습하는 기준. 팔레트를 학습한 프레임 대비 색상 히스토그램의 변화량 (0-1, 기본값 0.1)
+	 */
+	public MeiGifEncoder setPaletteDriftThreshold(float paletteDriftThreshold) {
+		this.encodingOptions.setPaletteDriftThreshold(paletteDriftThreshold);
+		return this;
+	}
+
+	/**
+	 * 이전 프레임과 달라진 영역만 인코딩한다. 배경이 고정된 애니메이션의 인코딩 시간과 파일 크기를 줄인다.
+	 */
+	public MeiGifEncoder setDeltaEncoding(boolean deltaEncoding) {
+		this.encodingOptions.setDeltaEncoding(deltaEncoding);
+		return this;
+	}
+
+	/**
+	 * 이전 프레임과 같은 픽셀을 투명 인덱스로 기록하여 LZW 압축률을 높인다. 정적인 영역이 많은 애니메이션에 유리하다.
+	 */
+	public MeiGifEncoder setTransparentUnchangedPixels(boolean transparentUnchangedPixels) {
+		this.encodingOptions.setTransparentUnchangedPixels(transparentUnchangedPixels);
+		return this;
+	}
+
+	/**
+	 * 이전 프레임과 같은 프레임을 기록하지 않고 이전 프레임의 지연 시간을 늘린다. 정지 구간이 많은 영상과 화면 녹화에 유리하다.
+	 */
+	public MeiGifEncoder setCoalesceDuplicateFrames(boolean coalesceDuplicateFrames) {
+		this.encodingOptions.setCoalesceDuplicateFrames(coalesceDuplicateFrames);
+		return this;
+	}
+
+	/**
+	 * 같은 프레임으로 판단할 픽셀 채널 값 차이의 최대값 (0-255, 기본값 0은 완전히 같은 프레임만)
+	 */
+	public MeiGifEncoder setDuplicateFrameTolerance(int duplicateFrameTolerance) {
+		this.encodingOptions.setDuplicateFrameTolerance(duplicateFrameTolerance);
+		return this;
+	}
+
+	/**
+	 * 목표 파일 크기(byte) 이하로 한 번에 인코딩한다. 첫 프레임의 크기로 해상도, 색상 수, 프레임 생략 간격을 정하고
+	 * 인코딩 중 실제 크기에 맞춰 조정한다. 선택된 값은 EncodingListener.onFileSizeBudget으로 전달된다. (0은 사용 안 함)
+	 */
+	public MeiGifEncoder setTargetFileSize(long targetFileSize) {
+		this.encodingOptions.setTargetFileSize(targetFileSize);
+		return this;
+	}
+
+	/**
+	 * 손실 LZW 압축 수준. 픽셀을 RGB 차이의 합이 이 값 이하인 다른 팔레트 색으로 바꿔 LZW 문자열을 늘린다.
+	 * 값이 클수록 파일은 작아지고 노이즈가 늘어난다. (0-255 권장, 기본값 0은 무손실)
+	 */
+	public MeiGifEncoder setLossyLevel(int lossyLevel) {
+		this.encodingOptions.setLossyLevel(lossyLevel);
+		return this;
+	}
+
+	/**
+	 * 프레임별 단계(픽셀 추출, 팔레트 학습, 매핑, LZW, 쓰기) 소요 시간과 크기를 받는다. 인코딩 스레드에서 호출된다.
+	 * 종료 시 단계별 백분위 요약은 EncodingListener.onEncoderMetrics로도 전달된다.
+	 */
+	public MeiGifEncoder setMetricsListener(EncoderMetricsListener metricsListener) {
+		this.encodingOptions.setMetricsListener(metricsListener);
+		return this;
+	}
+
+	/**
+	 * 출력 형식. GIF(기본값) 또는 WEBP. WEBP는 프레임마다 플랫폼 WebP 인코더로 압축하여 animated WebP로 묶는다.
+	 * 팔레트 학습이 없어 빠르고 파일이 작으며, GIF 전용 옵션(팔레트, 델타, 손실 LZW, 목표 크기 등)은 적용되지 않는다.
+	 */
+	public MeiGifEncoder setOutputFormat(GifEncodingOptions.OutputFormat outputFormat) {
+		this.encodingOptions.setOutputFormat(outputFormat);
+		return this;
+	}
+
+	/**
+	 * WEBP 출력 시 프레임 압축 품질 (0-100, 기본값 80)
+	 */
+	public MeiGifEncoder setWebPQuality(int webPQuality) {
+		this.encodingOptions.setWebPQuality(webPQuality);
+		return this;
+	}
+
+	/**
+	 * 큐잉 인코딩 시 목표 파일 크기를 나눌 예상 프레임 수
+	 * 설정하지 않으면 60 프레임, 또는 그때까지 추가된 프레임 수의 두 배로 가정하므로 목표 크기를 넘을 수 있다.
+	 */
+	public MeiGifEncoder setExpectedFrameCount(int expectedFrameCount) {
+		this.encodingOptions.setExpectedFrameCount(expectedFrameCount);
+		return this;
+	}
+
+	/**
+	 * 큐잉 인코딩 시 메모리에 대기시킬 프레임 픽셀의 최대 크기(byte). 초과한 프레임은 임시 파일로 내려쓴다.
+	 */
+	public MeiGifEncoder setQueueMemoryCapacity(long queueMemoryCapacity) {
+		this.queueMemoryCapacity = queueMemoryCapacity;
+		return this;
+	}
+
+	/**
+	 * 큐잉 인코딩 시 메모리와 임시 파일 모두 가득 찼을 때의 처리 방식. 버려진 프레임의 delay는 이웃 프레임에 더해진다.
+	 * (기본값 BLOCK: 인코더가 프레임을 가져갈 때까지 대기, DROP_OLDEST/DROP_NEWEST: 프레임을 버림, ADAPTIVE_FPS: 프레임 레이트를 낮춤)
+	 */
+	public MeiGifEncoder setQueueOverflowPolicy(GifQueuingEncoderAsyncTask.OverflowPolicy queueOverflowPolicy) {
+		this.queueOverflowPolicy = queueOverflowPolicy;
+		return this;
+	}
+
+	/**
+	 * BLOCK 정책에서 프레임을 넣는 쪽이 기다리는 최대 시간(ms). 초과하면 새 프레임을 버린다. (0은 무한 대기)
+	 */
+	public MeiGifEncoder setQueueBlockTimeout(long queueBlockTimeoutMillis) {
+		this.queueBlockTimeoutMillis = queueBlockTimeoutMillis;
 		return this;
 	}
 
@@ -83,8 +248,7 @@ public class MeiGifEncoder {
 	public void encodeByBitmaps(List<Bitmap> bitmaps, OutputStream outputStream, EncodingListener encodingListener) {
 		new GifBatchEncoderAsyncTask(
 				new GifBatchEncoderAsyncTask.BitmapIterator(bitmaps),
-				quality,
-				colorLevel,
+				encodingOptions,
 				delay,
 				outputStream,
 				encodingListener).execute();
@@ -102,16 +266,17 @@ public class MeiGifEncoder {
 	public void encodeByImagePaths(List<String> imagePaths, OutputStream outputStream, EncodingListener encodingListener) {
 		new GifBatchEncoderAsyncTask(
 				new GifBatchEncoderAsyncTask.ImagePathIterator(imagePaths),
-				quality,
-				colorLevel,
+				encodingOptions,
 				delay,
 				outputStream,
 				encodingListener).execute();
 	}
 
 	public GifQueuingEncodable encodeWithQueuing(OutputStream outputStream, EncodingListener encodingListener) {
-		MeiLog.d("create gif, quality: " + quality + ", colorLevel : " + colorLevel + ", delay: " + delay);
-		GifQueuingEncoderAsyncTask task = new GifQueuingEncoderAsyncTask(MAX_QUEUE_SIZE, MAX_QUEUE_CAPACITY, quality, colorLevel, delay, outputStream, encodingListener);
+		MeiLog.d("create gif, quality: " + encodingOptions.getQuality() + ", colorLevel : " + encodingOptions.getColorLevel() + ", delay: " + delay);
+		File spillDir = new File(MeiFileUtils.getTemporaryUniquePath("frames"));
+		GifQueuingEncoderAsyncTask task = new GifQueuingEncoderAsyncTask(MAX_QUEUE_SIZE, MAX_QUEUE_CAPACITY, queueMemoryCapacity, spillDir, queueOverflowPolicy, queueBlockTimeoutMillis,
+				encodingOptions, delay, outputStream, encodingListener);
 		task.execute();
 		return task;
 	}
@@ -31,17 +31,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Reads frame data from a GIF image source and decodes it into individual frameMetas
  * for animation purposes. Image data can be read from either and InputStream source
  * or a byte[].
  *
- * This class is optimized for running animations with the frameMetas, there
- * are no methods to get individual frame images, only to decode the next frame in the
- * animation sequence. Instead, it lowers its memory footprint by only housing the minimum
- * data necessary to decode the next frame in the animation sequence.
+ * This class is optimized for running animations with the frameMetas. It lowers its memory
+ * footprint by only housing the minimum data necessary to decode the next frame in the animation
+ * sequence, plus canvas snapshots every few frames within a memory budget, so that {@link #seekTo(int)}
+ * reaches any other frame by decoding only the frames since the nearest snapshot.
+ * {@link #getFrames(int, int, int)} decodes a range of frames on several threads, when some of the frames
+ * do not depend on the canvas.
  *
  * The animation must be manually moved forward using {@link #advance()} before requesting the next
  * frame. This method must also be called before you request the first frame or an onError will
@@ -97,6 +103,14 @@ public class GifDecoder {
 
 	private static final int BYTES_PER_INTEGER = 4;
 
+	// no frame composited into mainScratch, or its contents unknown after a failure
+	private static final int NO_CANVAS = -1;
+
+	/**
+	 * Default memory for the canvas snapshots which let frames be decoded out of order.
+	 */
+	public static final long DEFAULT_SNAPSHOT_MEMORY_BUDGET = 4 * 1024 * 1024;
+
 	// Global File Header values and parsing flags.
 	// Active color table.
 	private int[] act;
@@ -135,11 +149,23 @@ public class GifDecoder {
 	private int downsampledWidth;
 	private boolean isFirstFrameTransparent;
 
+	// Random access. mainScratch holds the canvas after compositing frame canvasIndex.
+	// snapshots[k] is a copy of the canvas after frame k, kept every snapshotInterval frames
+	private int canvasIndex = NO_CANVAS;
+	private int[][] snapshots;
+	private int snapshotInterval;
+	private long snapshotMemoryBudget = DEFAULT_SNAPSHOT_MEMORY_BUDGET;
+
+	// The header, color tables included, is shared with the decoders of parallelDecoder and never modified.
+	// transparentAct is the active color table with the transparent color cleared
+	private int[] transparentAct;
+	private ParallelFrameDecoder parallelDecoder;
+
 	/**
 	 * An interface that can be used to provide reused {@link Bitmap}s to avoid GCs
 	 * from constantly allocating {@link Bitmap}s for every frame.
 	 */
-	interface BitmapProvider {
+	public interface BitmapProvider {
 		/**
 		 * Returns an {@link Bitmap} with exactly the given dimensions and config.
 		 *
@@ -198,15 +224,18 @@ public class GifDecoder {
 		header = new GifHeader();
 	}
 
+	/**
+	 * Decoder which shares the buffers of {@link PooledBitmapProvider#getInstance()} with the other decoders.
+	 */
 	public GifDecoder() {
-		this(new SimpleBitmapProvider());
+		this(PooledBitmapProvider.getInstance());
 	}
 
-	int getWidth() {
+	public int getWidth() {
 		return header.width;
 	}
 
-	int getHeight() {
+	public int getHeight() {
 		return header.height;
 	}
 
@@ -242,6 +271,42 @@ public class GifDecoder {
 		}
 	}
 
+	/**
+	 * Moves the animation to the given frame, which the next {@link #getNextFrame()} decodes.
+	 * The canvas is rebuilt from the nearest snapshot or independent frame before it, so any frame
+	 * can be reached in any order at the cost of at most the snapshot interval of decodes.
+	 *
+	 * @param index int index of frame. wraps around the frame count.
+	 */
+	public void seekTo(int index) {
+		if (header.frameCount > 0) {
+			framePointer = index % header.frameCount;
+			if (framePointer < 0) framePointer += header.frameCount;
+		}
+	}
+
+	/**
+	 * Sets the memory kept for canvas snapshots. A snapshot is a frame of ARGB pixels, taken every
+	 * few frames so that the snapshots of the whole animation fit in the budget.
+	 * 0 disables them, then a frame out of order is decoded from the last independent frame.
+	 *
+	 * @param bytes long memory budget. default {@link #DEFAULT_SNAPSHOT_MEMORY_BUDGET}
+	 */
+	public synchronized void setSnapshotMemoryBudget(long bytes) {
+		snapshotMemoryBudget = Math.max(0, bytes);
+		if (header != null && rawData != null) {
+			releaseSnapshots();
+			initSnapshots();
+		}
+	}
+
+	/**
+	 * @return frames between canvas snapshots, 0 when none are kept.
+	 */
+	int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
 	/**
 	 * Gets display duration for specified frame.
 	 *
@@ -296,12 +361,60 @@ public class GifDecoder {
 	/**
 	 * Gets the "Netscape" iteration count, if any. A count of 0 means repeat indefinitely.
 	 *
-	 * @return iteration count if one was specified, else 1.
+	 * @return iteration count if one was specified, else 0. See {@link #hasLoopCount()}.
 	 */
-	int getLoopCount() {
+	public int getLoopCount() {
 		return header.loopCount;
 	}
 
+	/**
+	 * @return true if the GIF has a "Netscape" iteration count. Without one, the animation plays once.
+	 */
+	public boolean hasLoopCount() {
+		return header.hasLoopCount;
+	}
+
+	/**
+	 * Whether any frame has a transparent color index. Transparent pixels are decoded as 0.
+	 * Optimized GIFs also use it to keep the pixels of the previous frame, so the frames may still be opaque.
+	 * See {@link #hasTransparentPixels()}.
+	 *
+	 * @return true if a frame may show transparent pixels.
+	 */
+	public boolean hasTransparency() {
+		for (GifFrame frame : header.frames) {
+			if (frame.transparency) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether a frame, composited over the frames before it, shows a pixel of alpha 0: a transparent pixel
+	 * over a cleared canvas, or canvas not covered by any frame. Composites the frames in order up to the
+	 * first such pixel, without creating bitmaps. Leaves the frame pointer before the first frame.
+	 *
+	 * @return true if a frame shows a transparent pixel. false if all are opaque, or a frame failed to decode.
+	 */
+	public synchronized boolean hasTransparentPixels() {
+		boolean found = false;
+		int length = downsampledWidth * downsampledHeight;
+		for (int i = 0; i < header.frameCount && !found; ++i) {
+			if (!prepareCanvas(i) || !compositeFrame(i)) {
+				break;
+			}
+			for (int k = 0; k < length; ++k) {
+				if ((mainScratch[k] >>> 24) == 0) {
+					found = true;
+					break;
+				}
+			}
+		}
+		resetFrameIndex();
+		return found;
+	}
+
 	/**
 	 * Returns an estimated byte size for this decoder based on the data provided to {@link
 	 * #setData(GifHeader, byte[])}, as well as internal buffers.
@@ -331,16 +444,284 @@ public class GifDecoder {
 		}
 		status = STATUS_OK;
 
-		GifFrame currentFrame = header.frames.get(framePointer);
+		if (!prepareCanvas(framePointer) || !compositeFrame(framePointer)) {
+			return null;
+		}
+
+		// Set pixels for current image.
+		Bitmap result = getNextBitmap();
+		result.setPixels(mainScratch, 0, downsampledWidth, 0, 0, downsampledWidth, downsampledHeight);
+		return result;
+	}
+
+	/**
+	 * Decodes the frame at index into ARGB pixels, the same as {@link #getNextFrame()} after seeking to it,
+	 * without a bitmap. Leaves the frame pointer at the frame.
+	 *
+	 * @param index  int index of the frame.
+	 * @param pixels int array of at least the decoded width * height, i.e. the size divided by the sample size.
+	 * @return true, or false if the frame failed.
+	 */
+	public synchronized boolean getFramePixels(int index, int[] pixels) {
+		int length = downsampledWidth * downsampledHeight;
+		if (index < 0 || index >= header.frameCount || pixels == null || pixels.length < length) {
+			return false;
+		}
+
+		framePointer = index;
+		status = STATUS_OK;
+		if (!prepareCanvas(index) || !compositeFrame(index)) {
+			return false;
+		}
+		System.arraycopy(mainScratch, 0, pixels, 0, length);
+		return true;
+	}
+
+	/**
+	 * Decodes count frames from index, the same as {@link #getNextFrame()} after seeking to each of them.
+	 * The frames are split into runs at the frames which do not depend on the canvas. The first run is decoded
+	 * on the calling thread, the others on parallelism - 1 worker threads and the calling one, each with
+	 * a decoder of its own which shares the data of this one. A GIF whose frames all depend on the previous
+	 * ones, e.g. with transparent or partial frames over a kept canvas, is decoded on the calling thread.
+	 * Leaves the frame pointer at the last frame.
+	 *
+	 * @param index       int index of the first frame.
+	 * @param count       int number of frames. stops at the last frame instead of wrapping around.
+	 * @param parallelism int number of decoding threads. 1 = decode on the calling thread. the bitmap provider
+	 *                    must be thread safe when more, as {@link PooledBitmapProvider} is.
+	 * @return frames in order, or null if a frame failed. Give them back by {@link #release(Bitmap)}.
+	 */
+	public synchronized List<Bitmap> getFrames(int index, int count, int parallelism) {
+		if (header.frameCount <= 0 || index < 0 || index >= header.frameCount || count <= 0) {
+			return new ArrayList<>();
+		}
+
+		int end = index + Math.min(count, header.frameCount - index);
+		int firstRunEnd = nextRunStart(index, end);
+		List<FutureTask<ParallelFrameDecoder.DecodedRun>> runs = new ArrayList<>();
+		if (parallelism > 1 && firstRunEnd < end) {
+			ParallelFrameDecoder decoder = getParallelDecoder(parallelism);
+			for (int start = firstRunEnd; start < end; ) {
+				int runEnd = nextRunStart(start, end);
+				runs.add(decoder.submit(start, runEnd));
+				start = runEnd;
+			}
+		} else {
+			firstRunEnd = end;
+		}
+
+		List<Bitmap> frames = new ArrayList<>(end - index);
+		boolean failed = false;
+		try {
+			for (int i = index; i < firstRunEnd && !failed; ++i) {
+				framePointer = i;
+				Bitmap frame = getNextFrame();
+				if (frame != null) {
+					frames.add(frame);
+				} else {
+					failed = true;
+				}
+			}
+
+			for (FutureTask<ParallelFrameDecoder.DecodedRun> task : runs) {
+				if (failed) {
+					task.cancel(false);
+					continue;
+				}
+
+				task.run(); // decodes it here unless a worker has taken it
+				ParallelFrameDecoder.DecodedRun run = task.get();
+				if (run == null) {
+					failed = true;
+					continue;
+				}
+				addFrames(run, frames);
+			}
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			failed = true;
+		} catch (ExecutionException eex) {
+			Log.w(TAG, "Error decoding frames", eex.getCause());
+			failed = true;
+		} finally {
+			if (failed) {
+				for (FutureTask<ParallelFrameDecoder.DecodedRun> task : runs) {
+					releaseRun(task);
+				}
+			}
+		}
+
+		framePointer = end - 1;
+		if (failed) {
+			for (Bitmap frame : frames) {
+				bitmapProvider.release(frame);
+			}
+			return null;
+		}
+		return frames;
+	}
+
+	/**
+	 * @return the first frame after start, before end, which does not depend on the canvas, or end.
+	 */
+	private int nextRunStart(int start, int end) {
+		int next = start + 1;
+		while (next < end && !isIndependentFrame(next)) {
+			++next;
+		}
+		return next;
+	}
+
+	/**
+	 * Makes bitmaps of the frames of a run decoded by a worker, in order, as if this decoder decoded them.
+	 * The canvas takes the last one, so the following frame is decoded without rebuilding it.
+	 */
+	private void addFrames(ParallelFrameDecoder.DecodedRun run, List<Bitmap> frames) {
+		for (int k = 0; k < run.pixels.length; ++k) {
+			if (run.transparent[k]) {
+				isFirstFrameTransparent = true;
+			}
+			Bitmap frame = getNextBitmap();
+			frame.setPixels(run.pixels[k], 0, downsampledWidth, 0, 0, downsampledWidth, downsampledHeight);
+			frames.add(frame);
+		}
+
+		int last = run.pixels.length - 1;
+		System.arraycopy(run.pixels[last], 0, mainScratch, 0, downsampledWidth * downsampledHeight);
+		canvasIndex = run.start + last;
+		run.release(bitmapProvider);
+	}
+
+	private void releaseRun(FutureTask<ParallelFrameDecoder.DecodedRun> task) {
+		if (!task.isDone() || task.isCancelled()) {
+			return; // a worker still decoding it lets the garbage collector take its frames
+		}
+		try {
+			ParallelFrameDecoder.DecodedRun run = task.get();
+			if (run != null) {
+				run.release(bitmapProvider);
+			}
+		} catch (Exception ignored) {
+			// failed, nothing to release
+		}
+	}
+
+	private ParallelFrameDecoder getParallelDecoder(int parallelism) {
+		if (parallelDecoder != null && parallelDecoder.getParallelism() != parallelism) {
+			releaseParallelDecoder();
+		}
+		if (parallelDecoder == null) {
+			parallelDecoder = new ParallelFrameDecoder(this, parallelism);
+		}
+		return parallelDecoder;
+	}
+
+	private void releaseParallelDecoder() {
+		if (parallelDecoder != null) {
+			parallelDecoder.release();
+			parallelDecoder = null;
+		}
+	}
+
+	/**
+	 * Decoder of the same data and size, which decodes runs for {@link ParallelFrameDecoder}.
+	 */
+	GifDecoder createRunDecoder() {
+		GifDecoder decoder = new GifDecoder(bitmapProvider);
+		decoder.snapshotMemoryBudget = 0; // runs start at independent frames, never seek back
+		decoder.setData(header, rawData, sampleSize);
+		return decoder;
+	}
+
+	/**
+	 * Decodes the frames start .. end - 1 into arrays of the bitmap provider. start must not depend on the canvas.
+	 *
+	 * @return decoded run, or null if a frame failed.
+	 */
+	synchronized ParallelFrameDecoder.DecodedRun decodeRun(int start, int end) {
+		status = STATUS_OK;
+		isFirstFrameTransparent = false; // set again by the frames of this run only
+		int length = downsampledWidth * downsampledHeight;
+		ParallelFrameDecoder.DecodedRun run = new ParallelFrameDecoder.DecodedRun(start, end - start);
+		for (int i = start; i < end; ++i) {
+			if (!prepareCanvas(i) || !compositeFrame(i)) {
+				run.release(bitmapProvider);
+				return null;
+			}
+
+			int[] pixels = bitmapProvider.obtainIntArray(length);
+			System.arraycopy(mainScratch, 0, pixels, 0, length);
+			run.pixels[i - start] = pixels;
+			run.transparent[i - start] = isFirstFrameTransparent;
+		}
+		return run;
+	}
+
+	/**
+	 * Brings the canvas to the state after the frame before index. Starts from the frame itself when
+	 * it does not depend on the canvas, from the canvas when it is the frame before, or from the
+	 * nearest snapshot, and composites the frames in between.
+	 */
+	private boolean prepareCanvas(int index) {
+		if (index == 0) {
+			// every loop starts from a clear canvas, as the first one does
+			Arrays.fill(mainScratch, 0);
+			canvasIndex = NO_CANVAS;
+			return true;
+		}
+
+		int start = index;
+		while (start > 0 && canvasIndex != start - 1 && !isIndependentFrame(start)
+				&& (snapshots == null || snapshots[start - 1] == null)) {
+			--start;
+		}
+
+		if (start == 0) {
+			Arrays.fill(mainScratch, 0);
+		} else if (canvasIndex != start - 1 && !isIndependentFrame(start)) {
+			System.arraycopy(snapshots[start - 1], 0, mainScratch, 0, downsampledWidth * downsampledHeight);
+		}
+
+		for (int i = start; i < index; ++i) {
+			if (!compositeFrame(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether the frame covers the whole canvas regardless of what was on it: the previous frame
+	 * clears the canvas to the background, or the frame is opaque and full size.
+	 */
+	private boolean isIndependentFrame(int index) {
+		if (index == 0) {
+			return true;
+		}
+
+		GifFrame frame = header.frames.get(index);
+		if (header.frames.get(index - 1).dispose == DISPOSAL_BACKGROUND) {
+			return true;
+		}
+		return !frame.transparency && frame.ix == 0 && frame.iy == 0
+				&& frame.iw >= header.width && frame.ih >= header.height;
+	}
+
+	/**
+	 * Composites the frame into mainScratch, on top of the canvas after the previous frame.
+	 */
+	private boolean compositeFrame(int index) {
+		canvasIndex = NO_CANVAS;
+		GifFrame currentFrame = header.frames.get(index);
 		GifFrame previousFrame;
-		int previousIndex = framePointer - 1;
+		int previousIndex = index - 1;
 		if (previousIndex >= 0) {
 			previousFrame = header.frames.get(previousIndex);
 		} else {
 			previousFrame = header.frames.get(getFrameCount() - 1);
 		}
 
-		final int savedBgColor = header.bgColor;
+		int bgColor = header.bgColor;
 
 		// Set the appropriate color table.
 		if (currentFrame.lct == null) {
@@ -348,35 +729,76 @@ public class GifDecoder {
 		} else {
 			act = currentFrame.lct;
 			if (header.bgIndex == currentFrame.transIndex) {
-				header.bgColor = 0;
+				bgColor = 0;
 			}
 		}
 
-		int save = 0;
-		if (currentFrame.transparency) {
-			save = act[currentFrame.transIndex];
-			// Set transparent color if specified.
-			act[currentFrame.transIndex] = 0;
-		}
 		if (act == null) {
 			if (Log.isLoggable(TAG, Log.DEBUG)) {
 				Log.d(TAG, "No Valid Color Table");
 			}
 			// No color table defined.
 			status = STATUS_FORMAT_ERROR;
-			return null;
+			return false;
+		}
+
+		if (currentFrame.transparency) {
+			// Set transparent color if specified, in a copy since other decoders may read the table.
+			if (transparentAct == null || transparentAct.length < act.length) {
+				transparentAct = new int[act.length];
+			}
+			System.arraycopy(act, 0, transparentAct, 0, act.length);
+			transparentAct[currentFrame.transIndex] = 0;
+			act = transparentAct;
 		}
 
 		// Transfer pixel data to image.
-		Bitmap result = setPixels(currentFrame, previousFrame);
+		setPixels(index, currentFrame, previousFrame, bgColor);
 
-		// Reset the transparent pixel in the color table
-		if (currentFrame.transparency) {
-			act[currentFrame.transIndex] = save;
+		canvasIndex = index;
+		saveSnapshot(index);
+		return true;
+	}
+
+	/**
+	 * Keeps a copy of the canvas after the last frame of each snapshot interval,
+	 * unless the next frame does not need it.
+	 */
+	private void saveSnapshot(int index) {
+		if (snapshots == null || snapshots[index] != null || (index + 1) % snapshotInterval != 0
+				|| index + 1 >= header.frameCount || isIndependentFrame(index + 1)) {
+			return;
 		}
-		header.bgColor = savedBgColor;
 
-		return result;
+		int length = downsampledWidth * downsampledHeight;
+		int[] snapshot = bitmapProvider.obtainIntArray(length);
+		System.arraycopy(mainScratch, 0, snapshot, 0, length);
+		snapshots[index] = snapshot;
+	}
+
+	private void initSnapshots() {
+		long snapshotBytes = (long) downsampledWidth * downsampledHeight * BYTES_PER_INTEGER;
+		long maxSnapshots = snapshotBytes > 0 ? snapshotMemoryBudget / snapshotBytes : 0;
+		if (maxSnapshots <= 0 || header.frameCount <= 1) {
+			snapshotInterval = 0;
+			snapshots = null;
+			return;
+		}
+
+		snapshotInterval = (int) Math.max(1, (header.frameCount + maxSnapshots - 1) / maxSnapshots);
+		snapshots = new int[header.frameCount][];
+	}
+
+	private void releaseSnapshots() {
+		if (snapshots != null) {
+			for (int[] snapshot : snapshots) {
+				if (snapshot != null) {
+					bitmapProvider.release(snapshot);
+				}
+			}
+		}
+		snapshots = null;
+		snapshotInterval = 0;
 	}
 
 	/**
@@ -416,7 +838,22 @@ public class GifDecoder {
 		return status;
 	}
 
-	void clear() {
+	/**
+	 * Gives a frame returned by {@link #getNextFrame()} back to the bitmap provider, for the following frames
+	 * or other decoders. The frame must not be used afterwards.
+	 *
+	 * @param frame Bitmap no longer drawn.
+	 */
+	public void release(Bitmap frame) {
+		if (frame != null) {
+			bitmapProvider.release(frame);
+		}
+	}
+
+	/**
+	 * Gives the working buffers back to the bitmap provider. The decoder must be read again before use.
+	 */
+	public synchronized void clear() {
 		header = null;
 		if (mainPixels != null) {
 			bitmapProvider.release(mainPixels);
@@ -427,15 +864,22 @@ public class GifDecoder {
 		if (previousImage != null) {
 			bitmapProvider.release(previousImage);
 		}
+		mainPixels = null;
+		mainScratch = null;
 		previousImage = null;
 		rawData = null;
 		isFirstFrameTransparent = false;
 		if (block != null) {
 			bitmapProvider.release(block);
 		}
+		releaseSnapshots();
+		releaseParallelDecoder();
+		canvasIndex = NO_CANVAS;
 		if (workBuffer != null) {
 			bitmapProvider.release(workBuffer);
 		}
+		block = null;
+		workBuffer = null;
 	}
 
 	synchronized void setData(GifHeader header, byte[] data) {
@@ -478,11 +922,25 @@ public class GifDecoder {
 		// Now that we know the size, init scratch arrays.
 		// TODO: Find a way to avoid this entirely or at least downsample it
 		// (either should be possible).
+		if (mainPixels != null) {
+			bitmapProvider.release(mainPixels);
+		}
+		if (mainScratch != null) {
+			bitmapProvider.release(mainScratch);
+		}
+		if (previousImage != null) {
+			bitmapProvider.release(previousImage);
+			previousImage = null;
+		}
 		mainPixels = bitmapProvider.obtainByteArray(header.width * header.height);
 		mainScratch =
 				bitmapProvider.obtainIntArray((header.width / sampleSize) * (header.height / sampleSize));
 		downsampledWidth = header.width / sampleSize;
 		downsampledHeight = header.height / sampleSize;
+		canvasIndex = NO_CANVAS;
+		releaseSnapshots();
+		initSnapshots();
+		releaseParallelDecoder();
 	}
 
 	private GifHeaderParser getHeaderParser() {
@@ -512,11 +970,25 @@ public class GifDecoder {
 	}
 
 	/**
-	 * Creates new frame image from current data (and previous frameMetas as specified by their
+	 * Reads GIF image from a buffer, e.g. a file mapped by {@link GifSource}. The buffer is not copied,
+	 * so a direct buffer keeps the GIF out of the java heap and may be shared between decoders.
+	 *
+	 * @param data       containing GIF file.
+	 * @param sampleSize int power of 2 reduction of the frames.
+	 * @return read status code (0 = no errors).
+	 */
+	public synchronized int read(ByteBuffer data, int sampleSize) {
+		this.header = getHeaderParser().setData(data).parseHeader();
+		setData(header, data, sampleSize);
+
+		return status;
+	}
+
+	/**
+	 * Composites the frame into mainScratch from current data (and previous frameMetas as specified by their
 	 * disposition codes).
 	 */
-	private Bitmap setPixels(GifFrame currentFrame, GifFrame previousFrame) {
-		long startTime = System.currentTimeMillis();
+	private void setPixels(int index, GifFrame currentFrame, GifFrame previousFrame, int bgColor) {
 		// Final location of blended pixels.
 		final int[] dest = mainScratch;
 
@@ -528,7 +1000,7 @@ public class GifDecoder {
 				// Start with a canvas filled with the background color
 				int c = 0;
 				if (!currentFrame.transparency) {
-					c = header.bgColor;
+					c = bgColor;
 //				} else if (framePointer == 0) {     // wtf
 				} else {     // wtf
 					// TODO: We should check and see if all individual pixels are replaced. If they are, the
@@ -553,7 +1025,7 @@ public class GifDecoder {
 		int pass = 1;
 		int inc = 8;
 		int iline = 0;
-		boolean isFirstFrame = framePointer == 0;
+		boolean isFirstFrame = index == 0;
 		for (int i = 0; i < downsampledIH; i++) {
 			int line = i;
 			if (currentFrame.interlace) {
@@ -616,11 +1088,6 @@ public class GifDecoder {
 			previousImage.setPixels(dest, 0, downsampledWidth, 0, 0, downsampledWidth,
 					downsampledHeight);
 		}
-
-		// Set pixels for current image.
-		Bitmap result = getNextBitmap();
-		result.setPixels(dest, 0, downsampledWidth, 0, 0, downsampledWidth, downsampledHeight);
-		return result;
 	}
 
 	private int averageColorsNear(int positionInMainPixels, int maxPositionInMainPixels,
@@ -687,6 +1154,9 @@ public class GifDecoder {
 
 		if (mainPixels == null || mainPixels.length < npix) {
 			// Allocate new pixel array.
+			if (mainPixels != null) {
+				bitmapProvider.release(mainPixels);
+			}
 			mainPixels = bitmapProvider.obtainByteArray(npix);
 		}
 		if (prefix == null) {
@@ -52,6 +52,7 @@ public class GifHeader {
 	//TODO: this is set both during reading the header and while decoding frameMetas...
 	int bgColor;
 	int loopCount;
+	boolean hasLoopCount; // a Netscape extension gave loopCount. without it the animation plays once
 
 	public int getHeight() {
 		return height;
@@ -264,6 +264,7 @@ public class GifHeaderParser {
 				int b1 = ((int) block[1]) & 0xff;
 				int b2 = ((int) block[2]) & 0xff;
 				header.loopCount = (b2 << 8) | b1;
+				header.hasLoopCount = true;
 			}
 		} while ((blockSize > 0) && !err());
 	}
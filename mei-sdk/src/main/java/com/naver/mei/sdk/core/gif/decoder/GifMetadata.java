@@ -0,0 +1,150 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.decoder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Size, timing and loop count of a GIF, read by {@link GifMetadataProbe} without decoding any frame.
+ */
+public class GifMetadata {
+	private final int width;
+	private final int height;
+	private final int loopCount;
+	private final int[] delays; // ms of each frame
+	private final int duration;
+
+	GifMetadata(int width, int height, int loopCount, int[] delays) {
+		this.width = width;
+		this.height = height;
+		this.loopCount = loopCount;
+		this.delays = delays;
+
+		int sum = 0;
+		for (int delay : delays) {
+			sum += delay;
+		}
+		this.duration = sum;
+	}
+
+	static GifMetadata from(GifHeader header) {
+		int[] delays = new int[header.frameCount];
+		for (int i = 0; i < delays.length; ++i) {
+			delays[i] = header.frames.get(i).delay;
+		}
+		return new GifMetadata(header.width, header.height, header.loopCount, delays);
+	}
+
+	void writeTo(DataOutput out) throws IOException {
+		out.writeShort(width);
+		out.writeShort(height);
+		out.writeShort(loopCount);
+		out.writeInt(delays.length);
+		for (int delay : delays) {
+			out.writeInt(delay);
+		}
+	}
+
+	static GifMetadata readFrom(DataInput in) throws IOException {
+		int width = in.readUnsignedShort();
+		int height = in.readUnsignedShort();
+		int loopCount = in.readUnsignedShort();
+		int[] delays = new int[in.readInt()];
+		for (int i = 0; i < delays.length; ++i) {
+			delays[i] = in.readInt();
+		}
+		return new GifMetadata(width, height, loopCount, delays);
+	}
+
+	/**
+	 * @return logical screen width in pixels.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return logical screen height in pixels.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	public int getFrameCount() {
+		return delays.length;
+	}
+
+	/**
+	 * @return "Netscape" iteration count. 0 means repeat indefinitely, as does a GIF without one.
+	 */
+	public int getLoopCount() {
+		return loopCount;
+	}
+
+	/**
+	 * @param index int index of frame.
+	 * @return delay of the frame in ms, as {@link GifDecoder#getDelay(int)} gives it.
+	 */
+	public int getDelay(int index) {
+		return delays[index];
+	}
+
+	/**
+	 * @return sum of the frame delays in ms.
+	 */
+	public int getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return end time of each frame in ms, as Animated.getFrameTimestamps gives it.
+	 */
+	public int[] getFrameTimestamps() {
+		int[] timestamps = new int[delays.length];
+		int time = 0;
+		for (int i = 0; i < delays.length; ++i) {
+			time += delays[i];
+			timestamps[i] = time;
+		}
+		return timestamps;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof GifMetadata)) {
+			return false;
+		}
+		GifMetadata other = (GifMetadata) o;
+		return width == other.width && height == other.height && loopCount == other.loopCount
+				&& Arrays.equals(delays, other.delays);
+	}
+
+	@Override
+	public int hashCode() {
+		return ((width * 31 + height) * 31 + loopCount) * 31 + Arrays.hashCode(delays);
+	}
+
+	@Override
+	public String toString() {
+		return "GifMetadata{" + width + "x" + height + ", frames=" + delays.length + ", duration=" + duration
+				+ "ms, loop=" + loopCount + "}";
+	}
+}
@@ -0,0 +1,165 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.decoder;
+
+import com.naver.mei.sdk.error.MeiLog;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Metadata of recently probed GIFs, in memory and in an append only file which is read on first use.
+ * The file is rewritten with the entries in memory when it holds too many stale records.
+ */
+class GifMetadataCache {
+	static final String FILE_NAME = "mei_gif_metadata";
+	private static final int VERSION = 1;
+	private static final int MAX_ENTRIES = 512;
+
+	private final File file;
+	private final Map<String, GifMetadata> entries = new LinkedHashMap<String, GifMetadata>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, GifMetadata> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	private boolean loaded;
+	private int records; // in the file, including the stale ones
+
+	GifMetadataCache(File file) {
+		this.file = file;
+	}
+
+	synchronized GifMetadata get(String key) {
+		load();
+		return entries.get(key);
+	}
+
+	synchronized void put(String key, GifMetadata metadata) {
+		load();
+		entries.put(key, metadata);
+		if (records >= MAX_ENTRIES * 2) {
+			rewrite();
+		} else {
+			append(key, metadata);
+		}
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		records = 0;
+		loaded = true;
+		if (file.exists() && !file.delete()) {
+			MeiLog.e("failed to delete gif metadata cache : " + file);
+		}
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		if (!file.exists()) {
+			return;
+		}
+
+		boolean complete = false;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != VERSION) {
+				throw new IOException("unknown version");
+			}
+			while (true) {
+				String key;
+				try {
+					key = in.readUTF();
+				} catch (EOFException ex) {
+					break; // end of the last record
+				}
+				entries.put(key, GifMetadata.readFrom(in));
+				++records;
+			}
+			complete = true;
+		} catch (IOException ex) {
+			MeiLog.e("gif metadata cache is broken. records read : " + records, ex);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+
+		if (!complete) {
+			rewrite(); // drop the record cut by a crash, or the file of another version
+		}
+	}
+
+	private void append(String key, GifMetadata metadata) {
+		boolean created = !file.exists() || records == 0;
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, !created)));
+			if (created) {
+				out.writeInt(VERSION);
+			}
+			out.writeUTF(key);
+			metadata.writeTo(out);
+			out.flush();
+			++records;
+		} catch (IOException ex) {
+			MeiLog.e("failed to write gif metadata cache : " + file, ex);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	private void rewrite() {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			out.writeInt(VERSION);
+			for (Map.Entry<String, GifMetadata> entry : entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				entry.getValue().writeTo(out);
+			}
+			out.close();
+			out = null;
+			if (!temp.renameTo(file)) {
+				throw new IOException("failed to rename " + temp);
+			}
+			records = entries.size();
+		} catch (IOException ex) {
+			MeiLog.e("failed to write gif metadata cache : " + file, ex);
+			temp.delete();
+			file.delete();
+			records = 0;
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+}
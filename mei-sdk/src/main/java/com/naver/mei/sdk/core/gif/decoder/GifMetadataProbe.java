@@ -0,0 +1,86 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.decoder;
+
+import com.naver.mei.sdk.MeiSDK;
+import com.naver.mei.sdk.core.utils.URIUtils;
+import com.naver.mei.sdk.error.MeiSDKErrorType;
+import com.naver.mei.sdk.error.MeiSDKException;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the size, frame delays and loop count of a GIF. The header parser skips the image data blocks
+ * by their lengths, so no frame is decoded and, with {@link GifSource}, the file is not loaded in the heap.
+ * The results for local files are kept in a cache on disk, keyed by path, size and modification time.
+ */
+public class GifMetadataProbe {
+	private static GifMetadataCache cache;
+
+	/**
+	 * Reads the metadata of a GIF uri. Local files are looked up in the cache first.
+	 *
+	 * @param uri URI of the GIF.
+	 * @return GifMetadata
+	 */
+	public static GifMetadata probe(URI uri) {
+		if (!URIUtils.isLocalFileUri(uri.toString())) {
+			return probe(GifSource.open(uri));
+		}
+
+		File file = new File(URIUtils.uriToPath(uri));
+		String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+		GifMetadataCache cache = getCache();
+		GifMetadata metadata = cache.get(key);
+		if (metadata == null) {
+			metadata = probe(GifSource.open(uri));
+			cache.put(key, metadata);
+		}
+		return metadata;
+	}
+
+	/**
+	 * Reads the metadata of GIF data.
+	 *
+	 * @param data containing GIF file.
+	 * @return GifMetadata
+	 */
+	public static GifMetadata probe(ByteBuffer data) {
+		GifHeader header = new GifHeaderParser().setData(data).parseHeader();
+		if (header.status != GifDecoder.STATUS_OK || header.frameCount <= 0) {
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_LOAD_IMAGE);
+		}
+		return GifMetadata.from(header);
+	}
+
+	/**
+	 * Drops the cached metadata, in memory and on disk.
+	 */
+	public static void clearCache() {
+		getCache().clear();
+	}
+
+	private static synchronized GifMetadataCache getCache() {
+		if (cache == null) {
+			cache = new GifMetadataCache(new File(MeiSDK.getContext().getCacheDir(), GifMetadataCache.FILE_NAME));
+		}
+		return cache;
+	}
+}
@@ -0,0 +1,211 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.decoder;
+
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+import com.naver.mei.sdk.MeiSDK;
+import com.naver.mei.sdk.core.utils.URIUtils;
+import com.naver.mei.sdk.error.MeiLog;
+import com.naver.mei.sdk.error.MeiSDKErrorType;
+import com.naver.mei.sdk.error.MeiSDKException;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Loads GIF data for {@link GifDecoder#read(ByteBuffer, int)} outside of the java heap.
+ * Files are memory mapped, and the mapping of a file is shared by all the decoders which open it
+ * while it is in use. Content and resource uris are mapped through their file descriptor when they
+ * are backed by a file, otherwise read in chunks into a direct buffer.
+ */
+public class GifSource {
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int GIF_SCREEN_SIZE_OFFSET = 6; // logical screen width and height follow "GIF89a"
+
+	// mapped files by path, size and modification time. weak, so unused mappings are released by the gc
+	private static final Map<String, WeakReference<ByteBuffer>> mappedFiles = new HashMap<>();
+
+	/**
+	 * Opens the GIF of a file, content, resource or remote uri.
+	 *
+	 * @param uri URI of the GIF.
+	 * @return read only buffer of the whole GIF.
+	 */
+	public static ByteBuffer open(URI uri) {
+		try {
+			if (URIUtils.isLocalFileUri(uri.toString())) {
+				return map(new File(URIUtils.uriToPath(uri)));
+			}
+
+			String scheme = uri.getScheme();
+			if (scheme != null && (scheme.equals("content") || URIUtils.isResourceURI(uri))) {
+				return openContent(Uri.parse(uri.toString()));
+			}
+
+			InputStream in = uri.toURL().openStream();
+			try {
+				return read(in, -1);
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		} catch (IOException ex) {
+			MeiLog.e("failed to open gif. uri : " + uri, ex);
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_LOAD_IMAGE);
+		}
+	}
+
+	/**
+	 * Memory maps a file. A file mapped before and still in use, unchanged, is not mapped again.
+	 *
+	 * @param file File of the GIF.
+	 * @return read only buffer of the whole file.
+	 */
+	public static ByteBuffer map(File file) throws IOException {
+		String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+		synchronized (mappedFiles) {
+			WeakReference<ByteBuffer> reference = mappedFiles.get(key);
+			ByteBuffer mapped = reference != null ? reference.get() : null;
+			if (mapped != null) {
+				return mapped.asReadOnlyBuffer();
+			}
+		}
+
+		FileInputStream in = new FileInputStream(file);
+		ByteBuffer mapped;
+		try {
+			FileChannel channel = in.getChannel();
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			IOUtils.closeQuietly(in); // the mapping stays valid after the channel is closed
+		}
+
+		synchronized (mappedFiles) {
+			removeReleasedMappings();
+			mappedFiles.put(key, new WeakReference<>(mapped));
+		}
+		return mapped.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Reads a stream in chunks into a direct buffer, which grows as needed.
+	 *
+	 * @param in     InputStream of the GIF. not closed.
+	 * @param length long expected length. -1 when unknown.
+	 * @return read only buffer of the stream.
+	 */
+	public static ByteBuffer read(InputStream in, long length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) (length > 0 ? length : CHUNK_SIZE));
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			if (buffer.remaining() < read) {
+				ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + read));
+				buffer.flip();
+				grown.put(buffer);
+				buffer = grown;
+			}
+			buffer.put(chunk, 0, read);
+		}
+		buffer.flip();
+		return buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return true if the data starts with a GIF signature.
+	 */
+	public static boolean isGif(ByteBuffer data) {
+		if (data == null || data.limit() < GIF_SCREEN_SIZE_OFFSET) {
+			return false;
+		}
+
+		byte[] signature = new byte[GIF_SCREEN_SIZE_OFFSET];
+		for (int i = 0; i < signature.length; ++i) {
+			signature[i] = data.get(i);
+		}
+		return new String(signature).matches("(?i)(GIF89a|GIF87a)");
+	}
+
+	/**
+	 * @return logical screen width of the GIF, without parsing the frames.
+	 */
+	public static int getWidth(ByteBuffer data) {
+		return data.duplicate().order(ByteOrder.LITTLE_ENDIAN).getShort(GIF_SCREEN_SIZE_OFFSET) & 0xffff;
+	}
+
+	/**
+	 * @return logical screen height of the GIF, without parsing the frames.
+	 */
+	public static int getHeight(ByteBuffer data) {
+		return data.duplicate().order(ByteOrder.LITTLE_ENDIAN).getShort(GIF_SCREEN_SIZE_OFFSET + 2) & 0xffff;
+	}
+
+	private static ByteBuffer openContent(Uri uri) throws IOException {
+		AssetFileDescriptor descriptor = MeiSDK.getContext().getContentResolver().openAssetFileDescriptor(uri, "r");
+		if (descriptor == null) {
+			throw new IOException("no file descriptor");
+		}
+
+		FileInputStream in = descriptor.createInputStream();
+		try {
+			long length = descriptor.getLength();
+			if (length == AssetFileDescriptor.UNKNOWN_LENGTH) {
+				long fileSize = descriptor.getParcelFileDescriptor().getStatSize(); // -1 unless a regular file
+				length = fileSize >= 0 ? fileSize - descriptor.getStartOffset() : AssetFileDescriptor.UNKNOWN_LENGTH;
+			}
+
+			if (length != AssetFileDescriptor.UNKNOWN_LENGTH) {
+				try {
+					return in.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), length).asReadOnlyBuffer();
+				} catch (IOException ex) {
+					MeiLog.d("failed to map gif. reads it instead. " + ex.getMessage());
+				}
+			}
+			// pipes and sockets can not be mapped. nothing was read from the stream yet
+			return read(in, length);
+		} finally {
+			IOUtils.closeQuietly(in);
+			try {
+				descriptor.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	private static void removeReleasedMappings() {
+		Iterator<WeakReference<ByteBuffer>> iterator = mappedFiles.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().get() == null) {
+				iterator.remove();
+			}
+		}
+	}
+}
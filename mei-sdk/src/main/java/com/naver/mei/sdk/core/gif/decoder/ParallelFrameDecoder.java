@@ -0,0 +1,133 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.decoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes runs of frames of a {@link GifDecoder} on a worker pool, for {@link GifDecoder#getFrames(int, int, int)}.
+ * Each thread decodes with a decoder of its own, sharing the header and the data of the owner,
+ * so a run must start at a frame which does not depend on the canvas.
+ * The calling thread may decode a queued run itself, so parallelism - 1 workers are started.
+ */
+class ParallelFrameDecoder {
+	private final int parallelism;
+	private final ThreadPoolExecutor workers;
+	private final BlockingQueue<GifDecoder> decoders;
+
+	ParallelFrameDecoder(GifDecoder owner, int parallelism) {
+		this.parallelism = parallelism;
+		this.workers = new ThreadPoolExecutor(parallelism - 1, parallelism - 1, 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new DecoderThreadFactory("GifDecoder-worker"));
+		this.workers.allowCoreThreadTimeOut(true);
+		this.decoders = new ArrayBlockingQueue<>(parallelism);
+		for (int i = 0; i < parallelism; ++i) {
+			decoders.add(owner.createRunDecoder());
+		}
+	}
+
+	int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Queues the frames start .. end - 1.
+	 *
+	 * @return task of the run. running it on another thread decodes it there, unless a worker has taken it.
+	 */
+	FutureTask<DecodedRun> submit(final int start, final int end) {
+		FutureTask<DecodedRun> task = new FutureTask<>(new Callable<DecodedRun>() {
+			@Override
+			public DecodedRun call() throws Exception {
+				GifDecoder decoder = decoders.take();
+				try {
+					return decoder.decodeRun(start, end);
+				} finally {
+					decoders.put(decoder);
+				}
+			}
+		});
+		workers.execute(task);
+		return task;
+	}
+
+	/**
+	 * Stops the threads and gives the buffers of the decoders back.
+	 */
+	void release() {
+		workers.shutdownNow();
+		try {
+			workers.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+		}
+
+		GifDecoder decoder;
+		while ((decoder = decoders.poll()) != null) {
+			decoder.clear();
+		}
+	}
+
+	/**
+	 * Canvas after each frame of a run, in arrays of the bitmap provider.
+	 */
+	static class DecodedRun {
+		final int start;
+		final int[][] pixels;
+		final boolean[] transparent; // the decoder had found transparency by the frame, see isFirstFrameTransparent
+
+		DecodedRun(int start, int count) {
+			this.start = start;
+			this.pixels = new int[count][];
+			this.transparent = new boolean[count];
+		}
+
+		void release(GifDecoder.BitmapProvider provider) {
+			for (int k = 0; k < pixels.length; ++k) {
+				if (pixels[k] != null) {
+					provider.release(pixels[k]);
+					pixels[k] = null;
+				}
+			}
+		}
+	}
+
+	private static class DecoderThreadFactory implements ThreadFactory {
+		private final String namePrefix;
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		DecoderThreadFactory(String namePrefix) {
+			this.namePrefix = namePrefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
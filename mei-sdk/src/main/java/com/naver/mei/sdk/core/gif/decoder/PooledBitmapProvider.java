@@ -0,0 +1,301 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.decoder;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link GifDecoder.BitmapProvider} which keeps released bitmaps and arrays for the next decoders,
+ * up to a memory limit. Bitmaps are reused for the same size and config, arrays for a capacity of
+ * up to twice the requested length. The least recently released are dropped first.
+ * One instance is shared by the decoders of the process. Thread safe.
+ */
+public class PooledBitmapProvider implements GifDecoder.BitmapProvider {
+	private static final int MAX_SIZE_RATIO = 2; // do not hand out arrays more than twice the requested length
+	private static final int DEFAULT_MEMORY_RATIO = 16; // share of the heap kept by the shared instance
+
+	private static PooledBitmapProvider instance;
+
+	private final Map<BitmapKey, ArrayDeque<Bitmap>> bitmaps = new HashMap<>();
+	private final TreeMap<Integer, ArrayDeque<byte[]>> byteArrays = new TreeMap<>();
+	private final TreeMap<Integer, ArrayDeque<int[]>> intArrays = new TreeMap<>();
+	private final ArrayDeque<Object> releaseOrder = new ArrayDeque<>(); // oldest first, to evict
+
+	private long maxBytes;
+	private long pooledBytes;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	public static synchronized PooledBitmapProvider getInstance() {
+		if (instance == null) {
+			instance = new PooledBitmapProvider(Runtime.getRuntime().maxMemory() / DEFAULT_MEMORY_RATIO);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param maxBytes long memory kept in the pool.
+	 */
+	public PooledBitmapProvider(long maxBytes) {
+		this.maxBytes = Math.max(0, maxBytes);
+	}
+
+	/**
+	 * Changes the memory kept in the pool, dropping the least recently released when it shrinks.
+	 *
+	 * @param maxBytes long memory kept in the pool. 0 keeps nothing.
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = Math.max(0, maxBytes);
+		trimTo(this.maxBytes);
+	}
+
+	@NonNull
+	@Override
+	public Bitmap obtain(int width, int height, Bitmap.Config config) {
+		synchronized (this) {
+			ArrayDeque<Bitmap> sameSize = bitmaps.get(new BitmapKey(width, height, config));
+			Bitmap bitmap = sameSize != null ? sameSize.poll() : null;
+			if (bitmap != null) {
+				if (sameSize.isEmpty()) {
+					bitmaps.remove(new BitmapKey(width, height, config));
+				}
+				removePooled(bitmap, getByteSize(bitmap));
+				++hitCount;
+				return bitmap;
+			}
+			++missCount;
+		}
+		return Bitmap.createBitmap(width, height, config);
+	}
+
+	@Override
+	public synchronized void release(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) {
+			return;
+		}
+
+		long size = getByteSize(bitmap);
+		if (!makeRoom(size)) {
+			bitmap.recycle();
+			return;
+		}
+
+		BitmapKey key = new BitmapKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+		ArrayDeque<Bitmap> sameSize = bitmaps.get(key);
+		if (sameSize == null) {
+			sameSize = new ArrayDeque<>();
+			bitmaps.put(key, sameSize);
+		}
+		sameSize.add(bitmap);
+		addPooled(bitmap, size);
+	}
+
+	@Override
+	public byte[] obtainByteArray(int size) {
+		synchronized (this) {
+			byte[] array = obtainArray(byteArrays, size);
+			if (array != null) {
+				removePooled(array, array.length);
+				return array;
+			}
+		}
+		return new byte[size];
+	}
+
+	@Override
+	public synchronized void release(byte[] bytes) {
+		if (bytes != null && makeRoom(bytes.length)) {
+			releaseArray(byteArrays, bytes, bytes.length);
+			addPooled(bytes, bytes.length);
+		}
+	}
+
+	@Override
+	public int[] obtainIntArray(int size) {
+		synchronized (this) {
+			int[] array = obtainArray(intArrays, size);
+			if (array != null) {
+				removePooled(array, array.length * 4L);
+				return array;
+			}
+		}
+		return new int[size];
+	}
+
+	@Override
+	public synchronized void release(int[] array) {
+		if (array != null && makeRoom(array.length * 4L)) {
+			releaseArray(intArrays, array, array.length);
+			addPooled(array, array.length * 4L);
+		}
+	}
+
+	/**
+	 * Drops everything kept in the pool. The counters are kept.
+	 */
+	public synchronized void clear() {
+		trimTo(0);
+	}
+
+	/**
+	 * @return number of requests served from the pool.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return number of requests which had to allocate.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return number of released bitmaps and arrays dropped to stay within the memory limit.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return memory currently kept in the pool.
+	 */
+	public synchronized long getPooledBytes() {
+		return pooledBytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PooledBitmapProvider{hit=" + hitCount + ", miss=" + missCount + ", eviction=" + evictionCount
+				+ ", pooled=" + pooledBytes + "/" + maxBytes + " bytes}";
+	}
+
+	private <T> T obtainArray(TreeMap<Integer, ArrayDeque<T>> arrays, int length) {
+		Map.Entry<Integer, ArrayDeque<T>> entry = arrays.ceilingEntry(length);
+		if (entry == null || entry.getKey() / MAX_SIZE_RATIO > length) {
+			++missCount;
+			return null;
+		}
+
+		ArrayDeque<T> sameSize = entry.getValue();
+		T array = sameSize.poll();
+		if (sameSize.isEmpty()) {
+			arrays.remove(entry.getKey());
+		}
+		++hitCount;
+		return array;
+	}
+
+	private <T> void releaseArray(TreeMap<Integer, ArrayDeque<T>> arrays, T array, int length) {
+		ArrayDeque<T> sameSize = arrays.get(length);
+		if (sameSize == null) {
+			sameSize = new ArrayDeque<>();
+			arrays.put(length, sameSize);
+		}
+		sameSize.add(array);
+	}
+
+	private void addPooled(Object item, long size) {
+		releaseOrder.add(item);
+		pooledBytes += size;
+	}
+
+	private void removePooled(Object item, long size) {
+		releaseOrder.removeFirstOccurrence(item);
+		pooledBytes -= size;
+	}
+
+	// evicts until size fits. false if it is larger than the whole pool
+	private boolean makeRoom(long size) {
+		if (size > maxBytes) {
+			return false;
+		}
+		trimTo(maxBytes - size);
+		return true;
+	}
+
+	private void trimTo(long bytes) {
+		while (pooledBytes > bytes && !releaseOrder.isEmpty()) {
+			Object item = releaseOrder.poll();
+			++evictionCount;
+			if (item instanceof Bitmap) {
+				Bitmap bitmap = (Bitmap) item;
+				pooledBytes -= getByteSize(bitmap);
+				evict(bitmaps, new BitmapKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig()), bitmap);
+				bitmap.recycle();
+			} else if (item instanceof byte[]) {
+				byte[] array = (byte[]) item;
+				pooledBytes -= array.length;
+				evict(byteArrays, array.length, array);
+			} else {
+				int[] array = (int[]) item;
+				pooledBytes -= array.length * 4L;
+				evict(intArrays, array.length, array);
+			}
+		}
+	}
+
+	private static <K, T> void evict(Map<K, ArrayDeque<T>> buckets, K key, T item) {
+		ArrayDeque<T> sameSize = buckets.get(key);
+		if (sameSize != null) {
+			sameSize.removeFirstOccurrence(item);
+			if (sameSize.isEmpty()) {
+				buckets.remove(key);
+			}
+		}
+	}
+
+	private static long getByteSize(Bitmap bitmap) {
+		return (long) bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	private static class BitmapKey {
+		private final int width;
+		private final int height;
+		private final Bitmap.Config config;
+
+		BitmapKey(int width, int height, Bitmap.Config config) {
+			this.width = width;
+			this.height = height;
+			this.config = config;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof BitmapKey)) {
+				return false;
+			}
+			BitmapKey other = (BitmapKey) o;
+			return width == other.width && height == other.height && config == other.config;
+		}
+
+		@Override
+		public int hashCode() {
+			return (width * 31 + height) * 31 + (config != null ? config.hashCode() : 0);
+		}
+	}
+}
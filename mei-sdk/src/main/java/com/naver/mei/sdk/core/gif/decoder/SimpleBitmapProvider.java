@@ -3,7 +3,11 @@ package com.naver.mei.sdk.core.gif.decoder;
 import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
 
-final class SimpleBitmapProvider implements GifDecoder.BitmapProvider {
+/**
+ * {@link GifDecoder.BitmapProvider} which allocates on every request and keeps nothing.
+ * For decoders which should not share the memory of {@link PooledBitmapProvider#getInstance()}.
+ */
+public final class SimpleBitmapProvider implements GifDecoder.BitmapProvider {
 	@NonNull
 	@Override
 	public Bitmap obtain(int width, int height, Bitmap.Config config) {
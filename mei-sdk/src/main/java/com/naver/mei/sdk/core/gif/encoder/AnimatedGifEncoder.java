@@ -1,16 +1,18 @@
 package com.naver.mei.sdk.core.gif.encoder;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.util.Log;
 
 import com.naver.mei.sdk.error.MeiLog;
 
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 
 /**
@@ -37,13 +39,36 @@ import java.io.OutputStream;
  * @version 1.03 November 2003
  */
 
-public class AnimatedGifEncoder {
-	private static final String TAG = "AnimatedGifEncoder";
+public class AnimatedGifEncoder implements AnimatedImageEncoder {
 
 	// The minimum % of an images pixels that must be transparent for us to set a transparent index
 	// automatically.
 	protected static final double MIN_TRANSPARENT_PERCENTAGE = 4d;
 
+	protected static final long DEFAULT_MAX_BYTES_IN_FLIGHT = 32 * 1024 * 1024;
+
+	protected static final int DEFAULT_GLOBAL_PALETTE_SAMPLE_FRAMES = 10;
+
+	protected static final int DISPOSE_NONE = 1; // leave the frame in place. (do not dispose)
+
+	protected static final int DISPOSE_BACKGROUND = 2; // clear the frame area to the background
+
+	protected static final int TRANSPARENT_INDEX = 255; // palette slot reserved for unchanged or alpha 0 pixels
+
+	private static final int TRANSPARENT_COLOR = 0; // padding of cropped images. android Color.TRANSPARENT
+
+	protected static final float DEFAULT_PALETTE_DRIFT_THRESHOLD = 0.1f;
+
+	// color histogram for palette drift detection. 4 bits per channel, every 2nd pixel
+	private static final int HISTOGRAM_BITS = 4;
+	private static final int HISTOGRAM_PIXEL_STRIDE = 2;
+
+	private static final int MAX_POOLED_BUFFERS = 8; // per buffer type
+
+	private static final int MAX_DELAY = 0xffff; // 16 bits in the graphic control extension
+
+	private static final int MAX_COLORS = 256;
+
 	protected int width; // image size
 
 	protected int height;
@@ -54,8 +79,6 @@ public class AnimatedGifEncoder {
 
 	protected Integer transparent = null; // transparent color if given
 
-	protected int transIndex; // transparent index in color table
-
 	protected int repeat = -1; // no repeat
 
 	protected int delay = 0; // frame delay (hundredths)
@@ -66,157 +89,1129 @@ public class AnimatedGifEncoder {
 
 	protected Bitmap image; // current frame
 
-	protected byte[] pixels; // BGR byte array from frame
+	protected int dispose = -1; // disposal code (-1 = use default)
+
+	protected boolean closeStream = false; // close stream when finished
+
+	protected boolean firstFrame = true;
+
+	protected boolean sizeSet = false; // if false, get size from first frame
+
+	protected int sample = 10; // default sample interval for quantizer
+
+	protected int mapQuality = 8;
+
+	protected int parallelism = 1; // number of encoding threads. 1 = encode on the calling thread
+
+	protected long maxBytesInFlight = DEFAULT_MAX_BYTES_IN_FLIGHT; // memory cap of the frames waiting to be written
+
+	protected GifEncodingOptions.PaletteMode paletteMode = GifEncodingOptions.PaletteMode.LOCAL;
+
+	protected int globalPaletteSampleFrames = DEFAULT_GLOBAL_PALETTE_SAMPLE_FRAMES; // leading frames to learn the global palette from
+
+	private byte[] globalColorTab; // learned once in GLOBAL palette mode
+
+	private List<EncodingFrame> paletteSampleFrames; // frames waiting for the global palette
+
+	protected float paletteDriftThreshold = DEFAULT_PALETTE_DRIFT_THRESHOLD; // relearn when the histogram moves more than this
+
+	private SharedPalette referencePalette; // palette reused in ADAPTIVE palette mode
+
+	private float[] referenceHistogram; // color histogram of the frame referencePalette was learned from
+
+	private float[] histogramBuffer; // swapped with referenceHistogram
+
+	private int encodedFrameCount;
+
+	protected boolean deltaEncoding = false; // encode only the changed rectangle of each frame
+
+	protected boolean transparentUnchangedPixels = false; // write pixels equal to the previous frame as transparent
+
+	protected boolean transparentAlphaPixels = false; // write pixels of alpha 0 as transparent
+
+	private int[] previousPixels; // ARGB pixels of the previous full frame, for delta encoding
+
+	private int previousWidth;
+
+	private int previousHeight;
+
+	private boolean previousDeltaBase; // previousPixels may be the base of a delta frame
+
+	protected boolean coalesceDuplicateFrames = false; // extend the delay of the previous frame instead of writing a duplicate
+
+	protected int duplicateFrameTolerance = 0; // largest channel difference of a pixel between duplicates. 0 = identical
+
+	private EncodingFrame pendingFrame; // last added frame. written when the next different frame is added
+
+	private int lastFrameX, lastFrameY, lastFrameWidth, lastFrameHeight;
+
+	private Integer lastFrameTransparent;
+
+	private long lastFrameHash; // hash of the ARGB pixels of pendingFrame, for identical duplicates
+
+	private int coalescedFrameCount;
+
+	protected long targetFileSize = 0; // bytes. 0 = no size budget
+
+	protected int expectedFrameCount = 0; // frames to share the size budget
+
+	private FileSizeBudget fileSizeBudget; // knobs of the size budget. kept after finish for reporting
+
+	private ByteCountingOutputStream countingOut; // out, counted for the size budget and the metrics
+
+	private EncoderMetricsListener metricsListener;
+
+	private EncoderMetrics metrics; // of the current or last encoding
+
+	private int writtenFrameCount;
+
+	private int addedFrameCount;
+
+	private int paletteReuseCount;
+
+	private int paletteLearnCount;
+
+	protected boolean nativeLZW = true; // false = pure java LZWEncoder
+
+	protected int lossyLevel = 0; // largest RGB difference of a pixel replaced by lossy LZW. 0 = lossless
+
+	protected GifEncodingOptions.QuantizerType quantizerType = GifEncodingOptions.QuantizerType.NEUQUANT;
+
+	private Quantizer quantizer; // quantizer used on the calling thread
+
+	private NativeLZWEncoder lzwEncoder; // streaming encoders used on the writing thread
+
+	private LZWEncoder javaLZWEncoder;
+
+	private FrameCompressor frameCompressor; // compresses the calibration probe on the calling thread
+
+	private ParallelFrameEncoder parallelEncoder;
+
+	private final FrameBufferPool bufferPool = new FrameBufferPool(MAX_POOLED_BUFFERS); // pixel arrays reused between frames
+
+	/**
+	 * Sets the delay time between each frame, or changes it for subsequent frameMetas
+	 * (applies to last frame added).
+	 *
+	 * @param ms int delay time in milliseconds
+	 */
+	public void setDelay(int ms) {
+		delay = Math.round(ms / 10.0f);
+	}
+
+	/**
+	 * Sets the GIF frame disposal code for the last added frame and any
+	 * subsequent frameMetas. Default is 0 if no transparent color has been set,
+	 * otherwise 2.
+	 *
+	 * @param code int disposal code.
+	 */
+	public void setDispose(int code) {
+		if (code >= 0) {
+			dispose = code;
+		}
+	}
+
+	/**
+	 * Sets the number of times the set of GIF frameMetas should be played. Default is
+	 * 1; 0 means play indefinitely. Must be invoked before the first image is
+	 * added.
+	 *
+	 * @param iter int number of iterations.
+	 */
+	public void setRepeat(int iter) {
+		if (iter >= 0) {
+			repeat = iter;
+		}
+	}
+
+	/**
+	 * Sets the transparent color for the last added frame and any subsequent
+	 * frameMetas. Since all colors are subject to modification in the quantization
+	 * process, the color in the final palette for each frame closest to the given
+	 * color becomes the transparent color for that frame. May be set to null to
+	 * indicate no transparent color.
+	 *
+	 * @param color Color to be treated as transparent on display.
+	 */
+	public void setTransparent(Integer color) {
+		transparent = color;
+	}
+
+	public Integer getTransparent() {
+		return transparent;
+	}
+
+	/**
+	 * Sets the bits per channel of the color lookup when mapping pixels to the palette. 8 (default) searches
+	 * the palette for every pixel. 5-7 look up an inverse color map of 32x32x32 to 128x128x128 cells, filled
+	 * on first use and kept while the palette is reused, which is much faster at a slightly higher color error.
+	 *
+	 * @param mapQuality int 5-8.
+	 */
+	public void setMapQuality(int mapQuality) {
+		if (mapQuality > 8 || mapQuality < 5) {
+			throw new RuntimeException("invalid map quality. 4 < map quality <= 8.");
+		}
+
+		this.mapQuality = mapQuality;
+	}
+
+	/**
+	 * Sets the number of threads which quantize, map and compress frames. With more than one thread,
+	 * frames are processed in parallel on a worker pool and a single writer thread writes them
+	 * to the output stream in the order they were added. Default is 1, encoding on the calling thread.
+	 * Must be invoked before start.
+	 *
+	 * @param parallelism int number of encoding threads.
+	 */
+	public void setParallelism(int parallelism) {
+		if (started) {
+			return;
+		}
+
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Sets the memory cap of the frames added but not yet written, when encoding in parallel.
+	 * <code>addFrame</code> blocks while the cap is exceeded. Default is 32MB.
+	 *
+	 * @param bytes long maximum bytes in flight.
+	 */
+	public void setMaxBytesInFlight(long bytes) {
+		if (started) {
+			return;
+		}
+
+		this.maxBytesInFlight = Math.max(1, bytes);
+	}
+
+	/**
+	 * Sets how color tables are built. LOCAL (default) learns a color table for every frame.
+	 * GLOBAL learns one color table from the leading frames, writes it as the global color table and
+	 * only maps the frames to it, which saves the learning time and the 768 bytes local color table per frame.
+	 * Must be invoked before start.
+	 *
+	 * @param paletteMode PaletteMode
+	 */
+	public void setPaletteMode(GifEncodingOptions.PaletteMode paletteMode) {
+		if (started || paletteMode == null) {
+			return;
+		}
+
+		this.paletteMode = paletteMode;
+	}
+
+	/**
+	 * Sets the number of leading frames the global palette is learned from. The frames are held
+	 * until the palette is learned. Pixels are sampled with a stride, so learning takes about as long
+	 * as for a single frame. Default is 10.
+	 *
+	 * @param frames int number of frames.
+	 */
+	public void setGlobalPaletteSampleFrames(int frames) {
+		if (started) {
+			return;
+		}
+
+		this.globalPaletteSampleFrames = Math.max(1, frames);
+	}
+
+	/**
+	 * Sets how far the colors of a frame may drift from the frame the current palette was learned from,
+	 * before a new palette is learned in ADAPTIVE palette mode. The drift is the share of the color histogram
+	 * that moved, 0 (same colors) to 1 (no color in common). Default is 0.1.
+	 *
+	 * @param threshold float 0-1.
+	 */
+	public void setPaletteDriftThreshold(float threshold) {
+		this.paletteDriftThreshold = Math.max(0f, Math.min(1f, threshold));
+	}
+
+	/**
+	 * @return number of frames which reused the previous palette in ADAPTIVE palette mode, since start.
+	 */
+	public int getPaletteReuseCount() {
+		return paletteReuseCount;
+	}
+
+	/**
+	 * @return number of palettes learned in ADAPTIVE palette mode, since start.
+	 */
+	public int getPaletteLearnCount() {
+		return paletteLearnCount;
+	}
+
+	/**
+	 * Enables delta encoding. Each frame is compared to the previous one, and only the bounding rectangle
+	 * of the changed pixels is quantized and written on top of the previous frame. (disposal: do not dispose)
+	 * Applies to full size frames added at (0, 0) without a transparent color. Other frames are written as is.
+	 *
+	 * @param deltaEncoding true to write only the changed rectangle.
+	 */
+	public void setDeltaEncoding(boolean deltaEncoding) {
+		this.deltaEncoding = deltaEncoding;
+	}
+
+	/**
+	 * Writes the pixels equal to the previous frame as a reserved transparent index, so that LZW sees long
+	 * runs of one code. The palette keeps one slot free for it. Applies to the same frames as delta encoding,
+	 * with or without it. Must be invoked before start.
+	 *
+	 * @param transparentUnchangedPixels true to make unchanged pixels transparent.
+	 */
+	public void setTransparentUnchangedPixels(boolean transparentUnchangedPixels) {
+		if (started) {
+			return;
+		}
+
+		this.transparentUnchangedPixels = transparentUnchangedPixels;
+	}
+
+	/**
+	 * Writes the pixels of alpha 0 as the reserved transparent index, never as the closest color of a
+	 * transparent color, so that opaque pixels of any color stay opaque. The palette keeps one slot free for it.
+	 * Frames are written whole and cleared to the background (disposal 2) unless a disposal code is set, since
+	 * a transparent pixel must not show the previous frame. Delta encoding and unchanged pixels do not apply.
+	 * Must be invoked before start.
+	 *
+	 * @param transparentAlphaPixels true to make pixels of alpha 0 transparent.
+	 */
+	public void setTransparentAlphaPixels(boolean transparentAlphaPixels) {
+		if (started) {
+			return;
+		}
+
+		this.transparentAlphaPixels = transparentAlphaPixels;
+	}
+
+	/**
+	 * Selects the LZW encoder. The native encoder (default) and the pure java LZWEncoder write the same data,
+	 * both stream the sub blocks to the output without a per frame buffer. The java one runs without the
+	 * native library, e.g. to compare on a JVM.
+	 *
+	 * @param nativeLZW false to use the java encoder.
+	 */
+	public void setNativeLZW(boolean nativeLZW) {
+		this.nativeLZW = nativeLZW;
+	}
+
+	/**
+	 * Enables lossy LZW compression. When a string of pixels is not in the LZW table yet, it is extended
+	 * with another palette color whose RGB values differ by at most lossyLevel in total, if that string is.
+	 * Fewer and longer codes make noisy and dithered frames noticeably smaller, at the cost of some noise.
+	 * Transparent pixels are kept as they are.
+	 *
+	 * @param lossyLevel int 0 (lossless, default) - 765. 20-80 keeps the noise hard to see.
+	 */
+	public void setLossyLevel(int lossyLevel) {
+		this.lossyLevel = Math.max(0, lossyLevel);
+	}
+
+	/**
+	 * Coalesces duplicate frames. A frame equal to the previous one, at the same position, is not written
+	 * but adds its delay to the previous frame. Identical frames are found by a 64 bit hash of the pixels,
+	 * frames within a tolerance by comparing them to the previous pixels, which are kept for that.
+	 * Each frame is written when the next different frame is added or at finish. Must be invoked before start.
+	 *
+	 * @param coalesceDuplicateFrames true to drop duplicate frames.
+	 */
+	public void setCoalesceDuplicateFrames(boolean coalesceDuplicateFrames) {
+		if (started) {
+			return;
+		}
+
+		this.coalesceDuplicateFrames = coalesceDuplicateFrames;
+	}
+
+	/**
+	 * Sets how much a frame may differ from the previous one and still be coalesced as a duplicate:
+	 * the largest difference of a color channel of any pixel. 0 (default) coalesces identical frames only.
+	 * A few levels absorb the noise of decoded video. Must be invoked before start.
+	 *
+	 * @param tolerance int 0-255.
+	 */
+	public void setDuplicateFrameTolerance(int tolerance) {
+		if (started) {
+			return;
+		}
+
+		this.duplicateFrameTolerance = Math.max(0, Math.min(255, tolerance));
+	}
+
+	/**
+	 * @return number of frames coalesced into the previous frame, since start.
+	 */
+	public int getCoalescedFrameCount() {
+		return coalescedFrameCount;
+	}
+
+	/**
+	 * Encodes under a file size in a single pass. The first frame is encoded once more as a probe,
+	 * and its size decides the scale of the frames, the colors per frame and, as the last resort,
+	 * how many frames are skipped. Colors and skipping then follow the bytes actually written.
+	 * Skipped frames extend the delay of the previous frame, which is written one frame late.
+	 * The chosen knobs are reported by getFileSizeBudget. Must be invoked before start.
+	 *
+	 * @param bytes long target file size. 0 disables the size budget.
+	 */
+	public void setTargetFileSize(long bytes) {
+		if (started) {
+			return;
+		}
+
+		this.targetFileSize = Math.max(0, bytes);
+	}
+
+	/**
+	 * Sets the number of frames which will be added, to share the size budget between them.
+	 * Must be invoked before the first frame is added. Without it, the budget assumes
+	 * FileSizeBudget.ASSUMED_FRAME_COUNT frames, or twice the frames added so far, and may miss the target.
+	 *
+	 * @param frameCount int number of frames.
+	 */
+	public void setExpectedFrameCount(int frameCount) {
+		this.expectedFrameCount = frameCount;
+	}
+
+	/**
+	 * @return knobs chosen for the target file size of the last encoding, null without a size budget.
+	 */
+	public FileSizeBudget getFileSizeBudget() {
+		return fileSizeBudget;
+	}
+
+	/**
+	 * Sets the listener of the per-frame timings of each stage and of their summary at finish.
+	 *
+	 * @param listener called on the thread which writes the frames. null to stop.
+	 */
+	public void setMetricsListener(EncoderMetricsListener listener) {
+		this.metricsListener = listener;
+	}
+
+	/**
+	 * @return timings of the current encoding, or of the last one after finish. null before the first start.
+	 */
+	public EncoderMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Selects the color quantization algorithm. NEUQUANT (default) gives the best colors,
+	 * OCTREE and MEDIAN_CUT learn much faster on large frames with coarser colors,
+	 * and WEB_SAFE uses a fixed palette without learning. Must be invoked before start.
+	 *
+	 * @param quantizerType QuantizerType
+	 */
+	public void setQuantizerType(GifEncodingOptions.QuantizerType quantizerType) {
+		if (started || quantizerType == null) {
+			return;
+		}
+
+		this.quantizerType = quantizerType;
+	}
+
+	/**
+	 * Applies the quality, map quality (color level), quantizer, palette and parallel encoding options.
+	 * Must be invoked before start.
+	 */
+	public void setEncodingOptions(GifEncodingOptions options) {
+		setQuality(options.getQuality());
+		setMapQuality(options.getColorLevel());
+		setParallelism(options.getParallelism());
+		setMaxBytesInFlight(options.getMaxBytesInFlight());
+		setPaletteMode(options.getPaletteMode());
+		setQuantizerType(options.getQuantizerType());
+		setCoalesceDuplicateFrames(options.isCoalesceDuplicateFrames());
+		setDuplicateFrameTolerance(options.getDuplicateFrameTolerance());
+		setTargetFileSize(options.getTargetFileSize());
+		setLossyLevel(options.getLossyLevel());
+		setMetricsListener(options.getMetricsListener());
+		setExpectedFrameCount(options.getExpectedFrameCount());
+		setGlobalPaletteSampleFrames(options.getGlobalPaletteSampleFrames());
+		setPaletteDriftThreshold(options.getPaletteDriftThreshold());
+		setDeltaEncoding(options.isDeltaEncoding());
+		setTransparentUnchangedPixels(options.isTransparentUnchangedPixels());
+	}
+
+	/**
+	 * Adds next GIF frame. The frame is not written immediately, but is actually
+	 * deferred until the next frame is received so that timing data can be
+	 * inserted. Invoking <code>finish()</code> flushes all frameMetas. If
+	 * <code>setSize</code> was invoked, the size is used for all subsequent frameMetas.
+	 * Otherwise, the actual size of the image is used for each frameMetas.
+	 *
+	 * @param im BufferedImage containing frame to write.
+	 * @return true if successful.
+	 */
+	public boolean addFrame(Bitmap im) {
+		return addFrame(im, 0, 0);
+	}
+
+	/**
+	 * Adds next GIF frame to the specified position. The frame is not written immediately, but is
+	 * actually deferred until the next frame is received so that timing data can be inserted.
+	 * Invoking <code>finish()</code> flushes all frameMetas. If <code>setSize</code> was invoked, the
+	 * size is used for all subsequent frameMetas. Otherwise, the actual size of the image is used for
+	 * each frame.
+	 * <p/>
+	 * See page 11 of http://giflib.sourceforge.net/gif89.txt for the position of the frame
+	 *
+	 * @param im BufferedImage containing frame to write.
+	 * @param x  Column number, in pixels, of the left edge of the image, with respect to the left
+	 *           edge of the Logical Screen.
+	 * @param y  Row number, in pixels, of the top edge of the image with respect to the top edge of
+	 *           the Logical Screen.
+	 * @return true if successful.
+	 */
+	public boolean addFrame(Bitmap im, int x, int y) {
+		if ((im == null) || !started) {
+			return false;
+		}
+		boolean ok = true;
+		long startNanos = System.nanoTime();
+		try {
+			Bitmap scaled = null;
+			if (targetFileSize > 0) {
+				if (fileSizeBudget == null) {
+					startFileSizeBudget(getFramePixels(im));
+					startNanos = System.nanoTime(); // the probe is not part of the frame
+				}
+
+				if (skipForFileSizeBudget()) {
+					return true;
+				}
+
+				float scale = fileSizeBudget.getScale();
+				if (scale < 1f) {
+					scaled = Bitmap.createScaledBitmap(im, scaleForFileSizeBudget(im.getWidth()), scaleForFileSizeBudget(im.getHeight()), true);
+					im = scaled;
+					x = Math.round(x * scale);
+					y = Math.round(y * scale);
+				}
+			}
+
+			int[] pixelsInt = getFramePixels(im); // convert to correct format if necessary
+			if (scaled != null) {
+				scaled.recycle();
+			}
+
+			addFramePixels(pixelsInt, x, y, startNanos);
+		} catch (IOException e) {
+			ok = false;
+		}
+
+		return ok;
+	}
+
+	/**
+	 * Adds next GIF frame from raw pixels, without a Bitmap. See {@link #addFrame(Bitmap, int, int)}.
+	 * The pixels are copied while converting, so the array may be reused as soon as this returns.
+	 *
+	 * @param pixels       packed pixels, one int each
+	 * @param offset       index of the first pixel of the top row
+	 * @param stride       ints between the starts of two rows. negative for bottom up images
+	 * @param imageWidth   width of the image in pixels
+	 * @param imageHeight  height of the image in pixels
+	 * @param channelOrder ARGB for 0xAARRGGBB (android Color, Bitmap.getPixels) or RGBA for 0xRRGGBBAA
+	 * @param x            Column number of the left edge of the image on the Logical Screen.
+	 * @param y            Row number of the top edge of the image on the Logical Screen.
+	 * @return true if successful.
+	 */
+	public boolean addFrame(int[] pixels, int offset, int stride, int imageWidth, int imageHeight, ChannelOrder channelOrder, int x, int y) {
+		if (pixels == null) {
+			return false;
+		}
+		return addRawFrame(pixels, null, offset, stride, imageWidth, imageHeight, channelOrder, x, y);
+	}
+
+	/**
+	 * Adds next GIF frame from raw pixels of 4 bytes each, e.g. glReadPixels with GL_RGBA or the plane of
+	 * an RGBA_8888 ImageReader. See {@link #addFrame(Bitmap, int, int)}. The buffer is read by absolute
+	 * indexes, its position and byte order are ignored, and may be reused as soon as this returns.
+	 *
+	 * @param pixels       pixel bytes, heap or direct
+	 * @param offset       byte index of the first pixel of the top row
+	 * @param rowStride    bytes between the starts of two rows. negative for bottom up images, as read from GL
+	 * @param imageWidth   width of the image in pixels
+	 * @param imageHeight  height of the image in pixels
+	 * @param channelOrder byte order of the channels of a pixel. RGBA for GL_RGBA and RGBA_8888
+	 * @param x            Column number of the left edge of the image on the Logical Screen.
+	 * @param y            Row number of the top edge of the image on the Logical Screen.
+	 * @return true if successful.
+	 */
+	public boolean addFrame(ByteBuffer pixels, int offset, int rowStride, int imageWidth, int imageHeight, ChannelOrder channelOrder, int x, int y) {
+		if (pixels == null) {
+			return false;
+		}
+		return addRawFrame(null, pixels, offset, rowStride, imageWidth, imageHeight, channelOrder, x, y);
+	}
+
+	private boolean addRawFrame(int[] intPixels, ByteBuffer bytePixels, int offset, int stride, int imageWidth, int imageHeight, ChannelOrder channelOrder, int x, int y) {
+		if (!started || imageWidth <= 0 || imageHeight <= 0 || channelOrder == null) {
+			return false;
+		}
+		boolean ok = true;
+		long startNanos = System.nanoTime();
+		int[] scaled = null;
+		try {
+			if (targetFileSize > 0) {
+				if (fileSizeBudget == null) {
+					setFrameSizeFor(imageWidth, imageHeight);
+					int[] pixelsInt = bufferPool.obtainInts(width * height);
+					copyPixels(intPixels, bytePixels, offset, stride, imageWidth, imageHeight, channelOrder, pixelsInt, width, height);
+					startFileSizeBudget(pixelsInt);
+					startNanos = System.nanoTime(); // the probe is not part of the frame
+				}
+
+				if (skipForFileSizeBudget()) {
+					return true;
+				}
+
+				float scale = fileSizeBudget.getScale();
+				if (scale < 1f) {
+					int scaledWidth = scaleForFileSizeBudget(imageWidth);
+					int scaledHeight = scaleForFileSizeBudget(imageHeight);
+					int[] fullPixels = bufferPool.obtainInts(imageWidth * imageHeight);
+					copyPixels(intPixels, bytePixels, offset, stride, imageWidth, imageHeight, channelOrder, fullPixels, imageWidth, imageHeight);
+					scaled = bufferPool.obtainInts(scaledWidth * scaledHeight);
+					scalePixels(fullPixels, imageWidth, imageHeight, scaled, scaledWidth, scaledHeight);
+					bufferPool.recycle(fullPixels);
+
+					// continue with the scaled ARGB image
+					intPixels = scaled;
+					bytePixels = null;
+					offset = 0;
+					stride = scaledWidth;
+					imageWidth = scaledWidth;
+					imageHeight = scaledHeight;
+					channelOrder = ChannelOrder.ARGB;
+					x = Math.round(x * scale);
+					y = Math.round(y * scale);
+				}
+			}
+
+			setFrameSizeFor(imageWidth, imageHeight);
+			int[] pixelsInt = bufferPool.obtainInts(width * height);
+			copyPixels(intPixels, bytePixels, offset, stride, imageWidth, imageHeight, channelOrder, pixelsInt, width, height);
+			addFramePixels(pixelsInt, x, y, startNanos);
+		} catch (IOException e) {
+			ok = false;
+		} finally {
+			bufferPool.recycle(scaled);
+		}
+
+		return ok;
+	}
+
+	/**
+	 * Encodes the ARGB pixels of the frame size, in a pooled array which is taken over.
+	 * startNanos is when the frame was given, for the extraction time.
+	 */
+	private void addFramePixels(int[] pixelsInt, int x, int y, long startNanos) throws IOException {
+		long hash = coalesceDuplicateFrames && duplicateFrameTolerance == 0 ? pixelHash(pixelsInt, width * height) : 0;
+		if (coalesceDuplicateFrames && isDuplicateFrame(pixelsInt, x, y, hash)) {
+			pendingFrame.delay += delay; // not written yet
+			++coalescedFrameCount;
+			bufferPool.recycle(pixelsInt);
+			return;
+		}
+
+		boolean delta = (deltaEncoding || transparentUnchangedPixels) && transparent == null && !transparentAlphaPixels
+				&& x == 0 && y == 0;
+		int[] previous = delta && previousDeltaBase && previousPixels != null && previousWidth == width && previousHeight == height ? previousPixels : null;
+		int[] dirtyRect = null;
+		if (deltaEncoding && previous != null) {
+			dirtyRect = findDirtyRect(pixelsInt, previous, width, height);
+		}
+
+		EncodingFrame frame;
+		if (dirtyRect != null) {
+			frame = new EncodingFrame(dirtyRect[0], dirtyRect[1], dirtyRect[2], dirtyRect[3], delay, DISPOSE_NONE, null);
+			getImagePixels(frame, pixelsInt, width, dirtyRect[0], dirtyRect[1], dirtyRect[2], dirtyRect[3]);
+		} else {
+			int frameDispose = transparentAlphaPixels && dispose < 0 ? DISPOSE_BACKGROUND : dispose;
+			frame = new EncodingFrame(x, y, width, height, delay, delta ? DISPOSE_NONE : frameDispose, transparent);
+			getImagePixels(frame, pixelsInt, width, 0, 0, width, height);
+		}
+
+		frame.sample = fileSizeBudget != null ? fileSizeBudget.getSample() : sample;
+		frame.maxColors = fileSizeBudget != null ? fileSizeBudget.getMaxColors() : MAX_COLORS;
+
+		// palettes may be shared between frames, so all of them keep the slot once enabled
+		frame.reserveTransparentIndex = transparentUnchangedPixels || transparentAlphaPixels;
+		if (transparentAlphaPixels) {
+			findTransparentAlphaPixels(frame, pixelsInt, width);
+		} else if (transparentUnchangedPixels && previous != null) {
+			findUnchangedPixels(frame, pixelsInt, previous, width);
+		}
+
+		// keep the pixels for the next frame only in delta encoding or to compare duplicates
+		bufferPool.recycle(previousPixels);
+		previousPixels = null;
+		if (delta || (coalesceDuplicateFrames && duplicateFrameTolerance > 0)) {
+			previousPixels = pixelsInt;
+			previousWidth = width;
+			previousHeight = height;
+			previousDeltaBase = delta;
+		} else {
+			bufferPool.recycle(pixelsInt);
+		}
+		frame.metrics.add(EncoderMetrics.Stage.EXTRACT, System.nanoTime() - startNanos);
+
+		if (coalesceDuplicateFrames || fileSizeBudget != null) {
+			lastFrameX = x;
+			lastFrameY = y;
+			lastFrameWidth = width;
+			lastFrameHeight = height;
+			lastFrameTransparent = transparent;
+			lastFrameHash = hash;
+
+			// deferred by one frame, so that the following duplicates can extend its delay
+			EncodingFrame previousFrame = pendingFrame;
+			pendingFrame = frame;
+			if (previousFrame != null) {
+				queueFrame(previousFrame);
+			}
+		} else {
+			queueFrame(frame);
+		}
+	}
+
+	private void queueFrame(EncodingFrame frame) throws IOException {
+		if (paletteMode == GifEncodingOptions.PaletteMode.GLOBAL && globalColorTab == null) {
+			// hold the leading frames until the global palette is learned
+			if (paletteSampleFrames == null) {
+				paletteSampleFrames = new ArrayList<>();
+			}
+			paletteSampleFrames.add(frame);
+			if (paletteSampleFrames.size() >= globalPaletteSampleFrames) {
+				flushPaletteSampleFrames();
+			}
+		} else {
+			encodeFrame(frame);
+		}
+	}
+
+	/**
+	 * Sets the frame size and returns the ARGB pixels of the image in it
+	 */
+	private int[] getFramePixels(Bitmap im) {
+		setFrameSizeFor(im.getWidth(), im.getHeight());
+		image = im;
+		int[] pixelsInt = getImagePixels();
+		image = null;
+		return pixelsInt;
+	}
+
+	/**
+	 * Sets the frame size to the size set by setSize, scaled like the images by the file size budget,
+	 * or else to the image size
+	 */
+	private void setFrameSizeFor(int imageWidth, int imageHeight) {
+		if (sizeSet) {
+			setFrameSize(scaleForFileSizeBudget(fixedWidth), scaleForFileSizeBudget(fixedHeight));
+		} else {
+			setFrameSize(imageWidth, imageHeight);
+		}
+	}
+
+	private int scaleForFileSizeBudget(int length) {
+		float scale = fileSizeBudget != null ? fileSizeBudget.getScale() : 1f;
+		return scale < 1f ? Math.max(1, Math.round(length * scale)) : length;
+	}
+
+	/**
+	 * Creates the file size budget and calibrates it with the first frame, given as ARGB pixels
+	 * of the frame size in a pooled array which is taken over
+	 */
+	private void startFileSizeBudget(int[] probePixels) {
+		if (expectedFrameCount <= 0) {
+			MeiLog.i("expected frame count is not set. the file size budget assumes " + FileSizeBudget.ASSUMED_FRAME_COUNT
+					+ " frames or twice the frames added so far, and may miss the target");
+		}
+		fileSizeBudget = new FileSizeBudget(targetFileSize, expectedFrameCount, sample);
+		calibrateFileSizeBudget(probePixels);
+	}
+
+	/**
+	 * Whether the file size budget drops the frame, which then extends the delay of the pending frame
+	 */
+	private boolean skipForFileSizeBudget() {
+		int frameIndex = addedFrameCount++;
+		if (pendingFrame != null && pendingFrame.delay + delay <= MAX_DELAY && fileSizeBudget.shouldSkip(frameIndex)) {
+			pendingFrame.delay += delay; // not written yet
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Encodes the first frame at full size and colors to measure it, without writing it
+	 */
+	private void calibrateFileSizeBudget(int[] pixelsInt) {
+		EncodingFrame probe = new EncodingFrame(0, 0, width, height, delay, dispose, transparent);
+		getImagePixels(probe, pixelsInt, width, 0, 0, width, height);
+		bufferPool.recycle(pixelsInt);
+		probe.sample = sample;
+		encodeFrame(probe, getQuantizer(), getFrameCompressor());
+
+		fileSizeBudget.calibrate(probe.encodedLength);
+		bufferPool.recycle(probe.encodedPixels);
+		MeiLog.d("file size budget calibrated. " + fileSizeBudget);
+	}
+
+	/**
+	 * Whether the frame shows the same as the pending frame, so that it only extends the delay
+	 */
+	private boolean isDuplicateFrame(int[] pixels, int x, int y, long hash) {
+		if (pendingFrame == null || x != lastFrameX || y != lastFrameY || width != lastFrameWidth || height != lastFrameHeight) {
+			return false;
+		}
+		if (transparent == null ? lastFrameTransparent != null : !transparent.equals(lastFrameTransparent)) {
+			return false;
+		}
+		if (pendingFrame.delay + delay > MAX_DELAY) {
+			return false;
+		}
+
+		if (duplicateFrameTolerance == 0) {
+			return hash == lastFrameHash;
+		}
+
+		if (previousPixels == null) {
+			return false;
+		}
+		for (int i = 0, length = width * height; i < length; ++i) {
+			int pixel = pixels[i];
+			int previous = previousPixels[i];
+			if (pixel == previous) continue;
+
+			for (int shift = 0; shift < 32; shift += 8) {
+				if (Math.abs(((pixel >> shift) & 0xff) - ((previous >> shift) & 0xff)) > duplicateFrameTolerance) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of ARGB pixels
+	 */
+	private static long pixelHash(int[] pixels, int length) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < length; ++i) {
+			hash = (hash ^ pixels[i]) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private void encodeFrame(EncodingFrame frame) throws IOException {
+		if (globalColorTab != null) {
+			frame.colorTab = globalColorTab;
+			frame.localPalette = false;
+		} else if (paletteMode == GifEncodingOptions.PaletteMode.ADAPTIVE) {
+			selectPalette(frame);
+		}
+		++encodedFrameCount;
+
+		if (parallelism > 1) {
+			getParallelEncoder().submit(frame); // analyzed, compressed and written on the pool
+		} else {
+			analyzePixels(frame, getQuantizer()); // build color table & map pixels
+			writeFrame(frame);
+		}
+	}
+
+	/**
+	 * Learns the global palette from the held frames and encodes them.
+	 */
+	private void flushPaletteSampleFrames() throws IOException {
+		if (paletteSampleFrames == null || paletteSampleFrames.isEmpty()) {
+			return;
+		}
+
+		List<EncodingFrame> frames = paletteSampleFrames;
+		paletteSampleFrames = null;
+		globalColorTab = learnGlobalPalette(frames);
+		for (EncodingFrame frame : frames) {
+			encodeFrame(frame);
+		}
+	}
 
-	protected byte[] indexedPixels; // converted frame indexed to palette
+	/**
+	 * Reuses the reference palette while the color histogram of the frame stays close to the one
+	 * the palette was learned from, otherwise the frame learns a new reference palette.
+	 */
+	private void selectPalette(EncodingFrame frame) {
+		float[] histogram = colorHistogram(frame.pixels, frame.width * frame.height, histogramBuffer);
+		histogramBuffer = histogram;
+		if (referencePalette != null && histogramDistance(referenceHistogram, histogram) <= paletteDriftThreshold) {
+			frame.sharedPalette = referencePalette;
+			frame.localPalette = !referencePalette.global; // the global color table needs no copy
+			++paletteReuseCount;
+			return;
+		}
 
-	protected int colorDepth; // number of bit planes
+		referencePalette = new SharedPalette(encodedFrameCount == 0);
+		histogramBuffer = referenceHistogram;
+		referenceHistogram = histogram;
+		frame.sharedPalette = referencePalette;
+		frame.paletteOwner = true;
+		++paletteLearnCount;
+	}
 
-	protected byte[] colorTab; // RGB palette
+	/**
+	 * Normalized color histogram of BGR pixels. Fills the given histogram if not null
+	 */
+	private static float[] colorHistogram(byte[] pixels, int pixelCount, float[] histogram) {
+		int shift = 8 - HISTOGRAM_BITS;
+		if (histogram == null) {
+			histogram = new float[1 << (HISTOGRAM_BITS * 3)];
+		} else {
+			Arrays.fill(histogram, 0);
+		}
+		int count = 0;
+		for (int k = 0, end = pixelCount * 3; k < end; k += HISTOGRAM_PIXEL_STRIDE * 3) {
+			int b = (pixels[k] & 0xff) >> shift;
+			int g = (pixels[k + 1] & 0xff) >> shift;
+			int r = (pixels[k + 2] & 0xff) >> shift;
+			histogram[(r << (HISTOGRAM_BITS * 2)) | (g << HISTOGRAM_BITS) | b]++;
+			++count;
+		}
 
-	protected boolean[] usedEntry = new boolean[256]; // active palette entries
+		if (count > 0) {
+			for (int i = 0; i < histogram.length; ++i) {
+				histogram[i] /= count;
+			}
+		}
+		return histogram;
+	}
 
-	protected int palSize = 7; // color table size (bits-1)
+	/**
+	 * Share of the histogram that moved between bins. 0 = same, 1 = disjoint
+	 */
+	private static float histogramDistance(float[] h1, float[] h2) {
+		float distance = 0;
+		for (int i = 0; i < h1.length; ++i) {
+			distance += Math.abs(h1[i] - h2[i]);
+		}
+		return distance / 2;
+	}
 
-	protected int dispose = -1; // disposal code (-1 = use default)
+	private byte[] learnGlobalPalette(List<EncodingFrame> frames) {
+		long startNanos = System.nanoTime();
+		int pixelCount = 0;
+		int maxFramePixelCount = 0;
+		for (EncodingFrame frame : frames) {
+			pixelCount += frame.width * frame.height;
+			maxFramePixelCount = Math.max(maxFramePixelCount, frame.width * frame.height);
+		}
 
-	protected boolean closeStream = false; // close stream when finished
+		// every frame contributes every stride-th pixel, starting at a different offset.
+		// about as many pixels as the largest frame, which may be the only full frame in delta encoding
+		int stride = Math.max(1, pixelCount / Math.max(1, maxFramePixelCount));
+		byte[] samplePixels = new byte[(pixelCount / stride + frames.size()) * 3];
+		int len = 0;
+		for (int f = 0; f < frames.size(); ++f) {
+			EncodingFrame frame = frames.get(f);
+			byte[] pixels = frame.pixels;
+			for (int k = (f % stride) * 3, end = frame.width * frame.height * 3; k < end; k += stride * 3) {
+				samplePixels[len++] = pixels[k];
+				samplePixels[len++] = pixels[k + 1];
+				samplePixels[len++] = pixels[k + 2];
+			}
+		}
 
-	protected boolean firstFrame = true;
+		byte[] colorTab = getQuantizer().learn(samplePixels, len, sample);
+		if (transparentUnchangedPixels || transparentAlphaPixels) {
+			reserveTransparentIndex(colorTab);
+		}
+		frames.get(0).metrics.add(EncoderMetrics.Stage.LEARN, System.nanoTime() - startNanos); // on behalf of all the frames
+		MeiLog.d("global palette learned from " + frames.size() + " frames");
+		return colorTab;
+	}
 
-	protected boolean sizeSet = false; // if false, get size from first frame
+	/**
+	 * Returns the bounding rectangle of the pixels which differ from the previous frame, as left, top, width
+	 * and height. A 1x1 rectangle if nothing changed, since the frame is still needed for its delay.
+	 */
+	private static int[] findDirtyRect(int[] pixels, int[] previous, int w, int h) {
+		int top = 0;
+		while (top < h && rowEquals(pixels, previous, top * w, w)) {
+			++top;
+		}
+		if (top == h) {
+			return new int[]{0, 0, 1, 1};
+		}
 
-	protected int sample = 10; // default sample interval for quantizer
+		int bottom = h - 1;
+		while (bottom > top && rowEquals(pixels, previous, bottom * w, w)) {
+			--bottom;
+		}
 
-	protected boolean hasTransparentPixels;
+		int left = 0;
+		while (columnEquals(pixels, previous, left, w, top, bottom)) {
+			++left;
+		}
 
-	protected int mapQuality = 8;
+		int right = w - 1;
+		while (right > left && columnEquals(pixels, previous, right, w, top, bottom)) {
+			--right;
+		}
 
-	/**
-	 * Sets the delay time between each frame, or changes it for subsequent frameMetas
-	 * (applies to last frame added).
-	 *
-	 * @param ms int delay time in milliseconds
-	 */
-	public void setDelay(int ms) {
-		delay = Math.round(ms / 10.0f);
+		return new int[]{left, top, right - left + 1, bottom - top + 1};
 	}
 
 	/**
-	 * Sets the GIF frame disposal code for the last added frame and any
-	 * subsequent frameMetas. Default is 0 if no transparent color has been set,
-	 * otherwise 2.
-	 *
-	 * @param code int disposal code.
+	 * Marks the pixels of the frame which are equal to the previous frame
 	 */
-	public void setDispose(int code) {
-		if (code >= 0) {
-			dispose = code;
+	private void findUnchangedPixels(EncodingFrame frame, int[] pixels, int[] previous, int stride) {
+		boolean[] unchanged = bufferPool.obtainBooleans(frame.width * frame.height);
+		int unchangedCount = 0;
+		int j = 0;
+		for (int y = 0; y < frame.height; ++y) {
+			for (int i = (frame.y + y) * stride + frame.x, end = i + frame.width; i < end; ++i, ++j) {
+				unchanged[j] = pixels[i] == previous[i]; // pooled. every entry is written
+				if (unchanged[j]) {
+					++unchangedCount;
+				}
+			}
 		}
-	}
 
-	/**
-	 * Sets the number of times the set of GIF frameMetas should be played. Default is
-	 * 1; 0 means play indefinitely. Must be invoked before the first image is
-	 * added.
-	 *
-	 * @param iter int number of iterations.
-	 */
-	public void setRepeat(int iter) {
-		if (iter >= 0) {
-			repeat = iter;
+		if (unchangedCount > 0) {
+			frame.transparentPixels = unchanged;
+		} else {
+			bufferPool.recycle(unchanged);
 		}
 	}
 
 	/**
-	 * Sets the transparent color for the last added frame and any subsequent
-	 * frameMetas. Since all colors are subject to modification in the quantization
-	 * process, the color in the final palette for each frame closest to the given
-	 * color becomes the transparent color for that frame. May be set to null to
-	 * indicate no transparent color.
-	 *
-	 * @param color Color to be treated as transparent on display.
+	 * Marks the pixels of the frame whose alpha is 0
 	 */
-	public void setTransparent(Integer color) {
-		transparent = color;
-	}
+	private void findTransparentAlphaPixels(EncodingFrame frame, int[] pixels, int stride) {
+		boolean[] transparentPixels = bufferPool.obtainBooleans(frame.width * frame.height);
+		int transparentCount = 0;
+		int j = 0;
+		for (int y = 0; y < frame.height; ++y) {
+			for (int i = (frame.y + y) * stride + frame.x, end = i + frame.width; i < end; ++i, ++j) {
+				transparentPixels[j] = (pixels[i] >>> 24) == 0; // pooled. every entry is written
+				if (transparentPixels[j]) {
+					++transparentCount;
+				}
+			}
+		}
 
-	public Integer getTransparent() {
-		return transparent;
+		if (transparentCount > 0) {
+			frame.transparentPixels = transparentPixels;
+		} else {
+			bufferPool.recycle(transparentPixels);
+		}
 	}
 
-
-	public void setMapQuality(int mapQuality) {
-		if (mapQuality > 8 || mapQuality < 5) {
-			throw new RuntimeException("invalid map quality. 4 < map quality <= 8.");
+	private static boolean rowEquals(int[] pixels, int[] previous, int offset, int w) {
+		for (int i = offset, end = offset + w; i < end; ++i) {
+			if (pixels[i] != previous[i]) return false;
 		}
+		return true;
+	}
 
-		this.mapQuality = mapQuality;
+	private static boolean columnEquals(int[] pixels, int[] previous, int x, int w, int top, int bottom) {
+		for (int i = top * w + x, end = bottom * w + x; i <= end; i += w) {
+			if (pixels[i] != previous[i]) return false;
+		}
+		return true;
 	}
+
 	/**
-	 * Adds next GIF frame. The frame is not written immediately, but is actually
-	 * deferred until the next frame is received so that timing data can be
-	 * inserted. Invoking <code>finish()</code> flushes all frameMetas. If
-	 * <code>setSize</code> was invoked, the size is used for all subsequent frameMetas.
-	 * Otherwise, the actual size of the image is used for each frameMetas.
-	 *
-	 * @param im BufferedImage containing frame to write.
-	 * @return true if successful.
+	 * Builds the color table, maps and compresses the frame ahead of writing. Runs on a worker thread,
+	 * with the quantizer and the compressor of the thread.
 	 */
-	public boolean addFrame(Bitmap im) {
-		return addFrame(im, 0, 0);
+	void encodeFrame(EncodingFrame frame, Quantizer quantizer, FrameCompressor compressor) {
+		analyzePixels(frame, quantizer);
+		long startNanos = System.nanoTime();
+		try {
+			compressor.compress(frame, nativeLZW, lossyLevel, getLossyTransIndex(frame), bufferPool);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // the compressor writes to memory
+		}
+		bufferPool.recycle(frame.indexedPixels);
+		frame.indexedPixels = null;
+		frame.metrics.add(EncoderMetrics.Stage.LZW, System.nanoTime() - startNanos);
 	}
 
 	/**
-	 * Adds next GIF frame to the specified position. The frame is not written immediately, but is
-	 * actually deferred until the next frame is received so that timing data can be inserted.
-	 * Invoking <code>finish()</code> flushes all frameMetas. If <code>setSize</code> was invoked, the
-	 * size is used for all subsequent frameMetas. Otherwise, the actual size of the image is used for
-	 * each frame.
-	 * <p/>
-	 * See page 11 of http://giflib.sourceforge.net/gif89.txt for the position of the frame
-	 *
-	 * @param im BufferedImage containing frame to write.
-	 * @param x  Column number, in pixels, of the left edge of the image, with respect to the left
-	 *           edge of the Logical Screen.
-	 * @param y  Row number, in pixels, of the top edge of the image with respect to the top edge of
-	 *           the Logical Screen.
-	 * @return true if successful.
+	 * Writes an analyzed frame. Frames must be written in the order they were added.
 	 */
-	public boolean addFrame(Bitmap im, int x, int y) {
-		if ((im == null) || !started) {
-			return false;
-		}
-		boolean ok = true;
-		try {
-			if (sizeSet) {
-				setFrameSize(fixedWidth, fixedHeight);
-			} else {
-				setFrameSize(im.getWidth(), im.getHeight());
-			}
-			image = im;
-			getImagePixels(); // convert to correct format if necessary
-			analyzePixels(); // build color table & map pixels
-			if (firstFrame) {
-				writeLSD(); // logical screen descriptior
-				writePalette(); // global color table
-				if (repeat >= 0) {
-					// use NS app extension to indicate reps
-					writeNetscapeExt();
-				}
-			}
-			writeGraphicCtrlExt(); // write graphic control extension
-			writeImageDesc(x, y); // image descriptor
-			if (!firstFrame) {
-				writePalette(); // local color table
+	void writeFrame(EncodingFrame frame) throws IOException {
+		long startNanos = System.nanoTime();
+		long startCount = countingOut.getCount();
+		if (firstFrame) {
+			writeLSD(frame); // logical screen descriptior
+			writePalette(frame); // global color table
+			if (repeat >= 0) {
+				// use NS app extension to indicate reps
+				writeNetscapeExt();
 			}
-			writePixels(); // encode and write pixel data
-			firstFrame = false;
-		} catch (IOException e) {
-			ok = false;
 		}
+		writeGraphicCtrlExt(frame); // write graphic control extension
+		writeImageDesc(frame); // image descriptor
+		if (!firstFrame && frame.localPalette) {
+			writePalette(frame); // local color table
+		}
+		long lzwNanos = frame.metrics.getNanos(EncoderMetrics.Stage.LZW);
+		writePixels(frame); // encode and write pixel data
+		firstFrame = false;
 
-		return ok;
+		if (fileSizeBudget != null) {
+			fileSizeBudget.onFrameWritten(countingOut.getCount());
+		}
+
+		// compressing while writing counts as LZW
+		lzwNanos = frame.metrics.getNanos(EncoderMetrics.Stage.LZW) - lzwNanos;
+		frame.metrics.add(EncoderMetrics.Stage.WRITE, System.nanoTime() - startNanos - lzwNanos);
+		frame.metrics.setWritten(writtenFrameCount++, frame.width, frame.height, countingOut.getCount() - startCount);
+		metrics.record(frame.metrics);
+		if (metricsListener != null) {
+			metricsListener.onFrameMetrics(frame.metrics);
+		}
+	}
+
+	private Quantizer getQuantizer() {
+		if (quantizer == null) {
+			quantizer = createQuantizer();
+		}
+		return quantizer;
+	}
+
+	private FrameCompressor getFrameCompressor() {
+		if (frameCompressor == null) {
+			frameCompressor = new FrameCompressor();
+		}
+		return frameCompressor;
+	}
+
+	Quantizer createQuantizer() {
+		switch (quantizerType) {
+			case OCTREE:
+				return new OctreeQuantizer();
+			case MEDIAN_CUT:
+				return new MedianCutQuantizer();
+			case WEB_SAFE:
+				return new WebSafeQuantizer();
+			default:
+				return new NativeNeuQuant();
+		}
+	}
+
+	private ParallelFrameEncoder getParallelEncoder() {
+		if (parallelEncoder == null) {
+			parallelEncoder = new ParallelFrameEncoder(this, parallelism, maxBytesInFlight);
+		}
+		return parallelEncoder;
 	}
 
 	/**
@@ -229,6 +1224,14 @@ public class AnimatedGifEncoder {
 		boolean ok = true;
 		started = false;
 		try {
+			if (pendingFrame != null) {
+				queueFrame(pendingFrame); // the last frame, with the delay of its duplicates
+				pendingFrame = null;
+			}
+			flushPaletteSampleFrames(); // fewer frames than the sample window
+			if (parallelEncoder != null) {
+				parallelEncoder.finish(); // wait for the frames in flight
+			}
 			out.write(0x3b); // gif trailer
 			out.flush();
 			if (closeStream) {
@@ -238,13 +1241,43 @@ public class AnimatedGifEncoder {
 			ok = false;
 		}
 
+		if (paletteMode == GifEncodingOptions.PaletteMode.ADAPTIVE) {
+			MeiLog.d("palette reused : " + paletteReuseCount + ", learned : " + paletteLearnCount);
+		}
+		if (coalesceDuplicateFrames) {
+			MeiLog.d("duplicate frames coalesced : " + coalescedFrameCount);
+		}
+		if (fileSizeBudget != null) {
+			MeiLog.d("file size budget. " + fileSizeBudget);
+		}
+		metrics.finish(countingOut.getCount(), bufferPool.getAllocatedBuffers(), bufferPool.getAllocatedBytes(), bufferPool.getReusedBuffers());
+		MeiLog.d("encoder metrics. " + metrics);
+		if (metricsListener != null) {
+			metricsListener.onEncoderMetrics(metrics);
+		}
+
 		// reset for subsequent use
-		transIndex = 0;
+		paletteSampleFrames = null;
+		globalColorTab = null;
+		referencePalette = null;
+		referenceHistogram = null;
+		histogramBuffer = null;
+		encodedFrameCount = 0;
+		previousPixels = null;
+		pendingFrame = null;
+		lastFrameTransparent = null;
+		countingOut = null;
+		bufferPool.clear();
+		if (parallelEncoder != null) {
+			parallelEncoder.release();
+			parallelEncoder = null;
+		}
+		if (quantizer != null) {
+			quantizer.release();
+			quantizer = null;
+		}
 		out = null;
 		image = null;
-		pixels = null;
-		indexedPixels = null;
-		colorTab = null;
 		closeStream = false;
 		firstFrame = true;
 
@@ -326,6 +1359,14 @@ public class AnimatedGifEncoder {
 		boolean ok = true;
 		closeStream = false;
 		out = os;
+		fileSizeBudget = null;
+		addedFrameCount = 0;
+		writtenFrameCount = 0;
+		out = countingOut = new ByteCountingOutputStream(os);
+		metrics = new EncoderMetrics();
+		paletteReuseCount = 0;
+		paletteLearnCount = 0;
+		coalescedFrameCount = 0;
 		try {
 			writeString("GIF89a"); // header
 		} catch (IOException e) {
@@ -355,53 +1396,230 @@ public class AnimatedGifEncoder {
 	/**
 	 * Analyzes image colors and creates color map.
 	 */
-	protected void analyzePixels() {
-		long startTime = System.currentTimeMillis();
-		int len = pixels.length;
-		int nPix = len / 3;
-		indexedPixels = new byte[nPix];
-//		NeuQuant nq = new NeuQuant(pixels, len, sample);
-		NativeNeuQuant nativeNeuQuant = new NativeNeuQuant();
-		nativeNeuQuant.init(pixels, len, sample);
-//		colorTab = nq.process(); // create reduced palette
-		colorTab = nativeNeuQuant.process();
-
-		// convert map from BGR to RGB
-		for (int i = 0; i < colorTab.length; i += 3) {
-			byte temp = colorTab[i];
-			colorTab[i] = colorTab[i + 2];
-			colorTab[i + 2] = temp;
-			usedEntry[i / 3] = false;
-		}
-		MeiLog.d("NewQuant process speed : " + (System.currentTimeMillis() - startTime));
+	protected void analyzePixels(EncodingFrame frame, Quantizer quantizer) {
+		byte[] pixels = frame.pixels;
+		int pixelCount = frame.width * frame.height;
+		int len = pixelCount * 3;
+		if (frame.sharedPalette != null && !frame.paletteOwner) {
+			frame.colorTab = frame.sharedPalette.await(); // learned by a previous frame
+			if (frame.colorTab == null) {
+				throw new IllegalStateException("previous frame failed to learn the palette");
+			}
+		}
+
+		boolean learned = frame.colorTab == null;
+		if (learned) {
+			long learnStartNanos = System.nanoTime();
+			try {
+				frame.colorTab = quantizer.learn(pixels, len, frame.sample); // create reduced palette
+				if (frame.reserveTransparentIndex) {
+					reserveTransparentIndex(frame.colorTab);
+				}
+			} finally {
+				if (frame.paletteOwner) {
+					frame.sharedPalette.set(frame.colorTab); // wakes up the frames reusing it
+				}
+			}
+			frame.metrics.add(EncoderMetrics.Stage.LEARN, System.nanoTime() - learnStartNanos);
+		}
+
+		if (frame.reserveTransparentIndex) {
+			quantizer.useColorTable(frame.colorTab, TRANSPARENT_INDEX); // map to the colors before the reserved slot
+		} else if (!learned) {
+			quantizer.useColorTable(frame.colorTab, frame.colorTab.length / 3); // palette given. map only
+		}
 		// map image pixels to new palette
-		int k = 0;
-		long mapStartTime = System.currentTimeMillis();
+		long mapStartNanos = System.nanoTime();
 
+		frame.indexedPixels = bufferPool.obtainBytes(pixelCount);
+		quantizer.map(pixels, pixelCount, mapQuality, frame.indexedPixels, frame.usedEntry);
+		if (frame.maxColors < MAX_COLORS) {
+			limitColors(frame, pixelCount);
+		}
 
-		MapResult mapResult = nativeNeuQuant.map(pixels, mapQuality);
-		indexedPixels = mapResult.indexedPixels;
-		usedEntry = mapResult.usedEntry;
+		if (frame.transparentPixels != null) {
+			// unchanged pixels show the previous frame through the reserved transparent index, alpha 0 ones the background
+			byte[] indexedPixels = frame.indexedPixels;
+			boolean[] transparentPixels = frame.transparentPixels;
+			for (int i = 0; i < pixelCount; ++i) {
+				if (transparentPixels[i]) {
+					indexedPixels[i] = (byte) TRANSPARENT_INDEX;
+				}
+			}
+			bufferPool.recycle(transparentPixels);
+			frame.transparentPixels = null;
+			frame.usedEntry[TRANSPARENT_INDEX] = true;
+			frame.hasTransparentPixels = true;
+			frame.transIndex = TRANSPARENT_INDEX;
+		}
 
-		MeiLog.d("mapping Time : " + (System.currentTimeMillis() - mapStartTime));
-		pixels = null;
-		colorDepth = 8;
-		palSize = 7;
+		frame.metrics.add(EncoderMetrics.Stage.MAP, System.nanoTime() - mapStartNanos);
+		bufferPool.recycle(pixels);
+		frame.pixels = null;
+		frame.colorDepth = 8;
+		frame.palSize = 7;
 		// get closest match to transparent color if specified
-		if (transparent != null) {
-			transIndex = findClosest(transparent);
+		if (frame.transparent != null) {
+			frame.transIndex = findClosest(frame, frame.transparent);
+		}
+
+		// only tables written for this frame alone. the global color table may serve later frames
+		if (frame.localPalette && (frame.sharedPalette == null || !frame.sharedPalette.global)) {
+			shrinkColorTable(frame, pixelCount, learned && frame.sharedPalette == null);
+		}
+	}
+
+	/**
+	 * Keeps the maxColors most used palette entries of the frame, and maps the pixels of the others
+	 * to the closest color kept
+	 */
+	private void limitColors(EncodingFrame frame, int pixelCount) {
+		byte[] indexedPixels = frame.indexedPixels;
+		// pooled, since this runs for every frame under a size budget
+		int[] counts = bufferPool.obtainInts(MAX_COLORS);
+		boolean[] kept = bufferPool.obtainBooleans(MAX_COLORS);
+		byte[] newIndexes = bufferPool.obtainBytes(MAX_COLORS);
+		try {
+			Arrays.fill(counts, 0, MAX_COLORS, 0);
+			Arrays.fill(kept, 0, MAX_COLORS, false);
+			for (int i = 0; i < pixelCount; ++i) {
+				counts[indexedPixels[i] & 0xff]++;
+			}
+
+			for (int n = 0; n < frame.maxColors; ++n) {
+				int most = -1;
+				for (int i = 0; i < MAX_COLORS; ++i) {
+					if (!kept[i] && counts[i] > 0 && (most < 0 || counts[i] > counts[most])) {
+						most = i;
+					}
+				}
+				if (most < 0) {
+					return; // the frame uses fewer colors
+				}
+				kept[most] = true;
+			}
+
+			byte[] colorTab = frame.colorTab;
+			for (int i = 0; i < MAX_COLORS; ++i) {
+				if (counts[i] == 0 || kept[i]) {
+					newIndexes[i] = (byte) i;
+					continue;
+				}
+
+				int closest = 0;
+				int dmin = Integer.MAX_VALUE;
+				for (int j = 0; j < MAX_COLORS; ++j) {
+					if (!kept[j]) continue;
+
+					int dr = (colorTab[i * 3] & 0xff) - (colorTab[j * 3] & 0xff);
+					int dg = (colorTab[i * 3 + 1] & 0xff) - (colorTab[j * 3 + 1] & 0xff);
+					int db = (colorTab[i * 3 + 2] & 0xff) - (colorTab[j * 3 + 2] & 0xff);
+					int d = dr * dr + dg * dg + db * db;
+					if (d < dmin) {
+						dmin = d;
+						closest = j;
+					}
+				}
+				newIndexes[i] = (byte) closest;
+				frame.usedEntry[i] = false;
+			}
+
+			for (int i = 0; i < pixelCount; ++i) {
+				indexedPixels[i] = newIndexes[indexedPixels[i] & 0xff];
+			}
+		} finally {
+			bufferPool.recycle(counts);
+			bufferPool.recycle(kept);
+			bufferPool.recycle(newIndexes);
+		}
+	}
+
+	/**
+	 * Drops the palette entries the frame does not use and renumbers its pixels, so that the color table
+	 * takes the smallest power of two and LZW starts with the matching code size.
+	 * A color table of the frame alone is compacted in place, and only its first entries are written.
+	 */
+	private void shrinkColorTable(EncodingFrame frame, int pixelCount, boolean ownColorTab) {
+		boolean[] usedEntry = frame.usedEntry;
+		int usedCount = 0;
+		for (int i = 0; i < usedEntry.length; ++i) {
+			if (usedEntry[i]) ++usedCount;
+		}
+
+		int depth = 1; // a color table has 2 entries at least
+		while ((1 << depth) < usedCount) {
+			++depth;
+		}
+		if (depth >= frame.colorDepth) {
+			return;
+		}
+
+		byte[] newIndexes = bufferPool.obtainBytes(MAX_COLORS);
+		Arrays.fill(newIndexes, 0, MAX_COLORS, (byte) 0);
+		// moving entries to lower indexes only, the table of the frame can be compacted in place
+		byte[] colorTab = ownColorTab ? frame.colorTab : new byte[3 << depth]; // a shared palette stays as it is
+		int colorCount = 0;
+		for (int i = 0; i < usedEntry.length; ++i) {
+			if (!usedEntry[i]) continue;
+
+			newIndexes[i] = (byte) colorCount;
+			System.arraycopy(frame.colorTab, i * 3, colorTab, colorCount * 3, 3);
+			usedEntry[i] = false;
+			++colorCount;
+		}
+		Arrays.fill(usedEntry, 0, colorCount, true);
+		Arrays.fill(colorTab, colorCount * 3, colorTab.length, (byte) 0);
+
+		byte[] indexedPixels = frame.indexedPixels;
+		for (int i = 0; i < pixelCount; ++i) {
+			indexedPixels[i] = newIndexes[indexedPixels[i] & 0xff];
+		}
+		frame.transIndex = newIndexes[frame.transIndex] & 0xff;
+		bufferPool.recycle(newIndexes);
+		frame.colorTab = colorTab;
+		frame.colorDepth = depth;
+		frame.palSize = depth - 1;
+	}
+
+	/**
+	 * Frees TRANSPARENT_INDEX by moving its color over the color which has the closest other color,
+	 * the one the palette misses the least.
+	 */
+	private static void reserveTransparentIndex(byte[] colorTab) {
+		int colorCount = colorTab.length / 3;
+		int dropped = TRANSPARENT_INDEX;
+		int dmin = Integer.MAX_VALUE;
+		for (int i = 0; i < colorCount; ++i) {
+			for (int j = i + 1; j < colorCount; ++j) {
+				int dr = (colorTab[i * 3] & 0xff) - (colorTab[j * 3] & 0xff);
+				int dg = (colorTab[i * 3 + 1] & 0xff) - (colorTab[j * 3 + 1] & 0xff);
+				int db = (colorTab[i * 3 + 2] & 0xff) - (colorTab[j * 3 + 2] & 0xff);
+				int d = dr * dr + dg * dg + db * db;
+				if (d < dmin) {
+					dmin = d;
+					dropped = j;
+				}
+			}
 		}
+
+		int t = TRANSPARENT_INDEX * 3;
+		colorTab[dropped * 3] = colorTab[t];
+		colorTab[dropped * 3 + 1] = colorTab[t + 1];
+		colorTab[dropped * 3 + 2] = colorTab[t + 2];
+		colorTab[t] = colorTab[t + 1] = colorTab[t + 2] = 0;
 	}
 
 	/**
 	 * Returns index of palette color closest to c
 	 */
-	protected int findClosest(int color) {
+	protected int findClosest(EncodingFrame frame, int color) {
+		byte[] colorTab = frame.colorTab;
+		boolean[] usedEntry = frame.usedEntry;
 		if (colorTab == null)
 			return -1;
-		int r = Color.red(color);
-		int g = Color.green(color);
-		int b = Color.blue(color);
+		int r = (color >> 16) & 0xff;
+		int g = (color >> 8) & 0xff;
+		int b = color & 0xff;
 		int minpos = 0;
 		int dmin = 256 * 256 * 256;
 		int len = colorTab.length;
@@ -421,64 +1639,115 @@ public class AnimatedGifEncoder {
 	}
 
 	/**
-	 * Extracts image pixels into byte array "pixels"
+	 * Extracts ARGB image pixels of the frame size into a pooled array, with a stride of the frame width.
+	 * An image of another size is cropped or padded with transparent pixels.
 	 */
-	private void getImagePixels() {
-		int w = image.getWidth();
-		int h = image.getHeight();
+	private int[] getImagePixels() {
+		int w = Math.min(image.getWidth(), width);
+		int h = Math.min(image.getHeight(), height);
 
+		int[] pixelsInt = bufferPool.obtainInts(width * height);
 		if ((w != width) || (h != height)) {
-			// create new image with right size/format
-			Bitmap temp = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-			Canvas canvas = new Canvas(temp);
-			canvas.drawBitmap(temp, 0, 0, null);
-			image = temp;
+			Arrays.fill(pixelsInt, 0, width * height, TRANSPARENT_COLOR);
+		}
+		image.getPixels(pixelsInt, 0, width, 0, 0, w, h);
+		return pixelsInt;
+	}
+
+	/**
+	 * Converts raw pixels to ARGB pixels of the destination size, cropped or padded with transparent pixels.
+	 * Reads intPixels when given, bytePixels otherwise. stride is in ints or bytes accordingly.
+	 */
+	static void copyPixels(int[] intPixels, ByteBuffer bytePixels, int offset, int stride, int imageWidth, int imageHeight,
+						   ChannelOrder channelOrder, int[] dst, int dstWidth, int dstHeight) {
+		int cols = Math.min(imageWidth, dstWidth);
+		int rows = Math.min(imageHeight, dstHeight);
+		if (cols != dstWidth || rows != dstHeight) {
+			Arrays.fill(dst, 0, dstWidth * dstHeight, TRANSPARENT_COLOR);
+		}
+
+		boolean rgba = channelOrder == ChannelOrder.RGBA;
+		for (int y = 0; y < rows; ++y) {
+			int d = y * dstWidth;
+			int s = offset + y * stride;
+			for (int end = d + cols; d < end; ++d) {
+				int pixel;
+				if (intPixels != null) {
+					pixel = intPixels[s++];
+				} else {
+					pixel = ((bytePixels.get(s) & 0xff) << 24) | ((bytePixels.get(s + 1) & 0xff) << 16)
+							| ((bytePixels.get(s + 2) & 0xff) << 8) | (bytePixels.get(s + 3) & 0xff);
+					s += 4;
+				}
+				dst[d] = rgba ? (pixel >>> 8) | (pixel << 24) : pixel;
+			}
+		}
+	}
+
+	/**
+	 * Shrinks ARGB pixels by averaging the source pixels covered by each destination pixel
+	 */
+	private static void scalePixels(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight) {
+		for (int dy = 0; dy < dstHeight; ++dy) {
+			int top = dy * srcHeight / dstHeight;
+			int bottom = Math.max(top + 1, (dy + 1) * srcHeight / dstHeight);
+			for (int dx = 0; dx < dstWidth; ++dx) {
+				int left = dx * srcWidth / dstWidth;
+				int right = Math.max(left + 1, (dx + 1) * srcWidth / dstWidth);
+				int a = 0, r = 0, g = 0, b = 0;
+				for (int sy = top; sy < bottom; ++sy) {
+					for (int i = sy * srcWidth + left, end = sy * srcWidth + right; i < end; ++i) {
+						int pixel = src[i];
+						a += pixel >>> 24;
+						r += (pixel >> 16) & 0xff;
+						g += (pixel >> 8) & 0xff;
+						b += pixel & 0xff;
+					}
+				}
+				int count = (bottom - top) * (right - left);
+				dst[dy * dstWidth + dx] = ((a / count) << 24) | ((r / count) << 16) | ((g / count) << 8) | (b / count);
+			}
 		}
-		int[] pixelsInt = new int[w * h];
-		image.getPixels(pixelsInt, 0, w, 0, 0, w, h);
+	}
 
+	/**
+	 * Extracts the frame area of the ARGB pixels into byte array "pixels" of the frame
+	 */
+	private void getImagePixels(EncodingFrame frame, int[] pixelsInt, int stride, int left, int top, int cols, int rows) {
 		// The algorithm requires 3 bytes per pixel as RGB.
-		pixels = new byte[pixelsInt.length * 3];
+		byte[] pixels = bufferPool.obtainBytes(cols * rows * 3);
 
 		int pixelsIndex = 0;
-		hasTransparentPixels = false;
-		int totalTransparentPixels = 0;
-		for (final int pixel : pixelsInt) {
-			if (pixel == Color.TRANSPARENT) {
-				totalTransparentPixels++;
+		frame.hasTransparentPixels = false;
+		for (int y = 0; y < rows; ++y) {
+			for (int i = (top + y) * stride + left, end = i + cols; i < end; ++i) {
+				final int pixel = pixelsInt[i];
+				pixels[pixelsIndex++] = (byte) (pixel & 0xFF);
+				pixels[pixelsIndex++] = (byte) ((pixel >> 8) & 0xFF);
+				pixels[pixelsIndex++] = (byte) ((pixel >> 16) & 0xFF);
 			}
-			pixels[pixelsIndex++] = (byte) (pixel & 0xFF);
-			pixels[pixelsIndex++] = (byte) ((pixel >> 8) & 0xFF);
-			pixels[pixelsIndex++] = (byte) ((pixel >> 16) & 0xFF);
 		}
 
-		double transparentPercentage = 100 * totalTransparentPixels / (double) pixelsInt.length;
-		// Assume images with greater where more than n% of the pixels are transparent actually have
-		// transparency. See issue #214.
-//		hasTransparentPixels = transparentPercentage > MIN_TRANSPARENT_PERCENTAGE;
-		if (Log.isLoggable(TAG, Log.DEBUG)) {
-			Log.d(TAG, "got pixels for frame with " + transparentPercentage
-					+ "% transparent pixels");
-		}
+		frame.pixels = pixels;
 	}
 
 	/**
 	 * Writes Graphic Control Extension
 	 */
-	private void writeGraphicCtrlExt() throws IOException {
+	private void writeGraphicCtrlExt(EncodingFrame frame) throws IOException {
 		out.write(0x21); // extension introducer
 		out.write(0xf9); // GCE label
 		out.write(4); // data block size
 		int transp, disp;
-		if (transparent == null && !hasTransparentPixels) {
+		if (frame.transparent == null && !frame.hasTransparentPixels) {
 			transp = 0;
 			disp = 0; // dispose = no action
 		} else {
 			transp = 1;
 			disp = 2; // force clear if using transparent color
 		}
-		if (dispose >= 0) {
-			disp = dispose & 7; // user override
+		if (frame.dispose >= 0) {
+			disp = frame.dispose & 7; // user override
 		}
 		disp <<= 2;
 
@@ -488,23 +1757,23 @@ public class AnimatedGifEncoder {
 				0 | // 7 user input - 0 = none
 				transp); // 8 transparency flag
 
-		writeShort(delay); // delay x 1/100 sec
-		out.write(transIndex); // transparent color index
+		writeShort(frame.delay); // delay x 1/100 sec
+		out.write(frame.transIndex); // transparent color index
 		out.write(0); // block terminator
 	}
 
 	/**
 	 * Writes Image Descriptor
 	 */
-	private void writeImageDesc(int x, int y) throws IOException {
+	private void writeImageDesc(EncodingFrame frame) throws IOException {
 		out.write(0x2c); // image separator
-		writeShort(x); // image position
-		writeShort(y);
-		writeShort(width); // image size
-		writeShort(height);
+		writeShort(frame.x); // image position
+		writeShort(frame.y);
+		writeShort(frame.width); // image size
+		writeShort(frame.height);
 		// packed fields
-		if (firstFrame) {
-			// no LCT - GCT is used for first (or only) frame
+		if (firstFrame || !frame.localPalette) {
+			// no LCT - GCT is used for first (or only) frame, or for every frame in global palette mode
 			out.write(0);
 		} else {
 			// specify normal LCT
@@ -512,22 +1781,22 @@ public class AnimatedGifEncoder {
 					0 | // 2 interlace - 0=no
 					0 | // 3 sorted - 0=no
 					0 | // 4-5 reserved
-					palSize); // 6-8 size of color table
+					frame.palSize); // 6-8 size of color table
 		}
 	}
 
 	/**
 	 * Writes Logical Screen Descriptor
 	 */
-	private void writeLSD() throws IOException {
+	private void writeLSD(EncodingFrame frame) throws IOException {
 		// logical screen size
-		writeShort(width);
-		writeShort(height);
+		writeShort(frame.width);
+		writeShort(frame.height);
 		// packed fields
 		out.write((0x80 | // 1 : global color table flag = 1 (gct used)
 				0x70 | // 2-4 : color resolution = 7
 				0x00 | // 5 : gct sort flag = 0
-				palSize)); // 6-8 : gct size
+				frame.palSize)); // 6-8 : gct size
 
 		out.write(0); // background color index
 		out.write(0); // pixel aspect ratio - assume 1:1
@@ -550,10 +1819,12 @@ public class AnimatedGifEncoder {
 	/**
 	 * Writes color table
 	 */
-	private void writePalette() throws IOException {
-		out.write(colorTab, 0, colorTab.length);
-		int n = (3 * 256) - colorTab.length;
-		for (int i = 0; i < n; i++) {
+	private void writePalette(EncodingFrame frame) throws IOException {
+		byte[] colorTab = frame.colorTab;
+		int size = 3 << (frame.palSize + 1); // a shrunk table may be longer
+		int length = Math.min(colorTab.length, size);
+		out.write(colorTab, 0, length);
+		for (int i = length; i < size; i++) {
 			out.write(0);
 		}
 	}
@@ -561,8 +1832,36 @@ public class AnimatedGifEncoder {
 	/**
 	 * Encodes and writes pixel data
 	 */
-	private void writePixels() throws IOException {
-		NativeLZWEncoder.encode(out, indexedPixels, width, height, colorDepth);
+	private void writePixels(EncodingFrame frame) throws IOException {
+		if (frame.encodedPixels != null) {
+			out.write(frame.encodedPixels, 0, frame.encodedLength); // already compressed on a worker thread
+			bufferPool.recycle(frame.encodedPixels);
+			frame.encodedPixels = null;
+			return;
+		}
+
+		long startNanos = System.nanoTime();
+		if (nativeLZW) {
+			if (lzwEncoder == null) {
+				lzwEncoder = new NativeLZWEncoder();
+			}
+			lzwEncoder.write(out, frame.indexedPixels, frame.width, frame.height, frame.colorDepth,
+					frame.colorTab, lossyLevel, getLossyTransIndex(frame));
+		} else {
+			if (javaLZWEncoder == null) {
+				javaLZWEncoder = new LZWEncoder();
+			}
+			javaLZWEncoder.encode(out, frame.indexedPixels, frame.width, frame.height, frame.colorDepth,
+					frame.colorTab, lossyLevel, getLossyTransIndex(frame));
+		}
+		bufferPool.recycle(frame.indexedPixels);
+		frame.indexedPixels = null;
+		frame.metrics.add(EncoderMetrics.Stage.LZW, System.nanoTime() - startNanos);
+	}
+
+	// the index lossy LZW must keep, -1 when the frame has no transparency
+	private int getLossyTransIndex(EncodingFrame frame) {
+		return (frame.transparent != null || frame.hasTransparentPixels) ? frame.transIndex : -1;
 	}
 
 	/**
@@ -581,4 +1880,40 @@ public class AnimatedGifEncoder {
 			out.write((byte) s.charAt(i));
 		}
 	}
+
+	/**
+	 * Order of the channels of a raw pixel, from the most significant byte of an int
+	 * or from the first byte in a ByteBuffer.
+	 */
+	public enum ChannelOrder {
+		ARGB,	// android Color and Bitmap.getPixels
+		RGBA	// GL_RGBA and RGBA_8888 bytes
+	}
+
+	/**
+	 * Counts the bytes written for the size budget
+	 */
+	private static class ByteCountingOutputStream extends FilterOutputStream {
+		private long count;
+
+		ByteCountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			++count;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
 }
@@ -0,0 +1,56 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import android.graphics.Bitmap;
+
+import java.io.OutputStream;
+
+/**
+ * Writes an animation frame by frame, as GIF by {@link AnimatedGifEncoder} or as animated WebP.
+ * Frames are added between start and finish on one thread.
+ */
+public interface AnimatedImageEncoder {
+	/**
+	 * Sets the delay of the frames added after, in milliseconds
+	 */
+	void setDelay(int ms);
+
+	/**
+	 * Sets the number of times the animation repeats. 0 = forever, -1 = plays once. Must be invoked before the first frame.
+	 */
+	void setRepeat(int iter);
+
+	/**
+	 * Sets the number of frames which will be added, for the encoders sharing a budget between them
+	 */
+	void setExpectedFrameCount(int frameCount);
+
+	boolean start(OutputStream os);
+
+	boolean addFrame(Bitmap im);
+
+	/**
+	 * Adds a frame from raw pixels. See {@link AnimatedGifEncoder#addFrame(int[], int, int, int, int, AnimatedGifEncoder.ChannelOrder, int, int)}
+	 */
+	boolean addFrame(int[] pixels, int offset, int stride, int imageWidth, int imageHeight, AnimatedGifEncoder.ChannelOrder channelOrder, int x, int y);
+
+	/**
+	 * Writes the pending frames and the end of the file. The stream is not closed.
+	 */
+	boolean finish();
+}
@@ -0,0 +1,157 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import java.util.Arrays;
+
+/**
+ * Timings of all the frames written by {@link AnimatedGifEncoder} between start and finish,
+ * per stage with percentiles, and the pixel buffers it allocated.
+ */
+public class EncoderMetrics {
+	private static final int INITIAL_CAPACITY = 64;
+
+	public enum Stage {
+		EXTRACT,	// reading and converting the pixels, scaling, duplicate and delta checks. on the calling thread
+		LEARN,	// learning the color table. 0 when the frame reuses one
+		MAP,	// mapping the pixels to the color table
+		LZW,	// compressing the indexed pixels, and writing them while compressing when streaming
+		WRITE	// writing the extensions, color table and compressed pixels
+	}
+
+	private final long startNanos = System.nanoTime();
+	private long durationNanos;
+	private int frameCount;
+	private long bytesWritten;
+	private long[][] frameNanos = new long[Stage.values().length + 1][INITIAL_CAPACITY]; // the last row is the frame total
+	private long[][] sortedNanos; // at finish
+	private long allocatedBuffers;
+	private long allocatedBytes;
+	private long reusedBuffers;
+
+	EncoderMetrics() {
+	}
+
+	synchronized void record(FrameMetrics frame) {
+		if (frameCount == frameNanos[0].length) {
+			for (int i = 0; i < frameNanos.length; ++i) {
+				frameNanos[i] = Arrays.copyOf(frameNanos[i], frameCount * 2);
+			}
+		}
+		for (Stage stage : Stage.values()) {
+			frameNanos[stage.ordinal()][frameCount] = frame.getNanos(stage);
+		}
+		frameNanos[frameNanos.length - 1][frameCount] = frame.getTotalNanos();
+		bytesWritten += frame.getBytesWritten();
+		++frameCount;
+	}
+
+	synchronized void finish(long bytesWritten, long allocatedBuffers, long allocatedBytes, long reusedBuffers) {
+		this.durationNanos = System.nanoTime() - startNanos;
+		this.bytesWritten = bytesWritten;
+		this.allocatedBuffers = allocatedBuffers;
+		this.allocatedBytes = allocatedBytes;
+		this.reusedBuffers = reusedBuffers;
+
+		sortedNanos = new long[frameNanos.length][];
+		for (int i = 0; i < frameNanos.length; ++i) {
+			sortedNanos[i] = Arrays.copyOf(frameNanos[i], frameCount);
+			Arrays.sort(sortedNanos[i]);
+		}
+	}
+
+	public synchronized int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return bytes of the whole file, header and trailer included once finished
+	 */
+	public synchronized long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * @return nanoseconds from start to finish
+	 */
+	public synchronized long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * @return nanoseconds spent in the stage over all frames
+	 */
+	public synchronized long getTotalNanos(Stage stage) {
+		return sum(frameNanos[stage.ordinal()]);
+	}
+
+	/**
+	 * Nanoseconds of the stage which percent of the frames did not exceed. Available after finish.
+	 *
+	 * @param stage   the stage, or null for the whole frame
+	 * @param percent 0-100. e.g. 50 for the median, 100 for the slowest frame
+	 */
+	public synchronized long getPercentileNanos(Stage stage, double percent) {
+		if (sortedNanos == null || frameCount == 0) {
+			return 0;
+		}
+
+		long[] sorted = sortedNanos[stage == null ? sortedNanos.length - 1 : stage.ordinal()];
+		int rank = (int) Math.ceil(Math.max(0, Math.min(100, percent)) / 100 * frameCount) - 1; // nearest rank
+		return sorted[Math.max(0, rank)];
+	}
+
+	/**
+	 * @return pixel buffers allocated because none could be reused
+	 */
+	public synchronized long getAllocatedBuffers() {
+		return allocatedBuffers;
+	}
+
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return pixel buffers taken from the pool instead of allocated
+	 */
+	public synchronized long getReusedBuffers() {
+		return reusedBuffers;
+	}
+
+	private long sum(long[] values) {
+		long sum = 0;
+		for (int i = 0; i < frameCount; ++i) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder("frames : ").append(frameCount).append(", bytes : ").append(bytesWritten)
+				.append(", ms : ").append(durationNanos / 1000000);
+		for (Stage stage : Stage.values()) {
+			builder.append(", ").append(stage.name().toLowerCase()).append(" p50/p90/max us : ")
+					.append(getPercentileNanos(stage, 50) / 1000).append('/')
+					.append(getPercentileNanos(stage, 90) / 1000).append('/')
+					.append(getPercentileNanos(stage, 100) / 1000);
+		}
+		return builder.append(", allocated buffers : ").append(allocatedBuffers).append(" (").append(allocatedBytes).append(" bytes)")
+				.append(", reused : ").append(reusedBuffers).toString();
+	}
+}
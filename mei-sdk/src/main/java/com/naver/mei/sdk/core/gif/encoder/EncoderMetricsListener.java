@@ -0,0 +1,33 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+/**
+ * Receives the timings of {@link AnimatedGifEncoder}. Called on the thread which writes the frames,
+ * which may be a worker thread in parallel encoding, so implementations must be quick.
+ */
+public interface EncoderMetricsListener {
+	/**
+	 * A frame was written
+	 */
+	void onFrameMetrics(FrameMetrics metrics);
+
+	/**
+	 * Summary of all the frames, at finish
+	 */
+	void onEncoderMetrics(EncoderMetrics metrics);
+}
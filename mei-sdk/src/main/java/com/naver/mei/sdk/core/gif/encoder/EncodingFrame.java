@@ -0,0 +1,71 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+/**
+ * Per-frame state of {@link AnimatedGifEncoder}.
+ * Everything needed to quantize, compress and write one frame, so that frames can be processed on worker threads.
+ */
+class EncodingFrame {
+	final int x;  // image position
+	final int y;
+	final int width;   // image size
+	final int height;
+	int delay;   // frame delay (hundredths). extended by the duplicates of the frame
+	final int dispose; // disposal code (-1 = use default)
+	final Integer transparent; // transparent color if given
+
+	int sample; // sample factor of the quantizer
+	int maxColors = 256; // most used palette entries kept, for the size budget
+
+	byte[] pixels; // BGR byte array from frame
+	boolean hasTransparentPixels;
+
+	byte[] indexedPixels; // converted frame indexed to palette
+	byte[] colorTab; // RGB palette. learned from the pixels when null
+	boolean localPalette = true; // false when the frame is mapped to the global color table
+	boolean reserveTransparentIndex; // keep TRANSPARENT_INDEX out of the palette for transparent pixels
+	boolean[] transparentPixels; // pixels equal to the previous frame, or of alpha 0. written as TRANSPARENT_INDEX
+	SharedPalette sharedPalette; // palette learned by this frame (owner) or reused from a previous frame
+	boolean paletteOwner;
+	boolean[] usedEntry = new boolean[256]; // active palette entries
+	int colorDepth; // number of bit planes
+	int palSize = 7; // color table size (bits-1)
+	int transIndex; // transparent index in color table
+
+	byte[] encodedPixels; // LZW compressed image data, when compressed ahead of writing. pooled, may be longer
+	int encodedLength;
+
+	final FrameMetrics metrics = new FrameMetrics(); // time spent in each stage
+
+	EncodingFrame(int x, int y, int width, int height, int delay, int dispose, Integer transparent) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.delay = delay;
+		this.dispose = dispose;
+		this.transparent = transparent;
+	}
+
+	/**
+	 * Approximate heap size of the frame while it is in flight. (BGR pixels + indexed pixels)
+	 */
+	long getByteSize() {
+		return (long) width * height * 4;
+	}
+}
@@ -44,6 +44,27 @@ abstract public class EncodingListener {
 	public void onFrameProgress(int current, int total) {
 		// do nothing
 	}
+
+	/**
+	 * knobs chosen for the target file size. called before onSuccess, only with a target file size
+	 */
+	public void onFileSizeBudget(FileSizeBudget fileSizeBudget) {
+		// do nothing
+	}
+
+	/**
+	 * timings of each stage over all frames, with percentiles. called before onSuccess
+	 */
+	public void onEncoderMetrics(EncoderMetrics metrics) {
+		// do nothing
+	}
+
+	/**
+	 * queue depth, dropped frames and the other flow control state. for queueing encoding, after each frame
+	 */
+	public void onQueueMetrics(FrameQueueMetrics metrics) {
+		// do nothing
+	}
 }
 
 
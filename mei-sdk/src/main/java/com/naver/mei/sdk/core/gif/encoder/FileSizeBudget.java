@@ -0,0 +1,184 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.naver.mei.sdk.core.gif.encoder;
+
+/**
+ * Knobs of {@link AnimatedGifEncoder} to land under a file size in a single pass.
+ * The first frame is encoded once as a probe, and the scale, colors and frame stride are chosen
+ * from its size. While the frames are written, colors and frame stride follow the bytes actually written.
+ * Without an expected frame count, as in queuing encoding and screen recording, the budget assumes
+ * ASSUMED_FRAME_COUNT frames, and twice the frames seen once more have come, so the target may be missed.
+ * Holds the chosen knobs after finish.
+ */
+public class FileSizeBudget {
+	private static final float[] SCALES = {1f, 0.75f, 0.5f, 0.35f, 0.25f};
+	private static final int MAX_COLORS = 256;
+	private static final int MIN_COLORS = 16;
+	private static final int MAX_FRAME_STRIDE = 4;
+	private static final int MAX_SAMPLE = 30;
+	private static final int FRAME_HEADER_BYTES = 19; // graphic control extension + image descriptor
+	private static final float TARGET_RATIO = 0.9f; // aim below the target. the estimate is rough
+	private static final float RELAX_RATIO = 0.7f; // give colors back below this share of the target
+	private static final int ADJUST_INTERVAL = 3; // written frames between adjustments, for the average to follow
+	static final int ASSUMED_FRAME_COUNT = 60; // without an expected frame count. 6 seconds at 10 fps
+
+	private final long targetBytes;
+	private final int frameCount; // 0 when unknown
+	private final int baseSample;
+
+	private float scale = 1f;
+	private int maxColors = MAX_COLORS;
+	private int frameStride = 1;
+	private int skippedFrameCount;
+	private int writtenFrameCount;
+	private long writtenBytes;
+	private int lastAdjustedFrameCount;
+
+	FileSizeBudget(long targetBytes, int frameCount, int baseSample) {
+		this.targetBytes = targetBytes;
+		this.frameCount = Math.max(0, frameCount);
+		this.baseSample = baseSample;
+	}
+
+	/**
+	 * Chooses the knobs from the LZW data size of the first frame encoded at full size and colors.
+	 * Frame skipping is the last resort. Otherwise the combination using most of the budget wins.
+	 */
+	synchronized void calibrate(long probePixelBytes) {
+		long budget = (long) (targetBytes * TARGET_RATIO);
+		long bestBytes = -1;
+		for (int stride = 1; stride <= MAX_FRAME_STRIDE && bestBytes < 0; ++stride) {
+			for (float candidateScale : SCALES) {
+				for (int colors = MAX_COLORS; colors >= MIN_COLORS; colors /= 2) {
+					long bytes = estimate(probePixelBytes, candidateScale, colors, stride);
+					if (bytes <= budget && bytes > bestBytes) {
+						bestBytes = bytes;
+						scale = candidateScale;
+						maxColors = colors;
+						frameStride = stride;
+					}
+				}
+			}
+		}
+
+		if (bestBytes < 0) {
+			// nothing fits. the smallest knobs
+			scale = SCALES[SCALES.length - 1];
+			maxColors = MIN_COLORS;
+			frameStride = MAX_FRAME_STRIDE;
+		}
+	}
+
+	private long estimate(long probePixelBytes, float scale, int colors, int stride) {
+		double bitsRatio = Integer.numberOfTrailingZeros(colors) / 8.0; // LZW codes shrink with the color bits
+		double frameBytes = probePixelBytes * scale * scale * bitsRatio + colors * 3 + FRAME_HEADER_BYTES;
+		return (long) (frameBytes * ((getExpectedFrameCount() + stride - 1) / stride));
+	}
+
+	/**
+	 * The expected frame count, or else the assumed one, growing with the frames seen
+	 */
+	private int getExpectedFrameCount() {
+		if (frameCount > 0) {
+			return frameCount;
+		}
+		return Math.max(ASSUMED_FRAME_COUNT, (writtenFrameCount + skippedFrameCount) * 2);
+	}
+
+	/**
+	 * Adjusts the colors and frame stride of the following frames to the bytes written so far
+	 */
+	synchronized void onFrameWritten(long totalBytes) {
+		writtenBytes = totalBytes;
+		++writtenFrameCount;
+
+		if (writtenFrameCount - lastAdjustedFrameCount < ADJUST_INTERVAL) {
+			return;
+		}
+
+		int remainingFrames = Math.max(0, (getExpectedFrameCount() - writtenFrameCount - skippedFrameCount) / frameStride);
+		long projected = totalBytes + totalBytes / writtenFrameCount * remainingFrames;
+		if (projected > targetBytes * TARGET_RATIO) {
+			if (maxColors > MIN_COLORS) {
+				maxColors /= 2;
+			} else if (frameStride < MAX_FRAME_STRIDE) {
+				++frameStride;
+			}
+			lastAdjustedFrameCount = writtenFrameCount;
+		} else if (projected < targetBytes * RELAX_RATIO && maxColors < MAX_COLORS) {
+			maxColors *= 2;
+			lastAdjustedFrameCount = writtenFrameCount;
+		}
+	}
+
+	synchronized boolean shouldSkip(int frameIndex) {
+		if (frameIndex % frameStride == 0) {
+			return false;
+		}
+
+		++skippedFrameCount;
+		return true;
+	}
+
+	public long getTargetBytes() {
+		return targetBytes;
+	}
+
+	/**
+	 * @return bytes written so far. the file size after finish, but the trailer
+	 */
+	public synchronized long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	/**
+	 * @return frame size relative to the added images.
+	 */
+	public float getScale() {
+		return scale;
+	}
+
+	/**
+	 * @return maximum colors per frame of the following frames.
+	 */
+	public synchronized int getMaxColors() {
+		return maxColors;
+	}
+
+	/**
+	 * @return quantizer sample factor of the following frames. coarser with fewer colors.
+	 */
+	public synchronized int getSample() {
+		return Math.min(MAX_SAMPLE, Math.max(baseSample, baseSample * MAX_COLORS / maxColors / 4));
+	}
+
+	/**
+	 * @return 1 keeps every frame, n keeps every n-th frame.
+	 */
+	public synchronized int getFrameStride() {
+		return frameStride;
+	}
+
+	public synchronized int getSkippedFrameCount() {
+		return skippedFrameCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "target : " + targetBytes + ", written : " + writtenBytes + ", scale : " + scale + ", max colors : " + maxColors
+				+ ", sample : " + getSample() + ", frame stride : " + frameStride + ", skipped frames : " + skippedFrameCount;
+	}
+}
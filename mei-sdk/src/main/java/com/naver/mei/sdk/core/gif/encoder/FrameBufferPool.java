@@ -0,0 +1,146 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reusable pixel buffers of one {@link AnimatedGifEncoder}, keyed by size.
+ * A buffer may be longer than requested, so users must rely on the frame size instead of the array length.
+ * Thread safe, since worker threads recycle the buffers of the frames they encoded.
+ */
+class FrameBufferPool {
+	private static final int MAX_SIZE_RATIO = 2; // do not hand out buffers more than twice the requested length
+
+	private final Pool<byte[]> bytePool;
+	private final Pool<int[]> intPool;
+	private final Pool<boolean[]> booleanPool;
+	private long allocatedBuffers; // since the last clear, for EncoderMetrics
+	private long allocatedBytes;
+	private long reusedBuffers;
+
+	FrameBufferPool(int maxBuffersPerType) {
+		this.bytePool = new Pool<>(maxBuffersPerType);
+		this.intPool = new Pool<>(maxBuffersPerType);
+		this.booleanPool = new Pool<>(maxBuffersPerType);
+	}
+
+	byte[] obtainBytes(int length) {
+		byte[] buffer = bytePool.obtain(length);
+		return buffer != null ? buffer : allocated(new byte[length], length);
+	}
+
+	int[] obtainInts(int length) {
+		int[] buffer = intPool.obtain(length);
+		return buffer != null ? buffer : allocated(new int[length], length * 4L);
+	}
+
+	boolean[] obtainBooleans(int length) {
+		boolean[] buffer = booleanPool.obtain(length);
+		return buffer != null ? buffer : allocated(new boolean[length], length);
+	}
+
+	void recycle(byte[] buffer) {
+		if (buffer != null) bytePool.recycle(buffer, buffer.length);
+	}
+
+	void recycle(int[] buffer) {
+		if (buffer != null) intPool.recycle(buffer, buffer.length);
+	}
+
+	void recycle(boolean[] buffer) {
+		if (buffer != null) booleanPool.recycle(buffer, buffer.length);
+	}
+
+	synchronized void clear() {
+		bytePool.clear();
+		intPool.clear();
+		booleanPool.clear();
+		allocatedBuffers = 0;
+		allocatedBytes = 0;
+		reusedBuffers = 0;
+	}
+
+	synchronized long getAllocatedBuffers() {
+		return allocatedBuffers;
+	}
+
+	synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	synchronized long getReusedBuffers() {
+		return reusedBuffers;
+	}
+
+	private synchronized <T> T allocated(T buffer, long bytes) {
+		++allocatedBuffers;
+		allocatedBytes += bytes;
+		return buffer;
+	}
+
+	private class Pool<T> {
+		private final TreeMap<Integer, ArrayDeque<T>> buffers = new TreeMap<>();
+		private final int maxBuffers;
+		private int count;
+
+		Pool(int maxBuffers) {
+			this.maxBuffers = maxBuffers;
+		}
+
+		T obtain(int length) {
+			synchronized (FrameBufferPool.this) {
+				Map.Entry<Integer, ArrayDeque<T>> entry = buffers.ceilingEntry(length);
+				if (entry == null || entry.getKey() / MAX_SIZE_RATIO > length) {
+					return null;
+				}
+
+				ArrayDeque<T> sameSize = entry.getValue();
+				T buffer = sameSize.poll();
+				if (sameSize.isEmpty()) {
+					buffers.remove(entry.getKey());
+				}
+				--count;
+				++reusedBuffers;
+				return buffer;
+			}
+		}
+
+		void recycle(T buffer, int length) {
+			synchronized (FrameBufferPool.this) {
+				if (count >= maxBuffers) {
+					return; // let it be collected
+				}
+
+				ArrayDeque<T> sameSize = buffers.get(length);
+				if (sameSize == null) {
+					sameSize = new ArrayDeque<>();
+					buffers.put(length, sameSize);
+				}
+				sameSize.add(buffer);
+				++count;
+			}
+		}
+
+		void clear() {
+			buffers.clear();
+			count = 0;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * LZW encoder and output buffer of one thread compressing frames ahead of writing.
+ * Both are reused for every frame, and the compressed data is copied to a pooled array of the frame,
+ * which the writer recycles, so a frame allocates no result array.
+ * Not thread safe, use one instance per thread.
+ */
+class FrameCompressor {
+	private NativeLZWEncoder nativeEncoder;
+	private LZWEncoder javaEncoder;
+	private final Output output = new Output();
+
+	/**
+	 * Compresses the indexed pixels of the frame into frame.encodedPixels and frame.encodedLength.
+	 */
+	void compress(EncodingFrame frame, boolean nativeLZW, int lossyLevel, int lossyTransIndex,
+	              FrameBufferPool bufferPool) throws IOException {
+		output.reset();
+		if (nativeLZW) {
+			if (nativeEncoder == null) {
+				nativeEncoder = new NativeLZWEncoder();
+			}
+			nativeEncoder.write(output, frame.indexedPixels, frame.width, frame.height, frame.colorDepth,
+					frame.colorTab, lossyLevel, lossyTransIndex);
+		} else {
+			if (javaEncoder == null) {
+				javaEncoder = new LZWEncoder();
+			}
+			javaEncoder.encode(output, frame.indexedPixels, frame.width, frame.height, frame.colorDepth,
+					frame.colorTab, lossyLevel, lossyTransIndex);
+		}
+
+		int length = output.size();
+		frame.encodedPixels = bufferPool.obtainBytes(length);
+		frame.encodedLength = length;
+		System.arraycopy(output.array(), 0, frame.encodedPixels, 0, length);
+	}
+
+	private static class Output extends ByteArrayOutputStream {
+		Output() {
+			super(NativeLZWEncoder.DEFAULT_BUFFER_SIZE);
+		}
+
+		byte[] array() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+/**
+ * Time spent on one frame in each stage of {@link AnimatedGifEncoder}, and the bytes written for it.
+ */
+public class FrameMetrics {
+	private final long[] stageNanos = new long[EncoderMetrics.Stage.values().length];
+	private int frameIndex;
+	private int width;
+	private int height;
+	private long bytesWritten;
+
+	FrameMetrics() {
+	}
+
+	void add(EncoderMetrics.Stage stage, long nanos) {
+		stageNanos[stage.ordinal()] += nanos;
+	}
+
+	void setWritten(int frameIndex, int width, int height, long bytesWritten) {
+		this.frameIndex = frameIndex;
+		this.width = width;
+		this.height = height;
+		this.bytesWritten = bytesWritten;
+	}
+
+	/**
+	 * @return index of the frame in the file
+	 */
+	public int getFrameIndex() {
+		return frameIndex;
+	}
+
+	/**
+	 * @return width of the written image, e.g. the changed rectangle in delta encoding
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return nanoseconds spent on the frame in the stage
+	 */
+	public long getNanos(EncoderMetrics.Stage stage) {
+		return stageNanos[stage.ordinal()];
+	}
+
+	/**
+	 * @return nanoseconds spent on the frame in all stages
+	 */
+	public long getTotalNanos() {
+		long total = 0;
+		for (long nanos : stageNanos) {
+			total += nanos;
+		}
+		return total;
+	}
+
+	/**
+	 * @return bytes written for the frame, with its extensions and color table
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("frame ").append(frameIndex).append(' ').append(width).append('x').append(height);
+		for (EncoderMetrics.Stage stage : EncoderMetrics.Stage.values()) {
+			builder.append(", ").append(stage.name().toLowerCase()).append(" : ").append(stageNanos[stage.ordinal()] / 1000).append("us");
+		}
+		return builder.append(", bytes : ").append(bytesWritten).toString();
+	}
+}
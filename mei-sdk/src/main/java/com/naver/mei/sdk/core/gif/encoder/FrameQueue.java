@@ -0,0 +1,466 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import com.naver.mei.sdk.error.MeiLog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Frames waiting for the queuing encoder, bounded by bytes. Frames are kept in memory as pooled ARGB pixels
+ * up to the memory capacity. Beyond it they are spilled to raw files in the spill directory, if one is given,
+ * up to the disk capacity. When neither has room, the overflow policy applies.
+ * A frame which is dropped gives its delay to the frame before it, so that the recording keeps its duration.
+ * Thread safe for one producer and one consumer thread.
+ */
+class FrameQueue {
+	private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 4;
+	private static final int MAX_FRAME_RATE_DIVIDER = 8;
+
+	private final ArrayDeque<QueuedFrame> frames = new ArrayDeque<>();
+	private final FrameBufferPool bufferPool = new FrameBufferPool(MAX_POOLED_BUFFERS);
+	private final int maxFrames;
+	private final long memoryCapacity;
+	private final long diskCapacity;
+	private final File spillDir;
+	private final GifQueuingEncoderAsyncTask.OverflowPolicy overflowPolicy;
+	private final long blockTimeoutMillis;
+
+	private long memoryBytes;
+	private long diskBytes;
+	private boolean closed;
+	private int carriedDelay; // delay of dropped frames when no frame was waiting to take it
+	private int frameRateDivider = 1; // ADAPTIVE_FPS keeps one of this many frames
+	private int frameRateCounter;
+	private boolean nextFrameWanted; // the producer already asked about the next frame
+
+	// metrics
+	private int queuedFrameCount; // frames taken or to be taken
+	private int peakFrameCount;
+	private int droppedFrameCount;
+	private int spilledFrameCount;
+	private long blockedMillis;
+
+	// one each for the producer and the consumer
+	private final ByteBuffer writeBuffer = ByteBuffer.allocate(SPILL_BUFFER_SIZE);
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(SPILL_BUFFER_SIZE);
+
+	/**
+	 * @param maxFrames          most frames waiting, in memory and on disk
+	 * @param memoryCapacity     bytes of the pixels kept in memory
+	 * @param diskCapacity       bytes of the spilled and given frame files
+	 * @param spillDir           directory for the spilled frames, created when needed. null never spills
+	 * @param overflowPolicy     what to do with a frame which does not fit
+	 * @param blockTimeoutMillis longest wait for room with BLOCK, after which the frame is dropped. 0 waits forever
+	 */
+	FrameQueue(int maxFrames, long memoryCapacity, long diskCapacity, File spillDir,
+			   GifQueuingEncoderAsyncTask.OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+		this.maxFrames = Math.max(1, maxFrames);
+		this.memoryCapacity = memoryCapacity;
+		this.diskCapacity = diskCapacity;
+		this.spillDir = spillDir;
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeoutMillis = blockTimeoutMillis;
+	}
+
+	/**
+	 * @return a pooled array of at least length ints for the pixels passed to put
+	 */
+	int[] obtainPixels(int length) {
+		return bufferPool.obtainInts(length);
+	}
+
+	/**
+	 * Queues ARGB pixels obtained by obtainPixels, with a stride of the width. The queue owns them afterwards.
+	 * May wait for room, or drop the frame, depending on the overflow policy.
+	 *
+	 * @return false if the frame was not queued, because the overflow policy dropped it or the queue is closed
+	 */
+	boolean put(int[] pixels, int width, int height, int delay) throws InterruptedException, IOException {
+		QueuedFrame frame = new QueuedFrame(width, height, delay);
+		frame.pixels = pixels;
+		frame.bytes = (long) width * height * 4;
+
+		synchronized (this) {
+			if (!admit(frame)) {
+				return false;
+			}
+			if (!frame.spilled) {
+				return true; // in memory
+			}
+		}
+
+		// spill out of the lock, so that the consumer keeps taking frames meanwhile
+		try {
+			frame.file = spill(pixels, width * height);
+		} catch (IOException e) {
+			synchronized (this) {
+				diskBytes -= frame.bytes;
+			}
+			bufferPool.recycle(pixels);
+			throw e;
+		}
+		bufferPool.recycle(pixels);
+		frame.pixels = null;
+
+		synchronized (this) {
+			++spilledFrameCount;
+			add(frame);
+		}
+		return true;
+	}
+
+	/**
+	 * Queues an image file, which is counted in the disk capacity and deleted when dropped.
+	 * May wait for room, or drop the frame, depending on the overflow policy.
+	 *
+	 * @return false if the frame was not queued, because the overflow policy dropped it or the queue is closed
+	 */
+	synchronized boolean put(File file, int delay) throws InterruptedException {
+		QueuedFrame frame = new QueuedFrame(0, 0, delay);
+		frame.file = file;
+		frame.bytes = file.length();
+		return admit(frame);
+	}
+
+	/**
+	 * Tells whether the next frame will be queued, so that the producer can skip capturing the frames
+	 * dropped to lower the frame rate. When false, the time of the frame is already given to the previous one.
+	 */
+	synchronized boolean isNextFrameWanted(int delay) {
+		if (closed) {
+			return false;
+		}
+		if (skipForFrameRate()) {
+			extendLastFrame(delay);
+			++droppedFrameCount;
+			return false;
+		}
+
+		nextFrameWanted = true;
+		return true;
+	}
+
+	/**
+	 * Waits for the next frame. The pixels of spilled frames are read back.
+	 *
+	 * @return the next frame, or null when the queue is closed and empty
+	 */
+	QueuedFrame take() throws InterruptedException, IOException {
+		QueuedFrame frame;
+		synchronized (this) {
+			while (frames.isEmpty()) {
+				if (closed) {
+					return null;
+				}
+				wait();
+			}
+
+			frame = frames.poll();
+			if (frame.pixels != null) {
+				memoryBytes -= frame.bytes;
+			} else {
+				diskBytes -= frame.bytes;
+			}
+
+			if (frames.isEmpty() && frameRateDivider > 1) {
+				--frameRateDivider; // the encoder caught up. raise the frame rate again
+			}
+			notifyAll();
+		}
+
+		if (frame.spilled) {
+			frame.pixels = bufferPool.obtainInts(frame.width * frame.height);
+			try {
+				unspill(frame.file, frame.pixels, frame.width * frame.height);
+			} finally {
+				frame.file.delete();
+				frame.file = null;
+			}
+		}
+		return frame;
+	}
+
+	/**
+	 * Returns the pixels of a taken frame to the pool
+	 */
+	void recycle(QueuedFrame frame) {
+		bufferPool.recycle(frame.pixels);
+		frame.pixels = null;
+	}
+
+	/**
+	 * No more frames are accepted. take returns the frames already queued, then null.
+	 */
+	synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Closes the queue and drops the waiting frames, deleting the spilled ones
+	 */
+	synchronized void discard() {
+		closed = true;
+		QueuedFrame frame;
+		while ((frame = frames.poll()) != null) {
+			if (frame.spilled) {
+				frame.file.delete();
+			}
+		}
+		memoryBytes = 0;
+		diskBytes = 0;
+		bufferPool.clear();
+		if (spillDir != null) {
+			spillDir.delete(); // only if empty
+		}
+		notifyAll();
+	}
+
+	synchronized int size() {
+		return frames.size();
+	}
+
+	/**
+	 * @return frames queued so far and not dropped afterwards, i.e. the frames take returns unless the queue is discarded
+	 */
+	synchronized int getQueuedFrameCount() {
+		return queuedFrameCount;
+	}
+
+	synchronized FrameQueueMetrics getMetrics() {
+		return new FrameQueueMetrics(frames.size(), peakFrameCount, memoryBytes + diskBytes, droppedFrameCount, spilledFrameCount,
+				blockedMillis, frameRateDivider);
+	}
+
+	/**
+	 * Finds room for the frame while holding the lock. A frame to spill reserves its disk bytes,
+	 * and is added by the caller once written.
+	 *
+	 * @return false if the frame was dropped or the queue is closed
+	 */
+	private boolean admit(QueuedFrame frame) throws InterruptedException {
+		boolean asked = nextFrameWanted;
+		nextFrameWanted = false;
+		if (!asked && !closed && skipForFrameRate()) {
+			dropNewest(frame);
+			return false;
+		}
+
+		long deadline = blockTimeoutMillis > 0 ? System.currentTimeMillis() + blockTimeoutMillis : 0;
+		while (true) {
+			if (closed) {
+				release(frame);
+				return false;
+			}
+
+			boolean roomForFrame = frames.size() < maxFrames;
+			if (frame.pixels != null) {
+				if (roomForFrame && (memoryBytes + frame.bytes <= memoryCapacity || frames.isEmpty())) {
+					memoryBytes += frame.bytes;
+					add(frame);
+					return true;
+				}
+				if (roomForFrame && spillDir != null && diskBytes + frame.bytes <= diskCapacity) {
+					diskBytes += frame.bytes; // reserved while writing
+					frame.spilled = true;
+					return true;
+				}
+			} else if (roomForFrame && (diskBytes + frame.bytes <= diskCapacity || frames.isEmpty())) {
+				diskBytes += frame.bytes;
+				add(frame);
+				return true;
+			}
+
+			switch (overflowPolicy) {
+				case DROP_OLDEST:
+					if (frames.isEmpty()) {
+						dropNewest(frame); // nothing to make room with
+						return false;
+					}
+					dropOldest();
+					continue;
+				case DROP_NEWEST:
+					dropNewest(frame);
+					return false;
+				case ADAPTIVE_FPS:
+					if (frameRateDivider < MAX_FRAME_RATE_DIVIDER) {
+						++frameRateDivider;
+						frameRateCounter = 0;
+					}
+					dropNewest(frame);
+					return false;
+				default: // BLOCK
+					long startTime = System.currentTimeMillis();
+					if (deadline == 0) {
+						wait();
+					} else if (startTime < deadline) {
+						wait(deadline - startTime);
+					} else {
+						dropNewest(frame);
+						return false;
+					}
+					blockedMillis += System.currentTimeMillis() - startTime;
+			}
+		}
+	}
+
+	// whether ADAPTIVE_FPS drops the next frame to lower the frame rate
+	private boolean skipForFrameRate() {
+		return overflowPolicy == GifQueuingEncoderAsyncTask.OverflowPolicy.ADAPTIVE_FPS
+				&& frameRateDivider > 1 && ++frameRateCounter % frameRateDivider != 0;
+	}
+
+	private void add(QueuedFrame frame) {
+		frame.delay += carriedDelay;
+		carriedDelay = 0;
+		frames.add(frame);
+		++queuedFrameCount;
+		peakFrameCount = Math.max(peakFrameCount, frames.size());
+		notifyAll();
+	}
+
+	/**
+	 * Drops the oldest waiting frame. The frame before it is taken already,
+	 * so the next one takes over its delay and shows up when the dropped one would have.
+	 */
+	private void dropOldest() {
+		QueuedFrame oldest = frames.poll();
+		if (oldest.pixels != null) {
+			memoryBytes -= oldest.bytes;
+		} else {
+			diskBytes -= oldest.bytes;
+		}
+		release(oldest);
+		--queuedFrameCount;
+
+		QueuedFrame next = frames.peek();
+		if (next != null) {
+			next.delay += oldest.delay;
+		} else {
+			carriedDelay += oldest.delay;
+		}
+		++droppedFrameCount;
+		MeiLog.d("frame queue is full. dropped the oldest frame");
+	}
+
+	/**
+	 * Drops a frame which is not queued. The last waiting frame takes over its delay.
+	 */
+	private void dropNewest(QueuedFrame frame) {
+		release(frame);
+		extendLastFrame(frame.delay);
+		++droppedFrameCount;
+		MeiLog.d("dropped a new frame (" + overflowPolicy + ")");
+	}
+
+	private void extendLastFrame(int delay) {
+		QueuedFrame last = frames.peekLast();
+		if (last != null) {
+			last.delay += delay;
+		} else {
+			carriedDelay += delay; // the last frame is encoding already
+		}
+	}
+
+	private void release(QueuedFrame frame) {
+		if (frame.pixels != null) {
+			bufferPool.recycle(frame.pixels);
+			frame.pixels = null;
+		} else if (frame.file != null) {
+			frame.file.delete();
+		}
+	}
+
+	private File spill(int[] pixels, int length) throws IOException {
+		if (!spillDir.exists() && !spillDir.mkdirs() && !spillDir.exists()) {
+			throw new IOException("cannot create " + spillDir);
+		}
+
+		File file = File.createTempFile("frame", ".argb", spillDir);
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try {
+			writeBuffer.clear();
+			IntBuffer ints = writeBuffer.asIntBuffer();
+			for (int offset = 0; offset < length; offset += ints.capacity()) {
+				int count = Math.min(ints.capacity(), length - offset);
+				ints.clear();
+				ints.put(pixels, offset, count);
+				writeBuffer.clear();
+				writeBuffer.limit(count * 4);
+				while (writeBuffer.hasRemaining()) {
+					channel.write(writeBuffer);
+				}
+			}
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		} finally {
+			channel.close();
+		}
+		return file;
+	}
+
+	private void unspill(File file, int[] pixels, int length) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			readBuffer.clear();
+			IntBuffer ints = readBuffer.asIntBuffer();
+			for (int offset = 0; offset < length; offset += ints.capacity()) {
+				int count = Math.min(ints.capacity(), length - offset);
+				readBuffer.clear();
+				readBuffer.limit(count * 4);
+				while (readBuffer.hasRemaining()) {
+					if (channel.read(readBuffer) < 0) {
+						throw new IOException("spilled frame is truncated: " + file);
+					}
+				}
+				ints.clear();
+				ints.get(pixels, offset, count);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * A waiting frame. Either pixels in memory, or a file: spilled pixels or an image given by path.
+	 */
+	static class QueuedFrame {
+		final int width;
+		final int height;
+		int delay; // milliseconds. extended by the frames dropped around it
+		int[] pixels; // ARGB, stride of the width
+		File file;
+		boolean spilled; // file holds the raw pixels
+		long bytes;
+
+		QueuedFrame(int width, int height, int delay) {
+			this.width = width;
+			this.height = height;
+			this.delay = delay;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+/**
+ * Flow control state of the frame queue of {@link GifQueuingEncoderAsyncTask}, taken after each encoded frame.
+ */
+public class FrameQueueMetrics {
+	private final int queueDepth;
+	private final int peakQueueDepth;
+	private final long queuedBytes;
+	private final int droppedFrameCount;
+	private final int spilledFrameCount;
+	private final long blockedMillis;
+	private final int frameRateDivider;
+
+	FrameQueueMetrics(int queueDepth, int peakQueueDepth, long queuedBytes, int droppedFrameCount, int spilledFrameCount,
+					  long blockedMillis, int frameRateDivider) {
+		this.queueDepth = queueDepth;
+		this.peakQueueDepth = peakQueueDepth;
+		this.queuedBytes = queuedBytes;
+		this.droppedFrameCount = droppedFrameCount;
+		this.spilledFrameCount = spilledFrameCount;
+		this.blockedMillis = blockedMillis;
+		this.frameRateDivider = frameRateDivider;
+	}
+
+	/**
+	 * @return frames waiting to be encoded
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * @return most frames waiting at once so far
+	 */
+	public int getPeakQueueDepth() {
+		return peakQueueDepth;
+	}
+
+	/**
+	 * @return bytes of the waiting frames, in memory and on disk
+	 */
+	public long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	/**
+	 * @return frames dropped by the overflow policy. their delay went to the frames around them
+	 */
+	public int getDroppedFrameCount() {
+		return droppedFrameCount;
+	}
+
+	/**
+	 * @return frames written to disk because the memory capacity was full
+	 */
+	public int getSpilledFrameCount() {
+		return spilledFrameCount;
+	}
+
+	/**
+	 * @return milliseconds the producer waited for room
+	 */
+	public long getBlockedMillis() {
+		return blockedMillis;
+	}
+
+	/**
+	 * @return one of this many frames is kept by ADAPTIVE_FPS. 1 = full frame rate
+	 */
+	public int getFrameRateDivider() {
+		return frameRateDivider;
+	}
+
+	@Override
+	public String toString() {
+		return "queue depth : " + queueDepth + ", peak : " + peakQueueDepth + ", bytes : " + queuedBytes + ", dropped : " + droppedFrameCount
+				+ ", spilled : " + spilledFrameCount + ", blocked ms : " + blockedMillis + ", frame rate divider : " + frameRateDivider;
+	}
+}
@@ -34,8 +34,14 @@ public class GifBatchEncoderAsyncTask extends GifEncoderAsyncTask {
 		this.frameIterator = frameIterator;
 	}
 
-	protected boolean encodeFrames(AnimatedGifEncoder encoder) {
+	public GifBatchEncoderAsyncTask(FrameIterator frameIterator, GifEncodingOptions encodingOptions, int delay, OutputStream out, EncodingListener encodingListener) {
+		super(encodingOptions, delay, out, encodingListener);
+		this.frameIterator = frameIterator;
+	}
+
+	protected boolean encodeFrames(AnimatedImageEncoder encoder) {
 		int frameCount = frameIterator.getCount();
+		encoder.setExpectedFrameCount(frameCount);
 
 		publishProgress(0.0);
 
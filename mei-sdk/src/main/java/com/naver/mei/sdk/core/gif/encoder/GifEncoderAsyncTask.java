@@ -31,17 +31,22 @@ import java.io.OutputStream;
  */
 
 public abstract class GifEncoderAsyncTask extends AsyncTask<Void, Double, Boolean> {
-	protected int learnQuality;   // 10-30
-	protected int mapQuality;     // 8-6
+	protected GifEncodingOptions encodingOptions;	// learn quality(10-30), map quality(8-6), parallelism
 	protected int delay;  // global frame delay. milliseconds.
 	protected OutputStream out;
 	protected MeiSDKException exception;
 	protected EncodingListener encodingListener;
+	protected FileSizeBudget fileSizeBudget;
+	protected EncoderMetrics encoderMetrics;
 
 
 	public GifEncoderAsyncTask(int learnQuality, int mapQuality, int delay, OutputStream out, EncodingListener encodingListener) {
-		this.learnQuality = learnQuality;
-		this.mapQuality = mapQuality;
+		this(new GifEncodingOptions(learnQuality, mapQuality), delay, out, encodingListener);
+	}
+
+	public GifEncoderAsyncTask(GifEncodingOptions encodingOptions, int delay, OutputStream out, EncodingListener encodingListener) {
+		// a copy of its own, since the caller may change its options for the next encoding while this one runs
+		this.encodingOptions = new GifEncodingOptions(encodingOptions);
 		this.delay = delay;
 		this.out = out;
 		this.exception = null;
@@ -51,9 +56,7 @@ public abstract class GifEncoderAsyncTask extends AsyncTask<Void, Double, Boolea
 	@Override
 	protected Boolean doInBackground(Void... params) {
 		try {
-			AnimatedGifEncoder encoder = new AnimatedGifEncoder();
-			encoder.setQuality(learnQuality);
-			encoder.setMapQuality(mapQuality);
+			AnimatedImageEncoder encoder = encodingOptions.createEncoder();
 			encoder.setDelay(delay);
 			encoder.setRepeat(0);    // infinity repeat
 			encoder.start(out);
@@ -64,6 +67,10 @@ public abstract class GifEncoderAsyncTask extends AsyncTask<Void, Double, Boolea
 
 			encoder.finish();
 			IOUtils.closeQuietly(out);
+			if (encoder instanceof AnimatedGifEncoder) {
+				fileSizeBudget = ((AnimatedGifEncoder) encoder).getFileSizeBudget();
+				encoderMetrics = ((AnimatedGifEncoder) encoder).getMetrics();
+			}
 
 		} catch (MeiSDKException mex) {
 			this.exception = mex;
@@ -77,7 +84,7 @@ public abstract class GifEncoderAsyncTask extends AsyncTask<Void, Double, Boolea
 		return true;
 	}
 
-	abstract protected boolean encodeFrames(AnimatedGifEncoder encoder);
+	abstract protected boolean encodeFrames(AnimatedImageEncoder encoder);
 
 	@Override
 	protected void onProgressUpdate(Double... values) {
@@ -87,6 +94,12 @@ public abstract class GifEncoderAsyncTask extends AsyncTask<Void, Double, Boolea
 	@Override
 	protected void onPostExecute(Boolean isCompleted) {
 		if (isCompleted) {
+			if (fileSizeBudget != null) {
+				encodingListener.onFileSizeBudget(fileSizeBudget);
+			}
+			if (encoderMetrics != null) {
+				encodingListener.onEncoderMetrics(encoderMetrics);
+			}
 			encodingListener.onSuccess();
 		} else {
 			encodingListener.onError(exception);
@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.naver.mei.sdk.core.gif.encoder;
 
+import com.naver.mei.sdk.core.webp.encoder.AnimatedWebPEncoder;
+
 /**
  * Created by tigerbaby on 2017-04-25.
  */
@@ -23,13 +25,66 @@ package com.naver.mei.sdk.core.gif.encoder;
 public class GifEncodingOptions {
 	private static int DEFAULT_QUALITY = 10;
 	private static int DEFAULT_COLOR_LEVEL = 7;
+	private static int DEFAULT_PARALLELISM = 1;
+	private static long DEFAULT_MAX_BYTES_IN_FLIGHT = AnimatedGifEncoder.DEFAULT_MAX_BYTES_IN_FLIGHT;
+	private static int DEFAULT_GLOBAL_PALETTE_SAMPLE_FRAMES = AnimatedGifEncoder.DEFAULT_GLOBAL_PALETTE_SAMPLE_FRAMES;
+	private static float DEFAULT_PALETTE_DRIFT_THRESHOLD = AnimatedGifEncoder.DEFAULT_PALETTE_DRIFT_THRESHOLD;
+	private static int DEFAULT_WEBP_QUALITY = AnimatedWebPEncoder.DEFAULT_QUALITY;
 
 	private int quality;
 	private int colorLevel;
+	private int parallelism;	// number of encoding threads. 1 = encode on the calling thread
+	private long maxBytesInFlight;	// memory cap of the frames waiting to be written in parallel encoding
+	private PaletteMode paletteMode;
+	private QuantizerType quantizerType;
+	private int globalPaletteSampleFrames;	// leading frames sampled to learn the global palette
+	private float paletteDriftThreshold;	// 0-1. color histogram change that triggers relearning in ADAPTIVE mode
+	private boolean deltaEncoding;	// encode only the changed rectangle of each frame
+	private boolean transparentUnchangedPixels;	// write pixels equal to the previous frame as transparent
+	private boolean coalesceDuplicateFrames;	// extend the delay of the previous frame instead of writing a duplicate
+	private int duplicateFrameTolerance;	// largest channel difference of a pixel between duplicates. 0 = identical
+	private long targetFileSize;	// bytes. 0 = no size budget
+	private int expectedFrameCount;	// frames sharing the size budget. set by the batch encoders
+	private int lossyLevel;	// largest RGB difference of a pixel replaced by lossy LZW. 0 = lossless
+	private EncoderMetricsListener metricsListener;	// per-frame timings of each stage. called on the encoding thread
+	private OutputFormat outputFormat;
+	private int webPQuality;	// 0-100 of the platform WebP encoder, for WEBP output
 
 	public GifEncodingOptions(int quality, int colorLevel) {
 		this.quality = quality;
 		this.colorLevel = colorLevel;
+		this.parallelism = DEFAULT_PARALLELISM;
+		this.maxBytesInFlight = DEFAULT_MAX_BYTES_IN_FLIGHT;
+		this.paletteMode = PaletteMode.LOCAL;
+		this.quantizerType = QuantizerType.NEUQUANT;
+		this.globalPaletteSampleFrames = DEFAULT_GLOBAL_PALETTE_SAMPLE_FRAMES;
+		this.paletteDriftThreshold = DEFAULT_PALETTE_DRIFT_THRESHOLD;
+		this.outputFormat = OutputFormat.GIF;
+		this.webPQuality = DEFAULT_WEBP_QUALITY;
+	}
+
+	/**
+	 * Copies the options, so that later changes to the source do not reach an encoding which already started
+	 */
+	public GifEncodingOptions(GifEncodingOptions source) {
+		this.quality = source.quality;
+		this.colorLevel = source.colorLevel;
+		this.parallelism = source.parallelism;
+		this.maxBytesInFlight = source.maxBytesInFlight;
+		this.paletteMode = source.paletteMode;
+		this.quantizerType = source.quantizerType;
+		this.globalPaletteSampleFrames = source.globalPaletteSampleFrames;
+		this.paletteDriftThreshold = source.paletteDriftThreshold;
+		this.deltaEncoding = source.deltaEncoding;
+		this.transparentUnchangedPixels = source.transparentUnchangedPixels;
+		this.coalesceDuplicateFrames = source.coalesceDuplicateFrames;
+		this.duplicateFrameTolerance = source.duplicateFrameTolerance;
+		this.targetFileSize = source.targetFileSize;
+		this.expectedFrameCount = source.expectedFrameCount;
+		this.lossyLevel = source.lossyLevel;
+		this.metricsListener = source.metricsListener;
+		this.outputFormat = source.outputFormat;
+		this.webPQuality = source.webPQuality;
 	}
 
 	public static GifEncodingOptions asDefault() {
@@ -51,4 +106,165 @@ public class GifEncodingOptions {
 	public void setColorLevel(int colorLevel) {
 		this.colorLevel = colorLevel;
 	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public long getMaxBytesInFlight() {
+		return maxBytesInFlight;
+	}
+
+	public void setMaxBytesInFlight(long maxBytesInFlight) {
+		this.maxBytesInFlight = maxBytesInFlight;
+	}
+
+	public PaletteMode getPaletteMode() {
+		return paletteMode;
+	}
+
+	public void setPaletteMode(PaletteMode paletteMode) {
+		this.paletteMode = paletteMode;
+	}
+
+	public int getGlobalPaletteSampleFrames() {
+		return globalPaletteSampleFrames;
+	}
+
+	public void setGlobalPaletteSampleFrames(int globalPaletteSampleFrames) {
+		this.globalPaletteSampleFrames = globalPaletteSampleFrames;
+	}
+
+	public float getPaletteDriftThreshold() {
+		return paletteDriftThreshold;
+	}
+
+	public void setPaletteDriftThreshold(float paletteDriftThreshold) {
+		this.paletteDriftThreshold = paletteDriftThreshold;
+	}
+
+	public boolean isDeltaEncoding() {
+		return deltaEncoding;
+	}
+
+	public void setDeltaEncoding(boolean deltaEncoding) {
+		this.deltaEncoding = deltaEncoding;
+	}
+
+	public boolean isTransparentUnchangedPixels() {
+		return transparentUnchangedPixels;
+	}
+
+	public void setTransparentUnchangedPixels(boolean transparentUnchangedPixels) {
+		this.transparentUnchangedPixels = transparentUnchangedPixels;
+	}
+
+	public boolean isCoalesceDuplicateFrames() {
+		return coalesceDuplicateFrames;
+	}
+
+	public void setCoalesceDuplicateFrames(boolean coalesceDuplicateFrames) {
+		this.coalesceDuplicateFrames = coalesceDuplicateFrames;
+	}
+
+	public int getDuplicateFrameTolerance() {
+		return duplicateFrameTolerance;
+	}
+
+	public void setDuplicateFrameTolerance(int duplicateFrameTolerance) {
+		this.duplicateFrameTolerance = duplicateFrameTolerance;
+	}
+
+	public long getTargetFileSize() {
+		return targetFileSize;
+	}
+
+	public void setTargetFileSize(long targetFileSize) {
+		this.targetFileSize = targetFileSize;
+	}
+
+	public int getExpectedFrameCount() {
+		return expectedFrameCount;
+	}
+
+	public void setExpectedFrameCount(int expectedFrameCount) {
+		this.expectedFrameCount = expectedFrameCount;
+	}
+
+	public int getLossyLevel() {
+		return lossyLevel;
+	}
+
+	public void setLossyLevel(int lossyLevel) {
+		this.lossyLevel = lossyLevel;
+	}
+
+	public EncoderMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	public void setMetricsListener(EncoderMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	public OutputFormat getOutputFormat() {
+		return outputFormat;
+	}
+
+	public void setOutputFormat(OutputFormat outputFormat) {
+		this.outputFormat = outputFormat;
+	}
+
+	public int getWebPQuality() {
+		return webPQuality;
+	}
+
+	public void setWebPQuality(int webPQuality) {
+		this.webPQuality = webPQuality;
+	}
+
+	/**
+	 * Creates the encoder of the output format, with these options applied
+	 */
+	public AnimatedImageEncoder createEncoder() {
+		if (outputFormat == OutputFormat.WEBP) {
+			AnimatedWebPEncoder encoder = new AnimatedWebPEncoder();
+			encoder.setEncodingOptions(this);
+			return encoder;
+		}
+
+		AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+		encoder.setEncodingOptions(this);
+		return encoder;
+	}
+
+	public QuantizerType getQuantizerType() {
+		return quantizerType;
+	}
+
+	public void setQuantizerType(QuantizerType quantizerType) {
+		this.quantizerType = quantizerType;
+	}
+
+	public enum PaletteMode {
+		LOCAL,	// learn a color table for every frame
+		GLOBAL,	// learn one color table from the leading frames and map every frame to it
+		ADAPTIVE	// reuse the previous color table until the colors of the frames drift away from it
+	}
+
+	public enum QuantizerType {
+		NEUQUANT,	// neural network. best colors, slowest
+		OCTREE,	// octree reduction. fast
+		MEDIAN_CUT,	// median cut of the color histogram. fast
+		WEB_SAFE	// fixed 216 color palette. nothing to learn
+	}
+
+	public enum OutputFormat {
+		GIF,	// 256 colors per frame
+		WEBP	// animated WebP. full colors and alpha, smaller and faster. the GIF options do not apply
+	}
 }
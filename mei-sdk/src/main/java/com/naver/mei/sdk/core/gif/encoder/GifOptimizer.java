@@ -0,0 +1,291 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import android.graphics.Bitmap;
+
+import com.naver.mei.sdk.core.gif.decoder.GifDecoder;
+import com.naver.mei.sdk.error.MeiLog;
+import com.naver.mei.sdk.error.MeiSDKErrorType;
+import com.naver.mei.sdk.error.MeiSDKException;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Re-encodes an existing GIF to make it smaller. Only the changed rectangle of each frame is written,
+ * duplicate frames are merged into the delay of the previous one, the color tables are reused between
+ * frames while the colors stay close, and the frames can be resized.
+ * The frames are decoded and encoded one at a time, so only the current frame is held besides the
+ * compressed input and the encoder's own buffers. With a parallelism of more than 1 in the encoding options,
+ * a few frames per thread are decoded at a time, the frames which do not depend on the previous ones in parallel.
+ * <p>
+ * Transparency is decided from the decoded frames, not from the transparency flags, which optimized GIFs also
+ * use to keep the previous pixels. GIFs which show transparent pixels are not delta encoded: each frame is
+ * written whole over a cleared background (disposal 2) with its transparent pixels in a reserved palette slot,
+ * since a changed rectangle drawn over the previous frame cannot make its pixels transparent again.
+ * Duplicate coalescing, the palette reuse and resizing still apply to them.
+ * <p>
+ * The loop count is kept. A GIF without one still plays once.
+ */
+public class GifOptimizer {
+	private static final int DECODED_FRAMES_PER_THREAD = 2;
+
+	private GifEncodingOptions encodingOptions;
+	private int maxWidth;
+	private int maxHeight;
+	private boolean nativeLZW = true;
+
+	public GifOptimizer() {
+		encodingOptions = GifEncodingOptions.asDefault();
+		encodingOptions.setPaletteMode(GifEncodingOptions.PaletteMode.ADAPTIVE);
+		encodingOptions.setDeltaEncoding(true);
+		encodingOptions.setCoalesceDuplicateFrames(true);
+	}
+
+	/**
+	 * Replaces the encoding options. By default delta encoding, duplicate coalescing and the adaptive
+	 * palette are enabled. Delta encoding does not apply to GIFs which show transparent pixels. The output format is always GIF.
+	 *
+	 * @param encodingOptions GifEncodingOptions
+	 */
+	public GifOptimizer setEncodingOptions(GifEncodingOptions encodingOptions) {
+		if (encodingOptions != null) {
+			this.encodingOptions = encodingOptions;
+		}
+		return this;
+	}
+
+	/**
+	 * Shrinks frames larger than the given size, keeping the aspect ratio. 0 or less keeps the original size.
+	 *
+	 * @param maxWidth  int largest width in pixels.
+	 * @param maxHeight int largest height in pixels.
+	 */
+	public GifOptimizer setMaxSize(int maxWidth, int maxHeight) {
+		this.maxWidth = maxWidth;
+		this.maxHeight = maxHeight;
+		return this;
+	}
+
+	/**
+	 * Selects the LZW encoder. See {@link AnimatedGifEncoder#setNativeLZW(boolean)}.
+	 *
+	 * @param nativeLZW false to use the java encoder, which runs without the native libraries.
+	 */
+	public GifOptimizer setNativeLZW(boolean nativeLZW) {
+		this.nativeLZW = nativeLZW;
+		return this;
+	}
+
+	/**
+	 * Writes the optimized GIF to a file.
+	 *
+	 * @param gif        bytes of the GIF to optimize.
+	 * @param outputPath String path of the file to write.
+	 * @return sizes and frame counts before and after.
+	 */
+	public Result optimize(byte[] gif, String outputPath) {
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(outputPath));
+			Result result = optimize(gif, out);
+			out.close();
+			return result;
+		} catch (IOException e) {
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_SAVE_IMAGE);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Writes the optimized GIF to a stream, which is not closed.
+	 *
+	 * @param gif bytes of the GIF to optimize.
+	 * @param out OutputStream to write.
+	 * @return sizes and frame counts before and after.
+	 */
+	public Result optimize(byte[] gif, OutputStream out) {
+		if (gif == null || out == null) {
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_LOAD_IMAGE);
+		}
+
+		GifDecoder decoder = new GifDecoder();
+		decoder.read(gif, 1);
+		int frameCount = decoder.getFrameCount();
+		int width = decoder.getWidth();
+		int height = decoder.getHeight();
+		if (frameCount <= 0 || width <= 0 || height <= 0) {
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_LOAD_IMAGE);
+		}
+
+		// decode at the largest power of two reduction which stays above the target size, then scale the rest
+		float scale = 1;
+		if (maxWidth > 0 && maxHeight > 0) {
+			scale = Math.min(1, Math.min(maxWidth / (float) width, maxHeight / (float) height));
+		}
+		int outputWidth = Math.max(1, Math.round(width * scale));
+		int outputHeight = Math.max(1, Math.round(height * scale));
+		int sampleSize = 1;
+		while (width / (sampleSize * 2) >= outputWidth && height / (sampleSize * 2) >= outputHeight) {
+			sampleSize *= 2;
+		}
+		if (sampleSize > 1) {
+			decoder.read(gif, sampleSize);
+		}
+
+		AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+		encoder.setEncodingOptions(encodingOptions);
+		encoder.setNativeLZW(nativeLZW);
+		encoder.setExpectedFrameCount(frameCount);
+		if (decoder.hasLoopCount()) {
+			encoder.setRepeat(decoder.getLoopCount());
+		}
+		if (decoder.hasTransparentPixels()) {
+			// transparent pixels are decoded as 0. write them as transparent, over a cleared background
+			MeiLog.d("the gif shows transparent pixels. frames are written whole");
+			encoder.setTransparentAlphaPixels(true);
+		}
+		if (!encoder.start(out)) {
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_GIF);
+		}
+
+		int parallelism = Math.max(1, encodingOptions.getParallelism());
+		int decodedWidth = width / sampleSize;
+		int decodedHeight = height / sampleSize;
+		if (parallelism == 1 && decodedWidth == outputWidth && decodedHeight == outputHeight) {
+			addFramePixels(decoder, encoder, frameCount, decodedWidth, decodedHeight);
+		} else {
+			addFrameBitmaps(decoder, encoder, frameCount, parallelism, outputWidth, outputHeight);
+		}
+		decoder.clear();
+
+		if (!encoder.finish()) {
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_GIF);
+		}
+
+		EncoderMetrics metrics = encoder.getMetrics();
+		return new Result(gif.length, metrics.getBytesWritten(), frameCount, metrics.getFrameCount(), outputWidth, outputHeight);
+	}
+
+	/**
+	 * Gives the decoded canvas of each frame to the encoder as is, without a bitmap per frame.
+	 */
+	private static void addFramePixels(GifDecoder decoder, AnimatedGifEncoder encoder, int frameCount, int width, int height) {
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < frameCount; ++i) {
+			if (!decoder.getFramePixels(i, pixels)) {
+				throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_LOAD_IMAGE);
+			}
+
+			encoder.setDelay(decoder.getDelay(i));
+			if (!encoder.addFrame(pixels, 0, width, width, height, AnimatedGifEncoder.ChannelOrder.ARGB, 0, 0)) {
+				throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_GIF);
+			}
+		}
+	}
+
+	/**
+	 * Decodes the frames into bitmaps, a few in parallel, and resizes them to the output size.
+	 */
+	private static void addFrameBitmaps(GifDecoder decoder, AnimatedGifEncoder encoder, int frameCount, int parallelism,
+										int outputWidth, int outputHeight) {
+		int batchSize = parallelism > 1 ? parallelism * DECODED_FRAMES_PER_THREAD : 1;
+		for (int i = 0; i < frameCount; i += batchSize) {
+			List<Bitmap> frames = decoder.getFrames(i, batchSize, parallelism);
+			if (frames == null || frames.isEmpty()) {
+				throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_LOAD_IMAGE);
+			}
+
+			for (int k = 0; k < frames.size(); ++k) {
+				Bitmap frame = frames.get(k);
+				Bitmap scaled = frame;
+				if (frame.getWidth() != outputWidth || frame.getHeight() != outputHeight) {
+					scaled = Bitmap.createScaledBitmap(frame, outputWidth, outputHeight, true);
+				}
+
+				encoder.setDelay(decoder.getDelay(i + k));
+				boolean added = encoder.addFrame(scaled);
+				if (scaled != frame) {
+					scaled.recycle();
+				}
+				decoder.release(frame); // decoded into again by the next frames
+				if (!added) {
+					throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_GIF);
+				}
+			}
+		}
+	}
+
+	public static class Result {
+		private final long inputBytes;
+		private final long outputBytes;
+		private final int inputFrameCount;
+		private final int outputFrameCount;
+		private final int width;
+		private final int height;
+
+		Result(long inputBytes, long outputBytes, int inputFrameCount, int outputFrameCount, int width, int height) {
+			this.inputBytes = inputBytes;
+			this.outputBytes = outputBytes;
+			this.inputFrameCount = inputFrameCount;
+			this.outputFrameCount = outputFrameCount;
+			this.width = width;
+			this.height = height;
+		}
+
+		public long getInputBytes() {
+			return inputBytes;
+		}
+
+		public long getOutputBytes() {
+			return outputBytes;
+		}
+
+		public int getInputFrameCount() {
+			return inputFrameCount;
+		}
+
+		/**
+		 * @return frames written, fewer than the input when duplicates were merged.
+		 */
+		public int getOutputFrameCount() {
+			return outputFrameCount;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		@Override
+		public String toString() {
+			return "GifOptimizer.Result{" + inputBytes + " -> " + outputBytes + " bytes, "
+					+ inputFrameCount + " -> " + outputFrameCount + " frames, " + width + "x" + height + "}";
+		}
+	}
+}
@@ -16,7 +16,10 @@ limitations under the License.
 
 package com.naver.mei.sdk.core.gif.encoder;
 
+import android.graphics.Bitmap;
+
 import java.io.File;
+import java.nio.ByteBuffer;
 
 /**
  * Created by GTPark on 2017-04-24.
@@ -24,5 +27,8 @@ import java.io.File;
 
 public interface GifQueuingEncodable {
 	void addFrame(File frameFile);
+	void addFrame(Bitmap frame);
+	void addFrame(ByteBuffer pixels, int offset, int rowStride, int width, int height, AnimatedGifEncoder.ChannelOrder channelOrder);
+	boolean isFrameWanted();
 	void stop();
 }
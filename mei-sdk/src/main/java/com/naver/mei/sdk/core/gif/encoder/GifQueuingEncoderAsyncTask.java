@@ -20,11 +20,13 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
 import com.naver.mei.sdk.error.MeiLog;
+import com.naver.mei.sdk.error.MeiSDKErrorType;
+import com.naver.mei.sdk.error.MeiSDKException;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.ByteBuffer;
 
 /**
  * Created by GTPark on 2017-01-03.
@@ -32,73 +34,147 @@ import java.util.concurrent.LinkedBlockingQueue;
 
 public class GifQueuingEncoderAsyncTask extends GifEncoderAsyncTask implements GifQueuingEncodable {
 	private static final double STOP_SIGNAL = Double.MIN_VALUE;
-	private static final File BREAK_FILE = new File("/");
+	private static final double METRICS_SIGNAL = -1;
+	public static final long DEFAULT_MEMORY_CAPACITY = 32 * 1024 * 1024;
+	public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 1000;
 
-	protected BlockingQueue<File> encodingQueue;
-	protected long totalCapacity = 0;
+	protected FrameQueue frameQueue;
 	protected boolean isRunning = true;
 	protected int maxQueueSize;
-	protected long maxCapacity;
-	protected int totalFrameCount = 0;
+	protected long maxCapacity;	// bytes of the frame files waiting, given or spilled
+	protected int totalFrameCount = 0;	// frames queued by addFrame, not those dropped when added
 	protected int currentFrameNumber = 0;
 
+	public enum OverflowPolicy {
+		BLOCK,	// the producer waits until the encoder takes a frame, up to a timeout. then the new frame is dropped
+		DROP_OLDEST,	// the oldest waiting frame is dropped, and the next one takes over its delay
+		DROP_NEWEST,	// the new frame is dropped, and the previous one takes over its delay
+		ADAPTIVE_FPS	// like DROP_NEWEST, and the frame rate is lowered until the encoder catches up. see isFrameWanted
+	}
+
 	public GifQueuingEncoderAsyncTask(int maxQueueSize, long maxCapacity, int learnQuality, int mapQuality, int delay, OutputStream out, EncodingListener encodingListener) {
-		super(learnQuality, mapQuality, delay, out, encodingListener);
-		this.encodingQueue = new LinkedBlockingQueue<>();
+		this(maxQueueSize, maxCapacity, new GifEncodingOptions(learnQuality, mapQuality), delay, out, encodingListener);
+	}
+
+	public GifQueuingEncoderAsyncTask(int maxQueueSize, long maxCapacity, GifEncodingOptions encodingOptions, int delay, OutputStream out, EncodingListener encodingListener) {
+		this(maxQueueSize, maxCapacity, DEFAULT_MEMORY_CAPACITY, null, OverflowPolicy.BLOCK, DEFAULT_BLOCK_TIMEOUT_MILLIS, encodingOptions, delay, out, encodingListener);
+	}
+
+	/**
+	 * @param maxQueueSize       most frames waiting
+	 * @param maxCapacity        bytes of the frame files waiting, given by path or spilled
+	 * @param memoryCapacity     bytes of the frame pixels waiting in memory
+	 * @param spillDir           directory for the frames beyond memoryCapacity. null to apply the overflow policy instead
+	 * @param overflowPolicy     what to do with a frame when there is no room, in memory nor on disk
+	 * @param blockTimeoutMillis longest wait of a producer with BLOCK. 0 waits forever
+	 */
+	public GifQueuingEncoderAsyncTask(int maxQueueSize, long maxCapacity, long memoryCapacity, File spillDir, OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+									  GifEncodingOptions encodingOptions, int delay, OutputStream out, EncodingListener encodingListener) {
+		super(encodingOptions, delay, out, encodingListener);
+		this.frameQueue = new FrameQueue(maxQueueSize, memoryCapacity, maxCapacity, spillDir, overflowPolicy, blockTimeoutMillis);
 		this.maxQueueSize = maxQueueSize;
 		this.maxCapacity = maxCapacity;
 	}
 
-	protected boolean encodeFrames(AnimatedGifEncoder encoder) {
+	protected boolean encodeFrames(AnimatedImageEncoder encoder) {
 		try {
-			while (isRunning || encodingQueue.size() > 0) {
-				File file = encodingQueue.take();
-				if (file == BREAK_FILE) break; // break marker
-
-				Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
-				encoder.addFrame(bitmap);
-				file.deleteOnExit();
-
-				synchronized (this) {
-					totalCapacity -= file.length();
+			FrameQueue.QueuedFrame frame;
+			while ((frame = frameQueue.take()) != null) {
+				encoder.setDelay(frame.delay);
+				if (frame.pixels != null) {
+					encoder.addFrame(frame.pixels, 0, frame.width, frame.width, frame.height, AnimatedGifEncoder.ChannelOrder.ARGB, 0, 0);
+					frameQueue.recycle(frame);
+				} else {
+					Bitmap bitmap = BitmapFactory.decodeFile(frame.file.getAbsolutePath());
+					encoder.addFrame(bitmap);
+					frame.file.deleteOnExit();
 				}
 
 				++currentFrameNumber;
 
-				publishProgress((double) currentFrameNumber, (double) totalFrameCount);
+				publishProgress((double) currentFrameNumber, (double) frameQueue.getQueuedFrameCount());
+				publishProgress(METRICS_SIGNAL);
 			}
 		} catch (InterruptedException iex) {
 			throw new RuntimeException(iex);
+		} catch (IOException ioe) {
+			MeiLog.e("failed to read a spilled frame", ioe);
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_GIF);
+		} finally {
+			frameQueue.discard();
 		}
 
+		MeiLog.d("frame queue " + frameQueue.getMetrics());
 		return currentFrameNumber > 0;
 	}
 
+	/**
+	 * Queues an image file, decoded on the encoding thread. The file is deleted if the frame is dropped.
+	 */
 	public void addFrame(File frameFile) {
-		if (encodingQueue.size() >= maxQueueSize || totalCapacity >= maxCapacity) {
+		try {
+			if (frameQueue.put(frameFile, delay)) {
+				++totalFrameCount;
+			}
+		} catch (InterruptedException iex) {
+			MeiLog.e("addFrame interrupted", iex);
 			stop();
-			return;
 		}
 
-		synchronized (this) {
-			totalCapacity += frameFile.length();
-		}
+		MeiLog.d("addFrame : " + frameQueue.size());
+	}
+
+	/**
+	 * Queues the pixels of the bitmap in memory. The bitmap may be recycled as soon as this returns.
+	 */
+	public void addFrame(Bitmap frame) {
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		int[] pixels = frameQueue.obtainPixels(width * height);
+		frame.getPixels(pixels, 0, width, 0, 0, width, height);
+		queuePixels(pixels, width, height);
+	}
 
-		++totalFrameCount;
+	/**
+	 * Queues raw pixels of 4 bytes each in memory, e.g. an area of an ImageReader plane.
+	 * See {@link AnimatedGifEncoder#addFrame(ByteBuffer, int, int, int, int, AnimatedGifEncoder.ChannelOrder, int, int)}
+	 * for the parameters. The buffer may be reused as soon as this returns.
+	 */
+	public void addFrame(ByteBuffer pixels, int offset, int rowStride, int width, int height, AnimatedGifEncoder.ChannelOrder channelOrder) {
+		int[] argb = frameQueue.obtainPixels(width * height);
+		AnimatedGifEncoder.copyPixels(null, pixels, offset, rowStride, width, height, channelOrder, argb, width, height);
+		queuePixels(argb, width, height);
+	}
 
+	/**
+	 * With ADAPTIVE_FPS, tells whether the next frame is kept at the current frame rate. When false, the frame
+	 * is dropped already and its time given to the previous frame, so the producer should not capture nor add it.
+	 * Always true with the other policies while the encoding runs.
+	 */
+	public boolean isFrameWanted() {
+		return frameQueue.isNextFrameWanted(delay);
+	}
+
+	private void queuePixels(int[] pixels, int width, int height) {
 		try {
-			encodingQueue.put(frameFile);
+			if (frameQueue.put(pixels, width, height, delay)) {
+				++totalFrameCount;
+			}
 		} catch (Exception ex) {
 			MeiLog.e("addFrame error", ex);
 			stop();
 		}
 
-		MeiLog.d("addFrame : " + encodingQueue.size());
+		MeiLog.d("addFrame : " + frameQueue.size());
 	}
 
-	public void stop() {
+	public synchronized void stop() {
+		if (!isRunning) {
+			return;
+		}
+
 		this.isRunning = false;
-		encodingQueue.add(BREAK_FILE);
+		frameQueue.close();
 		publishProgress(STOP_SIGNAL);
 	}
 
@@ -109,6 +185,11 @@ public class GifQueuingEncoderAsyncTask extends GifEncoderAsyncTask implements G
 			return;
 		}
 
+		if (values[0] == METRICS_SIGNAL) {
+			encodingListener.onQueueMetrics(frameQueue.getMetrics());
+			return;
+		}
+
 		encodingListener.onFrameProgress(values[0].intValue(), values[1].intValue());
 	}
 }
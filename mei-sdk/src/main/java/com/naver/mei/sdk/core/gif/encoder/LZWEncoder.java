@@ -19,6 +19,14 @@ class LZWEncoder {
 
 	private int curPixel;
 
+	// Lossy mode. For each palette index c, nearColors[c] .. nearColors[c + 1] - 1 are the positions of
+	// the indexes within the loss of c, closest first. null = lossless
+	private int[] nearColors;
+
+	static final int NEAR_COLORS_OFFSET = 257; // the lists follow the start of each of 256 indexes and the end
+
+	private final NearColors nearColorCache = new NearColors();
+
 	// GIFCOMPR.C - GIF Image compression routines
 	//
 	// Lempel-Ziv compression based on 'compress'. GIF modifications by
@@ -115,6 +123,10 @@ class LZWEncoder {
 		initCodeSize = Math.max(2, color_depth);
 	}
 
+	// Reusable encoder. The tables are allocated once, so encoding a frame allocates nothing.
+	LZWEncoder() {
+	}
+
 	// Add a character to the end of the current packet, and if it is 254
 	// characters, flush the packet to disk.
 	void char_out(byte c, OutputStream outs) throws IOException {
@@ -198,6 +210,16 @@ class LZWEncoder {
 					}
 				} while (htab[i] >= 0);
 			}
+			if (nearColors != null) {
+				// lossy. extend the string with a color close enough to c, as if the pixel was that color
+				for (int k = nearColors[c], end = nearColors[c + 1]; k < end; ++k) {
+					int code = findCode(nearColors[k], ent, hshift, hsize_reg);
+					if (code >= 0) {
+						ent = code;
+						continue outer_loop;
+					}
+				}
+			}
 			output(ent, outs);
 			ent = c;
 			if (free_ent < maxmaxcode) {
@@ -211,6 +233,53 @@ class LZWEncoder {
 		output(EOFCode, outs);
 	}
 
+	// code of the string ent followed by c, or -1 if it is not in the table
+	private int findCode(int c, int ent, int hshift, int hsize_reg) {
+		int fcode = (c << maxbits) + ent;
+		int i = (c << hshift) ^ ent;
+		if (htab[i] == fcode) {
+			return codetab[i];
+		}
+
+		int disp = (i == 0) ? 1 : hsize_reg - i;
+		while (htab[i] >= 0) {
+			if ((i -= disp) < 0)
+				i += hsize_reg;
+
+			if (htab[i] == fcode) {
+				return codetab[i];
+			}
+		}
+		return -1;
+	}
+
+	// ----------------------------------------------------------------------------
+	void encode(OutputStream os, byte[] pixels, int width, int height, int color_depth) throws IOException {
+		encode(os, pixels, width, height, color_depth, null);
+	}
+
+	// lossy when loss > 0. the near colors of the palette are kept for the following frames
+	void encode(OutputStream os, byte[] pixels, int width, int height, int color_depth, byte[] colorTab, int loss, int transIndex) throws IOException {
+		encode(os, pixels, width, height, color_depth, nearColorCache.get(colorTab, color_depth, loss, transIndex));
+	}
+
+	// lossy when nearColors, made by NearColors, is given
+	void encode(OutputStream os, byte[] pixels, int width, int height, int color_depth, int[] nearColors) throws IOException {
+		this.nearColors = nearColors;
+		imgW = width;
+		imgH = height;
+		pixAry = pixels;
+		initCodeSize = Math.max(2, color_depth);
+		cur_accum = 0;
+		cur_bits = 0;
+		try {
+			encode(os);
+		} finally {
+			pixAry = null;
+			this.nearColors = null;
+		}
+	}
+
 	// ----------------------------------------------------------------------------
 	void encode(OutputStream os) throws IOException {
 		os.write(initCodeSize); // write "initial code size" byte
@@ -0,0 +1,184 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.naver.mei.sdk.core.gif.encoder;
+
+import java.util.Arrays;
+
+/**
+ * Median cut color quantizer. (Heckbert)
+ * Sampled pixels are counted in a histogram of 5 bits per channel. The box holding the most pixels is cut
+ * at the median of its longest side until there are 256 boxes, and each box gives the average of its pixels.
+ */
+public class MedianCutQuantizer extends PaletteQuantizer {
+	private static final int BITS = 5;
+	private static final int SIDE = 1 << BITS;
+	private static final int SHIFT = 8 - BITS;
+
+	// histogram and color sums by bin, reused between frames
+	private final int[] counts = new int[SIDE * SIDE * SIDE];
+	private final long[] sums = new long[SIDE * SIDE * SIDE * 3];
+	private final Box[] boxes = new Box[MAX_COLORS];
+
+	@Override
+	protected int buildPalette(byte[] pixels, int len, int sample, byte[] colorTab) {
+		Arrays.fill(counts, 0);
+		Arrays.fill(sums, 0);
+		for (int k = 0; k + 2 < len; k += sample * 3) {
+			int b = pixels[k] & 0xff;
+			int g = pixels[k + 1] & 0xff;
+			int r = pixels[k + 2] & 0xff;
+			int bin = bin(r >> SHIFT, g >> SHIFT, b >> SHIFT);
+			counts[bin]++;
+			sums[bin * 3] += r;
+			sums[bin * 3 + 1] += g;
+			sums[bin * 3 + 2] += b;
+		}
+
+		Box first = new Box();
+		first.min = new int[]{0, 0, 0};
+		first.max = new int[]{SIDE - 1, SIDE - 1, SIDE - 1};
+		shrink(first);
+		if (first.count == 0) {
+			return 0;
+		}
+
+		boxes[0] = first;
+		int boxCount = 1;
+		while (boxCount < MAX_COLORS) {
+			Box largest = null;
+			for (int i = 0; i < boxCount; ++i) {
+				if (boxes[i].isSplittable() && (largest == null || boxes[i].count > largest.count)) {
+					largest = boxes[i];
+				}
+			}
+			if (largest == null) {
+				break; // every box is a single bin
+			}
+			boxes[boxCount++] = split(largest);
+		}
+
+		for (int i = 0; i < boxCount; ++i) {
+			writeAverage(boxes[i], colorTab, i);
+			boxes[i] = null;
+		}
+		return boxCount;
+	}
+
+	/**
+	 * Cuts the box at the median of its longest side. The box keeps the lower part.
+	 */
+	private Box split(Box box) {
+		int axis = 0;
+		for (int c = 1; c < 3; ++c) {
+			if (box.max[c] - box.min[c] > box.max[axis] - box.min[axis]) {
+				axis = c;
+			}
+		}
+
+		// pixel count of each slice along the axis
+		int[] slices = new int[SIDE];
+		int[] p = new int[3];
+		for (p[0] = box.min[0]; p[0] <= box.max[0]; ++p[0]) {
+			for (p[1] = box.min[1]; p[1] <= box.max[1]; ++p[1]) {
+				for (p[2] = box.min[2]; p[2] <= box.max[2]; ++p[2]) {
+					slices[p[axis]] += counts[bin(p[0], p[1], p[2])];
+				}
+			}
+		}
+
+		int cut = box.min[axis];
+		int below = slices[cut];
+		while (cut + 1 < box.max[axis] && below + slices[cut + 1] <= box.count / 2) {
+			below += slices[++cut];
+		}
+
+		Box upper = new Box();
+		upper.min = box.min.clone();
+		upper.max = box.max.clone();
+		upper.min[axis] = cut + 1;
+		box.max[axis] = cut;
+		shrink(box);
+		shrink(upper);
+		return upper;
+	}
+
+	/**
+	 * Shrinks the box to the bins holding pixels and counts them
+	 */
+	private void shrink(Box box) {
+		int[] min = {SIDE, SIDE, SIDE};
+		int[] max = {-1, -1, -1};
+		int count = 0;
+		for (int r = box.min[0]; r <= box.max[0]; ++r) {
+			for (int g = box.min[1]; g <= box.max[1]; ++g) {
+				for (int b = box.min[2]; b <= box.max[2]; ++b) {
+					int n = counts[bin(r, g, b)];
+					if (n == 0) continue;
+
+					count += n;
+					min[0] = Math.min(min[0], r);
+					min[1] = Math.min(min[1], g);
+					min[2] = Math.min(min[2], b);
+					max[0] = Math.max(max[0], r);
+					max[1] = Math.max(max[1], g);
+					max[2] = Math.max(max[2], b);
+				}
+			}
+		}
+
+		box.count = count;
+		if (count > 0) {
+			box.min = min;
+			box.max = max;
+		}
+	}
+
+	private void writeAverage(Box box, byte[] colorTab, int index) {
+		long r = 0, g = 0, b = 0;
+		int count = 0;
+		for (int rr = box.min[0]; rr <= box.max[0]; ++rr) {
+			for (int gg = box.min[1]; gg <= box.max[1]; ++gg) {
+				for (int bb = box.min[2]; bb <= box.max[2]; ++bb) {
+					int bin = bin(rr, gg, bb);
+					count += counts[bin];
+					r += sums[bin * 3];
+					g += sums[bin * 3 + 1];
+					b += sums[bin * 3 + 2];
+				}
+			}
+		}
+
+		if (count > 0) {
+			colorTab[index * 3] = (byte) (r / count);
+			colorTab[index * 3 + 1] = (byte) (g / count);
+			colorTab[index * 3 + 2] = (byte) (b / count);
+		}
+	}
+
+	private static int bin(int r, int g, int b) {
+		return (r << (BITS * 2)) | (g << BITS) | b;
+	}
+
+	private static class Box {
+		int[] min; // inclusive bin coordinates, r g b
+		int[] max;
+		int count;
+
+		boolean isSplittable() {
+			return count > 1 && (min[0] != max[0] || min[1] != max[1] || min[2] != max[2]);
+		}
+	}
+}
@@ -18,6 +18,7 @@ package com.naver.mei.sdk.core.gif.encoder;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Created by GTPark on 2016-12-29.
@@ -27,9 +28,88 @@ public class NativeLZWEncoder {
 		System.loadLibrary("lzwEncoder");
 	}
 
+	public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+	private static final int MIN_BUFFER_SIZE = 256; // one sub block with its length byte
+
+	private final ByteBuffer buffer;	// direct. the native encoder writes the sub blocks here
+	private final byte[] chunk;	// the buffer copied out for the OutputStream
+	private OutputStream out;
+	private final NearColors nearColorCache = new NearColors();
+
+	public NativeLZWEncoder() {
+		this(ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE));
+	}
+
+	/**
+	 * Streaming encoder writing through the given reusable direct buffer.
+	 * Nothing is allocated per frame. Not thread safe, use one instance per thread.
+	 *
+	 * @param buffer direct ByteBuffer of at least 256 bytes
+	 */
+	public NativeLZWEncoder(ByteBuffer buffer) {
+		if (!buffer.isDirect() || buffer.capacity() < MIN_BUFFER_SIZE) {
+			throw new IllegalArgumentException("direct buffer of at least " + MIN_BUFFER_SIZE + " bytes is required");
+		}
+
+		this.buffer = buffer;
+		this.chunk = new byte[buffer.capacity()];
+	}
+
+	/**
+	 * Compresses the indexed pixels and writes the GIF image data sub blocks to the stream while compressing,
+	 * whenever the buffer is full.
+	 */
+	public void write(OutputStream out, byte[] pixels, int width, int height, int colorDepth) throws IOException {
+		write(out, pixels, width, height, colorDepth, null, 0, -1);
+	}
+
+	/**
+	 * Lossy version of {@link #write(OutputStream, byte[], int, int, int)}. A pixel may be written as another
+	 * palette color, which differs by at most loss as the sum of the absolute RGB differences, when that
+	 * continues a string already in the LZW table. Longer strings, fewer codes, at the cost of some noise.
+	 *
+	 * @param colorTab   RGB palette of the pixels
+	 * @param loss       largest color difference allowed per pixel. 0 = lossless
+	 * @param transIndex transparent index, which is never replaced nor a replacement. -1 if none
+	 */
+	public void write(OutputStream out, byte[] pixels, int width, int height, int colorDepth, byte[] colorTab, int loss, int transIndex) throws IOException {
+		int[] nearColors = nearColorCache.get(colorTab, colorDepth, loss, transIndex);
+		this.out = out;
+		try {
+			compressTo(pixels, width, height, colorDepth, nearColors, buffer, this);
+		} finally {
+			this.out = null;
+		}
+	}
+
+	// called by the native encoder with the number of bytes written to the buffer
+	private void drain(int length) throws IOException {
+		buffer.clear();
+		buffer.get(chunk, 0, length);
+		out.write(chunk, 0, length);
+	}
+
 	public static void encode(OutputStream out, byte[] pixels, int width, int height, int colorDepth) throws IOException {
-		out.write(compress(pixels, width, height, colorDepth));
+		out.write(compress(pixels, width, height, colorDepth, null));
 	}
 
-	native private static byte[] compress(byte[] pixels, int width, int height, int colorDepth);
+	/**
+	 * Compresses the indexed pixels into the GIF image data blocks without writing them.
+	 * Safe to call from several threads at the same time.
+	 */
+	public static byte[] encode(byte[] pixels, int width, int height, int colorDepth) {
+		return compress(pixels, width, height, colorDepth, null);
+	}
+
+	/**
+	 * Lossy version of {@link #encode(byte[], int, int, int)}.
+	 * See {@link #write(OutputStream, byte[], int, int, int, byte[], int, int)} for the parameters.
+	 */
+	public static byte[] encode(byte[] pixels, int width, int height, int colorDepth, byte[] colorTab, int loss, int transIndex) {
+		return compress(pixels, width, height, colorDepth, new NearColors().get(colorTab, colorDepth, loss, transIndex));
+	}
+
+	native private static byte[] compress(byte[] pixels, int width, int height, int colorDepth, int[] nearColors);
+
+	native private static void compressTo(byte[] pixels, int width, int height, int colorDepth, int[] nearColors, ByteBuffer buffer, NativeLZWEncoder sink) throws IOException;
 }
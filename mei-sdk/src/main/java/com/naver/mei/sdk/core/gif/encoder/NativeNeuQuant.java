@@ -20,23 +20,128 @@ package com.naver.mei.sdk.core.gif.encoder;
  * Created by tigerbaby on 2016-12-13.
 		*/
 
-public class NativeNeuQuant {
-	public native void init(byte[] thepic, int len, int sample);
+public class NativeNeuQuant implements Quantizer {
+	private long nativeContext;	// native network state. each instance owns its own, so instances can be used in parallel
 
-	public native byte[] process();
+	private byte[] thepic;
+	private int len;
+	private int sample;
+	private byte[] loadedColorTab;	// color table set by useColorTable. null after learning
+	private int loadedColorCount;
 
-	public native int map(int b, int g, int r);
+	public NativeNeuQuant() {
+		nativeContext = create();
+	}
+
+	public void init(byte[] thepic, int len, int sample) {
+		this.thepic = thepic;
+		this.len = len;
+		this.sample = sample;
+	}
+
+	/**
+	 * Learns the network with NeuQuant and returns the RGB color table
+	 */
+	@Override
+	public byte[] learn(byte[] pixels, int len, int sample) {
+		init(pixels, len, sample);
+		byte[] colorTab = process(); // BGR
+		for (int i = 0; i < colorTab.length; i += 3) {
+			byte temp = colorTab[i];
+			colorTab[i] = colorTab[i + 2];
+			colorTab[i + 2] = temp;
+		}
+		return colorTab;
+	}
+
+	public byte[] process() {
+		byte[] colorTab = process(nativeContext, thepic, len, sample);
+		thepic = null;
+		loadedColorTab = null;
+		return colorTab;
+	}
+
+	/**
+	 * Uses the given RGB color table instead of learning one, so that map can be called without process.
+	 * Setting the same table again is free.
+	 */
+	public void useColorTable(byte[] colorTab) {
+		useColorTable(colorTab, colorTab.length / 3);
+	}
+
+	/**
+	 * Uses the first colorCount colors of the given RGB color table. map never returns the other indexes.
+	 */
+	@Override
+	public void useColorTable(byte[] colorTab, int colorCount) {
+		if (colorTab == loadedColorTab && colorCount == loadedColorCount) return;
+
+		byte[] colorMap = new byte[colorTab.length]; // native network is BGR
+		for (int i = 0; i < colorTab.length; i += 3) {
+			colorMap[i] = colorTab[i + 2];
+			colorMap[i + 1] = colorTab[i + 1];
+			colorMap[i + 2] = colorTab[i];
+		}
+		setColorMap(nativeContext, colorMap, colorCount);
+		loadedColorTab = colorTab;
+		loadedColorCount = colorCount;
+	}
+
+	public int map(int b, int g, int r) {
+		return map(nativeContext, b, g, r);
+	}
 
 	public MapResult map(byte[] pixels, int mapQuality) {
-		if (mapQuality == 8) return map(pixels);
-		return mapByQuality(pixels, mapQuality);
+		if (mapQuality == 8) return map(nativeContext, pixels);
+		return mapByQuality(nativeContext, pixels, mapQuality);
+	}
+
+	/**
+	 * Maps the first pixelCount BGR pixels into the given arrays instead of allocating a MapResult,
+	 * so that the caller can reuse them. indexedPixels needs at least pixelCount bytes, usedEntry 256 entries.
+	 */
+	@Override
+	public void map(byte[] pixels, int pixelCount, int mapQuality, byte[] indexedPixels, boolean[] usedEntry) {
+		mapInto(nativeContext, pixels, pixelCount, mapQuality, indexedPixels, usedEntry);
+	}
+
+	/**
+	 * Frees the native network. The instance can not be used after release.
+	 */
+	@Override
+	public synchronized void release() {
+		if (nativeContext != 0) {
+			destroy(nativeContext);
+			nativeContext = 0;
+		}
+	}
+
+	@Override
+	protected void finalize() throws Throwable {
+		try {
+			release();
+		} finally {
+			super.finalize();
+		}
 	}
 
-	private native MapResult map(byte[] pixels);
+	private native static long create();
+
+	private native static void destroy(long nativeContext);
+
+	private native static byte[] process(long nativeContext, byte[] thepic, int len, int sample);
+
+	private native static void setColorMap(long nativeContext, byte[] colorMap, int colorCount);
+
+	private native static int map(long nativeContext, int b, int g, int r);
+
+	private native static MapResult map(long nativeContext, byte[] pixels);
+
+	private native static MapResult mapByQuality(long nativeContext, byte[] pixels, int quality);
 
-	private native MapResult mapByQuality(byte[] pixels, int quality);
+	private native static void mapInto(long nativeContext, byte[] pixels, int pixelCount, int quality, byte[] indexedPixels, boolean[] usedEntry);
 
 	static {
 		System.loadLibrary("neuquant");
 	}
-}
+}
\ No newline at end of file
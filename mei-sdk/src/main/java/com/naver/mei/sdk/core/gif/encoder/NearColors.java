@@ -0,0 +1,98 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import java.util.Arrays;
+
+/**
+ * Near color lists of lossy LZW for the palette of the previous frame. Frames sharing a palette,
+ * as with a global or shared palette, reuse the lists, and a new palette reuses the arrays.
+ * Not thread safe, each encoder keeps its own.
+ */
+class NearColors {
+	private static final int MAX_COLORS = 256;
+
+	private final byte[] colorTab = new byte[MAX_COLORS * 3]; // palette of the lists
+	private int colorCount = -1;
+	private int loss;
+	private int transIndex;
+
+	private final int[] sorted = new int[MAX_COLORS];
+	private int[] table = new int[LZWEncoder.NEAR_COLORS_OFFSET + MAX_COLORS];
+
+	/**
+	 * Lists for each palette index the other indexes whose color differs by at most loss, as the sum of
+	 * the absolute RGB differences, closest first. The transparent index is never replaced nor a replacement.
+	 * The lists are valid until the next call.
+	 *
+	 * @param colorTab   RGB palette
+	 * @param colorDepth bits of the indexes. entries past 2^colorDepth are not written, and never chosen
+	 * @param loss       largest difference allowed. 0 = lossless
+	 * @param transIndex transparent index, -1 if none
+	 * @return the lists for the lossy encode methods, null when lossless
+	 */
+	int[] get(byte[] colorTab, int colorDepth, int loss, int transIndex) {
+		if (loss <= 0) {
+			return null;
+		}
+
+		int count = Math.min(Math.min(colorTab.length / 3, 1 << colorDepth), MAX_COLORS);
+		if (count == colorCount && loss == this.loss && transIndex == this.transIndex && isSamePalette(colorTab, count)) {
+			return table;
+		}
+
+		int k = LZWEncoder.NEAR_COLORS_OFFSET;
+		for (int a = 0; a < MAX_COLORS; ++a) {
+			table[a] = k;
+			if (a >= count || a == transIndex) continue;
+
+			int n = 0;
+			for (int b = 0; b < count; ++b) {
+				if (a == b || b == transIndex) continue;
+
+				int d = Math.abs((colorTab[a * 3] & 0xff) - (colorTab[b * 3] & 0xff))
+						+ Math.abs((colorTab[a * 3 + 1] & 0xff) - (colorTab[b * 3 + 1] & 0xff))
+						+ Math.abs((colorTab[a * 3 + 2] & 0xff) - (colorTab[b * 3 + 2] & 0xff));
+				if (d <= loss) sorted[n++] = (d << 8) | b; // ties by index
+			}
+			Arrays.sort(sorted, 0, n);
+			if (k + n > table.length) {
+				table = Arrays.copyOf(table, Math.max(table.length * 2, k + n));
+			}
+			for (int j = 0; j < n; ++j) {
+				table[k++] = sorted[j] & 0xff;
+			}
+		}
+		table[MAX_COLORS] = k;
+
+		System.arraycopy(colorTab, 0, this.colorTab, 0, count * 3);
+		this.colorCount = count;
+		this.loss = loss;
+		this.transIndex = transIndex;
+		return table;
+	}
+
+	private boolean isSamePalette(byte[] colorTab, int count) {
+		for (int i = 0; i < count * 3; ++i) {
+			if (colorTab[i] != this.colorTab[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
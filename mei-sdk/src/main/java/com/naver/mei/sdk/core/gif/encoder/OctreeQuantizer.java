@@ -0,0 +1,137 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.naver.mei.sdk.core.gif.encoder;
+
+/**
+ * Octree color quantizer. (Gervautz and Purgathofer)
+ * Sampled pixels are added to a tree which splits the color cube by one bit per channel and level.
+ * Whenever there are more leaves than colors, the children of the deepest node are merged into it.
+ * Much faster than NeuQuant on large frames, with a coarser palette.
+ */
+public class OctreeQuantizer extends PaletteQuantizer {
+	private static final int MAX_LEVEL = 6; // leaves hold 6 bits per channel at most, plenty for 256 colors
+
+	private Node root;
+	private final Node[] reducibleNodes = new Node[MAX_LEVEL]; // inner nodes of each level, latest first
+	private int leafCount;
+
+	@Override
+	protected int buildPalette(byte[] pixels, int len, int sample, byte[] colorTab) {
+		root = new Node();
+		root.children = new Node[8];
+		leafCount = 0;
+		for (int k = 0; k + 2 < len; k += sample * 3) {
+			addColor(pixels[k + 2] & 0xff, pixels[k + 1] & 0xff, pixels[k] & 0xff);
+			while (leafCount > MAX_COLORS) {
+				reduce();
+			}
+		}
+
+		int colorCount = writeLeaves(root, colorTab, 0);
+		root = null;
+		for (int level = 0; level < MAX_LEVEL; ++level) {
+			reducibleNodes[level] = null;
+		}
+		return colorCount;
+	}
+
+	private void addColor(int r, int g, int b) {
+		Node node = root;
+		for (int level = 0; !node.isLeaf(); ++level) {
+			int shift = 7 - level;
+			int index = (((r >> shift) & 1) << 2) | (((g >> shift) & 1) << 1) | ((b >> shift) & 1);
+			Node child = node.children[index];
+			if (child == null) {
+				child = new Node();
+				if (level + 1 < MAX_LEVEL) {
+					child.children = new Node[8];
+					child.nextReducible = reducibleNodes[level + 1];
+					reducibleNodes[level + 1] = child;
+				} else {
+					++leafCount;
+				}
+				node.children[index] = child;
+			}
+			node = child;
+		}
+
+		node.pixelCount++;
+		node.red += r;
+		node.green += g;
+		node.blue += b;
+	}
+
+	/**
+	 * Merges the children of the deepest inner node into it
+	 */
+	private void reduce() {
+		int level = MAX_LEVEL - 1;
+		while (level > 0 && reducibleNodes[level] == null) {
+			--level;
+		}
+
+		Node node = reducibleNodes[level];
+		if (node == null) {
+			return; // only the root is left. can not happen with 8 children at most
+		}
+		reducibleNodes[level] = node.nextReducible;
+
+		int merged = 0;
+		for (int i = 0; i < 8; ++i) {
+			Node child = node.children[i];
+			if (child == null) continue;
+
+			// deeper nodes are reduced first, so every child is a leaf here
+			node.pixelCount += child.pixelCount;
+			node.red += child.red;
+			node.green += child.green;
+			node.blue += child.blue;
+			++merged;
+		}
+		node.children = null;
+		leafCount -= merged - 1;
+	}
+
+	private static int writeLeaves(Node node, byte[] colorTab, int colorCount) {
+		if (node.isLeaf()) {
+			if (node.pixelCount > 0 && colorCount < MAX_COLORS) {
+				colorTab[colorCount * 3] = (byte) (node.red / node.pixelCount);
+				colorTab[colorCount * 3 + 1] = (byte) (node.green / node.pixelCount);
+				colorTab[colorCount * 3 + 2] = (byte) (node.blue / node.pixelCount);
+				++colorCount;
+			}
+			return colorCount;
+		}
+
+		for (Node child : node.children) {
+			if (child != null) {
+				colorCount = writeLeaves(child, colorTab, colorCount);
+			}
+		}
+		return colorCount;
+	}
+
+	private static class Node {
+		Node[] children; // null for leaves
+		Node nextReducible;
+		int pixelCount;
+		long red, green, blue;
+
+		boolean isLeaf() {
+			return children == null;
+		}
+	}
+}
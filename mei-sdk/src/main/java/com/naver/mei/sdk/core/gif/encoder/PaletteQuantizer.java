@@ -0,0 +1,65 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.naver.mei.sdk.core.gif.encoder;
+
+/**
+ * Base of the quantizers which compute a palette in java.
+ * Pixels are mapped by the nearest color search of the native network, loaded with the palette.
+ */
+public abstract class PaletteQuantizer implements Quantizer {
+	private NativeNeuQuant mapper; // created on the first use, so that building a palette needs no native code
+
+	@Override
+	public byte[] learn(byte[] pixels, int len, int sample) {
+		byte[] colorTab = new byte[MAX_COLORS * 3];
+		int colorCount = buildPalette(pixels, len, Math.max(1, sample), colorTab);
+		useColorTable(colorTab, Math.max(1, colorCount));
+		return colorTab;
+	}
+
+	/**
+	 * Writes at most MAX_COLORS RGB colors for the BGR pixels into colorTab.
+	 *
+	 * @param sample pixel stride of the sampling. 1 or more.
+	 * @return number of colors written.
+	 */
+	protected abstract int buildPalette(byte[] pixels, int len, int sample, byte[] colorTab);
+
+	@Override
+	public void useColorTable(byte[] colorTab, int colorCount) {
+		getMapper().useColorTable(colorTab, colorCount);
+	}
+
+	@Override
+	public void map(byte[] pixels, int pixelCount, int mapQuality, byte[] indexedPixels, boolean[] usedEntry) {
+		getMapper().map(pixels, pixelCount, mapQuality, indexedPixels, usedEntry);
+	}
+
+	@Override
+	public void release() {
+		if (mapper != null) {
+			mapper.release();
+			mapper = null;
+		}
+	}
+
+	private NativeNeuQuant getMapper() {
+		if (mapper == null) {
+			mapper = new NativeNeuQuant();
+		}
+		return mapper;
+	}
+}
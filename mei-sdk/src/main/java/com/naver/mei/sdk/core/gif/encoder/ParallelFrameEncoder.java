@@ -0,0 +1,191 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import com.naver.mei.sdk.error.MeiLog;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Quantizes, maps and compresses the frames of {@link AnimatedGifEncoder} on a bounded worker pool,
+ * and writes them in submission order on a single writer thread.
+ * The bytes of the frames in flight are capped, so that submit blocks instead of running out of memory.
+ */
+class ParallelFrameEncoder {
+	private static final int PERMIT_UNIT = 1024;	// semaphore permits are counted in KB
+
+	private final AnimatedGifEncoder encoder;
+	private final ThreadPoolExecutor workers;
+	private final ExecutorService writer;
+	private final BlockingQueue<Quantizer> quantizers;
+	private final BlockingQueue<FrameCompressor> compressors; // one per worker, reused across frames
+	private final Semaphore memoryPermits;
+	private final int maxPermits;
+
+	private volatile Throwable error;
+
+	ParallelFrameEncoder(AnimatedGifEncoder encoder, int parallelism, long maxBytesInFlight) {
+		this.encoder = encoder;
+		this.workers = new ThreadPoolExecutor(parallelism, parallelism, 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new EncoderThreadFactory("MeiGifEncoder-worker"));
+		this.workers.allowCoreThreadTimeOut(true);
+		this.writer = Executors.newSingleThreadExecutor(new EncoderThreadFactory("MeiGifEncoder-writer"));
+		this.quantizers = new ArrayBlockingQueue<>(parallelism);
+		this.compressors = new ArrayBlockingQueue<>(parallelism);
+		for (int i = 0; i < parallelism; ++i) {
+			quantizers.add(encoder.createQuantizer());
+			compressors.add(new FrameCompressor());
+		}
+		this.maxPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytesInFlight / PERMIT_UNIT));
+		this.memoryPermits = new Semaphore(maxPermits, true);
+	}
+
+	/**
+	 * Queues the frame. Blocks while the memory cap is exceeded.
+	 */
+	void submit(final EncodingFrame frame) throws IOException {
+		throwIfFailed();
+
+		final int permits = (int) Math.min(maxPermits, frame.getByteSize() / PERMIT_UNIT + 1);
+		try {
+			memoryPermits.acquire(permits);
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for frames in flight", iex);
+		}
+
+		final Future<EncodingFrame> encoded;
+		try {
+			encoded = workers.submit(new Callable<EncodingFrame>() {
+				@Override
+				public EncodingFrame call() throws Exception {
+					Quantizer quantizer = quantizers.take();
+					FrameCompressor compressor = compressors.take();
+					try {
+						encoder.encodeFrame(frame, quantizer, compressor);
+					} finally {
+						compressors.put(compressor);
+						quantizers.put(quantizer);
+					}
+					return frame;
+				}
+			});
+
+			writer.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (error == null) {
+							encoder.writeFrame(encoded.get());
+						}
+					} catch (ExecutionException eex) {
+						fail(eex.getCause());
+					} catch (Throwable t) {
+						fail(t);
+					} finally {
+						memoryPermits.release(permits);
+					}
+				}
+			});
+		} catch (RuntimeException rex) {
+			memoryPermits.release(permits);
+			throw new IOException("failed to submit frame", rex);
+		}
+	}
+
+	/**
+	 * Waits until every submitted frame is written.
+	 */
+	void finish() throws IOException {
+		writer.shutdown();
+		try {
+			while (!writer.awaitTermination(1, TimeUnit.SECONDS)) {
+				throwIfFailed();
+			}
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while finishing frames", iex);
+		}
+
+		throwIfFailed();
+	}
+
+	/**
+	 * Stops the threads and frees the quantizers.
+	 */
+	void release() {
+		writer.shutdownNow();
+		workers.shutdownNow();
+		try {
+			workers.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+		}
+
+		Quantizer quantizer;
+		while ((quantizer = quantizers.poll()) != null) {
+			quantizer.release();
+		}
+	}
+
+	private void fail(Throwable t) {
+		if (error == null) {
+			error = t;
+			MeiLog.e("failed to encode frame", t);
+		}
+	}
+
+	private void throwIfFailed() throws IOException {
+		Throwable t = error;
+		if (t == null) return;
+
+		if (t instanceof IOException) {
+			throw (IOException) t;
+		}
+
+		throw new IOException(t);
+	}
+
+	private static class EncoderThreadFactory implements ThreadFactory {
+		private final String namePrefix;
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		EncoderThreadFactory(String namePrefix) {
+			this.namePrefix = namePrefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.naver.mei.sdk.core.gif.encoder;
+
+/**
+ * Builds the color table of frames and maps their pixels to it.
+ * An instance is used by one thread at a time. Parallel encoding creates one per worker.
+ */
+public interface Quantizer {
+	int MAX_COLORS = 256;
+
+	/**
+	 * Learns a color table from BGR pixels and uses it for the following map calls.
+	 *
+	 * @param pixels BGR pixels.
+	 * @param len    number of bytes to learn from.
+	 * @param sample sampling factor. 1 learns from every pixel, larger values are faster.
+	 * @return RGB color table of MAX_COLORS colors. Unused entries are black.
+	 */
+	byte[] learn(byte[] pixels, int len, int sample);
+
+	/**
+	 * Uses the first colorCount colors of the given RGB color table for the following map calls.
+	 */
+	void useColorTable(byte[] colorTab, int colorCount);
+
+	/**
+	 * Maps the first pixelCount BGR pixels to the indexes of the color table in use.
+	 *
+	 * @param mapQuality  bits per channel of the color lookup. 8 is exact.
+	 * @param usedEntry   set to the color table entries used. MAX_COLORS entries.
+	 */
+	void map(byte[] pixels, int pixelCount, int mapQuality, byte[] indexedPixels, boolean[] usedEntry);
+
+	/**
+	 * Frees the resources of the quantizer. The instance can not be used after release.
+	 */
+	void release();
+}
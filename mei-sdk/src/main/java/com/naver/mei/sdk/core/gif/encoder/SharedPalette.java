@@ -0,0 +1,57 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Color table learned by one frame and reused by the following frames.
+ * With parallel encoding the reusing frames may be analyzed before the learning frame is done, so they wait for it.
+ */
+class SharedPalette {
+	final boolean global; // learned by the first frame, so it is written as the global color table
+
+	private final CountDownLatch learned = new CountDownLatch(1);
+	private volatile byte[] colorTab;
+
+	SharedPalette(boolean global) {
+		this.global = global;
+	}
+
+	/**
+	 * @param colorTab learned RGB color table. null if learning failed
+	 */
+	void set(byte[] colorTab) {
+		this.colorTab = colorTab;
+		learned.countDown();
+	}
+
+	/**
+	 * Waits for the learning frame.
+	 *
+	 * @return RGB color table. null if learning failed or the thread was interrupted
+	 */
+	byte[] await() {
+		try {
+			learned.await();
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return colorTab;
+	}
+}
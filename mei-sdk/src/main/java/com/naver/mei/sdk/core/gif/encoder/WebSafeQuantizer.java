@@ -0,0 +1,69 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.naver.mei.sdk.core.gif.encoder;
+
+/**
+ * Fixed palette of the 216 web safe colors, 6 levels per channel. Nothing is learned,
+ * and each pixel is mapped by rounding its channels to the nearest level, so it is the fastest
+ * mode at the cost of visible banding.
+ */
+public class WebSafeQuantizer extends PaletteQuantizer {
+	private static final int LEVELS = 6;
+	private static final int STEP = 51; // 255 / (LEVELS - 1)
+	private static final int COLOR_COUNT = LEVELS * LEVELS * LEVELS;
+
+	@Override
+	protected int buildPalette(byte[] pixels, int len, int sample, byte[] colorTab) {
+		int i = 0;
+		for (int r = 0; r < LEVELS; ++r) {
+			for (int g = 0; g < LEVELS; ++g) {
+				for (int b = 0; b < LEVELS; ++b) {
+					colorTab[i++] = (byte) (r * STEP);
+					colorTab[i++] = (byte) (g * STEP);
+					colorTab[i++] = (byte) (b * STEP);
+				}
+			}
+		}
+		return COLOR_COUNT;
+	}
+
+	/**
+	 * Nothing to load, since map does not look at the color table. No native mapper is created.
+	 */
+	@Override
+	public void useColorTable(byte[] colorTab, int colorCount) {
+	}
+
+	/**
+	 * Maps to the web safe palette whatever color table is in use. The encoder only passes
+	 * tables learned by this quantizer, of which the first 216 colors are never moved.
+	 */
+	@Override
+	public void map(byte[] pixels, int pixelCount, int mapQuality, byte[] indexedPixels, boolean[] usedEntry) {
+		for (int i = 0; i < MAX_COLORS; ++i) {
+			usedEntry[i] = false;
+		}
+
+		for (int i = 0, k = 0; i < pixelCount; ++i, k += 3) {
+			int b = ((pixels[k] & 0xff) + STEP / 2) / STEP;
+			int g = ((pixels[k + 1] & 0xff) + STEP / 2) / STEP;
+			int r = ((pixels[k + 2] & 0xff) + STEP / 2) / STEP;
+			int index = (r * LEVELS + g) * LEVELS + b;
+			indexedPixels[i] = (byte) index;
+			usedEntry[index] = true;
+		}
+	}
+}
@@ -20,6 +20,7 @@ import android.text.Layout;
 import android.widget.EditText;
 import android.widget.ImageView;
 
+import com.naver.mei.sdk.core.gif.encoder.GifEncodingOptions;
 import com.naver.mei.sdk.error.MeiSDKErrorType;
 import com.naver.mei.sdk.error.MeiSDKException;
 import com.naver.mei.sdk.core.image.compositor.ImageCompositionAsyncTask;
@@ -60,6 +61,7 @@ public class ImageCompositor {
 	private MeiCanvasView meiCanvasView;
 	private int outputWidth;
 	private double speedRatio = 1.0;
+	private GifEncodingOptions.OutputFormat outputFormat = GifEncodingOptions.OutputFormat.GIF;
 
 	public ImageCompositor() {
 		stickerViews = new ArrayList<>();
@@ -117,6 +119,14 @@ public class ImageCompositor {
 		return this;
 	}
 
+	/**
+	 * 움직이는 결과물의 형식. GIF(기본값) 또는 WEBP (animated WebP)
+	 */
+	public ImageCompositor setOutputFormat(GifEncodingOptions.OutputFormat outputFormat) {
+		this.outputFormat = outputFormat;
+		return this;
+	}
+
 	/**
 	 * 입력된 이미지와 스티커들을 합성한다.
 	 * 결과는 ImageMakerListener의 callback으로 전달된다.
@@ -144,7 +154,9 @@ public class ImageCompositor {
 			outputWidth = DEFAULT_WIDTH;
 		}
 
-		new ImageCompositionAsyncTask(composables, meiEventListener, savedFilePath, outputWidth, speedRatio).execute();
+		GifEncodingOptions encodingOptions = GifEncodingOptions.asDefault();
+		encodingOptions.setOutputFormat(outputFormat);
+		new ImageCompositionAsyncTask(composables, meiEventListener, savedFilePath, outputWidth, speedRatio, encodingOptions).execute();
 	}
 
 	private List<Composable> getComposableFromStickerVies() {
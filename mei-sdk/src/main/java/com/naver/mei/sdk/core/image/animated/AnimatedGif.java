@@ -22,8 +22,11 @@ import com.naver.mei.sdk.core.image.compositor.MeiImageProcessor;
 import com.naver.mei.sdk.error.MeiSDKErrorType;
 import com.naver.mei.sdk.error.MeiSDKException;
 import com.naver.mei.sdk.core.gif.decoder.GifDecoder;
+import com.naver.mei.sdk.core.gif.decoder.GifSource;
 import com.naver.mei.sdk.core.image.compositor.element.Frame;
 
+import java.nio.ByteBuffer;
+
 /**
  * Created by GTPark on 2016-10-27.
  */
@@ -44,15 +47,24 @@ public class AnimatedGif extends Animated {
 	 * @param resizeHeight getFrame시 반횐될 Bitmap size의 height
 	 */
 	public AnimatedGif(byte[] bytesGif, int resizeWidth, int resizeHeight) {
+		this(ByteBuffer.wrap(bytesGif), resizeWidth, resizeHeight);
+	}
+
+	/**
+	 * @param gif Gif 데이터. GifSource로 매핑한 buffer는 heap을 사용하지 않고 다른 AnimatedGif와 공유된다.
+	 * @param resizeWidth getFrame시 반횐될 Bitmap size의 width
+	 * @param resizeHeight getFrame시 반횐될 Bitmap size의 height
+	 */
+	public AnimatedGif(ByteBuffer gif, int resizeWidth, int resizeHeight) {
 		super(resizeWidth, resizeHeight);
 
 		int sampleSize = 1;
 		if (resizeWidth >= 1 && resizeHeight >= 1) {
-			sampleSize = MeiImageProcessor.getResizeOptions(MeiImageProcessor.getImageBoundsOptions(bytesGif), resizeWidth, resizeHeight).inSampleSize;
+			sampleSize = MeiImageProcessor.getResizeOptions(GifSource.getWidth(gif), GifSource.getHeight(gif), resizeWidth, resizeHeight).inSampleSize;
 		}
 
 		GifDecoder decoder = new GifDecoder();
-		decoder.read(bytesGif, sampleSize);
+		decoder.read(gif, sampleSize);
 		this.decoder = decoder;
 		this.frameCount = decoder.getFrameCount();
 		this.lastAccessFrameIndex = -1;
@@ -63,7 +75,11 @@ public class AnimatedGif extends Animated {
 	 * getFrame시 반환될 bitmap size를 정확히 모를때 활용. width, height가 비율을 유지하되, maxWidth, maxHeight보다는 작은 이미지를 반환한다.
 	 */
 	public static AnimatedGif createInstanceWithMaxSize(byte[] bytesGif, int maxWidth, int maxHeight) {
-		AnimatedGif instance = new AnimatedGif(bytesGif, maxWidth, maxHeight);
+		return createInstanceWithMaxSize(ByteBuffer.wrap(bytesGif), maxWidth, maxHeight);
+	}
+
+	public static AnimatedGif createInstanceWithMaxSize(ByteBuffer gif, int maxWidth, int maxHeight) {
+		AnimatedGif instance = new AnimatedGif(gif, maxWidth, maxHeight);
 		instance.resizeWidth = -1;
 		instance.resizeHeight = -1;
 		return instance;
@@ -104,10 +120,10 @@ public class AnimatedGif extends Animated {
 		// cache hit
 		if (lastAccessFrameIndex == index) return frame();
 
-		// move to frame pointer
-		while (lastAccessFrameIndex != index) {
-			next();
-		}
+		// the decoder rebuilds the canvas from its nearest snapshot
+		decoder.seekTo(index);
+		lastAccessFrameIndex = index;
+		lastAccessFrame = null;
 
 		return frame();
 	}
@@ -117,6 +133,14 @@ public class AnimatedGif extends Animated {
 		return decoder.getFrameCount();
 	}
 
+	/**
+	 * 디코딩 버퍼를 다른 gif가 재사용할 수 있도록 반환한다. 이후에는 사용할 수 없다.
+	 */
+	public void recycle() {
+		decoder.clear();
+		lastAccessFrame = null;
+	}
+
 	@Override
 	public int getDuration() {
 		return duration;
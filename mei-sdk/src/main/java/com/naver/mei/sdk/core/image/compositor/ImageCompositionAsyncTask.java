@@ -20,6 +20,7 @@ import android.os.AsyncTask;
 import android.text.TextUtils;
 
 import com.naver.mei.sdk.core.common.ProgressCallback;
+import com.naver.mei.sdk.core.gif.encoder.GifEncodingOptions;
 import com.naver.mei.sdk.error.MeiSDKErrorType;
 import com.naver.mei.sdk.error.MeiLog;
 import com.naver.mei.sdk.core.image.meta.Composable;
@@ -42,16 +43,27 @@ public class ImageCompositionAsyncTask extends AsyncTask<Void, Double, Boolean>
 	private String savedFilePath;
 	private int outputWidth;
 	private double speedRatio;
+	private GifEncodingOptions encodingOptions;
 
 	public ImageCompositionAsyncTask(List<Composable> composables, MeiEventListener eventListener, String savedFilePath, int outputWidth, double speedRatio) {
+		this(composables, eventListener, savedFilePath, outputWidth, speedRatio, GifEncodingOptions.asDefault());
+	}
+
+	/**
+	 * @param encodingOptions options of the animation. the output format decides between GIF and WebP
+	 */
+	public ImageCompositionAsyncTask(List<Composable> composables, MeiEventListener eventListener, String savedFilePath, int outputWidth, double speedRatio,
+									 GifEncodingOptions encodingOptions) {
 		this.composables = composables;
 		this.eventListener = eventListener;
 		this.savedFilePath = savedFilePath;
 		this.outputWidth = outputWidth;
 		this.speedRatio = speedRatio;
+		this.encodingOptions = encodingOptions;
 
 		if (TextUtils.isEmpty(savedFilePath)) {
-			this.savedFilePath = MeiFileUtils.getUniquePath(MeiFileUtils.EXTENSION_GIF);
+			this.savedFilePath = MeiFileUtils.getUniquePath(encodingOptions.getOutputFormat() == GifEncodingOptions.OutputFormat.WEBP
+					? MeiFileUtils.EXTENSION_WEBP : MeiFileUtils.EXTENSION_GIF);
 		}
 	}
 
@@ -70,6 +82,7 @@ public class ImageCompositionAsyncTask extends AsyncTask<Void, Double, Boolean>
 
 			int screenWidth = composables.get(0).width;
 			MeiCompositor.ImageType imageType = MeiCompositor.newBuilder()
+					.gifEncodingOptions(encodingOptions)
 					.build(screenWidth, outputWidth)
 					.speedRatio(speedRatio)
 					.composite(composables, fileOutputStream, new ProgressCallback() {
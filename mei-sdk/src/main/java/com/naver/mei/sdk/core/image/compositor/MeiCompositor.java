@@ -21,7 +21,10 @@ import android.graphics.Color;
 
 import com.naver.mei.sdk.core.common.ProgressCallback;
 import com.naver.mei.sdk.core.gif.encoder.AnimatedGifEncoder;
+import com.naver.mei.sdk.core.gif.encoder.AnimatedImageEncoder;
+import com.naver.mei.sdk.core.gif.encoder.GifEncodingOptions;
 import com.naver.mei.sdk.core.image.compositor.element.AnimatedElement;
+import com.naver.mei.sdk.core.image.compositor.element.AnimatedGifElement;
 import com.naver.mei.sdk.core.image.compositor.element.CompositionElement;
 import com.naver.mei.sdk.core.image.compositor.strategy.BackgroundFirstDurationStrategy;
 import com.naver.mei.sdk.core.image.compositor.strategy.DurationStrategy;
@@ -53,17 +56,19 @@ public class MeiCompositor {
 	private DurationStrategy durationStrategy;
 	private FrameRateStrategy frameRateStrategy;
 	private FramePickStrategy framePickStrategy;
+	private GifEncodingOptions gifEncodingOptions;
 
 	private double speedRatio = 1.0;
 
 	long startTime = System.currentTimeMillis();
 
 	// must construct by newBuilder method
-	private MeiCompositor(double resizeRatio, DurationStrategy durationStrategy, FrameRateStrategy frameRateStrategy, FramePickStrategy framePickStrategy) {
+	private MeiCompositor(double resizeRatio, DurationStrategy durationStrategy, FrameRateStrategy frameRateStrategy, FramePickStrategy framePickStrategy, GifEncodingOptions gifEncodingOptions) {
 		this.realizer = new MetaRealizer(resizeRatio);
 		this.durationStrategy = durationStrategy;
 		this.frameRateStrategy = frameRateStrategy;
 		this.framePickStrategy = framePickStrategy;
+		this.gifEncodingOptions = gifEncodingOptions;
 	}
 
 
@@ -84,7 +89,7 @@ public class MeiCompositor {
 	 * @param metas        Composable metas
 	 * @param outputStream outputStream
 	 * @param callback     ProgressCallback
-	 * @return isGif
+	 * @return JPEG for a still image, otherwise GIF or WEBP by the output format of the encoding options
 	 */
 	public ImageType composite(List<Composable> metas, OutputStream outputStream, ProgressCallback callback) {
 		if (MeiIOUtils.isStorageSpaceFull()) {
@@ -99,8 +104,8 @@ public class MeiCompositor {
 			compositeImage(compositionElements, outputStream, callback);
 			return ImageType.JPEG;
 		} else {
-			compositeGif(compositionElements, animatedElements, outputStream, callback);
-			return ImageType.GIF;
+			compositeAnimation(compositionElements, animatedElements, outputStream, callback);
+			return gifEncodingOptions.getOutputFormat() == GifEncodingOptions.OutputFormat.WEBP ? ImageType.WEBP : ImageType.GIF;
 		}
 	}
 
@@ -112,18 +117,24 @@ public class MeiCompositor {
 		compositedResult.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
 	}
 
-	private void compositeGif(List<CompositionElement> compositionElements, List<AnimatedElement> animatedElements, OutputStream outputStream, ProgressCallback callback) {
+	private void compositeAnimation(List<CompositionElement> compositionElements, List<AnimatedElement> animatedElements, OutputStream outputStream, ProgressCallback callback) {
 //		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		BufferedOutputStream bos = new BufferedOutputStream(outputStream);
-		AnimatedGifEncoder encoder = new AnimatedGifEncoder();
-		encoder.setQuality(10);
-		encoder.setMapQuality(7);
+		AnimatedImageEncoder encoder = gifEncodingOptions.createEncoder();
+		// the WebP muxer writes whole frames, and patches the header in place when given the file stream itself
+		OutputStream bos = encoder instanceof AnimatedGifEncoder ? new BufferedOutputStream(outputStream) : outputStream;
 		encoder.setRepeat(0);    // infinity repeat
 		encoder.start(bos);        // assign output stream
 
+		for (AnimatedElement animatedElement : animatedElements) {
+			if (animatedElement instanceof AnimatedGifElement) {
+				((AnimatedGifElement) animatedElement).setDecodeParallelism(gifEncodingOptions.getParallelism());
+			}
+		}
+
 		long startTime = System.currentTimeMillis();
 		int duration = durationStrategy.calculate(compositionElements.get(0), animatedElements);
 		List<Integer> frameTimestamps = frameRateStrategy.calculate(animatedElements, duration, speedRatio);
+		encoder.setExpectedFrameCount(frameTimestamps.size());
 		int count = 0;
 		int runTime = 0;
 		int backgroundWidth = compositionElements.get(0).width;
@@ -194,6 +205,7 @@ public class MeiCompositor {
 		private DurationStrategy durationStrategy;
 		private FrameRateStrategy frameRateStrategy;
 		private FramePickStrategy framePickStrategy;
+		private GifEncodingOptions gifEncodingOptions;
 		private double resizeRatio = 1.0;
 
 		public Builder durationStrategy(DurationStrategy durationStrategy) {
@@ -211,6 +223,11 @@ public class MeiCompositor {
 			return this;
 		}
 
+		public Builder gifEncodingOptions(GifEncodingOptions gifEncodingOptions) {
+			this.gifEncodingOptions = gifEncodingOptions;
+			return this;
+		}
+
 		public MeiCompositor build(int editingAreaWidth, int targetWidth) {
 			if (this.durationStrategy == null)
 				this.durationStrategy = new BackgroundFirstDurationStrategy();
@@ -218,13 +235,16 @@ public class MeiCompositor {
 				this.frameRateStrategy = new SmoothFrameRateStrategy();
 			if (this.framePickStrategy == null)
 				this.framePickStrategy = new IterativeFramePickStrategy();
+			if (this.gifEncodingOptions == null)
+				this.gifEncodingOptions = GifEncodingOptions.asDefault();
 
-			return new MeiCompositor(targetWidth / (double) editingAreaWidth, this.durationStrategy, this.frameRateStrategy, this.framePickStrategy);
+			return new MeiCompositor(targetWidth / (double) editingAreaWidth, this.durationStrategy, this.frameRateStrategy, this.framePickStrategy, this.gifEncodingOptions);
 		}
 	}
 
 	public enum ImageType {
 		GIF("gif"),
+		WEBP("webp"),
 		JPEG("jpg");
 
 		public final String extension;
@@ -22,6 +22,9 @@ import com.naver.mei.sdk.error.MeiSDKException;
 import com.naver.mei.sdk.core.gif.decoder.GifDecoder;
 import com.naver.mei.sdk.core.image.compositor.MeiImageProcessor;
 import com.naver.mei.sdk.core.image.meta.ComposableImage;
+import com.naver.mei.sdk.core.image.meta.PlayDirection;
+
+import java.util.List;
 
 /**
  * Created by GTPark on 2016-10-17.
@@ -29,9 +32,14 @@ import com.naver.mei.sdk.core.image.meta.ComposableImage;
  */
 
 public class AnimatedGifElement extends AnimatedElement {
+	private static final int PREFETCH_FRAMES_PER_THREAD = 2;
+
 	private GifDecoder decoder;
 	private int lastAccessFrameIndex;
 	private Frame lastAccessFrame;
+	private int decodeParallelism = 1;
+	private int prefetchStart;
+	private Frame[] prefetchedFrames;	// frames from prefetchStart, decoded ahead in play order
 
 	public AnimatedGifElement(GifDecoder decoder, ComposableImage meta, double resizeRatio) {
 		super(meta, decoder.getFrameCount(), meta.playDirection, resizeRatio);
@@ -41,9 +49,19 @@ public class AnimatedGifElement extends AnimatedElement {
 	}
 
 
+	/**
+	 * Lets getFrame decode the next few frames in play order along with the requested one,
+	 * those which do not depend on the previous frames in parallel.
+	 *
+	 * @param parallelism number of decoding threads. 1 decodes the requested frame only.
+	 */
+	public void setDecodeParallelism(int parallelism) {
+		this.decodeParallelism = Math.max(1, parallelism);
+		this.prefetchedFrames = null;
+	}
+
 	@Override
 	public void next() {
-		// TODO gif decoder가 정방향 advance밖에 정상적으로 지원하지 않는 것인지 확인 후 최적화가 필요하다.
 		decoder.advance();
 		lastAccessFrameIndex = (lastAccessFrameIndex + 1) % getFrameCount();
 		lastAccessFrame = null;
@@ -85,19 +103,52 @@ public class AnimatedGifElement extends AnimatedElement {
 			throw new MeiSDKException(MeiSDKErrorType.FRAME_INDEX_OUT_OF_BOUND);
 		}
 
+		// reverse, or the second half of boomerang, plays the frames backward
+		boolean backward = playDirection == PlayDirection.REVERSE
+				|| (playDirection == PlayDirection.BOOMERANG && index >= originalFrameCount);
 		index = adjustFrameIndex(index);
 
 		// cache hit
 		if (lastAccessFrameIndex == index) return frame();
 
-		// move to frame pointer
-		while (lastAccessFrameIndex != index) {
-			next();
-		}
+		// the decoder rebuilds the canvas from its nearest snapshot
+		decoder.seekTo(index);
+		lastAccessFrameIndex = index;
+		lastAccessFrame = decodeParallelism > 1 ? getPrefetchedFrame(index, backward) : null;
 
 		return frame();
 	}
 
+	private Frame getPrefetchedFrame(int index, boolean backward) {
+		if (index < 0 || index >= originalFrameCount) return null;
+
+		if (prefetchedFrames == null || index < prefetchStart || index >= prefetchStart + prefetchedFrames.length) {
+			prefetch(index, backward);
+		}
+
+		return prefetchedFrames != null ? prefetchedFrames[index - prefetchStart] : null;
+	}
+
+	private void prefetch(int index, boolean backward) {
+		prefetchedFrames = null;
+		int count = Math.min(decodeParallelism * PREFETCH_FRAMES_PER_THREAD, originalFrameCount);
+		int start = backward ? Math.max(0, index - count + 1) : index;
+		count = Math.min(count, originalFrameCount - start);
+
+		List<Bitmap> bitmaps = decoder.getFrames(start, count, decodeParallelism);
+		decoder.seekTo(index);
+		if (bitmaps == null || bitmaps.size() != count) return;	// frame() decodes the frame alone
+
+		Frame[] frames = new Frame[count];
+		for (int i = 0; i < count; ++i) {
+			Bitmap bitmap = bitmaps.get(i);
+			frames[i] = new Frame(MeiImageProcessor.resize(bitmap, width, height), decoder.getDelay(start + i));
+			decoder.release(bitmap);
+		}
+		prefetchStart = start;
+		prefetchedFrames = frames;
+	}
+
 	private int adjustFrameIndex(int index) {
 		switch (playDirection) {
 			case FORWARD:
@@ -23,10 +23,10 @@ import android.text.StaticLayout;
 import android.util.Log;
 
 import com.naver.mei.sdk.MeiSDK;
-import com.naver.mei.sdk.core.image.util.IOHelper;
 import com.naver.mei.sdk.error.MeiSDKErrorType;
 import com.naver.mei.sdk.error.MeiSDKException;
 import com.naver.mei.sdk.core.gif.decoder.GifDecoder;
+import com.naver.mei.sdk.core.gif.decoder.GifSource;
 import com.naver.mei.sdk.core.image.animated.AnimatedGif;
 import com.naver.mei.sdk.core.image.animated.AnimatedMultiFrame;
 import com.naver.mei.sdk.core.image.animated.MultiFrame;
@@ -34,11 +34,11 @@ import com.naver.mei.sdk.core.image.compositor.element.AnimatedGifElement;
 import com.naver.mei.sdk.core.image.compositor.element.AnimatedMultiFrameElement;
 import com.naver.mei.sdk.core.image.compositor.element.BitmapElement;
 import com.naver.mei.sdk.core.image.compositor.element.CompositionElement;
-import com.naver.mei.sdk.core.utils.GIFUtils;
 
 import org.apache.commons.io.IOUtils;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -84,9 +84,9 @@ public class MetaRealizer {
 	}
 
 	public static AnimatedGif createAnimatedGif(URI uri) {
-		byte[] bytesImage = IOHelper.getImageBytes(uri);
-		if (!GIFUtils.isGif(bytesImage)) return null;
-		return new AnimatedGif(bytesImage);
+		ByteBuffer gif = GifSource.open(uri);
+		if (!GifSource.isGif(gif)) return null;
+		return new AnimatedGif(gif, -1, -1);
 	}
 
 	public static AnimatedMultiFrame  createAnimatedMultiFrame(MultiFrame multiFrame) {
@@ -94,12 +94,15 @@ public class MetaRealizer {
 	}
 
 	private CompositionElement createImageElement(ComposableImage meta) {
-		byte[] bytesImage = IOHelper.getImageBytes(meta.uri);
-		if (GIFUtils.isGif(bytesImage)) {
+		// gifs are decoded from the mapped file, without a copy in the heap
+		ByteBuffer image = GifSource.open(meta.uri);
+		if (GifSource.isGif(image)) {
 			GifDecoder decoder = new GifDecoder();
-			decoder.read(bytesImage);
+			decoder.read(image, 1);
 			return new AnimatedGifElement(decoder, meta, resizeRatio);
 		} else {
+			byte[] bytesImage = new byte[image.remaining()];
+			image.get(bytesImage);
 			return new BitmapElement(bytesImage, meta, resizeRatio);
 		}
 	}
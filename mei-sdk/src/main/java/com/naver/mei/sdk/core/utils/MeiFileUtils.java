@@ -43,6 +43,7 @@ public class MeiFileUtils {
 	private static final String TEMP_POSTFIX = "/temp/";
 	public static final String EXTENSION_JPG = "jpg";
 	public static final String EXTENSION_GIF = "gif";
+	public static final String EXTENSION_WEBP = "webp";
 	public static final String EXTENSION_MP4 = "mp4";
 	private static String meiStorage;
 
@@ -0,0 +1,193 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.video;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import com.naver.mei.sdk.error.MeiLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * H.264 encoder of the device, through MediaCodec with YUV 4:2:0 input buffers.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class MediaCodecVideoEncoder implements VideoEncoder {
+	private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+	private static final int I_FRAME_INTERVAL = 1;	// seconds
+	private static final long TIMEOUT_US = 10000;
+	private static final int MAX_TRY_AGAIN = 500;	// of TIMEOUT_US, while draining at the end
+
+	private MediaCodec mediaCodec;
+	private MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+	private Output output;
+	private boolean semiPlanar;	// NV12 input instead of I420
+	private byte[] input;	// yuv reordered for semi planar input
+	private boolean codecConfigSent;
+
+	@Override
+	public void start(int width, int height, int frameRate, int bitRate, Output output) throws IOException {
+		this.output = output;
+		this.codecConfigSent = false;
+		mediaCodec = MediaCodec.createEncoderByType(MIME_TYPE);
+
+		int colorFormat = selectColorFormat(mediaCodec.getCodecInfo());
+		semiPlanar = colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar;
+
+		MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, width, height);
+		format.setInteger(MediaFormat.KEY_COLOR_FORMAT, colorFormat);
+		format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+		format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+		format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL);
+		mediaCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+		mediaCodec.start();
+		MeiLog.d("video encoder : " + mediaCodec.getName() + ", " + width + "x" + height + ", " + (semiPlanar ? "NV12" : "I420"));
+	}
+
+	@Override
+	public void encode(byte[] yuv, long presentationTimeUs) throws IOException {
+		int length = yuv.length;
+		byte[] data = semiPlanar ? toSemiPlanar(yuv) : yuv;
+		int inputIndex;
+		while ((inputIndex = mediaCodec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+			drain(false); // make room
+		}
+
+		ByteBuffer inputBuffer = mediaCodec.getInputBuffer(inputIndex);
+		inputBuffer.clear();
+		inputBuffer.put(data, 0, length);
+		mediaCodec.queueInputBuffer(inputIndex, 0, length, presentationTimeUs, 0);
+		drain(false);
+	}
+
+	@Override
+	public void finish() throws IOException {
+		int inputIndex;
+		while ((inputIndex = mediaCodec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+			drain(false);
+		}
+		mediaCodec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+		drain(true);
+	}
+
+	@Override
+	public void release() {
+		if (mediaCodec != null) {
+			try {
+				mediaCodec.stop();
+			} catch (IllegalStateException e) {
+				MeiLog.e("failed to stop the video encoder", e);
+			}
+			mediaCodec.release();
+			mediaCodec = null;
+		}
+		input = null;
+	}
+
+	/**
+	 * Hands the encoded frames to the output. Until the end of the stream when endOfStream
+	 */
+	private void drain(boolean endOfStream) throws IOException {
+		int tryAgainCount = 0;
+		while (true) {
+			int outputIndex = mediaCodec.dequeueOutputBuffer(bufferInfo, endOfStream ? TIMEOUT_US : 0);
+			if (outputIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+				if (!endOfStream) {
+					return;
+				}
+				if (++tryAgainCount > MAX_TRY_AGAIN) {
+					throw new IOException("video encoder did not reach the end of stream");
+				}
+			} else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+				sendCodecConfig(mediaCodec.getOutputFormat());
+			} else if (outputIndex >= 0) {
+				ByteBuffer outputBuffer = mediaCodec.getOutputBuffer(outputIndex);
+				outputBuffer.position(bufferInfo.offset);
+				outputBuffer.limit(bufferInfo.offset + bufferInfo.size);
+				if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+					if (!codecConfigSent && bufferInfo.size > 0) {
+						output.onCodecConfig(outputBuffer); // before the format on some devices
+						codecConfigSent = true;
+					}
+				} else if (bufferInfo.size > 0) {
+					output.onSample(outputBuffer, bufferInfo.presentationTimeUs, (bufferInfo.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0);
+				}
+				mediaCodec.releaseOutputBuffer(outputIndex, false);
+
+				if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+					return;
+				}
+			}
+		}
+	}
+
+	// SPS and PPS of the output format
+	private void sendCodecConfig(MediaFormat format) throws IOException {
+		if (codecConfigSent) {
+			return;
+		}
+
+		ByteBuffer sps = format.getByteBuffer("csd-0");
+		ByteBuffer pps = format.getByteBuffer("csd-1");
+		if (sps == null || pps == null) {
+			return; // given as a codec config buffer
+		}
+
+		ByteBuffer codecConfig = ByteBuffer.allocate(sps.remaining() + pps.remaining());
+		codecConfig.put(sps.duplicate());
+		codecConfig.put(pps.duplicate());
+		codecConfig.flip();
+		output.onCodecConfig(codecConfig);
+		codecConfigSent = true;
+	}
+
+	// I420 planes to the Y plane and interleaved UV of NV12
+	private byte[] toSemiPlanar(byte[] yuv) {
+		if (input == null || input.length != yuv.length) {
+			input = new byte[yuv.length];
+		}
+
+		int lumaSize = yuv.length * 2 / 3;
+		int chromaSize = lumaSize / 4;
+		System.arraycopy(yuv, 0, input, 0, lumaSize);
+		for (int i = 0, k = lumaSize; i < chromaSize; ++i) {
+			input[k++] = yuv[lumaSize + i];
+			input[k++] = yuv[lumaSize + chromaSize + i];
+		}
+		return input;
+	}
+
+	private static int selectColorFormat(MediaCodecInfo codecInfo) throws IOException {
+		int[] colorFormats = codecInfo.getCapabilitiesForType(MIME_TYPE).colorFormats;
+		for (int colorFormat : colorFormats) {
+			if (colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar) {
+				return colorFormat;
+			}
+		}
+		for (int colorFormat : colorFormats) {
+			if (colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar) {
+				return colorFormat;
+			}
+		}
+		throw new IOException("no YUV 4:2:0 input in " + codecInfo.getName());
+	}
+}
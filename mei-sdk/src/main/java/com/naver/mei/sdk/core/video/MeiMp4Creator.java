@@ -15,10 +15,287 @@ limitations under the License.
  */
 package com.naver.mei.sdk.core.video;
 
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import com.naver.mei.sdk.core.gif.encoder.AnimatedGifEncoder;
+import com.naver.mei.sdk.error.MeiLog;
+import com.naver.mei.sdk.error.MeiSDKErrorType;
+import com.naver.mei.sdk.error.MeiSDKException;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 /**
  * Created by tigerbaby on 2017-02-21.
+ * <p/>
+ * Encodes composed frames, e.g. of MeiCompositor or MeiScreenRecorder, to an H.264 MP4 file.
+ * Frames are given with their delay or with their timestamp, converted to YUV, encoded by the {@link VideoEncoder}
+ * and streamed to the file. Frames closer than the max frame rate allows are dropped, and the kept frames
+ * last until the next one, so the timing of the animation is kept. Called on one background thread.
  */
-
 public class MeiMp4Creator {
+	public static final int DEFAULT_MAX_FRAME_RATE = 30;
+	private static final float BITS_PER_PIXEL = 0.1f;	// per frame, for the default bit rate
+
+	private final VideoEncoder videoEncoder;
+	private int maxFrameRate = DEFAULT_MAX_FRAME_RATE;
+	private int bitRate;	// 0 = from the size and the frame rate
+
+	private FileOutputStream out;
+	private Mp4Muxer muxer;
+	private boolean started;
+	private int width;	// even. larger frames are cropped
+	private int height;
+	private byte[] yuv;
+	private int[] argb;
+	private long firstTimestampUs;
+	private long nextPresentationTimeUs;	// after the delay of the last frame
+	private long lastPresentationTimeUs;	// of the last encoded frame. -1 = none
+	private long endTimeUs;	// when the last frame stops being shown
+	private int frameCount;
+	private int droppedFrameCount;
+
+	/**
+	 * Encodes with the H.264 encoder of the device
+	 */
+	@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+	public MeiMp4Creator() {
+		this(new MediaCodecVideoEncoder());
+	}
+
+	/**
+	 * @param videoEncoder e.g. {@link PcmVideoEncoder} for tests
+	 */
+	public MeiMp4Creator(VideoEncoder videoEncoder) {
+		this.videoEncoder = videoEncoder;
+	}
+
+	/**
+	 * Frames coming faster are dropped. Must be invoked before start.
+	 */
+	public MeiMp4Creator setMaxFrameRate(int maxFrameRate) {
+		this.maxFrameRate = Math.max(1, maxFrameRate);
+		return this;
+	}
+
+	/**
+	 * Target bits per second. 0 (default) picks one from the frame size and the max frame rate. Must be invoked before start.
+	 */
+	public MeiMp4Creator setBitRate(int bitRate) {
+		this.bitRate = bitRate;
+		return this;
+	}
+
+	/**
+	 * @param width  frame width. rounded down to even, as YUV 4:2:0 needs
+	 * @param height frame height. rounded down to even
+	 */
+	public void start(String outputFilePath, int width, int height) {
+		this.width = width & ~1;
+		this.height = height & ~1;
+		if (this.width <= 0 || this.height <= 0) {
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_MP4);
+		}
+
+		yuv = new byte[this.width * this.height * 3 / 2];
+		argb = null;
+		nextPresentationTimeUs = 0;
+		lastPresentationTimeUs = -1;
+		endTimeUs = 0;
+		frameCount = 0;
+		droppedFrameCount = 0;
+		try {
+			out = new FileOutputStream(outputFilePath);
+			muxer = new Mp4Muxer(out, this.width, this.height);
+			int bitRate = this.bitRate > 0 ? this.bitRate : (int) (this.width * this.height * maxFrameRate * BITS_PER_PIXEL);
+			videoEncoder.start(this.width, this.height, maxFrameRate, bitRate, muxer);
+		} catch (IOException e) {
+			release();
+			MeiLog.e("failed to start mp4", e);
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_MP4);
+		}
+		started = true;
+	}
+
+	/**
+	 * Adds a frame shown for delayMs, after the frames added before. Bitmaps of another size are scaled.
+	 *
+	 * @return false if dropped
+	 */
+	public boolean addFrame(Bitmap frame, int delayMs) {
+		long presentationTimeUs = nextPresentationTimeUs;
+		nextPresentationTimeUs += Math.max(0, delayMs) * 1000L;
+
+		Bitmap scaled = null;
+		if (frame.getWidth() < width || frame.getHeight() < height || frame.getWidth() > width + 1 || frame.getHeight() > height + 1) {
+			frame = scaled = Bitmap.createScaledBitmap(frame, width, height, true);
+		}
+		if (argb == null) {
+			argb = new int[width * height];
+		}
+		frame.getPixels(argb, 0, width, 0, 0, width, height);
+		if (scaled != null) {
+			scaled.recycle();
+		}
+		return addFrame(argb, null, 0, width, AnimatedGifEncoder.ChannelOrder.ARGB, presentationTimeUs, nextPresentationTimeUs);
+	}
+
+	/**
+	 * Adds a frame captured at timestampUs. It lasts until the next frame, the last one as long as the interval
+	 * before it. The first timestamp is the start of the video.
+	 *
+	 * @param pixels       packed pixels of at least the size given to start, one int each
+	 * @param offset       index of the first pixel of the top row
+	 * @param stride       ints between the starts of two rows. negative for bottom up images
+	 * @param channelOrder ARGB for 0xAARRGGBB (android Color, Bitmap.getPixels) or RGBA for 0xRRGGBBAA
+	 * @return false if dropped
+	 */
+	public boolean addFrame(int[] pixels, int offset, int stride, AnimatedGifEncoder.ChannelOrder channelOrder, long timestampUs) {
+		return addCapturedFrame(pixels, null, offset, stride, channelOrder, timestampUs);
+	}
+
+	/**
+	 * Adds a frame of raw pixels of 4 bytes each captured at timestampUs, e.g. the plane of an RGBA_8888 ImageReader
+	 * as MeiScreenRecorder gets it. The buffer is read by absolute indexes and may be reused as soon as this returns.
+	 * See {@link #addFrame(int[], int, int, AnimatedGifEncoder.ChannelOrder, long)} for the timing.
+	 *
+	 * @param pixels       pixel bytes, heap or direct
+	 * @param offset       byte index of the first pixel of the top row
+	 * @param rowStride    bytes between the starts of two rows. negative for bottom up images
+	 * @param channelOrder byte order of the channels of a pixel. RGBA for GL_RGBA and RGBA_8888
+	 * @return false if dropped
+	 */
+	public boolean addFrame(ByteBuffer pixels, int offset, int rowStride, AnimatedGifEncoder.ChannelOrder channelOrder, long timestampUs) {
+		return addCapturedFrame(null, pixels, offset, rowStride, channelOrder, timestampUs);
+	}
+
+	private boolean addCapturedFrame(int[] intPixels, ByteBuffer bytePixels, int offset, int stride, AnimatedGifEncoder.ChannelOrder channelOrder, long timestampUs) {
+		if (frameCount == 0) {
+			firstTimestampUs = timestampUs;
+		}
+		long presentationTimeUs = timestampUs - firstTimestampUs;
+		long intervalUs = lastPresentationTimeUs >= 0 ? presentationTimeUs - lastPresentationTimeUs : 1000000L / maxFrameRate;
+		nextPresentationTimeUs = presentationTimeUs + intervalUs;
+		return addFrame(intPixels, bytePixels, offset, stride, channelOrder, presentationTimeUs, nextPresentationTimeUs);
+	}
+
+	private boolean addFrame(int[] intPixels, ByteBuffer bytePixels, int offset, int stride, AnimatedGifEncoder.ChannelOrder channelOrder,
+							 long presentationTimeUs, long endTimeUs) {
+		if (!started) {
+			return false;
+		}
+
+		this.endTimeUs = Math.max(this.endTimeUs, endTimeUs);
+		long minIntervalUs = 1000000L / maxFrameRate;
+		if (lastPresentationTimeUs >= 0 && presentationTimeUs - lastPresentationTimeUs < minIntervalUs * 3 / 4) { // a quarter of jitter allowed
+			++droppedFrameCount; // the previous frame lasts longer
+			return false;
+		}
+
+		toI420(intPixels, bytePixels, offset, stride, channelOrder, width, height, yuv);
+		try {
+			videoEncoder.encode(yuv, presentationTimeUs);
+		} catch (IOException e) {
+			MeiLog.e("failed to encode a video frame", e);
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_MP4);
+		}
+		lastPresentationTimeUs = presentationTimeUs;
+		++frameCount;
+		return true;
+	}
+
+	/**
+	 * Encodes the frames left in the encoder and completes the file
+	 */
+	public void finish() {
+		if (!started) {
+			return;
+		}
+
+		started = false;
+		try {
+			videoEncoder.finish();
+			muxer.finish(endTimeUs);
+			MeiLog.d("mp4 frames : " + frameCount + ", dropped : " + droppedFrameCount + ", samples : " + muxer.getSampleCount() + ", duration us : " + endTimeUs);
+		} catch (IOException e) {
+			MeiLog.e("failed to finish mp4", e);
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_MP4);
+		} finally {
+			release();
+		}
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return frames dropped for the max frame rate
+	 */
+	public int getDroppedFrameCount() {
+		return droppedFrameCount;
+	}
+
+	private void release() {
+		videoEncoder.release();
+		IOUtils.closeQuietly(out);
+		out = null;
+		muxer = null;
+		yuv = null;
+		argb = null;
+	}
+
+	/**
+	 * Converts to planar YUV 4:2:0 of BT.601 limited range. Chroma is the average of 2x2 pixels.
+	 * Reads intPixels when given, bytePixels otherwise. stride is in ints or bytes accordingly.
+	 */
+	static void toI420(int[] intPixels, ByteBuffer bytePixels, int offset, int stride, AnimatedGifEncoder.ChannelOrder channelOrder,
+					   int width, int height, byte[] yuv) {
+		boolean rgba = channelOrder == AnimatedGifEncoder.ChannelOrder.RGBA;
+		int pixelSize = intPixels != null ? 1 : 4;
+		int uIndex = width * height;
+		int vIndex = uIndex + uIndex / 4;
+		for (int y = 0; y < height; y += 2) {
+			int row = offset + y * stride;
+			int yIndex = y * width;
+			for (int x = 0; x < width; x += 2) {
+				int s = row + x * pixelSize;
+				int p00 = readPixel(intPixels, bytePixels, s, rgba);
+				int p01 = readPixel(intPixels, bytePixels, s + pixelSize, rgba);
+				int p10 = readPixel(intPixels, bytePixels, s + stride, rgba);
+				int p11 = readPixel(intPixels, bytePixels, s + stride + pixelSize, rgba);
+				yuv[yIndex + x] = luma(p00);
+				yuv[yIndex + x + 1] = luma(p01);
+				yuv[yIndex + width + x] = luma(p10);
+				yuv[yIndex + width + x + 1] = luma(p11);
+
+				int r = ((p00 >> 16) & 0xff) + ((p01 >> 16) & 0xff) + ((p10 >> 16) & 0xff) + ((p11 >> 16) & 0xff);
+				int g = ((p00 >> 8) & 0xff) + ((p01 >> 8) & 0xff) + ((p10 >> 8) & 0xff) + ((p11 >> 8) & 0xff);
+				int b = (p00 & 0xff) + (p01 & 0xff) + (p10 & 0xff) + (p11 & 0xff);
+				yuv[uIndex++] = (byte) (((-38 * r - 74 * g + 112 * b + 512) >> 10) + 128);
+				yuv[vIndex++] = (byte) (((112 * r - 94 * g - 18 * b + 512) >> 10) + 128);
+			}
+		}
+	}
+
+	// ARGB pixel at index, an int index of intPixels or a byte index of bytePixels
+	private static int readPixel(int[] intPixels, ByteBuffer bytePixels, int index, boolean rgba) {
+		int pixel;
+		if (intPixels != null) {
+			pixel = intPixels[index];
+		} else {
+			pixel = ((bytePixels.get(index) & 0xff) << 24) | ((bytePixels.get(index + 1) & 0xff) << 16)
+					| ((bytePixels.get(index + 2) & 0xff) << 8) | (bytePixels.get(index + 3) & 0xff);
+		}
+		return rgba ? (pixel >>> 8) | (pixel << 24) : pixel;
+	}
 
+	private static byte luma(int argb) {
+		return (byte) (((66 * ((argb >> 16) & 0xff) + 129 * ((argb >> 8) & 0xff) + 25 * (argb & 0xff) + 128) >> 8) + 16);
+	}
 }
@@ -42,17 +42,17 @@ import android.view.WindowManager;
 
 import com.naver.mei.sdk.MeiGifEncoder;
 import com.naver.mei.sdk.MeiSDK;
+import com.naver.mei.sdk.core.gif.encoder.AnimatedGifEncoder;
 import com.naver.mei.sdk.core.gif.encoder.EncodingListener;
 import com.naver.mei.sdk.core.gif.encoder.GifEncodingOptions;
 import com.naver.mei.sdk.core.gif.encoder.GifQueuingEncodable;
+import com.naver.mei.sdk.core.gif.encoder.GifQueuingEncoderAsyncTask;
 import com.naver.mei.sdk.core.utils.MeiFileUtils;
 import com.naver.mei.sdk.error.MeiSDKErrorType;
 import com.naver.mei.sdk.error.MeiSDKException;
 import com.naver.mei.sdk.listener.MeiQueuingEventListener;
 
-import java.io.File;
 import java.io.FileOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
@@ -92,6 +92,7 @@ public class MeiScreenRecorder {
 	private Handler captureHandler;
 	private GifQueuingEncodable encodable;
 	private GifEncodingOptions gifEncodingOptions;
+	private GifQueuingEncoderAsyncTask.OverflowPolicy queueOverflowPolicy = GifQueuingEncoderAsyncTask.OverflowPolicy.BLOCK;
 	private int fps;
 
 	public MeiScreenRecorder(Activity activity, View targetView) {
@@ -167,6 +168,22 @@ public class MeiScreenRecorder {
 		return gifEncodingOptions;
 	}
 
+	/**
+	 * Coalesces captures equal to the previous one into a longer frame. The screen is often still between captures.
+	 * Off by default. Call before start.
+	 */
+	public void setCoalesceDuplicateFrames(boolean coalesceDuplicateFrames) {
+		gifEncodingOptions.setCoalesceDuplicateFrames(coalesceDuplicateFrames);
+	}
+
+	/**
+	 * What to do with a capture while the encoder lags behind. ADAPTIVE_FPS captures less often until it catches up.
+	 * BLOCK by default. Call before start.
+	 */
+	public void setQueueOverflowPolicy(GifQueuingEncoderAsyncTask.OverflowPolicy queueOverflowPolicy) {
+		this.queueOverflowPolicy = queueOverflowPolicy;
+	}
+
 	public void setWatermark(String watermarkUri, WatermarkPosition position, int margin) {
 		this.watermarkOptions = new WatermarkOptions(watermarkUri, position, margin);
 	}
@@ -192,6 +209,9 @@ public class MeiScreenRecorder {
 		encodable = MeiGifEncoder.newInstance()
 				.setQuality(gifEncodingOptions.getQuality())
 				.setColorLevel(gifEncodingOptions.getColorLevel())
+				.setCoalesceDuplicateFrames(gifEncodingOptions.isCoalesceDuplicateFrames())
+				.setDuplicateFrameTolerance(gifEncodingOptions.getDuplicateFrameTolerance())
+				.setQueueOverflowPolicy(queueOverflowPolicy)
 				.setDelay(1000 / fps)
 				.encodeWithQueuing(fileOutputStream, new EncodingListener() {
 					@Override
@@ -242,7 +262,6 @@ public class MeiScreenRecorder {
 
 	private void captureImage() {
 		Image image = null;
-		FileOutputStream fileOutputStream = null;
 		Bitmap bitmap = null;
 
 		try {
@@ -252,30 +271,29 @@ public class MeiScreenRecorder {
 
 			if (image != null && pastedTime >= nanoInterval) {
 				captureTimeStampInNanoSec = image.getTimestamp();
+				if (!encodable.isFrameWanted()) {
+					return; // dropped to lower the frame rate. the previous frame is shown longer
+				}
+
+				if (watermarkOptions == null) {
+					// queue the target view area of the plane as is
+					Image.Plane plane = image.getPlanes()[0];
+					int rowStride = plane.getRowStride();
+					int offset = cropOptions.getTop() * rowStride + cropOptions.getLeft() * plane.getPixelStride();
+					encodable.addFrame(plane.getBuffer(), offset, rowStride, cropOptions.getWidth(), cropOptions.getHeight(), AnimatedGifEncoder.ChannelOrder.RGBA);
+					return;
+				}
 
 				//crop to fit target view size
 				bitmap = Bitmap.createBitmap(getBitmapFromImageReader(image), cropOptions.getLeft(), cropOptions.getTop(), cropOptions.getWidth(), cropOptions.getHeight());
 
 				if (bitmap != null) {
-					if (watermarkOptions != null) {
-						bitmap = WatermarkHelper.drawWatermark(bitmap, watermarkOptions);
-					}
-
-					String path = MeiFileUtils.getTemporaryUniquePath(MeiFileUtils.EXTENSION_JPG);
-					fileOutputStream = new FileOutputStream(path);
-					bitmap.compress(Bitmap.CompressFormat.JPEG, 100, fileOutputStream);
-					encodable.addFrame(new File(path));
+					bitmap = WatermarkHelper.drawWatermark(bitmap, watermarkOptions);
+					encodable.addFrame(bitmap); // copied to the queue
 				}
 			}
 		} catch (Exception e) {
 		} finally {
-			if (fileOutputStream != null) {
-				try {
-					fileOutputStream.close();
-				} catch (IOException ioe) {
-				}
-			}
-
 			if (bitmap != null) {
 				bitmap.recycle();
 			}
@@ -47,6 +47,7 @@ import java.util.List;
 
 public class MeiVideoFrameExtractor extends AsyncTask<Void, Double, Void> {
 	private static final int BITMAP_MAX_SIZE = 1000;
+	private static final int DUPLICATE_FRAME_TOLERANCE = 2;	// decoding noise of still scenes
 	private VideoToGifParams videoToGifParams;
 	private MeiEventListener eventListener;
 	private MeiFrameListener frameListener;
@@ -128,6 +129,8 @@ public class MeiVideoFrameExtractor extends AsyncTask<Void, Double, Void> {
 				encoder.setQuality(10);
 				encoder.setMapQuality(8);
 				encoder.setDelay(delayMs);
+				encoder.setCoalesceDuplicateFrames(true);
+				encoder.setDuplicateFrameTolerance(DUPLICATE_FRAME_TOLERANCE);
 				encoder.start(byteOutputStream);
 			}
 
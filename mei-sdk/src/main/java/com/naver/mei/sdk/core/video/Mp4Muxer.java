@@ -0,0 +1,529 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.video;
+
+import com.naver.mei.sdk.error.MeiLog;
+import com.naver.mei.sdk.error.MeiSDKErrorType;
+import com.naver.mei.sdk.error.MeiSDKException;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Writes one H.264 track to an MP4 file while the samples come. (ftyp, mdat, then moov)
+ * The samples are streamed to the mdat box, whose size is patched in place at finish, and only the
+ * sample tables are kept in memory until the moov box is written at the end.
+ */
+class Mp4Muxer implements VideoEncoder.Output {
+	private static final int TIMESCALE = 90000;	// of the video track
+	private static final int MOVIE_TIMESCALE = 1000;
+	private static final int MDAT_HEADER_SIZE = 16;	// with a 64 bit size
+	private static final int NAL_SPS = 7;
+	private static final int NAL_PPS = 8;
+	private static final int NAL_AUD = 9;
+	private static final int NAL_IDR = 5;
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final FileOutputStream fileOut;
+	private final OutputStream out;
+	private final FileChannel channel;
+	private final long startPosition;
+	private final int width;
+	private final int height;
+	private long position;	// bytes written from startPosition
+	private long mdatPosition;
+	private byte[] sps;
+	private byte[] pps;
+	private byte[] sampleBuffer = new byte[0];
+	private byte[] lengthPrefix = new byte[4];
+	private int[] nalRange = new int[2];
+
+	// sample tables
+	private int sampleCount;
+	private int[] sampleSizes = new int[INITIAL_CAPACITY];
+	private long[] sampleOffsets = new long[INITIAL_CAPACITY];
+	private long[] sampleTimesUs = new long[INITIAL_CAPACITY];
+	private int syncSampleCount;
+	private int[] syncSamples = new int[INITIAL_CAPACITY];	// 1 based numbers
+
+	Mp4Muxer(FileOutputStream out, int width, int height) throws IOException {
+		this.fileOut = out;
+		this.out = new BufferedOutputStream(out, 64 * 1024);
+		this.channel = out.getChannel();
+		this.startPosition = channel.position();
+		this.width = width;
+		this.height = height;
+
+		BoxWriter ftyp = new BoxWriter();
+		ftyp.begin("ftyp");
+		ftyp.putFourCC("isom");
+		ftyp.putInt(0x200);
+		ftyp.putFourCC("isom");
+		ftyp.putFourCC("iso2");
+		ftyp.putFourCC("avc1");
+		ftyp.putFourCC("mp41");
+		ftyp.end();
+		write(ftyp);
+
+		mdatPosition = position;
+		BoxWriter mdat = new BoxWriter();
+		mdat.putInt(1); // the size is in the 64 bit field
+		mdat.putFourCC("mdat");
+		mdat.putLong(0); // patched at finish
+		write(mdat);
+	}
+
+	@Override
+	public void onCodecConfig(ByteBuffer codecConfig) throws IOException {
+		byte[] data = copy(codecConfig);
+		int length = codecConfig.remaining();
+		for (int index = 0; (index = nextNalUnit(data, index, length, nalRange)) >= 0; ) {
+			int start = nalRange[0];
+			int end = nalRange[1];
+			int type = end > start ? data[start] & 0x1f : 0;
+			if (type == NAL_SPS && sps == null) {
+				sps = Arrays.copyOfRange(data, start, end);
+			} else if (type == NAL_PPS && pps == null) {
+				pps = Arrays.copyOfRange(data, start, end);
+			}
+		}
+
+		if (sps == null || sps.length < 4 || pps == null) {
+			throw new IOException("SPS or PPS missing in the codec config");
+		}
+	}
+
+	/**
+	 * Writes the NAL units of the access unit, each behind its length instead of a start code
+	 */
+	@Override
+	public void onSample(ByteBuffer sample, long presentationTimeUs, boolean keyFrame) throws IOException {
+		if (sps == null) {
+			throw new IOException("sample before the codec config");
+		}
+
+		byte[] data = copy(sample);
+		int length = sample.remaining();
+		long offset = position;
+		int size = 0;
+		for (int index = 0; (index = nextNalUnit(data, index, length, nalRange)) >= 0; ) {
+			int start = nalRange[0];
+			int end = nalRange[1];
+			int type = end > start ? data[start] & 0x1f : 0;
+			if (end > start && type != NAL_SPS && type != NAL_PPS && type != NAL_AUD) { // parameter sets are in avcC
+				keyFrame |= type == NAL_IDR;
+				writeInt(end - start);
+				write(data, start, end - start);
+				size += 4 + end - start;
+			}
+		}
+		if (size == 0) {
+			return; // nothing but parameter sets
+		}
+
+		if (sampleCount == sampleSizes.length) {
+			sampleSizes = Arrays.copyOf(sampleSizes, sampleCount * 2);
+			sampleOffsets = Arrays.copyOf(sampleOffsets, sampleCount * 2);
+			sampleTimesUs = Arrays.copyOf(sampleTimesUs, sampleCount * 2);
+		}
+		sampleSizes[sampleCount] = size;
+		sampleOffsets[sampleCount] = startPosition + offset;
+		sampleTimesUs[sampleCount] = presentationTimeUs;
+		++sampleCount;
+		if (keyFrame) {
+			if (syncSampleCount == syncSamples.length) {
+				syncSamples = Arrays.copyOf(syncSamples, syncSampleCount * 2);
+			}
+			syncSamples[syncSampleCount++] = sampleCount;
+		}
+	}
+
+	int getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Writes the moov box and the mdat size. The stream is not closed.
+	 *
+	 * @param endTimeUs when the last sample stops being shown
+	 * @throws MeiSDKException FAILED_TO_CREATE_MP4 if the encoder gave no codec config, which the sample description needs
+	 */
+	void finish(long endTimeUs) throws IOException {
+		if (sps == null) {
+			MeiLog.e("no codec config. the video encoder never started");
+			throw new MeiSDKException(MeiSDKErrorType.FAILED_TO_CREATE_MP4);
+		}
+
+		long mdatSize = position - mdatPosition;
+		write(createMoov(endTimeUs));
+		out.flush();
+
+		ByteBuffer size = ByteBuffer.allocate(8);
+		size.putLong(0, mdatSize);
+		channel.write(size, startPosition + mdatPosition + 8);
+		fileOut.flush();
+	}
+
+	private BoxWriter createMoov(long endTimeUs) {
+		// decode times in the track timescale, from the first sample. the last one lasts until endTimeUs
+		long[] ticks = new long[sampleCount + 1];
+		long firstTimeUs = sampleCount > 0 ? sampleTimesUs[0] : 0;
+		for (int i = 0; i < sampleCount; ++i) {
+			ticks[i] = toTicks(sampleTimesUs[i] - firstTimeUs);
+		}
+		ticks[sampleCount] = toTicks(Math.max(endTimeUs, sampleCount > 0 ? sampleTimesUs[sampleCount - 1] : 0) - firstTimeUs);
+		long duration = 0;
+		for (int i = 0; i < sampleCount; ++i) {
+			ticks[i + 1] = Math.max(ticks[i + 1], ticks[i] + 1); // durations must be positive
+			duration = ticks[i + 1];
+		}
+		long movieDuration = duration * MOVIE_TIMESCALE / TIMESCALE;
+
+		BoxWriter box = new BoxWriter();
+		box.begin("moov");
+
+		box.beginFull("mvhd", 0, 0);
+		box.putInt(0); // creation time
+		box.putInt(0); // modification time
+		box.putInt(MOVIE_TIMESCALE);
+		box.putInt((int) movieDuration);
+		box.putInt(0x00010000); // rate 1.0
+		box.putShort(0x0100); // volume 1.0
+		box.putZeros(10);
+		putMatrix(box);
+		box.putZeros(24); // pre defined
+		box.putInt(2); // next track id
+		box.end();
+
+		box.begin("trak");
+		box.beginFull("tkhd", 0, 3); // enabled, in movie
+		box.putInt(0);
+		box.putInt(0);
+		box.putInt(1); // track id
+		box.putInt(0);
+		box.putInt((int) movieDuration);
+		box.putZeros(8);
+		box.putShort(0); // layer
+		box.putShort(0); // alternate group
+		box.putShort(0); // volume
+		box.putShort(0);
+		putMatrix(box);
+		box.putInt(width << 16);
+		box.putInt(height << 16);
+		box.end();
+
+		box.begin("mdia");
+		box.beginFull("mdhd", 0, 0);
+		box.putInt(0);
+		box.putInt(0);
+		box.putInt(TIMESCALE);
+		box.putInt((int) duration);
+		box.putShort(0x55c4); // und
+		box.putShort(0);
+		box.end();
+
+		box.beginFull("hdlr", 0, 0);
+		box.putInt(0);
+		box.putFourCC("vide");
+		box.putZeros(12);
+		box.putBytes("VideoHandler\0".getBytes());
+		box.end();
+
+		box.begin("minf");
+		box.beginFull("vmhd", 0, 1);
+		box.putZeros(8); // graphics mode, op color
+		box.end();
+		box.begin("dinf");
+		box.beginFull("dref", 0, 0);
+		box.putInt(1);
+		box.beginFull("url ", 0, 1); // in this file
+		box.end();
+		box.end();
+		box.end();
+
+		box.begin("stbl");
+		putSampleDescription(box);
+		putTimeToSample(box, ticks);
+		if (syncSampleCount < sampleCount) { // all samples are sync samples without stss
+			box.beginFull("stss", 0, 0);
+			box.putInt(syncSampleCount);
+			for (int i = 0; i < syncSampleCount; ++i) {
+				box.putInt(syncSamples[i]);
+			}
+			box.end();
+		}
+
+		box.beginFull("stsc", 0, 0); // a chunk per sample
+		box.putInt(1);
+		box.putInt(1);
+		box.putInt(1);
+		box.putInt(1);
+		box.end();
+
+		box.beginFull("stsz", 0, 0);
+		box.putInt(0);
+		box.putInt(sampleCount);
+		for (int i = 0; i < sampleCount; ++i) {
+			box.putInt(sampleSizes[i]);
+		}
+		box.end();
+
+		boolean largeOffsets = sampleCount > 0 && sampleOffsets[sampleCount - 1] > 0xffffffffL;
+		box.beginFull(largeOffsets ? "co64" : "stco", 0, 0);
+		box.putInt(sampleCount);
+		for (int i = 0; i < sampleCount; ++i) {
+			if (largeOffsets) {
+				box.putLong(sampleOffsets[i]);
+			} else {
+				box.putInt((int) sampleOffsets[i]);
+			}
+		}
+		box.end();
+
+		box.end(); // stbl
+		box.end(); // minf
+		box.end(); // mdia
+		box.end(); // trak
+		box.end(); // moov
+		return box;
+	}
+
+	private void putSampleDescription(BoxWriter box) {
+		box.beginFull("stsd", 0, 0);
+		box.putInt(1);
+		box.begin("avc1");
+		box.putZeros(6);
+		box.putShort(1); // data reference index
+		box.putZeros(16);
+		box.putShort(width);
+		box.putShort(height);
+		box.putInt(0x00480000); // 72 dpi
+		box.putInt(0x00480000);
+		box.putInt(0);
+		box.putShort(1); // frame count
+		box.putZeros(32); // compressor name
+		box.putShort(0x18); // depth
+		box.putShort(-1);
+
+		box.begin("avcC");
+		box.putByte(1); // version
+		box.putByte(sps[1]); // profile
+		box.putByte(sps[2]); // compatibility
+		box.putByte(sps[3]); // level
+		box.putByte(0xff); // 4 byte lengths
+		box.putByte(0xe1); // 1 SPS
+		box.putShort(sps.length);
+		box.putBytes(sps);
+		box.putByte(1); // 1 PPS
+		box.putShort(pps.length);
+		box.putBytes(pps);
+		box.end();
+
+		box.end(); // avc1
+		box.end(); // stsd
+	}
+
+	// run lengths of the sample durations
+	private void putTimeToSample(BoxWriter box, long[] ticks) {
+		box.beginFull("stts", 0, 0);
+		int countPosition = box.size();
+		box.putInt(0);
+		int entryCount = 0;
+		for (int i = 0; i < sampleCount; ) {
+			long delta = ticks[i + 1] - ticks[i];
+			int run = 1;
+			while (i + run < sampleCount && ticks[i + run + 1] - ticks[i + run] == delta) {
+				++run;
+			}
+			box.putInt(run);
+			box.putInt((int) delta);
+			++entryCount;
+			i += run;
+		}
+		box.setInt(countPosition, entryCount);
+		box.end();
+	}
+
+	private static void putMatrix(BoxWriter box) {
+		box.putInt(0x00010000);
+		box.putInt(0);
+		box.putInt(0);
+		box.putInt(0);
+		box.putInt(0x00010000);
+		box.putInt(0);
+		box.putInt(0);
+		box.putInt(0);
+		box.putInt(0x40000000);
+	}
+
+	private static long toTicks(long timeUs) {
+		return (timeUs * TIMESCALE + 500000) / 1000000;
+	}
+
+	/**
+	 * Finds the NAL unit at index, after its start code if any, and sets its range without the trailing zeros.
+	 *
+	 * @return index of the next start code or the length, -1 when there is no NAL unit left
+	 */
+	private static int nextNalUnit(byte[] data, int index, int length, int[] range) {
+		if (index >= length) {
+			return -1;
+		}
+
+		int start = index + startCodeLength(data, index, length);
+		int end = start;
+		while (end < length && startCodeLength(data, end, length) == 0) {
+			++end;
+		}
+		range[0] = start;
+		range[1] = trimZeros(data, start, end);
+		return end;
+	}
+
+	// 3 or 4 for a start code at index, else 0
+	private static int startCodeLength(byte[] data, int index, int length) {
+		if (index + 3 <= length && data[index] == 0 && data[index + 1] == 0) {
+			if (data[index + 2] == 1) {
+				return 3;
+			}
+			if (index + 4 <= length && data[index + 2] == 0 && data[index + 3] == 1) {
+				return 4;
+			}
+		}
+		return 0;
+	}
+
+	// NAL units end with a non zero byte. zeros before a start code are trailing zeros of the stream
+	private static int trimZeros(byte[] data, int start, int end) {
+		while (end > start && data[end - 1] == 0) {
+			--end;
+		}
+		return end;
+	}
+
+	private byte[] copy(ByteBuffer buffer) {
+		int length = buffer.remaining();
+		if (sampleBuffer.length < length) {
+			sampleBuffer = new byte[length];
+		}
+		buffer.duplicate().get(sampleBuffer, 0, length);
+		return sampleBuffer;
+	}
+
+	private void writeInt(int value) throws IOException {
+		lengthPrefix[0] = (byte) (value >>> 24);
+		lengthPrefix[1] = (byte) (value >>> 16);
+		lengthPrefix[2] = (byte) (value >>> 8);
+		lengthPrefix[3] = (byte) value;
+		write(lengthPrefix, 0, 4);
+	}
+
+	private void write(BoxWriter box) throws IOException {
+		write(box.data, 0, box.size);
+	}
+
+	private void write(byte[] data, int offset, int length) throws IOException {
+		out.write(data, offset, length);
+		position += length;
+	}
+
+	/**
+	 * Big endian box content in a growing array
+	 */
+	private static class BoxWriter {
+		private byte[] data = new byte[256];
+		private int size;
+		private int[] starts = new int[16];
+		private int depth;
+
+		void begin(String type) {
+			starts[depth++] = size;
+			putInt(0); // size. set by end
+			putFourCC(type);
+		}
+
+		void beginFull(String type, int version, int flags) {
+			begin(type);
+			putInt(version << 24 | flags);
+		}
+
+		void end() {
+			int start = starts[--depth];
+			setInt(start, size - start);
+		}
+
+		int size() {
+			return size;
+		}
+
+		void putByte(int value) {
+			ensure(1);
+			data[size++] = (byte) value;
+		}
+
+		void putShort(int value) {
+			putByte(value >> 8);
+			putByte(value);
+		}
+
+		void putInt(int value) {
+			ensure(4);
+			setInt(size, value);
+			size += 4;
+		}
+
+		void putLong(long value) {
+			putInt((int) (value >>> 32));
+			putInt((int) value);
+		}
+
+		void putFourCC(String fourCC) {
+			for (int i = 0; i < 4; ++i) {
+				putByte(fourCC.charAt(i));
+			}
+		}
+
+		void putBytes(byte[] bytes) {
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, data, size, bytes.length);
+			size += bytes.length;
+		}
+
+		void putZeros(int count) {
+			ensure(count);
+			size += count; // the array is zero filled
+		}
+
+		void setInt(int index, int value) {
+			data[index] = (byte) (value >>> 24);
+			data[index + 1] = (byte) (value >>> 16);
+			data[index + 2] = (byte) (value >>> 8);
+			data[index + 3] = (byte) value;
+		}
+
+		private void ensure(int count) {
+			if (size + count > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + count));
+			}
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.video;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Pure java H.264 encoder writing every macroblock uncompressed (I_PCM) in IDR frames.
+ * The files are as large as raw YUV, but any H.264 decoder plays them. For JVM tests of the muxer and the
+ * frame pacing, and where no hardware encoder is available. The bit rate is ignored.
+ */
+public class PcmVideoEncoder implements VideoEncoder {
+	private static final int MB_SIZE = 16;
+	private static final int PROFILE_BASELINE = 66;
+	private static final int CONSTRAINED_BASELINE_FLAGS = 0xc0;	// constraint_set0 and constraint_set1
+	private static final int MB_TYPE_I_PCM = 25;
+
+	private Output output;
+	private int width;
+	private int height;
+	private int mbWidth;
+	private int mbHeight;
+	private int idrPicId;
+	private BitWriter rbsp = new BitWriter();
+	private byte[] nal = new byte[0];
+
+	@Override
+	public void start(int width, int height, int frameRate, int bitRate, Output output) throws IOException {
+		this.output = output;
+		this.width = width;
+		this.height = height;
+		this.mbWidth = (width + MB_SIZE - 1) / MB_SIZE;
+		this.mbHeight = (height + MB_SIZE - 1) / MB_SIZE;
+		this.idrPicId = 0;
+
+		writeSps();
+		int spsLength = toNalUnit(0x67, 0);
+		writePps();
+		int length = toNalUnit(0x68, spsLength);
+		output.onCodecConfig(ByteBuffer.wrap(nal, 0, length));
+	}
+
+	@Override
+	public void encode(byte[] yuv, long presentationTimeUs) throws IOException {
+		writeSlice(yuv);
+		int length = toNalUnit(0x65, 0);
+		output.onSample(ByteBuffer.wrap(nal, 0, length), presentationTimeUs, true);
+		idrPicId = (idrPicId + 1) & 0xffff; // consecutive IDR pictures must differ
+	}
+
+	@Override
+	public void finish() {
+		// nothing held
+	}
+
+	@Override
+	public void release() {
+		rbsp = new BitWriter();
+		nal = new byte[0];
+	}
+
+	private void writeSps() {
+		int cropRight = mbWidth * MB_SIZE - width;
+		int cropBottom = mbHeight * MB_SIZE - height;
+		rbsp.reset();
+		rbsp.putBits(PROFILE_BASELINE, 8);
+		rbsp.putBits(CONSTRAINED_BASELINE_FLAGS, 8);
+		rbsp.putBits(mbWidth * mbHeight <= 8192 ? 40 : 51, 8); // level
+		rbsp.putUE(0); // seq_parameter_set_id
+		rbsp.putUE(0); // log2_max_frame_num_minus4
+		rbsp.putUE(2); // pic_order_cnt_type. output order = decoding order
+		rbsp.putUE(1); // max_num_ref_frames
+		rbsp.putBits(0, 1); // gaps_in_frame_num_value_allowed_flag
+		rbsp.putUE(mbWidth - 1);
+		rbsp.putUE(mbHeight - 1);
+		rbsp.putBits(1, 1); // frame_mbs_only_flag
+		rbsp.putBits(1, 1); // direct_8x8_inference_flag
+		if (cropRight > 0 || cropBottom > 0) {
+			rbsp.putBits(1, 1); // frame_cropping_flag. in units of 2 pixels for 4:2:0
+			rbsp.putUE(0);
+			rbsp.putUE(cropRight / 2);
+			rbsp.putUE(0);
+			rbsp.putUE(cropBottom / 2);
+		} else {
+			rbsp.putBits(0, 1);
+		}
+		rbsp.putBits(0, 1); // vui_parameters_present_flag
+		rbsp.putTrailingBits();
+	}
+
+	private void writePps() {
+		rbsp.reset();
+		rbsp.putUE(0); // pic_parameter_set_id
+		rbsp.putUE(0); // seq_parameter_set_id
+		rbsp.putBits(0, 1); // entropy_coding_mode_flag. CAVLC
+		rbsp.putBits(0, 1); // bottom_field_pic_order_in_frame_present_flag
+		rbsp.putUE(0); // num_slice_groups_minus1
+		rbsp.putUE(0); // num_ref_idx_l0_default_active_minus1
+		rbsp.putUE(0); // num_ref_idx_l1_default_active_minus1
+		rbsp.putBits(0, 1); // weighted_pred_flag
+		rbsp.putBits(0, 2); // weighted_bipred_idc
+		rbsp.putSE(0); // pic_init_qp_minus26
+		rbsp.putSE(0); // pic_init_qs_minus26
+		rbsp.putSE(0); // chroma_qp_index_offset
+		rbsp.putBits(1, 1); // deblocking_filter_control_present_flag
+		rbsp.putBits(0, 1); // constrained_intra_pred_flag
+		rbsp.putBits(0, 1); // redundant_pic_cnt_present_flag
+		rbsp.putTrailingBits();
+	}
+
+	private void writeSlice(byte[] yuv) {
+		rbsp.reset();
+		rbsp.putUE(0); // first_mb_in_slice
+		rbsp.putUE(7); // slice_type. I, as all slices of the picture
+		rbsp.putUE(0); // pic_parameter_set_id
+		rbsp.putBits(0, 4); // frame_num. 0 in IDR pictures
+		rbsp.putUE(idrPicId);
+		rbsp.putBits(0, 1); // no_output_of_prior_pics_flag
+		rbsp.putBits(0, 1); // long_term_reference_flag
+		rbsp.putSE(0); // slice_qp_delta
+		rbsp.putUE(1); // disable_deblocking_filter_idc
+
+		int chromaWidth = width / 2;
+		int chromaHeight = height / 2;
+		int uOffset = width * height;
+		int vOffset = uOffset + chromaWidth * chromaHeight;
+		for (int mbY = 0; mbY < mbHeight; ++mbY) {
+			for (int mbX = 0; mbX < mbWidth; ++mbX) {
+				rbsp.putUE(MB_TYPE_I_PCM);
+				rbsp.alignZero(); // pcm_alignment_zero_bit
+				putBlock(yuv, 0, width, height, mbX * MB_SIZE, mbY * MB_SIZE, MB_SIZE);
+				putBlock(yuv, uOffset, chromaWidth, chromaHeight, mbX * MB_SIZE / 2, mbY * MB_SIZE / 2, MB_SIZE / 2);
+				putBlock(yuv, vOffset, chromaWidth, chromaHeight, mbX * MB_SIZE / 2, mbY * MB_SIZE / 2, MB_SIZE / 2);
+			}
+		}
+		rbsp.putTrailingBits();
+	}
+
+	// samples of a block of the plane, repeating the last row and column beyond the picture
+	private void putBlock(byte[] yuv, int planeOffset, int planeWidth, int planeHeight, int left, int top, int size) {
+		for (int y = 0; y < size; ++y) {
+			int row = planeOffset + Math.min(top + y, planeHeight - 1) * planeWidth;
+			for (int x = 0; x < size; ++x) {
+				int sample = yuv[row + Math.min(left + x, planeWidth - 1)] & 0xff;
+				rbsp.putByte(sample == 0 ? 1 : sample); // 0 is not allowed in PCM samples by the first edition
+			}
+		}
+	}
+
+	/**
+	 * Appends the rbsp as a NAL unit with a start code to nal at offset, with emulation prevention bytes
+	 *
+	 * @return the end of the NAL unit in nal
+	 */
+	private int toNalUnit(int header, int offset) {
+		int maxLength = offset + 5 + rbsp.size() * 3 / 2 + 1;
+		if (nal.length < maxLength) {
+			nal = Arrays.copyOf(nal, maxLength);
+		}
+
+		nal[offset++] = 0;
+		nal[offset++] = 0;
+		nal[offset++] = 0;
+		nal[offset++] = 1;
+		nal[offset++] = (byte) header;
+		byte[] data = rbsp.data();
+		int zeros = 0;
+		for (int i = 0, size = rbsp.size(); i < size; ++i) {
+			int b = data[i] & 0xff;
+			if (zeros >= 2 && b <= 3) {
+				nal[offset++] = 3;
+				zeros = 0;
+			}
+			nal[offset++] = (byte) b;
+			zeros = b == 0 ? zeros + 1 : 0;
+		}
+		return offset;
+	}
+
+	/**
+	 * Bits of an rbsp, most significant first
+	 */
+	private static class BitWriter {
+		private byte[] data = new byte[1024];
+		private int size;	// complete bytes
+		private int bits;	// pending bits, in the low bitCount bits
+		private int bitCount;
+
+		void reset() {
+			size = 0;
+			bits = 0;
+			bitCount = 0;
+		}
+
+		byte[] data() {
+			return data;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void putBits(int value, int count) {
+			for (int i = count - 1; i >= 0; --i) {
+				bits = (bits << 1) | ((value >>> i) & 1);
+				if (++bitCount == 8) {
+					append(bits);
+					bits = 0;
+					bitCount = 0;
+				}
+			}
+		}
+
+		// Exp-Golomb code
+		void putUE(int value) {
+			int code = value + 1;
+			int length = 32 - Integer.numberOfLeadingZeros(code);
+			putBits(0, length - 1);
+			putBits(code, length);
+		}
+
+		void putSE(int value) {
+			putUE(value <= 0 ? -2 * value : 2 * value - 1);
+		}
+
+		void putByte(int value) {
+			if (bitCount == 0) {
+				append(value);
+			} else {
+				putBits(value, 8);
+			}
+		}
+
+		void alignZero() {
+			if (bitCount > 0) {
+				putBits(0, 8 - bitCount);
+			}
+		}
+
+		void putTrailingBits() {
+			putBits(1, 1);
+			alignZero();
+		}
+
+		private void append(int value) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size++] = (byte) value;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.video;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * H.264 encoder used by {@link MeiMp4Creator}. Frames go in as planar YUV 4:2:0 (I420), in presentation order,
+ * and come out as access units in Annex B byte stream format, as MediaCodec gives them.
+ * Frames must not be reordered (no B frames), since the muxer writes no composition offsets.
+ */
+public interface VideoEncoder {
+	/**
+	 * Receives what the encoder produced. Called on the thread calling the encoder, possibly some frames later.
+	 */
+	interface Output {
+		/**
+		 * SPS and PPS in Annex B format. Called once, before the first sample
+		 */
+		void onCodecConfig(ByteBuffer codecConfig) throws IOException;
+
+		/**
+		 * One encoded frame in Annex B format. The buffer may be reused after this returns
+		 */
+		void onSample(ByteBuffer sample, long presentationTimeUs, boolean keyFrame) throws IOException;
+	}
+
+	/**
+	 * @param width     even width of the frames
+	 * @param height    even height of the frames
+	 * @param frameRate expected frames per second
+	 * @param bitRate   target bits per second
+	 */
+	void start(int width, int height, int frameRate, int bitRate, Output output) throws IOException;
+
+	/**
+	 * @param yuv Y plane of width * height bytes, then the U and V planes of a quarter of it each. may be reused after this returns
+	 */
+	void encode(byte[] yuv, long presentationTimeUs) throws IOException;
+
+	/**
+	 * Hands out the frames still in the encoder
+	 */
+	void finish() throws IOException;
+
+	void release();
+}
@@ -0,0 +1,184 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.webp.encoder;
+
+import android.graphics.Bitmap;
+
+import com.naver.mei.sdk.core.gif.encoder.AnimatedGifEncoder;
+import com.naver.mei.sdk.core.gif.encoder.AnimatedImageEncoder;
+import com.naver.mei.sdk.core.gif.encoder.GifEncodingOptions;
+import com.naver.mei.sdk.error.MeiLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes frames to an animated WebP. Each frame is compressed by the platform WebP encoder (Bitmap.compress),
+ * in full colors with alpha, and muxed into the animation as it is added. Nothing is learned across frames.
+ */
+public class AnimatedWebPEncoder implements AnimatedImageEncoder {
+	public static final int DEFAULT_QUALITY = 80;
+
+	protected int delay = 100;	// frame delay (milliseconds)
+	protected int repeat = 0;	// 0 = forever, -1 = plays once
+	protected int quality = DEFAULT_QUALITY;	// 0-100 of the WebP encoder
+
+	private boolean started = false;
+	private WebPMuxer muxer;
+	private CompressedFrame compressed = new CompressedFrame();
+	private Bitmap rawFrame;	// reused for the frames given as raw pixels
+	private int[] rowBuffer;	// RGBA rows converted to ARGB
+
+	public AnimatedWebPEncoder() {
+	}
+
+	/**
+	 * Applies the WebP quality. The GIF options are ignored. Must be invoked before start.
+	 */
+	public void setEncodingOptions(GifEncodingOptions options) {
+		setQuality(options.getWebPQuality());
+	}
+
+	/**
+	 * @param quality 0-100. higher is larger and closer to the frames
+	 */
+	public void setQuality(int quality) {
+		this.quality = Math.max(0, Math.min(100, quality));
+	}
+
+	@Override
+	public void setDelay(int ms) {
+		this.delay = ms;
+	}
+
+	@Override
+	public void setRepeat(int iter) {
+		this.repeat = iter;
+	}
+
+	@Override
+	public void setExpectedFrameCount(int frameCount) {
+		// frames are encoded independently. nothing to share
+	}
+
+	@Override
+	public boolean start(OutputStream os) {
+		if (os == null) {
+			return false;
+		}
+
+		try {
+			// the loop count of WebP counts the plays, the GIF repeat counts the replays
+			muxer = new WebPMuxer(os, repeat < 0 ? 1 : (repeat == 0 ? 0 : repeat + 1));
+		} catch (IOException e) {
+			MeiLog.e("failed to start WebP", e);
+			return false;
+		}
+		return started = true;
+	}
+
+	@Override
+	public boolean addFrame(Bitmap im) {
+		return addFrame(im, 0, 0);
+	}
+
+	/**
+	 * Adds a frame at the position. The first frame sets the canvas size, which the later frames must fit in.
+	 */
+	public boolean addFrame(Bitmap im, int x, int y) {
+		if (im == null || !started) {
+			return false;
+		}
+
+		try {
+			compressed.reset();
+			if (!im.compress(Bitmap.CompressFormat.WEBP, quality, compressed)) {
+				MeiLog.e("failed to compress a WebP frame");
+				return false;
+			}
+			muxer.addFrame(compressed.getBuffer(), compressed.size(), x, y, im.getWidth(), im.getHeight(), delay);
+		} catch (IOException e) {
+			MeiLog.e("failed to write a WebP frame", e);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addFrame(int[] pixels, int offset, int stride, int imageWidth, int imageHeight, AnimatedGifEncoder.ChannelOrder channelOrder, int x, int y) {
+		if (pixels == null || !started || imageWidth <= 0 || imageHeight <= 0 || channelOrder == null) {
+			return false;
+		}
+
+		if (rawFrame == null || rawFrame.getWidth() != imageWidth || rawFrame.getHeight() != imageHeight) {
+			if (rawFrame != null) {
+				rawFrame.recycle();
+			}
+			rawFrame = Bitmap.createBitmap(imageWidth, imageHeight, Bitmap.Config.ARGB_8888);
+		}
+
+		if (channelOrder == AnimatedGifEncoder.ChannelOrder.ARGB) {
+			rawFrame.setPixels(pixels, offset, stride, 0, 0, imageWidth, imageHeight);
+		} else {
+			if (rowBuffer == null || rowBuffer.length < imageWidth) {
+				rowBuffer = new int[imageWidth];
+			}
+			for (int row = 0; row < imageHeight; ++row) {
+				int start = offset + row * stride;
+				for (int i = 0; i < imageWidth; ++i) {
+					int rgba = pixels[start + i];
+					rowBuffer[i] = (rgba >>> 8) | (rgba << 24);
+				}
+				rawFrame.setPixels(rowBuffer, 0, imageWidth, 0, row, imageWidth, 1);
+			}
+		}
+		return addFrame(rawFrame, x, y);
+	}
+
+	@Override
+	public boolean finish() {
+		if (!started) {
+			return false;
+		}
+
+		boolean ok = true;
+		started = false;
+		try {
+			muxer.finish();
+			MeiLog.d("WebP frames : " + muxer.getFrameCount());
+		} catch (IOException e) {
+			MeiLog.e("failed to finish WebP", e);
+			ok = false;
+		}
+
+		muxer = null;
+		compressed = new CompressedFrame();
+		if (rawFrame != null) {
+			rawFrame.recycle();
+			rawFrame = null;
+		}
+		return ok;
+	}
+
+	// reused for every frame, read without a copy
+	private static class CompressedFrame extends ByteArrayOutputStream {
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package com.naver.mei.sdk.core.webp.encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes still WebP images as the frames of an animated WebP. (RIFF WEBP with VP8X, ANIM and ANMF chunks)
+ * Frames are written as they come. The RIFF header holds the file size, so it is patched at finish in files,
+ * and other streams get the frames held in memory until finish, compressed.
+ */
+class WebPMuxer {
+	private static final int RIFF_HEADER_SIZE = 12;	// RIFF, size, WEBP
+	private static final int CHUNK_HEADER_SIZE = 8;	// fourcc, size
+	private static final int VP8X_SIZE = 10;
+	private static final int ANIM_SIZE = 6;
+	private static final int ANMF_HEADER_SIZE = 16;
+	private static final int MAX_24BIT = 0xffffff;
+
+	private static final int VP8X_FLAG_ALPHA = 0x10;
+	private static final int VP8X_FLAG_ANIMATION = 0x02;
+	private static final int ANMF_FLAG_NO_BLEND = 0x02;	// frames replace the canvas, transparent pixels included
+
+	private final OutputStream out;
+	private final FileChannel channel;	// of a file output, to patch the header. null = other streams
+	private final long headerPosition;
+	private final int loopCount;
+	private ByteArrayOutputStream heldFrames;	// ANMF chunks waiting for the header, without channel
+	private ByteBuffer chunk = ByteBuffer.allocate(0);
+	private int canvasWidth;
+	private int canvasHeight;
+	private long framesSize;	// bytes of the ANMF chunks
+	private int frameCount;
+
+	/**
+	 * @param loopCount times the animation plays. 0 = forever
+	 */
+	WebPMuxer(OutputStream out, int loopCount) throws IOException {
+		this.out = out;
+		this.loopCount = loopCount;
+		this.channel = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : null;
+		this.headerPosition = channel != null ? channel.position() : 0;
+	}
+
+	/**
+	 * Adds a frame. The first frame sets the canvas size, which the later frames must fit in.
+	 *
+	 * @param webP     still WebP file, as written by Bitmap.compress
+	 * @param length   bytes of webP
+	 * @param x        left of the frame on the canvas. rounded down to even
+	 * @param y        top of the frame on the canvas. rounded down to even
+	 * @param duration milliseconds
+	 */
+	void addFrame(byte[] webP, int length, int x, int y, int width, int height, int duration) throws IOException {
+		x &= ~1;
+		y &= ~1;
+		if (frameCount == 0) {
+			canvasWidth = x + width;
+			canvasHeight = y + height;
+			if (channel != null) {
+				writeHeader(); // the file size is patched at finish
+			} else {
+				heldFrames = new ByteArrayOutputStream();
+			}
+		} else if (x + width > canvasWidth || y + height > canvasHeight) {
+			throw new IOException("frame out of the canvas. " + width + "x" + height + " at " + x + "," + y);
+		}
+
+		// the image chunks of the frame. VP8X and metadata chunks of the still image are left out
+		int imageStart = -1;
+		int imageSize = 0;
+		int offset = RIFF_HEADER_SIZE;
+		if (length < RIFF_HEADER_SIZE || !isFourCC(webP, 0, "RIFF") || !isFourCC(webP, 8, "WEBP")) {
+			throw new IOException("not a WebP image");
+		}
+		while (offset + CHUNK_HEADER_SIZE <= length) {
+			int payloadSize = readInt(webP, offset + 4);
+			if (payloadSize < 0 || payloadSize > length) {
+				break; // broken. the image chunks found so far are checked below
+			}
+			int chunkSize = CHUNK_HEADER_SIZE + padded(payloadSize);
+			if (isFourCC(webP, offset, "ALPH") || isFourCC(webP, offset, "VP8 ") || isFourCC(webP, offset, "VP8L")) {
+				if (imageStart < 0) {
+					imageStart = offset;
+				}
+				imageSize = offset + chunkSize - imageStart; // ALPH comes right before VP8
+			}
+			offset += chunkSize;
+		}
+		if (imageStart < 0 || imageStart + imageSize > length) {
+			throw new IOException("no image in the WebP");
+		}
+
+		int anmfSize = ANMF_HEADER_SIZE + imageSize;
+		ByteBuffer chunk = obtainChunk(CHUNK_HEADER_SIZE + anmfSize);
+		putFourCC(chunk, "ANMF");
+		chunk.putInt(anmfSize);
+		put24(chunk, x / 2);
+		put24(chunk, y / 2);
+		put24(chunk, width - 1);
+		put24(chunk, height - 1);
+		put24(chunk, Math.max(0, Math.min(MAX_24BIT, duration)));
+		chunk.put((byte) ANMF_FLAG_NO_BLEND);
+		chunk.put(webP, imageStart, imageSize);
+
+		if (heldFrames != null) {
+			heldFrames.write(chunk.array(), 0, chunk.position());
+		} else {
+			out.write(chunk.array(), 0, chunk.position());
+		}
+		framesSize += chunk.position();
+		++frameCount;
+	}
+
+	/**
+	 * Completes the file. The stream is not closed.
+	 */
+	void finish() throws IOException {
+		if (frameCount == 0) {
+			canvasWidth = 1;
+			canvasHeight = 1;
+			writeHeader();
+		} else if (heldFrames != null) {
+			writeHeader();
+			heldFrames.writeTo(out);
+			heldFrames = null;
+		} else {
+			out.flush();
+			ByteBuffer riffSize = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			riffSize.putInt(0, (int) getRiffSize());
+			channel.write(riffSize, headerPosition + 4);
+		}
+		out.flush();
+	}
+
+	int getFrameCount() {
+		return frameCount;
+	}
+
+	// RIFF, VP8X and ANIM
+	private void writeHeader() throws IOException {
+		ByteBuffer header = obtainChunk(RIFF_HEADER_SIZE + CHUNK_HEADER_SIZE + VP8X_SIZE + CHUNK_HEADER_SIZE + ANIM_SIZE);
+		putFourCC(header, "RIFF");
+		header.putInt((int) getRiffSize());
+		putFourCC(header, "WEBP");
+
+		putFourCC(header, "VP8X");
+		header.putInt(VP8X_SIZE);
+		header.putInt(VP8X_FLAG_ANIMATION | VP8X_FLAG_ALPHA); // flags and 3 reserved bytes. alpha is a hint, set for any frame having it
+		put24(header, canvasWidth - 1);
+		put24(header, canvasHeight - 1);
+
+		putFourCC(header, "ANIM");
+		header.putInt(ANIM_SIZE);
+		header.putInt(0); // background color. transparent
+		header.putShort((short) loopCount);
+		out.write(header.array(), 0, header.position());
+	}
+
+	// bytes after the size field of RIFF
+	private long getRiffSize() {
+		return 4 + CHUNK_HEADER_SIZE + VP8X_SIZE + CHUNK_HEADER_SIZE + ANIM_SIZE + framesSize;
+	}
+
+	private ByteBuffer obtainChunk(int size) {
+		if (chunk.capacity() < size) {
+			chunk = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		chunk.clear();
+		return chunk;
+	}
+
+	// chunk payloads are padded to even sizes
+	private static int padded(int size) {
+		return size + (size & 1);
+	}
+
+	private static boolean isFourCC(byte[] data, int offset, String fourCC) {
+		for (int i = 0; i < 4; ++i) {
+			if (data[offset + i] != fourCC.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private static int readInt(byte[] data, int offset) {
+		return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+	}
+
+	private static void putFourCC(ByteBuffer buffer, String fourCC) {
+		for (int i = 0; i < 4; ++i) {
+			buffer.put((byte) fourCC.charAt(i));
+		}
+	}
+
+	private static void put24(ByteBuffer buffer, int value) {
+		buffer.put((byte) value);
+		buffer.put((byte) (value >> 8));
+		buffer.put((byte) (value >> 16));
+	}
+}
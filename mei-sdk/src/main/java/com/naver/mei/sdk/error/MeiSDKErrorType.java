@@ -43,6 +43,7 @@ public enum MeiSDKErrorType {
 	VIDEO_TO_GIF_FPS_CANNOT_EXCEED_10(153, "fps cannot exceed 10"),
 	VIDEO_TO_GIF_FAILED_TO_LOAD_VIDEOTRACK(154, "failed to load video track"),
 	NOT_AVAILABLE_RESOLUTION(155, "resolution cannot exceed 1280"),
+	FAILED_TO_CREATE_MP4(156, "failed to create mp4"),
 
 	/**
 	 * 2XX : error of environment
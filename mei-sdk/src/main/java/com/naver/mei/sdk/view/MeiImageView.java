@@ -35,6 +35,7 @@ import android.view.View;
 import android.widget.ImageView;
 
 import com.naver.mei.sdk.MeiSDK;
+import com.naver.mei.sdk.core.gif.decoder.GifSource;
 import com.naver.mei.sdk.core.image.animated.AnimatedGif;
 import com.naver.mei.sdk.core.image.compositor.MeiImageProcessor;
 import com.naver.mei.sdk.core.image.compositor.element.AnimatedMultiFrameElement;
@@ -48,7 +49,6 @@ import com.naver.mei.sdk.core.image.meta.PlayDirection;
 import com.naver.mei.sdk.core.utils.LocalCache;
 import com.naver.mei.sdk.core.utils.LocalFileCache;
 import com.naver.mei.sdk.core.utils.LocalMemoryCache;
-import com.naver.mei.sdk.core.utils.MeiIOUtils;
 import com.naver.mei.sdk.core.utils.URIUtils;
 
 import org.apache.commons.io.IOUtils;
@@ -148,6 +148,7 @@ public class MeiImageView extends ImageView {
 		}
 
 		Bitmap bitmap = getBitmap(uri);
+		releaseDrawSupporter();
 		imageDrawSupporter = movie == null ? new SimpleImageDrawSupporter(uri) : new GifDrawSupporter(uri);
 		originalAspectRatio = bitmap.getWidth() / (double) bitmap.getHeight();
 		setImageBitmap(bitmap);
@@ -173,12 +174,20 @@ public class MeiImageView extends ImageView {
 
 	public void setMultiFrame(ComposableMultiFrame multiFrame) {
 		MultiFrameDrawSupporter multiFrameDrawSupporter = new MultiFrameDrawSupporter(multiFrame);
+		releaseDrawSupporter();
 		imageDrawSupporter = multiFrameDrawSupporter;
 		Bitmap bitmap = Bitmap.createBitmap(multiFrameDrawSupporter.getMultiFrameWidth(), multiFrameDrawSupporter.getMultiFrameHeight(), Bitmap.Config.ARGB_8888);
 		originalAspectRatio = bitmap.getWidth() / (double) bitmap.getHeight();
 		this.setImageBitmap(bitmap);
 	}
 
+	// the decoding buffers of a replaced gif go back to the shared pool for the next one
+	private void releaseDrawSupporter() {
+		if (imageDrawSupporter instanceof GifDrawSupporter) {
+			((GifDrawSupporter) imageDrawSupporter).release();
+		}
+	}
+
 	@Override
 	protected void onDraw(Canvas canvas) {
 		if (animationSynchronizer == null) {
@@ -257,7 +266,7 @@ public class MeiImageView extends ImageView {
 			super(uri);
 			this.uri = uri;
 			this.animatedGif = AnimatedGif.createInstanceWithMaxSize(
-					MeiIOUtils.getBytes(uri.toString()),
+					GifSource.open(URIUtils.uriStrToUri(uri.toString())),
 					displayMetrics.widthPixels / PERFORMANCE_SAMPLING_FACTOR,
 					displayMetrics.heightPixels / PERFORMANCE_SAMPLING_FACTOR);
 			this.realDuration = animatedGif.getDuration();
@@ -292,6 +301,10 @@ public class MeiImageView extends ImageView {
 		public int getDuration() {
 			return realDuration;
 		}
+
+		void release() {
+			animatedGif.recycle();
+		}
 	}
 
 	class MultiFrameDrawSupporter implements ImageDrawSupporter {
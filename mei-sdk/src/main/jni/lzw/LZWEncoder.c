@@ -19,104 +19,167 @@
 #define  BITS  12
 #define HSIZE  5003 // 80% occupancy
 
-static int imgW, imgH;
-static jbyte *pixAry;
-static int initCodeSize;
-static int remaining;
-static int curPixel;
+static const int masks[] = {0x0000, 0x0001, 0x0003, 0x0007, 0x000F, 0x001F, 0x003F, 0x007F, 0x00FF,
+                            0x01FF,
+                            0x03FF, 0x07FF, 0x0FFF, 0x1FFF, 0x3FFF, 0x7FFF, 0xFFFF};
 
+// All of the encoder state. It used to be file level static variables,
+// but every compress call now owns its own state so that frames can be encoded in parallel.
+typedef struct {
+	int imgW, imgH;
+	jbyte *pixAry;
+	int initCodeSize;
+	int remaining;
+	int curPixel;
 
-static int n_bits; // number of bits/code
+	// lossy mode. for each palette index c, nearColors[c] .. nearColors[c + 1] - 1 are the positions of
+	// the indexes within the loss of c, closest first. NULL = lossless
+	jint *nearColors;
 
-static int maxbits = BITS; // user settable max # bits/code
+	int n_bits; // number of bits/code
+	int maxbits; // user settable max # bits/code
+	int maxcode; // maximum code, given n_bits
+	int maxmaxcode; // should NEVER generate this code
 
-static int maxcode; // maximum code, given n_bits
+	int htab[HSIZE];
+	int codetab[HSIZE];
 
-static int maxmaxcode = 1 << BITS; // should NEVER generate this code
+	int hsize; // for dynamic table sizing
+	int free_ent; // first unused entry
 
-static int htab[HSIZE];
+	// block compression parameters -- after all codes are used up,
+	// and compression rate changes, start over.
+	int clear_flg;
 
-int codetab[HSIZE];
+	int g_init_bits;
+	int ClearCode;
+	int EOFCode;
 
-static int hsize = HSIZE; // for dynamic table sizing
+	int cur_accum;
+	int cur_bits;
 
-static int free_ent = 0; // first unused entry
+	// Define the storage for the packet accumulator
+	jbyte accum[256];
 
-// block compression parameters -- after all codes are used up,
-// and compression rate changes, start over.
-static int clear_flg = FALSE;
+	// Number of characters so far in this 'packet'
+	int a_count;
 
+	// compressed output
+	jbyte *buffer;
+	int bufferLength;
+	int bufferCapacity;
 
-static int g_init_bits;
+	// streaming output. when sink is set, buffer is the address of a direct ByteBuffer
+	// which is drained to java whenever it is full, instead of growing.
+	JNIEnv *env;
+	jobject sink;
+	jmethodID drain;
+	int failed;
+} LZWState;
 
-static int ClearCode;
 
-static int EOFCode;
+// declare functions
+static inline void write(LZWState *state, int byte);
 
-static int cur_accum;
+static void compress(LZWState *state, int init_bits);
 
-static int cur_bits;
+static jbyteArray toJbyteArrayAndClean(JNIEnv *env, LZWState *state);
 
-static int masks[] = {0x0000, 0x0001, 0x0003, 0x0007, 0x000F, 0x001F, 0x003F, 0x007F, 0x00FF,
-                      0x01FF,
-                      0x03FF, 0x07FF, 0x0FFF, 0x1FFF, 0x3FFF, 0x7FFF, 0xFFFF};
+// Flush the packet to disk, and reset the accumulator
+static void flush_char(LZWState *state);
 
-// Define the storage for the packet accumulator
-static jbyte accum[256];
+// reset code table
+static void cl_hash(LZWState *state, register int hsize);
 
-// Number of characters so far in this 'packet'
-static int a_count;
+static void output(LZWState *state, int code);
 
+static int MAXCODE(int n_bits);
 
-// declare functions
-inline void write(int byte, jbyte *byteArray, int *length);
+static inline int nextPixel(LZWState *state);
 
-void compress(int init_bits, register jbyte *buffer, register int *bufferLength);
+static void writeRange(LZWState *state, register jbyte *bytes, register int start, register int end);
 
-jbyteArray toJbyteArrayAndClean(JNIEnv *env, jbyte *byteArr, int legnth);
+static void initState(LZWState *state, jbyte *pixels, int width, int height, int colorDepth);
 
-// Flush the packet to disk, and reset the accumulator
-void flush_char(jbyte *buffer, int *bufferLength);
+static int findCode(LZWState *state, int c, int ent, int hshift, int hsize_reg);
 
-// reset code table
-void cl_hash(register int hsize);
+static void encode(LZWState *state);
 
-void output(int code, jbyte *buffer, int *bufferLength);
+static void drainSink(LZWState *state);
 
-int MAXCODE(int n_bits);
+// table clear for block compress
+static void cl_block(LZWState *state);
 
-inline int nextPixel();
+JNIEXPORT jbyteArray JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeLZWEncoder_compress
+		(JNIEnv *env, jclass jclazz, jbyteArray jpixels, jint width, jint height, jint colorDepth, jintArray jnearColors) {
+	jbyte *pixels = (*env)->GetByteArrayElements(env, jpixels, NULL);
 
-void writeRange(register jbyte *bytes, register int start, register int end, jbyte *outArray,
-                register int *length);
+	// android os version에 따른 stack 사이즈 이슈로 인해 heap 영역으로 이동
+	LZWState *state = malloc(sizeof(LZWState));
+	initState(state, pixels, width, height, colorDepth);
+	state->buffer = malloc(MAX_BUFFER_SIZE);
+	state->bufferCapacity = MAX_BUFFER_SIZE;
+	if (jnearColors != NULL)
+		state->nearColors = (*env)->GetIntArrayElements(env, jnearColors, NULL);
 
-// table clear for block compress
-void cl_block(jbyte *buffer, int *bufferLength);
+	encode(state);
 
-JNIEXPORT jbyteArray JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeLZWEncoder_compress
-		(JNIEnv *env, jclass jclazz, jbyteArray jpixels, jint width, jint height, jint colorDepth) {
+	if (jnearColors != NULL)
+		(*env)->ReleaseIntArrayElements(env, jnearColors, state->nearColors, JNI_ABORT);
+	(*env)->ReleaseByteArrayElements(env, jpixels, pixels, JNI_ABORT);
+	return toJbyteArrayAndClean(env, state);
+}
+
+JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeLZWEncoder_compressTo
+		(JNIEnv *env, jclass jclazz, jbyteArray jpixels, jint width, jint height, jint colorDepth, jintArray jnearColors, jobject jbuffer, jobject jsink) {
 	jbyte *pixels = (*env)->GetByteArrayElements(env, jpixels, NULL);
 
-	jbyte *buffer = malloc(
-			MAX_BUFFER_SIZE);    // android os version에 따른 stack 사이즈 이슈로 인해 heap 영역으로 이동
-	int bufferLength = 0;
-	imgW = width;
-	imgH = height;
-	pixAry = pixels;
-	initCodeSize = MAX(2, colorDepth);
-	remaining = imgW * imgH; // reset navigation variables
-	curPixel = 0;
-	write(initCodeSize, buffer, &bufferLength);
+	LZWState *state = malloc(sizeof(LZWState));
+	initState(state, pixels, width, height, colorDepth);
+	state->buffer = (*env)->GetDirectBufferAddress(env, jbuffer);
+	state->bufferCapacity = (int) (*env)->GetDirectBufferCapacity(env, jbuffer);
+	state->env = env;
+	state->sink = jsink;
+	state->drain = (*env)->GetMethodID(env, (*env)->GetObjectClass(env, jsink), "drain", "(I)V");
+	if (jnearColors != NULL)
+		state->nearColors = (*env)->GetIntArrayElements(env, jnearColors, NULL);
+
+	encode(state);
+	drainSink(state); // the rest of the sub blocks
+
+	if (jnearColors != NULL)
+		(*env)->ReleaseIntArrayElements(env, jnearColors, state->nearColors, JNI_ABORT);
+	(*env)->ReleaseByteArrayElements(env, jpixels, pixels, JNI_ABORT);
+	free(state);
+}
+
+static void initState(LZWState *state, jbyte *pixels, int width, int height, int colorDepth) {
+	state->bufferLength = 0;
+	state->env = NULL;
+	state->sink = NULL;
+	state->drain = NULL;
+	state->failed = FALSE;
+	state->nearColors = NULL;
+	state->maxbits = BITS;
+	state->maxmaxcode = 1 << BITS;
+	state->hsize = HSIZE;
+	state->imgW = width;
+	state->imgH = height;
+	state->pixAry = pixels;
+	state->initCodeSize = MAX(2, colorDepth);
+	state->remaining = state->imgW * state->imgH; // reset navigation variables
+	state->curPixel = 0;
+}
 
-	compress(initCodeSize + 1, buffer, &bufferLength); // compress and write the pixel data
+static void encode(LZWState *state) {
+	write(state, state->initCodeSize);
 
-	write(0, buffer, &bufferLength); // write block terminator
+	compress(state, state->initCodeSize + 1); // compress and write the pixel data
 
-	(*env)->ReleaseByteArrayElements(env, jpixels, pixels, 0);
-	return toJbyteArrayAndClean(env, buffer, bufferLength);
+	write(state, 0); // write block terminator
 }
 
-void compress(int init_bits, register jbyte *buffer, register int *bufferLength) {
+static void compress(LZWState *state, int init_bits) {
 	register int fcode;
 	register int i /* = 0 */;
 	register int c;
@@ -124,37 +187,39 @@ void compress(int init_bits, register jbyte *buffer, register int *bufferLength)
 	register int disp;
 	register int hsize_reg;
 	register int hshift;
+	register int *htab = state->htab;
+	register int *codetab = state->codetab;
 	// Set up the globals: g_init_bits - initial number of bits
-	g_init_bits = init_bits;
+	state->g_init_bits = init_bits;
 
 	// Set up the necessary values
-	clear_flg = FALSE;
-	n_bits = g_init_bits;
-	cur_accum = 0;
-	cur_bits = 0;
-	maxcode = MAXCODE(n_bits);
+	state->clear_flg = FALSE;
+	state->n_bits = state->g_init_bits;
+	state->cur_accum = 0;
+	state->cur_bits = 0;
+	state->maxcode = MAXCODE(state->n_bits);
 
-	ClearCode = 1 << (init_bits - 1);
-	EOFCode = ClearCode + 1;
-	free_ent = ClearCode + 2;
+	state->ClearCode = 1 << (init_bits - 1);
+	state->EOFCode = state->ClearCode + 1;
+	state->free_ent = state->ClearCode + 2;
 
-	a_count = 0; // clear packet
+	state->a_count = 0; // clear packet
 
-	code = nextPixel();
+	code = nextPixel(state);
 
 	hshift = 0;
-	for (fcode = hsize; fcode < 65536; fcode *= 2)
+	for (fcode = state->hsize; fcode < 65536; fcode *= 2)
 		++hshift;
 	hshift = 8 - hshift; // set hash code range bound
 
-	hsize_reg = hsize;
-	cl_hash(hsize_reg); // clear hash table
+	hsize_reg = state->hsize;
+	cl_hash(state, hsize_reg); // clear hash table
 
-	output(ClearCode, buffer, bufferLength);
+	output(state, state->ClearCode);
 
 	int isOuterContinue = FALSE;
-	while ((c = nextPixel()) != EOF) {
-		fcode = (c << maxbits) + code;
+	while ((c = nextPixel(state)) != EOF) {
+		fcode = (c << state->maxbits) + code;
 		i = (c << hshift) ^ code; // xor hashing
 
 		if (htab[i] == fcode) { // is exists
@@ -182,126 +247,195 @@ void compress(int init_bits, register jbyte *buffer, register int *bufferLength)
 			}
 		}
 
-		output(code, buffer, bufferLength);
+		if (state->nearColors != NULL) {
+			// lossy. extend the string with a color close enough to c, as if the pixel was that color
+			register jint *near = state->nearColors;
+			register int k, end, nearCode;
+			for (k = near[c], end = near[c + 1]; k < end; ++k) {
+				nearCode = findCode(state, near[k], code, hshift, hsize_reg);
+				if (nearCode >= 0) {
+					code = nearCode;
+					isOuterContinue = TRUE;
+					break;
+				}
+			}
+
+			if (isOuterContinue == TRUE) {
+				isOuterContinue = FALSE;
+				continue;
+			}
+		}
+
+		output(state, code);
 		code = c;
-		if (free_ent < maxmaxcode) {
-			codetab[i] = free_ent++; // code -> hashtable
+		if (state->free_ent < state->maxmaxcode) {
+			codetab[i] = state->free_ent++; // code -> hashtable
 			htab[i] = fcode;
 		} else
-			cl_block(buffer, bufferLength);
+			cl_block(state);
 	}
 
 	// Put out the final code.
-	output(code, buffer, bufferLength);
-	output(EOFCode, buffer, bufferLength);
+	output(state, code);
+	output(state, state->EOFCode);
+}
+
+// code of the string ent followed by c, or -1 if it is not in the table
+static int findCode(LZWState *state, int c, int ent, int hshift, int hsize_reg) {
+	register int *htab = state->htab;
+	register int fcode = (c << state->maxbits) + ent;
+	register int i = (c << hshift) ^ ent;
+	register int disp;
+
+	if (htab[i] == fcode)
+		return state->codetab[i];
+
+	disp = (i == 0) ? 1 : hsize_reg - i;
+	while (htab[i] >= 0) {
+		if ((i -= disp) < 0)
+			i += hsize_reg;
+
+		if (htab[i] == fcode)
+			return state->codetab[i];
+	}
+	return -1;
 }
 
 
 // Add a character to the end of the current packet, and if it is 254
 // characters, flush the packet to disk.
-void char_out(jbyte c, jbyte *buffer, int *bufferLength) {
-	accum[a_count++] = c;
-	if (a_count >= 254)
-		flush_char(buffer, bufferLength);
+static void char_out(LZWState *state, jbyte c) {
+	state->accum[state->a_count++] = c;
+	if (state->a_count >= 254)
+		flush_char(state);
 }
 
 // Clear out the hash table
 
 // table clear for block compress
-void cl_block(jbyte *buffer, int *bufferLength) {
-	cl_hash(hsize);
-	free_ent = ClearCode + 2;
-	clear_flg = TRUE;
+static void cl_block(LZWState *state) {
+	cl_hash(state, state->hsize);
+	state->free_ent = state->ClearCode + 2;
+	state->clear_flg = TRUE;
 
-	output(ClearCode, buffer, bufferLength);
+	output(state, state->ClearCode);
 }
 
 // reset code table
-void cl_hash(register int hsize) {
+static void cl_hash(LZWState *state, register int hsize) {
 	register int i;
+	register int *htab = state->htab;
 	for (i = 0; i < hsize; ++i)
 		htab[i] = -1;
 }
 
 // Flush the packet to disk, and reset the accumulator
-void flush_char(jbyte *buffer, int *bufferLength) {
-	if (a_count > 0) {
-		write(a_count, buffer, bufferLength);
-		writeRange(accum, 0, a_count, buffer, bufferLength);
-		a_count = 0;
+static void flush_char(LZWState *state) {
+	if (state->a_count > 0) {
+		write(state, state->a_count);
+		writeRange(state, state->accum, 0, state->a_count);
+		state->a_count = 0;
 	}
 }
 
-int MAXCODE(int n_bits) {
+static int MAXCODE(int n_bits) {
 	return (1 << n_bits) - 1;
 }
 
 
-int nextPixel() {
-	if (remaining == 0) return EOF;
+static inline int nextPixel(LZWState *state) {
+	if (state->remaining == 0 || state->failed) return EOF;
 
-	--remaining;
-	return pixAry[curPixel++] & 0xff;
+	--state->remaining;
+	return state->pixAry[state->curPixel++] & 0xff;
 }
 
-void output(int code, jbyte *buffer, int *bufferLength) {
-	cur_accum &= masks[cur_bits];
+static void output(LZWState *state, int code) {
+	state->cur_accum &= masks[state->cur_bits];
 
-	if (cur_bits > 0)
-		cur_accum |= (code << cur_bits);
+	if (state->cur_bits > 0)
+		state->cur_accum |= (code << state->cur_bits);
 	else
-		cur_accum = code;
+		state->cur_accum = code;
 
-	cur_bits += n_bits;
+	state->cur_bits += state->n_bits;
 
-	while (cur_bits >= 8) {
-		char_out((jbyte) (cur_accum & 0xff), buffer, bufferLength);
-		cur_accum >>= 8;
-		cur_bits -= 8;
+	while (state->cur_bits >= 8) {
+		char_out(state, (jbyte) (state->cur_accum & 0xff));
+		state->cur_accum >>= 8;
+		state->cur_bits -= 8;
 	}
 
 	// If the next entry is going to be too big for the code size,
 	// then increase it, if possible.
-	if (free_ent > maxcode || clear_flg) {
-		if (clear_flg) {
-			maxcode = MAXCODE(n_bits = g_init_bits);
-			clear_flg = FALSE;
+	if (state->free_ent > state->maxcode || state->clear_flg) {
+		if (state->clear_flg) {
+			state->maxcode = MAXCODE(state->n_bits = state->g_init_bits);
+			state->clear_flg = FALSE;
 		} else {
-			++n_bits;
-			if (n_bits == maxbits)
-				maxcode = maxmaxcode;
+			++state->n_bits;
+			if (state->n_bits == state->maxbits)
+				state->maxcode = state->maxmaxcode;
 			else
-				maxcode = MAXCODE(n_bits);
+				state->maxcode = MAXCODE(state->n_bits);
 		}
 	}
 
-	if (code == EOFCode) {
+	if (code == state->EOFCode) {
 		// At EOF, write the rest of the buffer.
-		while (cur_bits > 0) {
-			char_out((jbyte) (cur_accum & 0xff), buffer, bufferLength);
-			cur_accum >>= 8;
-			cur_bits -= 8;
+		while (state->cur_bits > 0) {
+			char_out(state, (jbyte) (state->cur_accum & 0xff));
+			state->cur_accum >>= 8;
+			state->cur_bits -= 8;
 		}
 
-		flush_char(buffer, bufferLength);
+		flush_char(state);
 	}
 }
 
-jbyteArray toJbyteArrayAndClean(JNIEnv *env, jbyte *byteArr, int length) {
-	jbyteArray byteArrayForJava = (*env)->NewByteArray(env, length);
-	(*env)->SetByteArrayRegion(env, byteArrayForJava, 0, length, byteArr);
-	free(byteArr);
+static jbyteArray toJbyteArrayAndClean(JNIEnv *env, LZWState *state) {
+	jbyteArray byteArrayForJava = (*env)->NewByteArray(env, state->bufferLength);
+	(*env)->SetByteArrayRegion(env, byteArrayForJava, 0, state->bufferLength, state->buffer);
+	free(state->buffer);
+	free(state);
 	return byteArrayForJava;
 }
 
-void write(int byte, jbyte *outArray, int *length) {
-	outArray[(*length)++] = (jbyte) (byte);
+// hands the buffered sub blocks to java. stops encoding if java throws
+static void drainSink(LZWState *state) {
+	JNIEnv *env = state->env;
+	if (state->bufferLength > 0 && !state->failed) {
+		(*env)->CallVoidMethod(env, state->sink, state->drain, state->bufferLength);
+		if ((*env)->ExceptionCheck(env)) state->failed = TRUE;
+	}
+	state->bufferLength = 0;
 }
 
-void writeRange(jbyte *inArray, register int start, register int end, jbyte *outArray,
-                int *length) {
+// grows the output buffer. a frame of noisy pixels can be compressed to more than MAX_BUFFER_SIZE
+// a streaming buffer is drained instead. it is at least 256 bytes, so a sub block always fits after draining
+static void ensureCapacity(LZWState *state, int required) {
+	if (required <= state->bufferCapacity) return;
+
+	if (state->sink != NULL) {
+		drainSink(state);
+		return;
+	}
+
+	while (state->bufferCapacity < required) {
+		state->bufferCapacity *= 2;
+	}
+	state->buffer = realloc(state->buffer, state->bufferCapacity);
+}
+
+static inline void write(LZWState *state, int byte) {
+	ensureCapacity(state, state->bufferLength + 1);
+	state->buffer[state->bufferLength++] = (jbyte) (byte);
+}
+
+static void writeRange(LZWState *state, jbyte *inArray, register int start, register int end) {
 	register int i;
+	ensureCapacity(state, state->bufferLength + (end - start));
 	for (i = start; i < end; ++i) {
-        outArray[(*length)++] = inArray[i];
+		state->buffer[state->bufferLength++] = inArray[i];
 	}
-}
\ No newline at end of file
+}
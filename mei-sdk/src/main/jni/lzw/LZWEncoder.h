@@ -10,10 +10,18 @@ extern "C" {
 /*
  * Class:     LZWEncoder
  * Method:    compress
- * Signature: ([BIII)[B
+ * Signature: ([BIII[I)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeLZWEncoder_compress
-  (JNIEnv * env, jclass, jbyteArray, jint, jint, jint);
+  (JNIEnv * env, jclass, jbyteArray, jint, jint, jint, jintArray);
+
+/*
+ * Class:     NativeLZWEncoder
+ * Method:    compressTo
+ * Signature: ([BIII[ILjava/nio/ByteBuffer;Lcom/naver/mei/sdk/core/gif/encoder/NativeLZWEncoder;)V
+ */
+JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeLZWEncoder_compressTo
+  (JNIEnv * env, jclass, jbyteArray, jint, jint, jint, jintArray, jobject, jobject);
 
 #ifdef __cplusplus
 }
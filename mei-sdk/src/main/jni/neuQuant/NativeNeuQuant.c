@@ -18,29 +18,57 @@ limitations under the License.
 #include "neuquant.h"
 #include <android/log.h>
 #include <stdlib.h>
+#include <string.h>
+#include <stdint.h>
 
 #define MAX_COLOR_SIZE 256
 #define MAX_CACHE_SIZE 2097152
 
-static unsigned char mapCache[MAX_CACHE_SIZE];
+// one context per java NativeNeuQuant instance. nothing is shared between instances,
+// so different instances can be used from different threads at the same time.
+typedef struct {
+    nqcontext *nq;
+    unsigned char *mapCache;        // inverse color map. palette index of each color reduced to mapCacheQuality bits
+    unsigned char *mapCacheFilled;  // bit per mapCache cell. cells are searched on first use
+    int mapCacheQuality;            // 0 = invalid. reset whenever the palette changes
+} NativeContext;
 
-JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_init(JNIEnv *env, jobject object, jbyteArray array, jint len, jint sample) {
-//    __android_log_print(ANDROID_LOG_ERROR, "JNI", "Native Method Called : init");
-    jbyte* b = (*env)->GetByteArrayElements(env, array, 0);
-    initnet((unsigned char*)b, len, sample);
-    (*env)->ReleaseByteArrayElements(env, array, b, 0);
+static jobject createMapResult(JNIEnv *env, jbyte *indexedPixels, int nPix, jboolean *usedEntry);
+
+static jobject mapToResult(JNIEnv *env, NativeContext *context, jbyteArray jpixels, int mapQuality);
+
+static void mapPixels(NativeContext *context, jbyte *pixels, int nPix, int mapQuality, jbyte *indexedPixels, jboolean *usedEntry);
+
+JNIEXPORT jlong JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_create(JNIEnv *env, jclass clazz) {
+    NativeContext *context = calloc(1, sizeof(NativeContext));
+    context->nq = nqcreate();
+    return (jlong) (intptr_t) context;
 }
 
+JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_destroy(JNIEnv *env, jclass clazz, jlong handle) {
+    NativeContext *context = (NativeContext *) (intptr_t) handle;
+    nqdestroy(context->nq);
+    free(context->mapCache);
+    free(context->mapCacheFilled);
+    free(context);
+}
 
-JNIEXPORT jintArray JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_process(JNIEnv *env, jobject object) {
+JNIEXPORT jbyteArray JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_process(JNIEnv *env, jclass clazz, jlong handle, jbyteArray array, jint len, jint sample) {
 //    __android_log_print(ANDROID_LOG_ERROR, "JNI", "Native Method Called : process");
+    NativeContext *context = (NativeContext *) (intptr_t) handle;
     unsigned char color[768];
 
-    learn();
-    unbiasnet();
-    inxbuild();
+    // the picture must stay valid during learning, so it is acquired here instead of in init
+    jbyte* b = (*env)->GetByteArrayElements(env, array, 0);
+    initnet(context->nq, (unsigned char*)b, len, sample);
+    learn(context->nq);
+    (*env)->ReleaseByteArrayElements(env, array, b, JNI_ABORT);
+
+    unbiasnet(context->nq);
+    inxbuild(context->nq);
+    context->mapCacheQuality = 0;
 
-    writecolormap(color);
+    writecolormap(context->nq, color);
 
     jbyteArray palette = (*env)->NewByteArray(env, 768);
     (*env)->SetByteArrayRegion(env, palette, 0, 768, (jbyte*)color);
@@ -48,90 +76,118 @@ JNIEXPORT jintArray JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQua
     return palette;
 };
 
-JNIEXPORT jint JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_map__III(JNIEnv *env, jobject object, jint b, jint g, jint r) {
-    return inxsearch(b, g, r);
+JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_setColorMap(JNIEnv *env, jclass clazz, jlong handle, jbyteArray jcolorMap, jint colorCount) {
+    NativeContext *context = (NativeContext *) (intptr_t) handle;
+    jbyte* colorMap = (*env)->GetByteArrayElements(env, jcolorMap, NULL);
+    readcolormap(context->nq, (unsigned char*)colorMap, colorCount);
+    context->mapCacheQuality = 0;
+    (*env)->ReleaseByteArrayElements(env, jcolorMap, colorMap, JNI_ABORT);
 }
 
-JNIEXPORT jobject JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_map___3B(JNIEnv *env, jobject object, jbyteArray jpixels) {
-    jbyte* pixels = (*env)->GetByteArrayElements(env, jpixels, NULL);
-    jboolean usedEntry[MAX_COLOR_SIZE];
+JNIEXPORT jint JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_map__JIII(JNIEnv *env, jclass clazz, jlong handle, jint b, jint g, jint r) {
+    NativeContext *context = (NativeContext *) (intptr_t) handle;
+    return inxsearch(context->nq, b, g, r);
+}
 
-    register int nPix = (*env)->GetArrayLength(env, jpixels) / 3;
-    register jbyte* indexedPixels = malloc(sizeof(jboolean) * nPix);
-    register jboolean* pUsedEntry = usedEntry;
+JNIEXPORT jobject JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_map__J_3B(JNIEnv *env, jclass clazz, jlong handle, jbyteArray jpixels) {
+    return mapToResult(env, (NativeContext *) (intptr_t) handle, jpixels, 8);
+}
 
-    register int i = 0, k = 0;
-    register int index;
+JNIEXPORT jobject JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_mapByQuality(JNIEnv *env, jclass clazz, jlong handle, jbyteArray jpixels, jint mapQuality) {
+    return mapToResult(env, (NativeContext *) (intptr_t) handle, jpixels, mapQuality);
+}
 
-    for (; i < nPix; ++i) {
-        index = inxsearch(pixels[k] & 0xff, pixels[k + 1] & 0xff, pixels[k + 2] & 0xff);
-        pUsedEntry[index] = JNI_TRUE;
-        indexedPixels[i] = (jbyte)index;
-        k += 3;
-    }
+JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_mapInto(JNIEnv *env, jclass clazz, jlong handle, jbyteArray jpixels, jint nPix, jint mapQuality, jbyteArray jindexedPixels, jbooleanArray jusedEntry) {
+    NativeContext *context = (NativeContext *) (intptr_t) handle;
+    jbyte* pixels = (*env)->GetByteArrayElements(env, jpixels, NULL);
+    jbyte* indexedPixels = (*env)->GetByteArrayElements(env, jindexedPixels, NULL);
+    jboolean usedEntry[MAX_COLOR_SIZE];
 
-    jbyteArray jIndexedPixels = (*env)->NewByteArray(env, nPix);
-    jbooleanArray  jusedEntry = (*env)->NewBooleanArray(env, MAX_COLOR_SIZE);
+    mapPixels(context, pixels, nPix, mapQuality, indexedPixels, usedEntry);
 
-    (*env)->SetByteArrayRegion(env, jIndexedPixels, 0, nPix, indexedPixels);
+    (*env)->ReleaseByteArrayElements(env, jpixels, pixels, JNI_ABORT);
+    (*env)->ReleaseByteArrayElements(env, jindexedPixels, indexedPixels, 0);
     (*env)->SetBooleanArrayRegion(env, jusedEntry, 0, MAX_COLOR_SIZE, usedEntry);
+}
 
-    (*env)->ReleaseByteArrayElements(env, jpixels, pixels, 0);
-    free(indexedPixels);
+static jobject mapToResult(JNIEnv *env, NativeContext *context, jbyteArray jpixels, int mapQuality) {
+    jbyte* pixels = (*env)->GetByteArrayElements(env, jpixels, NULL);
+    jboolean usedEntry[MAX_COLOR_SIZE];
 
-    // create java object
-    jclass mapResultClass = (*env)->FindClass(env, "com/naver/mei/sdk/core/gif/encoder/MapResult");
-    jmethodID mapResultConstructorId = (*env)->GetMethodID(env, mapResultClass, "<init>", "()V");
-    jobject mapResult = (*env)->NewObject(env, mapResultClass, mapResultConstructorId, "()V");
-    jfieldID indexedPixelsFieldId = (*env)->GetFieldID(env, mapResultClass, "indexedPixels", "[B");
-    jfieldID usedEntryFieldId = (*env)->GetFieldID(env, mapResultClass, "usedEntry", "[Z");
+    int nPix = (*env)->GetArrayLength(env, jpixels) / 3;
+    jbyte* indexedPixels = malloc(sizeof(jboolean) * nPix);
 
-    (*env)->SetObjectField(env, mapResult, indexedPixelsFieldId, jIndexedPixels);
-    (*env)->SetObjectField(env, mapResult, usedEntryFieldId, jusedEntry);
+    mapPixels(context, pixels, nPix, mapQuality, indexedPixels, usedEntry);
+
+    (*env)->ReleaseByteArrayElements(env, jpixels, pixels, JNI_ABORT);
+
+    jobject mapResult = createMapResult(env, indexedPixels, nPix, usedEntry);
+    free(indexedPixels);
 
     return mapResult;
 }
 
-JNIEXPORT jobject JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_mapByQuality(JNIEnv *env, jobject object, jbyteArray jpixels, jint mapQuality) {
-    jbyte* pixels = (*env)->GetByteArrayElements(env, jpixels, NULL);
-    jboolean usedEntry[MAX_COLOR_SIZE];
-
-    register int nPix = (*env)->GetArrayLength(env, jpixels) / 3;
-    register jbyte* indexedPixels = malloc(sizeof(jboolean) * nPix);
+// maps nPix BGR pixels to palette indexes. mapQuality 8 searches every pixel.
+// lower qualities look up an inverse color map of the colors reduced to mapQuality bits per channel.
+// the map is kept until the palette changes, and each cell holds the palette index of the cell center,
+// so the result depends only on the palette, not on the frames mapped before.
+static void mapPixels(NativeContext *context, jbyte *pixels, int nPix, int mapQuality, jbyte *indexedPixels, jboolean *usedEntry) {
+    register nqcontext *nq = context->nq;
     register jboolean* pUsedEntry = usedEntry;
-
-    memset(mapCache, 0, MAX_CACHE_SIZE);
-
-    register unsigned char* pMapCache = mapCache;
     register int i = 0, k = 0;
     register int index;
+
+    memset(usedEntry, 0, MAX_COLOR_SIZE);
+
+    if (mapQuality >= 8) {
+        for (; i < nPix; ++i) {
+            index = inxsearch(nq, pixels[k] & 0xff, pixels[k + 1] & 0xff, pixels[k + 2] & 0xff);
+            pUsedEntry[index] = JNI_TRUE;
+            indexedPixels[i] = (jbyte)index;
+            k += 3;
+        }
+        return;
+    }
+
+    if (context->mapCache == NULL) {
+        context->mapCache = malloc(MAX_CACHE_SIZE);
+        context->mapCacheFilled = malloc(MAX_CACHE_SIZE / 8);
+    }
+    if (context->mapCacheQuality != mapQuality) {
+        memset(context->mapCacheFilled, 0, (1 << (mapQuality * 3)) / 8);
+        context->mapCacheQuality = mapQuality;
+    }
+
+    register unsigned char* pMapCache = context->mapCache;
+    register unsigned char* pFilled = context->mapCacheFilled;
     register int key;
     register int rShifter = 16 - (8 - mapQuality) * 3;
     register int gShifter = 8 - (8 - mapQuality) * 2;
     register int bShifter = 8 - mapQuality;
     register unsigned char mask = (unsigned char)(255 - ((1 << (8 - mapQuality)) - 1));
+    register int half = (1 << (8 - mapQuality)) >> 1;
 
     for (; i < nPix; ++i) {
         key = ((pixels[k+2] & mask) << rShifter ) | ((pixels[k+1] & mask) << gShifter) | ((pixels[k] & mask) >> bShifter);
-        if (pMapCache[key] == 0) {
-            index = inxsearch(pixels[k] & 0xff, pixels[k + 1] & 0xff, pixels[k + 2] & 0xff);
-            pMapCache[key] = (unsigned char)(index + 1);
-            pUsedEntry[index] = JNI_TRUE;
+        if ((pFilled[key >> 3] & (1 << (key & 7))) == 0) {
+            pMapCache[key] = (unsigned char)inxsearch(nq, (pixels[k] & mask) | half, (pixels[k + 1] & mask) | half, (pixels[k + 2] & mask) | half);
+            pFilled[key >> 3] |= (unsigned char)(1 << (key & 7));
         }
 
-        indexedPixels[i] = (jbyte)(pMapCache[key] - 1);
+        index = pMapCache[key];
+        pUsedEntry[index] = JNI_TRUE;
+        indexedPixels[i] = (jbyte)index;
         k += 3;
     }
+}
 
+static jobject createMapResult(JNIEnv *env, jbyte *indexedPixels, int nPix, jboolean *usedEntry) {
     jbyteArray jIndexedPixels = (*env)->NewByteArray(env, nPix);
     jbooleanArray  jusedEntry = (*env)->NewBooleanArray(env, MAX_COLOR_SIZE);
 
     (*env)->SetByteArrayRegion(env, jIndexedPixels, 0, nPix, indexedPixels);
     (*env)->SetBooleanArrayRegion(env, jusedEntry, 0, MAX_COLOR_SIZE, usedEntry);
 
-    (*env)->ReleaseByteArrayElements(env, jpixels, pixels, 0);
-    free(indexedPixels);
-
     // create java object
     jclass mapResultClass = (*env)->FindClass(env, "com/naver/mei/sdk/core/gif/encoder/MapResult");
     jmethodID mapResultConstructorId = (*env)->GetMethodID(env, mapResultClass, "<init>", "()V");
@@ -143,4 +199,4 @@ JNIEXPORT jobject JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
     (*env)->SetObjectField(env, mapResult, usedEntryFieldId, jusedEntry);
 
     return mapResult;
-}
\ No newline at end of file
+}
@@ -1,6 +1,6 @@
 /* DO NOT EDIT THIS FILE - it is machine generated */
 #include <jni.h>
-/* Header for class com_naver_mei_sdk_gif_NativeNeuQuant */
+/* Header for class com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant */
 
 #ifndef _Included_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
 #define _Included_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
@@ -8,44 +8,68 @@
 extern "C" {
 #endif
 /*
- * Class:     com_naver_mei_sdk_gif_NativeNeuQuant
- * Method:    init
- * Signature: ([BII)V
+ * Class:     com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
+ * Method:    create
+ * Signature: ()J
  */
-JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_init
-        (JNIEnv *, jobject, jbyteArray, jint, jint);
+JNIEXPORT jlong JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_create
+        (JNIEnv *, jclass);
 
 /*
- * Class:     com_naver_mei_sdk_gif_NativeNeuQuant
+ * Class:     com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
+ * Method:    destroy
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_destroy
+        (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
  * Method:    process
- * Signature: ()[B
+ * Signature: (J[BII)[B
  */
 JNIEXPORT jbyteArray JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_process
-        (JNIEnv *, jobject);
+        (JNIEnv *, jclass, jlong, jbyteArray, jint, jint);
 
 /*
- * Class:     com_naver_mei_sdk_gif_NativeNeuQuant
+ * Class:     com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
+ * Method:    setColorMap
+ * Signature: (J[BI)V
+ */
+JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_setColorMap
+        (JNIEnv *, jclass, jlong, jbyteArray, jint);
+
+/*
+ * Class:     com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
  * Method:    map
- * Signature: (III)I
+ * Signature: (JIII)I
  */
-JNIEXPORT jint JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_map__III
-        (JNIEnv *, jobject, jint, jint, jint);
+JNIEXPORT jint JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_map__JIII
+        (JNIEnv *, jclass, jlong, jint, jint, jint);
 
 /*
- * Class:     com_naver_mei_sdk_gif_NativeNeuQuant
+ * Class:     com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
  * Method:    map
- * Signature: ([B)Lcom/naver/mei/sdk/gif/MapResult;
+ * Signature: (J[B)Lcom/naver/mei/sdk/core/gif/encoder/MapResult;
  */
-JNIEXPORT jobject JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_map___3B
-        (JNIEnv *, jobject, jbyteArray);
+JNIEXPORT jobject JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_map__J_3B
+        (JNIEnv *, jclass, jlong, jbyteArray);
 
 /*
- * Class:     com_naver_mei_sdk_gif_NativeNeuQuant
+ * Class:     com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
  * Method:    mapByQuality
- * Signature: ([BI)Lcom/naver/mei/sdk/gif/MapResult;
+ * Signature: (J[BI)Lcom/naver/mei/sdk/core/gif/encoder/MapResult;
  */
 JNIEXPORT jobject JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_mapByQuality
-        (JNIEnv *, jobject, jbyteArray, jint);
+        (JNIEnv *, jclass, jlong, jbyteArray, jint);
+
+/*
+ * Class:     com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant
+ * Method:    mapInto
+ * Signature: (J[BII[B[Z)V
+ */
+JNIEXPORT void JNICALL Java_com_naver_mei_sdk_core_gif_encoder_NativeNeuQuant_mapInto
+        (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jbyteArray, jbooleanArray);
 
 #ifdef __cplusplus
 }
@@ -44,7 +44,7 @@
 #define betagamma	(intbias<<(gammashift-betashift))
 
 /* defs for decreasing radius factor */
-#define initrad		(netsize>>3)		/* for 256 cols, radius starts */
+/* initrad (see neuquant.h)		   for 256 cols, radius starts */
 #define radiusbiasshift	6			/* at 32.0 biased by 6 bits */
 #define radiusbias	(((int) 1)<<radiusbiasshift)
 #define initradius	(initrad*radiusbias)	/* and decreases by a */
@@ -53,7 +53,6 @@
 /* defs for decreasing alpha factor */
 #define alphabiasshift	10			/* alpha starts at 1.0 */
 #define initalpha	(((int) 1)<<alphabiasshift)
-int alphadec;					/* biased by 10 bits */
 
 /* radbias and alpharadbias used for radpower calculation */
 #define radbiasshift	8
@@ -64,26 +63,26 @@ int alphadec;					/* biased by 10 bits */
 
 /* Types and Global Variables
    -------------------------- */
-   
-static unsigned char *thepicture;		/* the input image itself */
-static int lengthcount;				/* lengthcount = H*W*3 */
-
-static int samplefac;				/* sampling factor 1..30 */
 
+/* the network state lives in nqcontext (see neuquant.h) so that several
+   quantizers can run on different threads at the same time */
 
-typedef int pixel[4];				/* BGRc */
-static pixel network[netsize];			/* the network itself */
-
-static int netindex[256];			/* for network lookup - really 256 */
+nqcontext *nqcreate()
+{
+	return (nqcontext *) calloc(1, sizeof(nqcontext));
+}
 
-static int bias [netsize];			/* bias and freq arrays for learning */
-static int freq [netsize];
-static int radpower[initrad];			/* radpower for precomputation */
+void nqdestroy(nq)
+nqcontext *nq;
+{
+	free(nq);
+}
 
 /* Initialise network in range (0,0,0) to (255,255,255) and set parameters
    ----------------------------------------------------------------------- */
 
-void initnet(thepic,len,sample)	
+void initnet(nq,thepic,len,sample)
+nqcontext *nq;
 unsigned char *thepic;
 int len;
 int sample;
@@ -91,15 +90,15 @@ int sample;
 	register int i;
 	register int *p;
 
-	thepicture = thepic;
-	lengthcount = len;
-	samplefac = sample;
+	nq->thepicture = thepic;
+	nq->lengthcount = len;
+	nq->samplefac = sample;
 	
 	for (i=0; i<netsize; i++) {
-		p = network[i];
+		p = nq->network[i];
 		p[0] = p[1] = p[2] = (i << (netbiasshift+8))/netsize;
-		freq[i] = intbias/netsize;	/* 1/netsize */
-		bias[i] = 0;
+		nq->freq[i] = intbias/netsize;	/* 1/netsize */
+		nq->bias[i] = 0;
 	}
 }
 
@@ -107,9 +106,11 @@ int sample;
 /* Unbias network to give byte values 0..255 and record position i to prepare for sort
    ----------------------------------------------------------------------------------- */
 
-void unbiasnet()
+void unbiasnet(nq)
+nqcontext *nq;
 {
 	int i,j,temp;
+	pixel *network = nq->network;
 
 	for (i=0; i<netsize; i++) {
 		for (j=0; j<3; j++) {
@@ -130,10 +131,12 @@ void unbiasnet()
 /* Output colour map
    ----------------- */
 
-void writecolourmap(f)
+void writecolourmap(nq,f)
+nqcontext *nq;
 FILE *f;
 {
 	int i,j;
+	pixel *network = nq->network;
 
 	for (i=2; i>=0; i--) 
 		for (j=0; j<netsize; j++) 
@@ -141,8 +144,9 @@ FILE *f;
 }
 
 // added by yg-kang. 2016.12.22
-void writecolormap(unsigned char *p)
+void writecolormap(nqcontext *nq, unsigned char *p)
 {
+    pixel *network = nq->network;
     int index[netsize];
     int i, z;
     for (z = 0; z < netsize; z++) {
@@ -157,14 +161,39 @@ void writecolormap(unsigned char *p)
     }
 }
 
+/* Load a colour map written by writecolormap instead of learning one. n colours, BGR order.
+   Unused entries repeat colour 0, so lookups never return an index >= n. */
+void readcolormap(nqcontext *nq, unsigned char *p, int n)
+{
+    pixel *network = nq->network;
+    int i, k = 0;
+    for (i = 0; i < netsize; i++) {
+        if (i < n) {
+            network[i][0] = p[k++];
+            network[i][1] = p[k++];
+            network[i][2] = p[k++];
+            network[i][3] = i;
+        } else {
+            network[i][0] = network[0][0];
+            network[i][1] = network[0][1];
+            network[i][2] = network[0][2];
+            network[i][3] = 0;
+        }
+    }
+    inxbuild(nq);
+}
+
 /* Insertion sort of network and building of netindex[0..255] (to do after unbias)
    ------------------------------------------------------------------------------- */
 
-void inxbuild()
+void inxbuild(nq)
+nqcontext *nq;
 {
 	register int i,j,smallpos,smallval;
 	register int *p,*q;
 	int previouscol,startpos;
+	pixel *network = nq->network;
+	int *netindex = nq->netindex;
 
 	previouscol = 0;
 	startpos = 0;
@@ -204,16 +233,18 @@ void inxbuild()
 /* Search for BGR values 0..255 (after net is unbiased) and return colour index
    ---------------------------------------------------------------------------- */
 
-int inxsearch(b,g,r)
+int inxsearch(nq,b,g,r)
+nqcontext *nq;
 register int b,g,r;
 {
 	register int i,j,dist,a,bestd;
 	register int *p;
 	int best;
+	pixel *network = nq->network;
 
 	bestd = 1000;		/* biggest possible dist is 256*3 */
 	best = -1;
-	i = netindex[g];	/* index on g */
+	i = nq->netindex[g];	/* index on g */
 	j = i-1;		/* start at netindex[g] and work outwards */
 
 	while ((i<netsize) || (j>=0)) {
@@ -257,7 +288,8 @@ register int b,g,r;
 /* Search for biased BGR values
    ---------------------------- */
 
-int contest(b,g,r)
+int contest(nq,b,g,r)
+nqcontext *nq;
 register int b,g,r;
 {
 	/* finds closest neuron (min dist) and updates freq */
@@ -273,11 +305,11 @@ register int b,g,r;
 	bestbiasd = bestd;
 	bestpos = -1;
 	bestbiaspos = bestpos;
-	p = bias;
-	f = freq;
+	p = nq->bias;
+	f = nq->freq;
 
 	for (i=0; i<netsize; i++) {
-		n = network[i];
+		n = nq->network[i];
 		dist = n[0] - b;   if (dist<0) dist = -dist;
 		a = n[1] - g;   if (a<0) a = -a;
 		dist += a;
@@ -290,8 +322,8 @@ register int b,g,r;
 		*f++ -= betafreq;
 		*p++ += (betafreq<<gammashift);
 	}
-	freq[bestpos] += beta;
-	bias[bestpos] -= betagamma;
+	nq->freq[bestpos] += beta;
+	nq->bias[bestpos] -= betagamma;
 	return(bestbiaspos);
 }
 
@@ -299,12 +331,13 @@ register int b,g,r;
 /* Move neuron i towards biased (b,g,r) by factor alpha
    ---------------------------------------------------- */
 
-void altersingle(alpha,i,b,g,r)
+void altersingle(nq,alpha,i,b,g,r)
+nqcontext *nq;
 register int alpha,i,b,g,r;
 {
 	register int *n;
 
-	n = network[i];				/* alter hit neuron */
+	n = nq->network[i];				/* alter hit neuron */
 	*n -= (alpha*(*n - b)) / initalpha;
 	n++;
 	*n -= (alpha*(*n - g)) / initalpha;
@@ -316,19 +349,21 @@ register int alpha,i,b,g,r;
 /* Move adjacent neurons by precomputed alpha*(1-((i-j)^2/[r]^2)) in radpower[|i-j|]
    --------------------------------------------------------------------------------- */
 
-void alterneigh(rad,i,b,g,r)
+void alterneigh(nq,rad,i,b,g,r)
+nqcontext *nq;
 int rad,i;
 register int b,g,r;
 {
 	register int j,k,lo,hi,a;
 	register int *p, *q;
+	pixel *network = nq->network;
 
 	lo = i-rad;   if (lo<-1) lo=-1;
 	hi = i+rad;   if (hi>netsize) hi=netsize;
 
 	j = i+1;
 	k = i-1;
-	q = radpower;
+	q = nq->radpower;
 	while ((j<hi) || (k>lo)) {
 		a = (*(++q));
 		if (j<hi) {
@@ -356,18 +391,23 @@ register int b,g,r;
 /* Main Learning Loop
    ------------------ */
 
-void learn()
+void learn(nq)
+nqcontext *nq;
 {
 	register int i,j,b,g,r;
-	int radius,rad,alpha,step,delta,samplepixels;
+	int radius,rad,alpha,alphadec,step,delta,samplepixels;
 	register unsigned char *p;
 	unsigned char *lim;
-
-	alphadec = 30 + ((samplefac-1)/3);
-	p = thepicture;
-	lim = thepicture + lengthcount;
-	samplepixels = lengthcount/(3*samplefac);
+	int lengthcount = nq->lengthcount;
+	int *radpower = nq->radpower;
+
+	p = nq->thepicture;
+	lim = nq->thepicture + lengthcount;
+	if (lengthcount < minpicturebytes) nq->samplefac = 1;	/* small frames (e.g. dirty rectangles) are learned from every pixel */
+	alphadec = 30 + ((nq->samplefac-1)/3);
+	samplepixels = lengthcount/(3*nq->samplefac);
 	delta = samplepixels/ncycles;
+	if (delta == 0) delta = 1;	/* less than ncycles sample pixels */
 	alpha = initalpha;
 	radius = initradius;
 	
@@ -392,13 +432,13 @@ void learn()
 		b = p[0] << netbiasshift;
 		g = p[1] << netbiasshift;
 		r = p[2] << netbiasshift;
-		j = contest(b,g,r);
+		j = contest(nq,b,g,r);
 
-		altersingle(alpha,j,b,g,r);
-		if (rad) alterneigh(rad,j,b,g,r);   /* alter neighbours */
+		altersingle(nq,alpha,j,b,g,r);
+		if (rad) alterneigh(nq,rad,j,b,g,r);   /* alter neighbours */
 
 		p += step;
-		if (p >= lim) p -= lengthcount;
+		while (p >= lim) p -= lengthcount;	/* step may exceed the length of small frames */
 	
 		i++;
 		if (i%delta == 0) {	
@@ -39,31 +39,56 @@
 #define minpicturebytes	(3*prime4)		/* minimum size for input image */
 
 
+#define initrad		(netsize>>3)		/* for 256 cols, radius starts */
+
+typedef int pixel[4];				/* BGRc */
+
+/* Network state. One context per quantizer, so that frames can be quantized in parallel
+   -------------------------------------------------------------------------------------- */
+typedef struct {
+	unsigned char *thepicture;		/* the input image itself */
+	int lengthcount;			/* lengthcount = H*W*3 */
+	int samplefac;				/* sampling factor 1..30 */
+	pixel network[netsize];			/* the network itself */
+	int netindex[256];			/* for network lookup - really 256 */
+	int bias[netsize];			/* bias and freq arrays for learning */
+	int freq[netsize];
+	int radpower[initrad];			/* radpower for precomputation */
+} nqcontext;
+
+extern nqcontext *nqcreate();
+
+extern void nqdestroy(nqcontext *nq);
+
 /* Initialise network in range (0,0,0) to (255,255,255) and set parameters
    ----------------------------------------------------------------------- */
-extern void initnet(unsigned char *thepic, int len, int sample);
+extern void initnet(nqcontext *nq, unsigned char *thepic, int len, int sample);
 		
 /* Unbias network to give byte values 0..255 and record position i to prepare for sort
    ----------------------------------------------------------------------------------- */
-extern void unbiasnet();	/* can edit this function to do output of colour map */
+extern void unbiasnet(nqcontext *nq);	/* can edit this function to do output of colour map */
 
 /* Output colour map
    ----------------- */
-extern void writecolourmap(FILE *f);
+extern void writecolourmap(nqcontext *nq, FILE *f);
+
+extern void writecolormap(nqcontext *nq, unsigned char *p);
 
-extern void writecolormap(unsigned char *p);
+/* Load a colour map instead of learning one. Builds netindex, so inxsearch can be used right after
+   ----------------------------------------------------------------------------------------------- */
+extern void readcolormap(nqcontext *nq, unsigned char *p, int n);
 
 /* Insertion sort of network and building of netindex[0..255] (to do after unbias)
    ------------------------------------------------------------------------------- */
-extern void inxbuild();
+extern void inxbuild(nqcontext *nq);
 
 /* Search for BGR values 0..255 (after net is unbiased) and return colour index
    ---------------------------------------------------------------------------- */
-extern int inxsearch(register int b, register int g, register int r);
+extern int inxsearch(nqcontext *nq, register int b, register int g, register int r);
 
 /* Main Learning Loop
    ------------------ */
-extern void learn();
+extern void learn(nqcontext *nq);
 
 /* Program Skeleton
    ----------------
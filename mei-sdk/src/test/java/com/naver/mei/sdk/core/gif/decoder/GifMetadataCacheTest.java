@@ -0,0 +1,151 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.decoder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class GifMetadataCacheTest {
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("metadata", "");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+		new File(file.getPath() + ".tmp").delete();
+	}
+
+	@Test
+	public void entriesAreReadBackFromTheFile() {
+		GifMetadataCache cache = new GifMetadataCache(file);
+		assertNull(cache.get("a"));
+		cache.put("a", metadata(1));
+		cache.put("b", metadata(2));
+		cache.put("a", metadata(3)); // the later record wins
+		assertEquals(metadata(3), cache.get("a"));
+
+		GifMetadataCache reloaded = new GifMetadataCache(file);
+		assertEquals(metadata(3), reloaded.get("a"));
+		assertEquals(metadata(2), reloaded.get("b"));
+		assertNull(reloaded.get("c"));
+	}
+
+	@Test
+	public void leastRecentlyUsedEntriesAreDropped() {
+		GifMetadataCache cache = new GifMetadataCache(file);
+		for (int i = 0; i <= 512; i++) {
+			cache.put("key" + i, metadata(i));
+		}
+		assertNull(cache.get("key0"));
+		assertEquals(metadata(1), cache.get("key1"));
+
+		GifMetadataCache reloaded = new GifMetadataCache(file);
+		assertNull(reloaded.get("key0"));
+		assertEquals(metadata(512), reloaded.get("key512"));
+	}
+
+	@Test
+	public void staleRecordsAreCompacted() {
+		GifMetadataCache cache = new GifMetadataCache(file);
+		cache.put("a", metadata(0));
+		long oneRecord = file.length();
+		for (int i = 1; i < 1024; i++) {
+			cache.put("a", metadata(i % 10));
+		}
+		assertEquals(1024 * (oneRecord - 4) + 4, file.length());
+
+		cache.put("a", metadata(7)); // 1024 records. rewritten with the entries
+		assertEquals(oneRecord, file.length());
+		assertEquals(metadata(7), new GifMetadataCache(file).get("a"));
+	}
+
+	@Test
+	public void recordCutByACrashIsDropped() throws IOException {
+		GifMetadataCache cache = new GifMetadataCache(file);
+		cache.put("a", metadata(1));
+		long oneRecord = file.length();
+		cache.put("b", metadata(2));
+		truncate(file.length() - 3);
+
+		GifMetadataCache reloaded = new GifMetadataCache(file);
+		assertEquals(metadata(1), reloaded.get("a"));
+		assertNull(reloaded.get("b"));
+		assertEquals(oneRecord, file.length()); // rewritten without the broken record
+
+		reloaded.put("b", metadata(2));
+		assertEquals(metadata(2), new GifMetadataCache(file).get("b"));
+	}
+
+	@Test
+	public void fileOfAnotherVersionIsReplaced() throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.writeInt(99);
+			out.writeUTF("a");
+		} finally {
+			out.close();
+		}
+
+		GifMetadataCache cache = new GifMetadataCache(file);
+		assertNull(cache.get("a"));
+		assertEquals(4, file.length()); // the version only
+		cache.put("a", metadata(1));
+		assertEquals(metadata(1), new GifMetadataCache(file).get("a"));
+	}
+
+	@Test
+	public void clearDeletesTheFile() {
+		GifMetadataCache cache = new GifMetadataCache(file);
+		cache.put("a", metadata(1));
+		cache.clear();
+
+		assertNull(cache.get("a"));
+		assertFalse(file.exists());
+		cache.put("b", metadata(2));
+		GifMetadataCache reloaded = new GifMetadataCache(file);
+		assertNull(reloaded.get("a"));
+		assertEquals(metadata(2), reloaded.get("b"));
+	}
+
+	private void truncate(long length) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(length);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static GifMetadata metadata(int seed) {
+		return new GifMetadata(100 + seed, 50, seed % 3, new int[]{100, 20 * seed, 70});
+	}
+}
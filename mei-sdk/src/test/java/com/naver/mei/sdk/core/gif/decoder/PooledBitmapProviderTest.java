@@ -0,0 +1,128 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.decoder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PooledBitmapProviderTest {
+	@Test
+	public void releasedArraysAreReused() {
+		PooledBitmapProvider provider = new PooledBitmapProvider(1024);
+		byte[] bytes = provider.obtainByteArray(100);
+		int[] ints = provider.obtainIntArray(100);
+		assertEquals(100, bytes.length);
+		assertEquals(100, ints.length);
+		assertEquals(2, provider.getMissCount());
+
+		provider.release(bytes);
+		provider.release(ints);
+		assertEquals(100 + 400, provider.getPooledBytes());
+
+		assertSame(bytes, provider.obtainByteArray(100));
+		assertSame(ints, provider.obtainIntArray(100));
+		assertEquals(2, provider.getHitCount());
+		assertEquals(0, provider.getPooledBytes());
+	}
+
+	@Test
+	public void arraysUpToTwiceTheLengthAreHandedOut() {
+		PooledBitmapProvider provider = new PooledBitmapProvider(1024);
+		byte[] large = new byte[100];
+		provider.release(large);
+
+		assertNotSame(large, provider.obtainByteArray(49)); // more than twice as long
+		assertNotSame(large, provider.obtainByteArray(101)); // too short
+		assertEquals(2, provider.getMissCount());
+		assertSame(large, provider.obtainByteArray(50));
+		assertEquals(1, provider.getHitCount());
+	}
+
+	@Test
+	public void smallestFittingArrayIsHandedOut() {
+		PooledBitmapProvider provider = new PooledBitmapProvider(1024);
+		int[] small = new int[60];
+		int[] large = new int[80];
+		provider.release(large);
+		provider.release(small);
+
+		assertSame(small, provider.obtainIntArray(50));
+		assertSame(large, provider.obtainIntArray(50));
+	}
+
+	@Test
+	public void leastRecentlyReleasedAreEvicted() {
+		PooledBitmapProvider provider = new PooledBitmapProvider(250);
+		byte[] first = new byte[100];
+		byte[] second = new byte[100];
+		int[] third = new int[25];
+		provider.release(first);
+		provider.release(second);
+		provider.release(third); // 100 bytes. the first goes
+
+		assertEquals(1, provider.getEvictionCount());
+		assertEquals(200, provider.getPooledBytes());
+		assertSame(second, provider.obtainByteArray(100));
+		assertNotSame(first, provider.obtainByteArray(100));
+		assertSame(third, provider.obtainIntArray(25));
+	}
+
+	@Test
+	public void arraysLargerThanThePoolAreNotKept() {
+		PooledBitmapProvider provider = new PooledBitmapProvider(100);
+		provider.release(new byte[101]);
+		provider.release(new int[26]);
+		provider.release((byte[]) null);
+
+		assertEquals(0, provider.getPooledBytes());
+		assertEquals(0, provider.getEvictionCount());
+	}
+
+	@Test
+	public void shrinkingThePoolEvicts() {
+		PooledBitmapProvider provider = new PooledBitmapProvider(1000);
+		provider.release(new byte[300]);
+		provider.release(new byte[300]);
+		provider.release(new byte[300]);
+
+		provider.setMaxBytes(500);
+		assertEquals(300, provider.getPooledBytes());
+		assertEquals(2, provider.getEvictionCount());
+
+		provider.obtainByteArray(10);
+		provider.clear();
+		assertEquals(0, provider.getPooledBytes());
+		assertEquals(3, provider.getEvictionCount());
+		assertEquals(1, provider.getMissCount()); // the counters are kept
+
+		provider.setMaxBytes(0);
+		provider.release(new byte[1]);
+		assertEquals(0, provider.getPooledBytes());
+	}
+
+	@Test
+	public void simpleProviderKeepsNothing() {
+		SimpleBitmapProvider provider = new SimpleBitmapProvider();
+		byte[] bytes = provider.obtainByteArray(10);
+		provider.release(bytes);
+		assertNotSame(bytes, provider.obtainByteArray(10));
+	}
+}
@@ -0,0 +1,128 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileSizeBudgetTest {
+	private static final int SAMPLE = 10;
+
+	@Test
+	public void smallFramesKeepTheFullKnobs() {
+		FileSizeBudget budget = new FileSizeBudget(1000000, 10, SAMPLE);
+		budget.calibrate(10000);
+
+		assertEquals(1f, budget.getScale(), 0f);
+		assertEquals(256, budget.getMaxColors());
+		assertEquals(1, budget.getFrameStride());
+		assertEquals(SAMPLE, budget.getSample());
+	}
+
+	@Test
+	public void largeFramesAreScaledBeforeFramesAreSkipped() {
+		FileSizeBudget budget = new FileSizeBudget(200000, 10, SAMPLE);
+		budget.calibrate(50000); // 500KB for 10 frames at full size
+
+		assertTrue(budget.getScale() < 1f);
+		assertEquals(1, budget.getFrameStride());
+	}
+
+	@Test
+	public void hopelessFramesGetTheSmallestKnobs() {
+		FileSizeBudget budget = new FileSizeBudget(1000, 100, SAMPLE);
+		budget.calibrate(1000000);
+
+		assertEquals(0.25f, budget.getScale(), 0f);
+		assertEquals(16, budget.getMaxColors());
+		assertEquals(4, budget.getFrameStride());
+		assertTrue(budget.getSample() > SAMPLE); // coarser with fewer colors
+	}
+
+	@Test
+	public void unknownFrameCountAssumesTheDefault() {
+		FileSizeBudget unknown = new FileSizeBudget(300000, 0, SAMPLE);
+		FileSizeBudget assumed = new FileSizeBudget(300000, FileSizeBudget.ASSUMED_FRAME_COUNT, SAMPLE);
+		FileSizeBudget single = new FileSizeBudget(300000, 1, SAMPLE);
+		unknown.calibrate(20000);
+		assumed.calibrate(20000);
+		single.calibrate(20000);
+
+		assertEquals(assumed.getScale(), unknown.getScale(), 0f);
+		assertEquals(assumed.getMaxColors(), unknown.getMaxColors());
+		assertEquals(assumed.getFrameStride(), unknown.getFrameStride());
+		// not budgeted for a single frame
+		assertTrue(unknown.getScale() < single.getScale() || unknown.getMaxColors() < single.getMaxColors());
+	}
+
+	@Test
+	public void unknownFrameCountGrowsWithTheFramesWritten() {
+		FileSizeBudget budget = new FileSizeBudget(100000, 0, SAMPLE);
+		budget.calibrate(100);
+		assertEquals(256, budget.getMaxColors());
+
+		// 1KB per frame fits 60 frames. past them, twice the frames seen are expected
+		long written = 0;
+		for (int i = 0; i < 90; i++) {
+			written += 1000;
+			budget.onFrameWritten(written);
+		}
+		assertTrue(budget.getMaxColors() < 256);
+	}
+
+	@Test
+	public void colorsFollowTheBytesWritten() {
+		FileSizeBudget budget = new FileSizeBudget(100000, 20, SAMPLE);
+		budget.calibrate(100);
+		assertEquals(256, budget.getMaxColors());
+
+		// 6KB per frame projects 120KB for 20 frames
+		budget.onFrameWritten(6000);
+		budget.onFrameWritten(12000);
+		assertEquals(256, budget.getMaxColors()); // not before ADJUST_INTERVAL frames
+		budget.onFrameWritten(18000);
+		assertEquals(128, budget.getMaxColors());
+
+		// then 100 bytes per frame project 61KB, below the share to give colors back
+		for (int i = 1; i <= 3; i++) {
+			budget.onFrameWritten(18000 + i * 100);
+		}
+		assertEquals(256, budget.getMaxColors());
+		assertEquals(18300, budget.getWrittenBytes());
+	}
+
+	@Test
+	public void framesAreSkippedByTheStride() {
+		FileSizeBudget budget = new FileSizeBudget(1000, 100, SAMPLE);
+		budget.calibrate(1000000);
+		assertEquals(4, budget.getFrameStride());
+
+		int kept = 0;
+		for (int i = 0; i < 12; i++) {
+			if (!budget.shouldSkip(i)) {
+				++kept;
+			}
+		}
+		assertEquals(3, kept);
+		assertEquals(9, budget.getSkippedFrameCount());
+		assertFalse(budget.shouldSkip(12));
+	}
+}
@@ -0,0 +1,95 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameCompressorTest {
+	private final FrameBufferPool bufferPool = new FrameBufferPool(4);
+
+	@Test
+	public void compressesLikeAFreshEncoder() throws Exception {
+		FrameCompressor compressor = new FrameCompressor();
+		// a large frame first, so that later frames run with a grown buffer and used tables
+		int[][] sizes = {{320, 240}, {16, 16}, {100, 3}, {1, 1}};
+		for (int i = 0; i < sizes.length; i++) {
+			EncodingFrame frame = frame(sizes[i][0], sizes[i][1], 8, i);
+			compressor.compress(frame, false, 0, 0, bufferPool);
+
+			assertArrayEquals(encodeWithNewEncoder(frame),
+					Arrays.copyOf(frame.encodedPixels, frame.encodedLength));
+			assertArrayEquals(frame.indexedPixels,
+					LZWTestDecoder.decode(frame.encodedPixels, frame.encodedLength, frame.width * frame.height));
+			bufferPool.recycle(frame.encodedPixels);
+		}
+	}
+
+	@Test
+	public void compressesSmallColorDepths() throws Exception {
+		FrameCompressor compressor = new FrameCompressor();
+		for (int depth = 1; depth <= 8; depth++) {
+			EncodingFrame frame = frame(64, 48, depth, depth);
+			compressor.compress(frame, false, 0, 0, bufferPool);
+
+			assertArrayEquals(frame.indexedPixels,
+					LZWTestDecoder.decode(frame.encodedPixels, frame.encodedLength, frame.width * frame.height));
+			bufferPool.recycle(frame.encodedPixels);
+		}
+	}
+
+	@Test
+	public void reusesPooledResultArrays() throws Exception {
+		FrameCompressor compressor = new FrameCompressor();
+		EncodingFrame frame = frame(120, 80, 8, 0);
+		compressor.compress(frame, false, 0, 0, bufferPool);
+		byte[] first = frame.encodedPixels;
+		bufferPool.recycle(first);
+
+		compressor.compress(frame, false, 0, 0, bufferPool);
+
+		assertTrue(frame.encodedPixels == first);
+		assertEquals(1, bufferPool.getReusedBuffers());
+	}
+
+	private static EncodingFrame frame(int width, int height, int colorDepth, int seed) {
+		EncodingFrame frame = new EncodingFrame(0, 0, width, height, 100, 0, null);
+		frame.colorDepth = colorDepth;
+		frame.indexedPixels = new byte[width * height];
+		Random random = new Random(seed);
+		int colors = 1 << colorDepth;
+		for (int i = 0; i < frame.indexedPixels.length; i++) {
+			// runs of the same index like real images, with some noise
+			frame.indexedPixels[i] = (byte) (random.nextInt(8) == 0 ? random.nextInt(colors) : (i / 7) % colors);
+		}
+		return frame;
+	}
+
+	private static byte[] encodeWithNewEncoder(EncodingFrame frame) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new LZWEncoder().encode(out, frame.indexedPixels, frame.width, frame.height, frame.colorDepth);
+		return out.toByteArray();
+	}
+}
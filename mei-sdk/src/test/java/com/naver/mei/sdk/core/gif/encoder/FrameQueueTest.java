@@ -0,0 +1,233 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameQueueTest {
+	private static final int WIDTH = 4;
+	private static final int HEIGHT = 3;
+	private static final long FRAME_BYTES = WIDTH * HEIGHT * 4;
+	private static final long UNLIMITED = Long.MAX_VALUE / 2;
+
+	private File spillDir;
+
+	@Before
+	public void setUp() throws IOException {
+		spillDir = File.createTempFile("frames", "");
+		spillDir.delete();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = spillDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		spillDir.delete();
+	}
+
+	@Test
+	public void framesComeOutInOrder() throws Exception {
+		FrameQueue queue = new FrameQueue(10, UNLIMITED, 0, null, GifQueuingEncoderAsyncTask.OverflowPolicy.BLOCK, 0);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(queue.put(pixels(queue, i), WIDTH, HEIGHT, 100 + i));
+		}
+		queue.close();
+		assertFalse(queue.put(pixels(queue, 3), WIDTH, HEIGHT, 100));
+
+		for (int i = 0; i < 3; i++) {
+			assertFrame(queue.take(), i, 100 + i);
+		}
+		assertNull(queue.take());
+		assertEquals(3, queue.getQueuedFrameCount());
+		assertEquals(3, queue.getMetrics().getPeakQueueDepth());
+	}
+
+	@Test
+	public void dropNewestGivesTheDelayToTheLastFrame() throws Exception {
+		FrameQueue queue = new FrameQueue(2, UNLIMITED, 0, null, GifQueuingEncoderAsyncTask.OverflowPolicy.DROP_NEWEST, 0);
+		assertTrue(queue.put(pixels(queue, 0), WIDTH, HEIGHT, 100));
+		assertTrue(queue.put(pixels(queue, 1), WIDTH, HEIGHT, 100));
+		assertFalse(queue.put(pixels(queue, 2), WIDTH, HEIGHT, 100));
+		queue.close();
+
+		assertEquals(2, queue.getQueuedFrameCount());
+		assertEquals(1, queue.getMetrics().getDroppedFrameCount());
+		assertFrame(queue.take(), 0, 100);
+		assertFrame(queue.take(), 1, 200);
+		assertNull(queue.take());
+	}
+
+	@Test
+	public void dropOldestGivesTheDelayToTheNextFrame() throws Exception {
+		FrameQueue queue = new FrameQueue(2, UNLIMITED, 0, null, GifQueuingEncoderAsyncTask.OverflowPolicy.DROP_OLDEST, 0);
+		assertTrue(queue.put(pixels(queue, 0), WIDTH, HEIGHT, 100));
+		assertTrue(queue.put(pixels(queue, 1), WIDTH, HEIGHT, 100));
+		assertTrue(queue.put(pixels(queue, 2), WIDTH, HEIGHT, 100));
+		queue.close();
+
+		assertEquals(2, queue.getQueuedFrameCount());
+		assertEquals(1, queue.getMetrics().getDroppedFrameCount());
+		assertFrame(queue.take(), 1, 200);
+		assertFrame(queue.take(), 2, 100);
+		assertNull(queue.take());
+	}
+
+	@Test
+	public void adaptiveFpsSkipsFramesUntilTheEncoderCatchesUp() throws Exception {
+		FrameQueue queue = new FrameQueue(2, UNLIMITED, 0, null, GifQueuingEncoderAsyncTask.OverflowPolicy.ADAPTIVE_FPS, 0);
+		assertTrue(queue.isNextFrameWanted(100));
+		assertTrue(queue.put(pixels(queue, 0), WIDTH, HEIGHT, 100));
+		assertTrue(queue.put(pixels(queue, 1), WIDTH, HEIGHT, 100));
+		assertFalse(queue.put(pixels(queue, 2), WIDTH, HEIGHT, 100)); // full. halves the frame rate
+		assertEquals(2, queue.getMetrics().getFrameRateDivider());
+
+		assertFalse(queue.isNextFrameWanted(100));
+		assertTrue(queue.isNextFrameWanted(100));
+		assertEquals(2, queue.getQueuedFrameCount());
+		assertEquals(2, queue.getMetrics().getDroppedFrameCount());
+
+		assertFrame(queue.take(), 0, 100);
+		assertFrame(queue.take(), 1, 300);
+		assertEquals(1, queue.getMetrics().getFrameRateDivider()); // empty. back to the full frame rate
+	}
+
+	@Test
+	public void blockDropsTheFrameAfterTheTimeout() throws Exception {
+		FrameQueue queue = new FrameQueue(1, UNLIMITED, 0, null, GifQueuingEncoderAsyncTask.OverflowPolicy.BLOCK, 50);
+		assertTrue(queue.put(pixels(queue, 0), WIDTH, HEIGHT, 100));
+		assertFalse(queue.put(pixels(queue, 1), WIDTH, HEIGHT, 100));
+
+		assertEquals(1, queue.getQueuedFrameCount());
+		assertTrue(queue.getMetrics().getBlockedMillis() > 0);
+		assertFrame(queue.take(), 0, 200);
+	}
+
+	@Test
+	public void blockWaitsForTheConsumer() throws Exception {
+		final FrameQueue queue = new FrameQueue(1, UNLIMITED, 0, null, GifQueuingEncoderAsyncTask.OverflowPolicy.BLOCK, 0);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 5; i++) {
+						queue.put(pixels(queue, i), WIDTH, HEIGHT, 100);
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				queue.close();
+			}
+		};
+		producer.start();
+
+		for (int i = 0; i < 5; i++) {
+			FrameQueue.QueuedFrame frame = queue.take();
+			assertFrame(frame, i, 100);
+			queue.recycle(frame);
+		}
+		assertNull(queue.take());
+		producer.join();
+		assertEquals(1, queue.getMetrics().getPeakQueueDepth());
+		assertEquals(0, queue.getMetrics().getDroppedFrameCount());
+	}
+
+	@Test
+	public void framesBeyondMemoryAreSpilled() throws Exception {
+		FrameQueue queue = new FrameQueue(10, FRAME_BYTES, FRAME_BYTES * 2, spillDir, GifQueuingEncoderAsyncTask.OverflowPolicy.DROP_NEWEST, 0);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i < 3, queue.put(pixels(queue, i), WIDTH, HEIGHT, 100));
+		}
+		queue.close();
+
+		FrameQueueMetrics metrics = queue.getMetrics();
+		assertEquals(2, metrics.getSpilledFrameCount());
+		assertEquals(FRAME_BYTES * 3, metrics.getQueuedBytes());
+		assertEquals(2, spillDir.listFiles().length);
+
+		for (int i = 0; i < 3; i++) {
+			assertFrame(queue.take(), i, i == 2 ? 200 : 100);
+		}
+		assertNull(queue.take());
+		assertEquals(0, spillDir.listFiles().length);
+		assertEquals(0, queue.getMetrics().getQueuedBytes());
+	}
+
+	@Test
+	public void discardDeletesTheSpilledFrames() throws Exception {
+		FrameQueue queue = new FrameQueue(10, FRAME_BYTES, UNLIMITED, spillDir, GifQueuingEncoderAsyncTask.OverflowPolicy.BLOCK, 0);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(queue.put(pixels(queue, i), WIDTH, HEIGHT, 100));
+		}
+		queue.discard();
+
+		assertNull(queue.take());
+		assertFalse(spillDir.exists());
+	}
+
+	@Test
+	public void droppedFilesAreDeleted() throws Exception {
+		spillDir.mkdirs();
+		File first = frameFile();
+		File second = frameFile();
+		FrameQueue queue = new FrameQueue(1, UNLIMITED, UNLIMITED, null, GifQueuingEncoderAsyncTask.OverflowPolicy.DROP_NEWEST, 0);
+		assertTrue(queue.put(first, 100));
+		assertFalse(queue.put(second, 100));
+
+		assertTrue(first.exists());
+		assertFalse(second.exists());
+		assertEquals(1, queue.getQueuedFrameCount());
+		assertEquals(200, queue.take().delay);
+	}
+
+	private File frameFile() throws IOException {
+		return File.createTempFile("frame", ".png", spillDir);
+	}
+
+	private static int[] pixels(FrameQueue queue, int index) {
+		int[] pixels = queue.obtainPixels(WIDTH * HEIGHT);
+		for (int i = 0; i < WIDTH * HEIGHT; i++) {
+			pixels[i] = 0xff000000 | index << 16 | i;
+		}
+		return pixels;
+	}
+
+	private static void assertFrame(FrameQueue.QueuedFrame frame, int index, int delay) {
+		assertNotNull(frame);
+		assertEquals(WIDTH, frame.width);
+		assertEquals(HEIGHT, frame.height);
+		assertEquals(delay, frame.delay);
+		for (int i = 0; i < WIDTH * HEIGHT; i++) {
+			assertEquals(0xff000000 | index << 16 | i, frame.pixels[i]);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class GifEncodingOptionsTest {
+	@Test
+	public void copyHasTheSameOptions() {
+		GifEncodingOptions source = new GifEncodingOptions(20, 6);
+		source.setParallelism(3);
+		source.setPaletteMode(GifEncodingOptions.PaletteMode.ADAPTIVE);
+		source.setQuantizerType(GifEncodingOptions.QuantizerType.OCTREE);
+		source.setDeltaEncoding(true);
+		source.setCoalesceDuplicateFrames(true);
+		source.setTargetFileSize(100000);
+		source.setExpectedFrameCount(12);
+		source.setLossyLevel(30);
+		source.setOutputFormat(GifEncodingOptions.OutputFormat.WEBP);
+
+		GifEncodingOptions copy = new GifEncodingOptions(source);
+
+		assertEquals(20, copy.getQuality());
+		assertEquals(6, copy.getColorLevel());
+		assertEquals(3, copy.getParallelism());
+		assertEquals(GifEncodingOptions.PaletteMode.ADAPTIVE, copy.getPaletteMode());
+		assertEquals(GifEncodingOptions.QuantizerType.OCTREE, copy.getQuantizerType());
+		assertEquals(true, copy.isDeltaEncoding());
+		assertEquals(true, copy.isCoalesceDuplicateFrames());
+		assertEquals(100000, copy.getTargetFileSize());
+		assertEquals(12, copy.getExpectedFrameCount());
+		assertEquals(30, copy.getLossyLevel());
+		assertEquals(GifEncodingOptions.OutputFormat.WEBP, copy.getOutputFormat());
+	}
+
+	@Test
+	public void copyIsNotChangedBySource() {
+		GifEncodingOptions source = GifEncodingOptions.asDefault();
+		GifEncodingOptions copy = new GifEncodingOptions(source);
+
+		source.setOutputFormat(GifEncodingOptions.OutputFormat.WEBP);
+		source.setTargetFileSize(5000);
+		source.setExpectedFrameCount(40);
+
+		assertEquals(GifEncodingOptions.OutputFormat.GIF, copy.getOutputFormat());
+		assertEquals(0, copy.getTargetFileSize());
+		assertEquals(0, copy.getExpectedFrameCount());
+	}
+}
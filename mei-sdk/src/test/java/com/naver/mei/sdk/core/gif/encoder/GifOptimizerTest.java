@@ -0,0 +1,235 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import com.naver.mei.sdk.core.gif.decoder.GifDecoder;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Optimizes GIFs written by the encoder from raw pixels, on the JVM with the web safe quantizer and the java
+ * LZW encoder, and reads the result back with javax.imageio.
+ */
+public class GifOptimizerTest {
+	private static final int WIDTH = 40;
+	private static final int HEIGHT = 30;
+	private static final int FRAME_COUNT = 3;
+	private static final int MAGENTA = 0xffff00ff;
+	private static final String GIF_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+	@Test
+	public void transparentPixelsStayTransparentAndBlackStaysOpaque() throws Exception {
+		AnimatedGifEncoder encoder = createEncoder();
+		encoder.setTransparent(MAGENTA);
+		byte[] input = encode(encoder, transparentFrame(0), transparentFrame(1), transparentFrame(2));
+
+		ImageReader reader = read(optimize(input));
+		assertEquals(FRAME_COUNT, reader.getNumImages(true));
+		for (int f = 0; f < FRAME_COUNT; f++) {
+			// written whole, as a changed rectangle cannot clear the pixels below it
+			assertEquals(WIDTH, reader.getWidth(f));
+			assertEquals(HEIGHT, reader.getHeight(f));
+			assertEquals("restoreToBackgroundColor", graphicControl(reader, f, "disposalMethod"));
+
+			BufferedImage image = reader.read(f);
+			int[] frame = transparentFrame(f);
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++) {
+					if (frame[y * WIDTH + x] == MAGENTA) {
+						assertEquals(0, image.getRGB(x, y) >>> 24);
+					} else {
+						assertEquals(0xff000000, image.getRGB(x, y));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void opaqueGifWithTransparencyFlagIsDeltaEncoded() throws Exception {
+		// unchanged pixels are written as transparent, so every frame after the first sets the flag
+		AnimatedGifEncoder encoder = createEncoder();
+		encoder.setTransparentUnchangedPixels(true);
+		byte[] input = encode(encoder, opaqueFrame(0), opaqueFrame(1), opaqueFrame(2));
+		GifDecoder decoder = new GifDecoder();
+		decoder.read(input);
+		assertTrue(decoder.hasTransparency());
+		assertFalse(decoder.hasTransparentPixels());
+
+		ImageReader reader = read(optimize(input));
+		assertEquals(FRAME_COUNT, reader.getNumImages(true));
+		assertEquals(WIDTH, reader.getWidth(0));
+		for (int f = 1; f < FRAME_COUNT; f++) {
+			// the square moves by 4 pixels. its old and new place change
+			assertEquals(14, reader.getWidth(f));
+			assertEquals(10, reader.getHeight(f));
+		}
+
+		for (int f = 0; f < FRAME_COUNT; f++) {
+			assertEquals("FALSE", graphicControl(reader, f, "transparentColorFlag"));
+			BufferedImage image = reader.read(f);
+			Node descriptor = findNode(reader.getImageMetadata(f).getAsTree(GIF_METADATA_FORMAT), "ImageDescriptor");
+			int left = Integer.parseInt(descriptor.getAttributes().getNamedItem("imageLeftPosition").getNodeValue());
+			int top = Integer.parseInt(descriptor.getAttributes().getNamedItem("imageTopPosition").getNodeValue());
+			int[] frame = opaqueFrame(f);
+			for (int y = 0; y < image.getHeight(); y++) {
+				for (int x = 0; x < image.getWidth(); x++) {
+					assertEquals(frame[(top + y) * WIDTH + left + x], image.getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void duplicateFramesAreMergedIntoTheDelay() throws Exception {
+		byte[] input = encode(createEncoder(), opaqueFrame(0), opaqueFrame(0), opaqueFrame(1), opaqueFrame(1), opaqueFrame(1));
+
+		GifOptimizer.Result result = createOptimizer().optimize(input, new ByteArrayOutputStream());
+		assertEquals(5, result.getInputFrameCount());
+		assertEquals(2, result.getOutputFrameCount());
+
+		ImageReader reader = read(optimize(input));
+		assertEquals(2, reader.getNumImages(true));
+		assertEquals("20", graphicControl(reader, 0, "delayTime"));
+		assertEquals("30", graphicControl(reader, 1, "delayTime"));
+	}
+
+	@Test
+	public void loopCountIsKept() throws Exception {
+		AnimatedGifEncoder looping = createEncoder();
+		looping.setRepeat(0);
+		byte[] output = optimize(encode(looping, opaqueFrame(0), opaqueFrame(1)));
+		assertTrue(indexOf(output, "NETSCAPE2.0".getBytes("US-ASCII")) >= 0);
+
+		// without the extension the animation plays once. a loop count of 0 would repeat it forever
+		byte[] playOnce = encode(createEncoder(), opaqueFrame(0), opaqueFrame(1));
+		GifDecoder decoder = new GifDecoder();
+		decoder.read(playOnce);
+		assertFalse(decoder.hasLoopCount());
+		output = optimize(playOnce);
+		assertEquals(-1, indexOf(output, "NETSCAPE2.0".getBytes("US-ASCII")));
+	}
+
+	private static GifOptimizer createOptimizer() {
+		GifEncodingOptions options = GifEncodingOptions.asDefault();
+		options.setQuantizerType(GifEncodingOptions.QuantizerType.WEB_SAFE);
+		options.setPaletteMode(GifEncodingOptions.PaletteMode.ADAPTIVE);
+		options.setParallelism(1);
+		options.setDeltaEncoding(true);
+		options.setCoalesceDuplicateFrames(true);
+		return new GifOptimizer().setEncodingOptions(options).setNativeLZW(false);
+	}
+
+	private static byte[] optimize(byte[] gif) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		createOptimizer().optimize(gif, out);
+		return out.toByteArray();
+	}
+
+	private static AnimatedGifEncoder createEncoder() {
+		AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+		encoder.setQuantizerType(GifEncodingOptions.QuantizerType.WEB_SAFE);
+		encoder.setNativeLZW(false);
+		encoder.setDelay(100);
+		return encoder;
+	}
+
+	private static byte[] encode(AnimatedGifEncoder encoder, int[]... frames) {
+		ByteArrayOutputStream gif = new ByteArrayOutputStream();
+		encoder.start(gif);
+		for (int[] frame : frames) {
+			assertTrue(encoder.addFrame(frame, 0, WIDTH, WIDTH, HEIGHT, AnimatedGifEncoder.ChannelOrder.ARGB, 0, 0));
+		}
+		assertTrue(encoder.finish());
+		return gif.toByteArray();
+	}
+
+	private static ImageReader read(byte[] gif) throws Exception {
+		ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+		reader.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(gif)));
+		return reader;
+	}
+
+	/**
+	 * Magenta, written as the transparent color, with a black 10x10 square moving right by 4 pixels each frame
+	 */
+	private static int[] transparentFrame(int index) {
+		int[] pixels = new int[WIDTH * HEIGHT];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				boolean square = x >= 5 + index * 4 && x < 15 + index * 4 && y >= 10 && y < 20;
+				pixels[y * WIDTH + x] = square ? 0xff000000 : MAGENTA;
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Opaque web safe stripes with a black 10x10 square moving right by 4 pixels each frame
+	 */
+	private static int[] opaqueFrame(int index) {
+		int[] pixels = new int[WIDTH * HEIGHT];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				boolean square = x >= 5 + index * 4 && x < 15 + index * 4 && y >= 10 && y < 20;
+				pixels[y * WIDTH + x] = square ? 0xff000000 : 0xff000000 | (x / 8 * 51) << 16 | (y / 6 * 51) << 8 | 0x66;
+			}
+		}
+		return pixels;
+	}
+
+	private static String graphicControl(ImageReader reader, int index, String attribute) throws Exception {
+		Node control = findNode(reader.getImageMetadata(index).getAsTree(GIF_METADATA_FORMAT), "GraphicControlExtension");
+		return control.getAttributes().getNamedItem(attribute).getNodeValue();
+	}
+
+	private static Node findNode(Node node, String name) {
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (name.equals(child.getNodeName())) {
+				return child;
+			}
+		}
+		throw new AssertionError(name + " not found");
+	}
+
+	private static int indexOf(byte[] data, byte[] pattern) {
+		for (int i = 0; i + pattern.length <= data.length; i++) {
+			int k = 0;
+			while (k < pattern.length && data[i + k] == pattern[k]) {
+				k++;
+			}
+			if (k == pattern.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
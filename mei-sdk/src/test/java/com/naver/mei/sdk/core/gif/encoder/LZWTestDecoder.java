@@ -0,0 +1,107 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Decodes GIF image data (code size byte, sub-blocks, terminator) written by the LZW encoders.
+ */
+class LZWTestDecoder {
+	private static final int MAX_STACK_SIZE = 4096;
+
+	static byte[] decode(byte[] data, int length, int pixelCount) {
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		int pos = 1;
+		while (true) {
+			int blockSize = data[pos++] & 0xff;
+			if (blockSize == 0) {
+				break;
+			}
+			blocks.write(data, pos, blockSize);
+			pos += blockSize;
+		}
+		if (pos != length) {
+			throw new IllegalStateException("data after the block terminator: " + (length - pos));
+		}
+
+		byte[] codes = blocks.toByteArray();
+		int codeSize = data[0];
+		int clear = 1 << codeSize;
+		int endOfInformation = clear + 1;
+		short[] prefix = new short[MAX_STACK_SIZE];
+		byte[] suffix = new byte[MAX_STACK_SIZE];
+		byte[] first = new byte[MAX_STACK_SIZE];
+		byte[] stack = new byte[MAX_STACK_SIZE + 1];
+		for (int i = 0; i < clear; i++) {
+			suffix[i] = (byte) i;
+			first[i] = (byte) i;
+		}
+
+		byte[] pixels = new byte[pixelCount];
+		int count = 0;
+		int bitPos = 0;
+		int currentCodeSize = codeSize + 1;
+		int available = clear + 2;
+		int oldCode = -1;
+		while (bitPos + currentCodeSize <= codes.length * 8) {
+			int code = 0;
+			for (int i = 0; i < currentCodeSize; i++, bitPos++) {
+				code |= ((codes[bitPos >> 3] >> (bitPos & 7)) & 1) << i;
+			}
+			if (code == clear) {
+				currentCodeSize = codeSize + 1;
+				available = clear + 2;
+				oldCode = -1;
+				continue;
+			}
+			if (code == endOfInformation) {
+				break;
+			}
+
+			int top = 0;
+			int inCode = code;
+			if (oldCode != -1 && code >= available) {
+				stack[top++] = first[oldCode];
+				code = oldCode;
+			}
+			while (code >= clear) {
+				stack[top++] = suffix[code];
+				code = prefix[code];
+			}
+			stack[top++] = suffix[code];
+			if (oldCode != -1 && available < MAX_STACK_SIZE) {
+				prefix[available] = (short) oldCode;
+				suffix[available] = suffix[code];
+				first[available] = first[oldCode];
+				available++;
+				if (available == (1 << currentCodeSize) && currentCodeSize < 12) {
+					currentCodeSize++;
+				}
+			}
+			oldCode = inCode;
+			while (top > 0) {
+				pixels[count++] = stack[--top];
+			}
+		}
+		if (count != pixelCount) {
+			throw new IllegalStateException("decoded " + count + " of " + pixelCount + " pixels");
+		}
+		return pixels;
+	}
+}
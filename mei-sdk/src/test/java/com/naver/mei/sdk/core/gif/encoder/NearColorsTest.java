@@ -0,0 +1,146 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NearColorsTest {
+	@Test
+	public void listsTheColorsWithinTheLossClosestFirst() {
+		byte[] colorTab = palette(256, 1);
+		int loss = 60;
+		int transIndex = 7;
+		int[] table = new NearColors().get(colorTab, 8, loss, transIndex);
+
+		for (int a = 0; a < 256; a++) {
+			int expectedCount = 0;
+			for (int b = 0; b < 256; b++) {
+				if (a != b && a != transIndex && b != transIndex && distance(colorTab, a, b) <= loss) {
+					expectedCount++;
+				}
+			}
+			assertEquals("index " + a, expectedCount, table[a + 1] - table[a]);
+
+			int previous = -1;
+			for (int k = table[a]; k < table[a + 1]; k++) {
+				int d = distance(colorTab, a, table[k]);
+				assertTrue(d <= loss && d >= previous);
+				previous = d;
+			}
+		}
+	}
+
+	@Test
+	public void keepsTheListsForTheSamePalette() {
+		NearColors nearColors = new NearColors();
+		byte[] colorTab = palette(256, 2);
+		int[] first = nearColors.get(colorTab, 8, 40, -1);
+		int end = first[256];
+		int[] copy = first.clone();
+
+		int[] second = nearColors.get(colorTab.clone(), 8, 40, -1);
+
+		assertTrue(second == first);
+		for (int i = 0; i < end; i++) {
+			assertEquals(copy[i], second[i]);
+		}
+	}
+
+	@Test
+	public void rebuildsForAnotherPaletteLossOrTransparentIndex() {
+		NearColors nearColors = new NearColors();
+		byte[] colorTab = palette(256, 3);
+		int[] expected = new NearColors().get(colorTab, 8, 30, 5).clone();
+
+		nearColors.get(colorTab, 8, 30, -1);
+		assertLists(expected, nearColors.get(colorTab, 8, 30, 5));
+		nearColors.get(colorTab, 8, 60, 5);
+		assertLists(expected, nearColors.get(colorTab, 8, 30, 5));
+		nearColors.get(palette(256, 4), 8, 30, 5);
+		assertLists(expected, nearColors.get(colorTab, 8, 30, 5));
+	}
+
+	@Test
+	public void neverListsIndexesPastTheColorDepth() {
+		byte[] colorTab = new byte[256 * 3]; // 16 colors used, the rest black as after shrinking a table
+		System.arraycopy(palette(16, 5), 0, colorTab, 0, 16 * 3);
+		int[] table = new NearColors().get(colorTab, 4, 765, -1);
+
+		for (int a = 0; a < 256; a++) {
+			for (int k = table[a]; k < table[a + 1]; k++) {
+				assertTrue(a < 16 && table[k] < 16);
+			}
+		}
+	}
+
+	@Test
+	public void losslessNeedsNoLists() {
+		assertNull(new NearColors().get(palette(256, 6), 8, 0, -1));
+	}
+
+	@Test
+	public void lossyEncodingStaysWithinTheLoss() throws Exception {
+		byte[] colorTab = palette(256, 7);
+		int loss = 50;
+		int transIndex = 3;
+		byte[] pixels = new byte[200 * 100];
+		Random random = new Random(7);
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) ((i / 5 + random.nextInt(3)) % 256);
+		}
+
+		LZWEncoder encoder = new LZWEncoder();
+		for (int frame = 0; frame < 2; frame++) { // the second frame reuses the lists
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			encoder.encode(out, pixels, 200, 100, 8, colorTab, loss, transIndex);
+			byte[] decoded = LZWTestDecoder.decode(out.toByteArray(), out.size(), pixels.length);
+
+			for (int i = 0; i < pixels.length; i++) {
+				int original = pixels[i] & 0xff;
+				int written = decoded[i] & 0xff;
+				assertTrue(distance(colorTab, original, written) <= loss);
+				assertEquals(original == transIndex, written == transIndex);
+			}
+		}
+	}
+
+	private static void assertLists(int[] expected, int[] actual) {
+		for (int i = 0; i < expected[256]; i++) {
+			assertEquals("position " + i, expected[i], actual[i]);
+		}
+	}
+
+	private static byte[] palette(int colorCount, int seed) {
+		byte[] colorTab = new byte[colorCount * 3];
+		new Random(seed).nextBytes(colorTab);
+		return colorTab;
+	}
+
+	private static int distance(byte[] colorTab, int a, int b) {
+		return Math.abs((colorTab[a * 3] & 0xff) - (colorTab[b * 3] & 0xff))
+				+ Math.abs((colorTab[a * 3 + 1] & 0xff) - (colorTab[b * 3 + 1] & 0xff))
+				+ Math.abs((colorTab[a * 3 + 2] & 0xff) - (colorTab[b * 3 + 2] & 0xff));
+	}
+}
@@ -0,0 +1,188 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Palette building of the java quantizers. Mapping to a learned palette is native, and not tested here.
+ */
+public class PaletteQuantizerTest {
+	@Test
+	public void octreeKeepsFewColorsExactly() {
+		assertKeepsFewColorsExactly(new OctreeQuantizer());
+	}
+
+	@Test
+	public void medianCutKeepsFewColorsExactly() {
+		assertKeepsFewColorsExactly(new MedianCutQuantizer());
+	}
+
+	@Test
+	public void octreeApproximatesManyColors() {
+		assertApproximatesManyColors(new OctreeQuantizer());
+	}
+
+	@Test
+	public void medianCutApproximatesManyColors() {
+		assertApproximatesManyColors(new MedianCutQuantizer());
+	}
+
+	@Test
+	public void noPixelsGiveNoColors() {
+		byte[] colorTab = new byte[Quantizer.MAX_COLORS * 3];
+		assertEquals(0, new OctreeQuantizer().buildPalette(new byte[0], 0, 1, colorTab));
+		assertEquals(0, new MedianCutQuantizer().buildPalette(new byte[0], 0, 1, colorTab));
+	}
+
+	@Test
+	public void quantizerCanBeReused() {
+		PaletteQuantizer quantizer = new MedianCutQuantizer();
+		byte[] pixels = gradient(64, 64);
+		byte[] first = new byte[Quantizer.MAX_COLORS * 3];
+		byte[] second = new byte[Quantizer.MAX_COLORS * 3];
+		int firstCount = quantizer.buildPalette(pixels, pixels.length, 1, first);
+		quantizer.buildPalette(fewColors(10), 30, 1, new byte[Quantizer.MAX_COLORS * 3]);
+		int secondCount = quantizer.buildPalette(pixels, pixels.length, 1, second);
+
+		assertEquals(firstCount, secondCount);
+		assertArrayEquals(first, second);
+	}
+
+	@Test
+	public void webSafePaletteHasSixLevelsPerChannel() {
+		byte[] colorTab = new byte[Quantizer.MAX_COLORS * 3];
+		assertEquals(216, new WebSafeQuantizer().buildPalette(null, 0, 1, colorTab));
+		for (int i = 0; i < 216 * 3; i++) {
+			assertEquals(0, (colorTab[i] & 0xff) % 51);
+		}
+		// red is the slowest, blue the fastest changing channel
+		assertColor(colorTab, 151, 204, 51, 51);
+	}
+
+	@Test
+	public void webSafeMapsToTheNearestLevels() {
+		WebSafeQuantizer quantizer = new WebSafeQuantizer();
+		byte[] colorTab = new byte[Quantizer.MAX_COLORS * 3];
+		quantizer.buildPalette(null, 0, 1, colorTab);
+		// BGR
+		byte[] pixels = {30, 26, (byte) 200, 0, 0, 0, (byte) 255, (byte) 255, (byte) 255, 25, 25, 25};
+		byte[] indexedPixels = new byte[4];
+		boolean[] usedEntry = new boolean[Quantizer.MAX_COLORS];
+		usedEntry[100] = true; // left from an earlier frame
+
+		quantizer.map(pixels, 4, 8, indexedPixels, usedEntry);
+
+		assertEquals(151, indexedPixels[0] & 0xff);
+		assertEquals(0, indexedPixels[1] & 0xff);
+		assertEquals(215, indexedPixels[2] & 0xff);
+		assertEquals(0, indexedPixels[3] & 0xff); // 25 rounds down to 0
+		for (int i = 0; i < Quantizer.MAX_COLORS; i++) {
+			assertEquals("entry " + i, i == 0 || i == 151 || i == 215, usedEntry[i]);
+		}
+	}
+
+	private static void assertKeepsFewColorsExactly(PaletteQuantizer quantizer) {
+		int colorCount = 100;
+		byte[] pixels = fewColors(colorCount);
+		byte[] colorTab = new byte[Quantizer.MAX_COLORS * 3];
+
+		assertEquals(colorCount, quantizer.buildPalette(pixels, pixels.length, 1, colorTab));
+
+		Set<Integer> palette = new HashSet<>();
+		for (int i = 0; i < colorCount; i++) {
+			palette.add(rgb(colorTab[i * 3], colorTab[i * 3 + 1], colorTab[i * 3 + 2]));
+		}
+		for (int k = 0; k < pixels.length; k += 3) {
+			assertTrue(palette.contains(rgb(pixels[k + 2], pixels[k + 1], pixels[k])));
+		}
+	}
+
+	private static void assertApproximatesManyColors(PaletteQuantizer quantizer) {
+		byte[] pixels = gradient(128, 128);
+		byte[] colorTab = new byte[Quantizer.MAX_COLORS * 3];
+		int colorCount = quantizer.buildPalette(pixels, pixels.length, 2, colorTab);
+
+		assertTrue(colorCount > 128 && colorCount <= Quantizer.MAX_COLORS);
+		double error = 0;
+		for (int k = 0; k < pixels.length; k += 3) {
+			int best = Integer.MAX_VALUE;
+			for (int i = 0; i < colorCount; i++) {
+				int distance = Math.abs((pixels[k + 2] & 0xff) - (colorTab[i * 3] & 0xff))
+						+ Math.abs((pixels[k + 1] & 0xff) - (colorTab[i * 3 + 1] & 0xff))
+						+ Math.abs((pixels[k] & 0xff) - (colorTab[i * 3 + 2] & 0xff));
+				best = Math.min(best, distance);
+			}
+			error += best;
+		}
+		double meanChannelError = error / pixels.length;
+		assertFalse("mean channel error " + meanChannelError, meanChannelError > 8);
+	}
+
+	/**
+	 * BGR pixels of the given number of distinct colors, on multiples of 8 so that no two share a bin.
+	 */
+	private static byte[] fewColors(int colorCount) {
+		Random random = new Random(3);
+		Set<Integer> colors = new HashSet<>();
+		while (colors.size() < colorCount) {
+			colors.add(rgb((byte) (random.nextInt(32) * 8), (byte) (random.nextInt(32) * 8), (byte) (random.nextInt(32) * 8)));
+		}
+		byte[] pixels = new byte[colorCount * 5 * 3];
+		int k = 0;
+		for (int repeat = 0; repeat < 5; repeat++) {
+			for (int color : colors) {
+				pixels[k++] = (byte) color;
+				pixels[k++] = (byte) (color >> 8);
+				pixels[k++] = (byte) (color >> 16);
+			}
+		}
+		return pixels;
+	}
+
+	private static byte[] gradient(int width, int height) {
+		byte[] pixels = new byte[width * height * 3];
+		for (int y = 0, k = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				pixels[k++] = (byte) ((x + y) * 255 / (width + height));
+				pixels[k++] = (byte) (y * 255 / height);
+				pixels[k++] = (byte) (x * 255 / width);
+			}
+		}
+		return pixels;
+	}
+
+	private static void assertColor(byte[] colorTab, int index, int r, int g, int b) {
+		assertEquals(r, colorTab[index * 3] & 0xff);
+		assertEquals(g, colorTab[index * 3 + 1] & 0xff);
+		assertEquals(b, colorTab[index * 3 + 2] & 0xff);
+	}
+
+	private static int rgb(byte r, byte g, byte b) {
+		return ((r & 0xff) << 16) | ((g & 0xff) << 8) | (b & 0xff);
+	}
+}
@@ -0,0 +1,178 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.gif.encoder;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Encodes raw pixel frames on the JVM, without a Bitmap and without the native libraries:
+ * the web safe quantizer and the java LZW encoder are pure java.
+ */
+public class RawFrameEncodingTest {
+	private static final int WIDTH = 40;
+	private static final int HEIGHT = 30;
+	private static final int FRAME_COUNT = 3;
+	private static final String GIF_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+	@Test
+	public void intAndBytePixelsGiveTheSameGif() throws Exception {
+		int stride = WIDTH + 8;
+		int offset = 5;
+		AnimatedGifEncoder intEncoder = createEncoder();
+		ByteArrayOutputStream intGif = new ByteArrayOutputStream();
+		intEncoder.start(intGif);
+		for (int f = 0; f < FRAME_COUNT; f++) {
+			int[] frame = frame(f);
+			int[] pixels = new int[offset + stride * HEIGHT];
+			for (int y = 0; y < HEIGHT; y++) {
+				System.arraycopy(frame, y * WIDTH, pixels, offset + y * stride, WIDTH);
+			}
+			assertTrue(intEncoder.addFrame(pixels, offset, stride, WIDTH, HEIGHT, AnimatedGifEncoder.ChannelOrder.ARGB, 0, 0));
+		}
+		assertTrue(intEncoder.finish());
+
+		// RGBA rows bottom up, as read from GL
+		AnimatedGifEncoder byteEncoder = createEncoder();
+		ByteArrayOutputStream byteGif = new ByteArrayOutputStream();
+		byteEncoder.start(byteGif);
+		for (int f = 0; f < FRAME_COUNT; f++) {
+			int[] frame = frame(f);
+			ByteBuffer pixels = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4);
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++) {
+					int argb = frame[y * WIDTH + x];
+					pixels.putInt(((HEIGHT - 1 - y) * WIDTH + x) * 4, (argb << 8) | (argb >>> 24));
+				}
+			}
+			int rowStride = WIDTH * 4;
+			assertTrue(byteEncoder.addFrame(pixels, (HEIGHT - 1) * rowStride, -rowStride, WIDTH, HEIGHT, AnimatedGifEncoder.ChannelOrder.RGBA, 0, 0));
+		}
+		assertTrue(byteEncoder.finish());
+
+		assertArrayEquals(intGif.toByteArray(), byteGif.toByteArray());
+	}
+
+	@Test
+	public void framesDecodeToTheWebSafeColors() throws Exception {
+		ImageReader reader = encode(false);
+		assertEquals(FRAME_COUNT, reader.getNumImages(true));
+
+		for (int f = 0; f < FRAME_COUNT; f++) {
+			BufferedImage image = reader.read(f);
+			int[] frame = frame(f);
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++) {
+					assertEquals(webSafe(frame[y * WIDTH + x]), image.getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void deltaFramesCoverTheChangedPixels() throws Exception {
+		ImageReader reader = encode(true);
+		assertEquals(FRAME_COUNT, reader.getNumImages(true));
+
+		assertEquals(WIDTH, reader.getWidth(0));
+		assertEquals(HEIGHT, reader.getHeight(0));
+		for (int f = 1; f < FRAME_COUNT; f++) {
+			// the square moves by 4 pixels. its old and new place change
+			assertEquals(14, reader.getWidth(f));
+			assertEquals(10, reader.getHeight(f));
+			Node descriptor = findNode(reader.getImageMetadata(f).getAsTree(GIF_METADATA_FORMAT), "ImageDescriptor");
+			assertEquals(String.valueOf(5 + (f - 1) * 4), descriptor.getAttributes().getNamedItem("imageLeftPosition").getNodeValue());
+			assertEquals("10", descriptor.getAttributes().getNamedItem("imageTopPosition").getNodeValue());
+
+			BufferedImage image = reader.read(f);
+			int[] frame = frame(f);
+			int left = 5 + (f - 1) * 4;
+			for (int y = 0; y < 10; y++) {
+				for (int x = 0; x < 14; x++) {
+					assertEquals(webSafe(frame[(10 + y) * WIDTH + left + x]), image.getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	private static ImageReader encode(boolean deltaEncoding) throws Exception {
+		AnimatedGifEncoder encoder = createEncoder();
+		encoder.setDeltaEncoding(deltaEncoding);
+		ByteArrayOutputStream gif = new ByteArrayOutputStream();
+		encoder.start(gif);
+		for (int f = 0; f < FRAME_COUNT; f++) {
+			assertTrue(encoder.addFrame(frame(f), 0, WIDTH, WIDTH, HEIGHT, AnimatedGifEncoder.ChannelOrder.ARGB, 0, 0));
+		}
+		assertTrue(encoder.finish());
+
+		ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+		reader.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(gif.toByteArray())));
+		return reader;
+	}
+
+	private static AnimatedGifEncoder createEncoder() {
+		AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+		encoder.setQuantizerType(GifEncodingOptions.QuantizerType.WEB_SAFE);
+		encoder.setNativeLZW(false);
+		encoder.setRepeat(0);
+		encoder.setDelay(100);
+		return encoder;
+	}
+
+	/**
+	 * Opaque ARGB gradient with a 10x10 square moving right by 4 pixels each frame
+	 */
+	private static int[] frame(int index) {
+		int[] pixels = new int[WIDTH * HEIGHT];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				boolean square = x >= 5 + index * 4 && x < 15 + index * 4 && y >= 10 && y < 20;
+				pixels[y * WIDTH + x] = square ? 0xffff0000 : 0xff000000 | (x * 255 / WIDTH) << 16 | (y * 255 / HEIGHT) << 8 | 0x60;
+			}
+		}
+		return pixels;
+	}
+
+	private static int webSafe(int argb) {
+		int r = ((argb >> 16 & 0xff) + 25) / 51 * 51;
+		int g = ((argb >> 8 & 0xff) + 25) / 51 * 51;
+		int b = ((argb & 0xff) + 25) / 51 * 51;
+		return 0xff000000 | r << 16 | g << 8 | b;
+	}
+
+	private static Node findNode(Node node, String name) {
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (name.equals(child.getNodeName())) {
+				return child;
+			}
+		}
+		throw new AssertionError(name + " not found");
+	}
+}
@@ -0,0 +1,191 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.video;
+
+import com.naver.mei.sdk.core.gif.encoder.AnimatedGifEncoder;
+import com.naver.mei.sdk.error.MeiSDKErrorType;
+import com.naver.mei.sdk.error.MeiSDKException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MeiMp4CreatorTest {
+	private static final int WIDTH = 32;
+	private static final int HEIGHT = 16;
+
+	private File file;
+	private RecordingEncoder encoder;
+	private MeiMp4Creator creator;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("creator", ".mp4");
+		encoder = new RecordingEncoder();
+		creator = new MeiMp4Creator(encoder).setMaxFrameRate(10);
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void framesCloserThanTheMaxFrameRateAreDropped() throws IOException {
+		creator.start(file.getPath(), WIDTH, HEIGHT);
+		int[] argb = new int[WIDTH * HEIGHT];
+		assertTrue(creator.addFrame(argb, 0, WIDTH, AnimatedGifEncoder.ChannelOrder.ARGB, 1000000)); // the first timestamp is 0
+		assertFalse(creator.addFrame(argb, 0, WIDTH, AnimatedGifEncoder.ChannelOrder.ARGB, 1050000));
+		assertTrue(creator.addFrame(argb, 0, WIDTH, AnimatedGifEncoder.ChannelOrder.ARGB, 1100000));
+		assertFalse(creator.addFrame(argb, 0, WIDTH, AnimatedGifEncoder.ChannelOrder.ARGB, 1170000)); // within the jitter allowed
+		assertTrue(creator.addFrame(argb, 0, WIDTH, AnimatedGifEncoder.ChannelOrder.ARGB, 1200000));
+		creator.finish();
+
+		assertEquals(3, creator.getFrameCount());
+		assertEquals(2, creator.getDroppedFrameCount());
+		assertEquals(Arrays.asList(0L, 100000L, 200000L), encoder.timesUs);
+
+		// the dropped frames lengthen the previous ones, the last lasts as long as the interval before it
+		byte[] mp4 = Mp4TestReader.read(file);
+		ByteBuffer stts = Mp4TestReader.find(mp4, "moov", "trak", "mdia", "minf", "stbl", "stts");
+		stts.getInt();
+		assertEquals(1, stts.getInt());
+		assertEquals(3, stts.getInt());
+		assertEquals(9000, stts.getInt());
+	}
+
+	@Test
+	public void framesAreConvertedToI420() {
+		creator.start(file.getPath(), WIDTH + 1, HEIGHT + 1); // rounded down to even
+		int stride = WIDTH + 3;
+		int offset = 2;
+		int[] argb = new int[offset + stride * (HEIGHT + 1)];
+		Arrays.fill(argb, 0xffff0000); // red
+		for (int y = 0; y < HEIGHT; y++) {
+			argb[offset + y * stride] = 0xffffffff; // white first column
+		}
+		assertTrue(creator.addFrame(argb, offset, stride, AnimatedGifEncoder.ChannelOrder.ARGB, 0));
+		creator.finish();
+
+		byte[] yuv = encoder.frames.get(0);
+		assertEquals(WIDTH * HEIGHT * 3 / 2, yuv.length);
+		for (int y = 0; y < HEIGHT; y++) {
+			assertEquals(235, yuv[y * WIDTH] & 0xff);
+			assertEquals(82, yuv[y * WIDTH + 1] & 0xff);
+		}
+		int u = WIDTH * HEIGHT;
+		int v = u + u / 4;
+		assertEquals(90, yuv[u + 1] & 0xff);
+		assertEquals(240, yuv[v + 1] & 0xff);
+		// the first chroma sample averages white and red
+		assertEquals(((-38 * (255 * 4) - 74 * (255 * 2) + 112 * (255 * 2) + 512) >> 10) + 128, yuv[u] & 0xff);
+	}
+
+	@Test
+	public void i420UsesLimitedRange() {
+		int[] argb = {0xff000000, 0xffffffff, 0xff000000, 0xffffffff};
+		byte[] yuv = new byte[6];
+		MeiMp4Creator.toI420(argb, null, 0, 2, AnimatedGifEncoder.ChannelOrder.ARGB, 2, 2, yuv);
+		assertArrayEquals(new byte[]{16, (byte) 235, 16, (byte) 235, (byte) 128, (byte) 128}, yuv);
+	}
+
+	@Test
+	public void rgbaFramesGiveTheSameColors() {
+		creator.start(file.getPath(), WIDTH, HEIGHT);
+		int[] argb = new int[WIDTH * HEIGHT];
+		int[] rgba = new int[WIDTH * HEIGHT];
+		ByteBuffer plane = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4); // RGBA_8888, bottom up
+		for (int i = 0; i < argb.length; i++) {
+			argb[i] = 0xff000000 | (i * 37 % 256) << 16 | (i * 11 % 256) << 8 | (i * 5 % 256);
+			rgba[i] = (argb[i] << 8) | 0xff;
+			int row = HEIGHT - 1 - i / WIDTH;
+			plane.putInt((row * WIDTH + i % WIDTH) * 4, rgba[i]);
+		}
+		assertTrue(creator.addFrame(argb, 0, WIDTH, AnimatedGifEncoder.ChannelOrder.ARGB, 0));
+		assertTrue(creator.addFrame(rgba, 0, WIDTH, AnimatedGifEncoder.ChannelOrder.RGBA, 100000));
+		assertTrue(creator.addFrame(plane, (HEIGHT - 1) * WIDTH * 4, -WIDTH * 4, AnimatedGifEncoder.ChannelOrder.RGBA, 200000));
+		creator.finish();
+
+		assertEquals(3, encoder.frames.size());
+		assertArrayEquals(encoder.frames.get(0), encoder.frames.get(1));
+		assertArrayEquals(encoder.frames.get(0), encoder.frames.get(2));
+	}
+
+	@Test
+	public void emptyVideoHasNoSamples() throws IOException {
+		creator.start(file.getPath(), WIDTH, HEIGHT);
+		creator.finish();
+
+		assertEquals(0, creator.getFrameCount());
+		byte[] mp4 = Mp4TestReader.read(file);
+		ByteBuffer stsz = Mp4TestReader.find(mp4, "moov", "trak", "mdia", "minf", "stbl", "stsz");
+		assertEquals(0, stsz.getInt(8));
+	}
+
+	@Test
+	public void framesOutsideStartAndFinishAreIgnored() {
+		int[] argb = new int[WIDTH * HEIGHT];
+		assertFalse(creator.addFrame(argb, 0, WIDTH, AnimatedGifEncoder.ChannelOrder.ARGB, 0));
+		creator.start(file.getPath(), WIDTH, HEIGHT);
+		creator.finish();
+		assertFalse(creator.addFrame(argb, 0, WIDTH, AnimatedGifEncoder.ChannelOrder.ARGB, 100000));
+		assertTrue(encoder.released);
+	}
+
+	@Test
+	public void startNeedsAFrameSize() {
+		try {
+			creator.start(file.getPath(), 1, HEIGHT);
+			fail();
+		} catch (MeiSDKException e) {
+			assertEquals(MeiSDKErrorType.FAILED_TO_CREATE_MP4, e.getErrorType());
+		}
+	}
+
+	private static class RecordingEncoder extends PcmVideoEncoder {
+		final List<Long> timesUs = new ArrayList<>();
+		final List<byte[]> frames = new ArrayList<>();
+		boolean released;
+
+		@Override
+		public void encode(byte[] yuv, long presentationTimeUs) throws IOException {
+			timesUs.add(presentationTimeUs);
+			frames.add(yuv.clone());
+			super.encode(yuv, presentationTimeUs);
+		}
+
+		@Override
+		public void release() {
+			released = true;
+			super.release();
+		}
+	}
+}
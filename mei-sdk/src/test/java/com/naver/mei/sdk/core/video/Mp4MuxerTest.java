@@ -0,0 +1,208 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.video;
+
+import com.naver.mei.sdk.error.MeiSDKErrorType;
+import com.naver.mei.sdk.error.MeiSDKException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class Mp4MuxerTest {
+	private static final byte[] SPS = {0x67, 0x42, (byte) 0xc0, 0x1e, (byte) 0xda};
+	private static final byte[] PPS = {0x68, (byte) 0xce, 0x3c, (byte) 0x80};
+	private static final byte[] START_CODE = {0, 0, 0, 1};
+	private static final byte[] SHORT_START_CODE = {0, 0, 1};
+
+	private File file;
+	private FileOutputStream out;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("muxer", ".mp4");
+		out = new FileOutputStream(file);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		out.close();
+		file.delete();
+	}
+
+	@Test
+	public void samplesAreWrittenWithLengthPrefixes() throws IOException {
+		Mp4Muxer muxer = new Mp4Muxer(out, 64, 48);
+		muxer.onCodecConfig(annexB(SPS, PPS));
+		// parameter sets and access unit delimiters are left out of the samples
+		muxer.onSample(annexB(new byte[]{0x09, (byte) 0xf0}, SPS, PPS, new byte[]{0x65, 1, 2, 3}), 0, true);
+		muxer.onSample(annexB(new byte[]{0x41, 4, 5}), 40000, false);
+		muxer.onSample(ByteBuffer.wrap(concat(SHORT_START_CODE, new byte[]{0x41, 6, 7, 8, 9, 0, 0})), 80000, false); // trailing zeros
+		muxer.onSample(annexB(new byte[]{0x65, 10}), 160000, false); // IDR is a sync sample anyway
+		muxer.finish(200000);
+		assertEquals(4, muxer.getSampleCount());
+
+		byte[] mp4 = Mp4TestReader.read(file);
+		assertEquals("ftyp", new String(mp4, 4, 4));
+		byte[] samples = {
+				0, 0, 0, 4, 0x65, 1, 2, 3,
+				0, 0, 0, 3, 0x41, 4, 5,
+				0, 0, 0, 5, 0x41, 6, 7, 8, 9,
+				0, 0, 0, 2, 0x65, 10};
+		assertArrayEquals(samples, bytes(Mp4TestReader.find(mp4, "mdat")));
+
+		ByteBuffer stsz = stbl(mp4, "stsz");
+		stsz.getInt();
+		assertEquals(0, stsz.getInt());
+		assertEquals(4, stsz.getInt());
+		int[] sizes = {8, 7, 9, 6};
+		ByteBuffer stco = stbl(mp4, "stco");
+		stco.getInt();
+		assertEquals(4, stco.getInt());
+		for (int size : sizes) {
+			assertEquals(size, stsz.getInt());
+			int offset = stco.getInt();
+			assertEquals(size - 4, ByteBuffer.wrap(mp4, offset, 4).getInt());
+		}
+
+		// 90kHz. the last sample lasts until the end time
+		assertTimeToSample(stbl(mp4, "stts"), 2, 3600, 1, 7200, 1, 3600);
+
+		ByteBuffer stss = stbl(mp4, "stss");
+		stss.getInt();
+		assertEquals(2, stss.getInt());
+		assertEquals(1, stss.getInt());
+		assertEquals(4, stss.getInt());
+
+		ByteBuffer mdhd = Mp4TestReader.find(mp4, "moov", "trak", "mdia", "mdhd");
+		assertEquals(90000, mdhd.getInt(12));
+		assertEquals(18000, mdhd.getInt(16));
+		ByteBuffer mvhd = Mp4TestReader.find(mp4, "moov", "mvhd");
+		assertEquals(1000, mvhd.getInt(12));
+		assertEquals(200, mvhd.getInt(16));
+		ByteBuffer tkhd = Mp4TestReader.find(mp4, "moov", "trak", "tkhd");
+		assertEquals(64 << 16, tkhd.getInt(76));
+		assertEquals(48 << 16, tkhd.getInt(80));
+	}
+
+	@Test
+	public void sampleDescriptionHoldsTheParameterSets() throws IOException {
+		Mp4Muxer muxer = new Mp4Muxer(out, 64, 48);
+		muxer.onCodecConfig(annexB(SPS, PPS));
+		muxer.onSample(annexB(new byte[]{0x65, 1}), 0, true);
+		muxer.finish(40000);
+
+		byte[] mp4 = Mp4TestReader.read(file);
+		ByteBuffer avc1 = stbl(mp4, "stsd", "avc1");
+		assertEquals(64, avc1.getShort(24));
+		assertEquals(48, avc1.getShort(26));
+
+		byte[] avcC = bytes(stbl(mp4, "stsd", "avc1", "avcC"));
+		byte[] expected = concat(concat(new byte[]{1, 0x42, (byte) 0xc0, 0x1e, (byte) 0xff, (byte) 0xe1, 0, (byte) SPS.length}, SPS),
+				concat(new byte[]{1, 0, (byte) PPS.length}, PPS));
+		assertArrayEquals(expected, avcC);
+	}
+
+	@Test
+	public void allSyncSamplesNeedNoSyncTable() throws IOException {
+		Mp4Muxer muxer = new Mp4Muxer(out, 64, 48);
+		muxer.onCodecConfig(annexB(SPS, PPS));
+		for (int i = 0; i < 5; i++) {
+			muxer.onSample(annexB(new byte[]{0x65, (byte) (i + 1)}), 1000000 + i * 100000, true); // starts at 0
+		}
+		muxer.onSample(annexB(new byte[]{0x65, 6}), 1400000, true); // same time. lasts a tick
+		muxer.finish(1500000);
+
+		byte[] mp4 = Mp4TestReader.read(file);
+		assertNull(stbl(mp4, "stss"));
+		assertTimeToSample(stbl(mp4, "stts"), 4, 9000, 1, 1, 1, 8999);
+	}
+
+	@Test
+	public void finishWithoutCodecConfigFails() throws IOException {
+		Mp4Muxer muxer = new Mp4Muxer(out, 64, 48);
+		try {
+			muxer.finish(0);
+			fail();
+		} catch (MeiSDKException e) {
+			assertEquals(MeiSDKErrorType.FAILED_TO_CREATE_MP4, e.getErrorType());
+		}
+	}
+
+	@Test
+	public void samplesNeedTheCodecConfig() throws IOException {
+		Mp4Muxer muxer = new Mp4Muxer(out, 64, 48);
+		try {
+			muxer.onSample(annexB(new byte[]{0x65, 1}), 0, true);
+			fail();
+		} catch (IOException expected) {
+		}
+		try {
+			muxer.onCodecConfig(annexB(SPS));
+			fail();
+		} catch (IOException expected) {
+		}
+	}
+
+	private static ByteBuffer stbl(byte[] mp4, String... path) {
+		String[] fullPath = {"moov", "trak", "mdia", "minf", "stbl"};
+		fullPath = Arrays.copyOf(fullPath, fullPath.length + path.length);
+		System.arraycopy(path, 0, fullPath, 5, path.length);
+		return Mp4TestReader.find(mp4, fullPath);
+	}
+
+	// pairs of sample count and duration
+	private static void assertTimeToSample(ByteBuffer stts, int... entries) {
+		stts.getInt();
+		assertEquals(entries.length / 2, stts.getInt());
+		for (int entry : entries) {
+			assertEquals(entry, stts.getInt());
+		}
+	}
+
+	private static ByteBuffer annexB(byte[]... nalUnits) {
+		byte[] data = new byte[0];
+		for (byte[] nalUnit : nalUnits) {
+			data = concat(data, concat(START_CODE, nalUnit));
+		}
+		return ByteBuffer.wrap(data);
+	}
+
+	private static byte[] bytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+}
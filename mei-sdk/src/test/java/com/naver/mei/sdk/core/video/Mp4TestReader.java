@@ -0,0 +1,94 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Finds boxes of an MP4 file for the tests
+ */
+class Mp4TestReader {
+	static byte[] read(File file) throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			in.readFully(data);
+		} finally {
+			in.close();
+		}
+		return data;
+	}
+
+	/**
+	 * @param path types of the boxes from the top level, e.g. moov, trak, mdia
+	 * @return the payload of the box, big endian. null if missing
+	 */
+	static ByteBuffer find(byte[] file, String... path) {
+		ByteBuffer range = ByteBuffer.wrap(file);
+		for (String type : path) {
+			range = findChild(range, type);
+			if (range == null) {
+				return null;
+			}
+		}
+		return range;
+	}
+
+	private static ByteBuffer findChild(ByteBuffer parent, String type) {
+		ByteBuffer buffer = parent.duplicate();
+		buffer.position(buffer.position() + headerSkip(parent));
+		while (buffer.remaining() >= 8) {
+			int start = buffer.position();
+			long size = buffer.getInt() & 0xffffffffL;
+			byte[] fourCC = new byte[4];
+			buffer.get(fourCC);
+			int headerSize = 8;
+			if (size == 1) {
+				size = buffer.getLong();
+				headerSize = 16;
+			}
+			if (type.equals(new String(fourCC))) {
+				ByteBuffer payload = buffer.duplicate();
+				payload.position(start + headerSize);
+				payload.limit((int) (start + size));
+				return payload.slice();
+			}
+			buffer.position((int) (start + size));
+		}
+		return null;
+	}
+
+	// fields before the child boxes of stsd and avc1
+	private static int headerSkip(ByteBuffer box) {
+		if (box.arrayOffset() < 8) {
+			return 0;
+		}
+		byte[] array = box.array();
+		String type = new String(array, box.arrayOffset() - 4, 4);
+		if (type.equals("stsd") || type.equals("dref")) {
+			return 8;
+		}
+		if (type.equals("avc1")) {
+			return 78;
+		}
+		return 0;
+	}
+}
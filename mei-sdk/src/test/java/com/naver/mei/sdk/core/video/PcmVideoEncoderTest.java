@@ -0,0 +1,241 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.video;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PcmVideoEncoderTest {
+	private static final int WIDTH = 40;	// 3x2 macroblocks, cropped
+	private static final int HEIGHT = 24;
+
+	private PcmVideoEncoder encoder;
+	private RecordingOutput output;
+
+	@Before
+	public void setUp() throws IOException {
+		encoder = new PcmVideoEncoder();
+		output = new RecordingOutput();
+		encoder.start(WIDTH, HEIGHT, 30, 0, output);
+	}
+
+	@Test
+	public void codecConfigHasTheSpsAndPps() {
+		List<byte[]> nalUnits = splitNalUnits(output.codecConfig);
+		assertEquals(2, nalUnits.size());
+		assertEquals(0x67, nalUnits.get(0)[0]);
+		assertEquals(0x68, nalUnits.get(1)[0]);
+
+		BitReader sps = new BitReader(nalUnits.get(0));
+		assertEquals(66, sps.bits(8)); // baseline
+		assertEquals(0xc0, sps.bits(8)); // constrained
+		assertEquals(40, sps.bits(8)); // level 4.0
+		assertEquals(0, sps.ue()); // seq_parameter_set_id
+		assertEquals(0, sps.ue()); // log2_max_frame_num_minus4
+		assertEquals(2, sps.ue()); // pic_order_cnt_type
+		assertEquals(1, sps.ue()); // max_num_ref_frames
+		assertEquals(0, sps.bits(1));
+		assertEquals(2, sps.ue()); // pic_width_in_mbs_minus1
+		assertEquals(1, sps.ue()); // pic_height_in_map_units_minus1
+		assertEquals(1, sps.bits(1)); // frame_mbs_only_flag
+		assertEquals(1, sps.bits(1));
+		assertEquals(1, sps.bits(1)); // frame_cropping_flag
+		assertEquals(0, sps.ue());
+		assertEquals(4, sps.ue()); // 8 pixels on the right
+		assertEquals(0, sps.ue());
+		assertEquals(4, sps.ue()); // and at the bottom
+	}
+
+	@Test
+	public void framesAreIdrSlicesOfPcmMacroblocks() throws IOException {
+		byte[] yuv = new byte[WIDTH * HEIGHT * 3 / 2];
+		for (int i = 0; i < yuv.length; i++) {
+			yuv[i] = (byte) (i * 7 % 256);
+		}
+		encoder.encode(yuv, 0);
+		encoder.encode(yuv, 33333);
+		encoder.finish();
+
+		assertEquals(2, output.samples.size());
+		for (int i = 0; i < 2; i++) {
+			assertTrue(output.keyFrames.get(i));
+			List<byte[]> nalUnits = splitNalUnits(output.samples.get(i));
+			assertEquals(1, nalUnits.size());
+			byte[] slice = nalUnits.get(0);
+			assertEquals(0x65, slice[0]);
+
+			BitReader reader = new BitReader(slice);
+			assertEquals(0, reader.ue()); // first_mb_in_slice
+			assertEquals(7, reader.ue()); // I
+			assertEquals(0, reader.ue());
+			assertEquals(0, reader.bits(4)); // frame_num
+			assertEquals(i, reader.ue()); // idr_pic_id differs between consecutive IDR pictures
+			reader.bits(2);
+			assertEquals(0, reader.se());
+			assertEquals(1, reader.ue()); // no deblocking
+
+			for (int mbY = 0; mbY < 2; mbY++) {
+				for (int mbX = 0; mbX < 3; mbX++) {
+					assertEquals(25, reader.ue()); // I_PCM
+					reader.align();
+					assertArrayEquals(block(yuv, 0, WIDTH, HEIGHT, mbX * 16, mbY * 16, 16), reader.bytes(256));
+					assertArrayEquals(block(yuv, WIDTH * HEIGHT, WIDTH / 2, HEIGHT / 2, mbX * 8, mbY * 8, 8), reader.bytes(64));
+					assertArrayEquals(block(yuv, WIDTH * HEIGHT * 5 / 4, WIDTH / 2, HEIGHT / 2, mbX * 8, mbY * 8, 8), reader.bytes(64));
+				}
+			}
+			assertEquals(1, reader.bits(1)); // rbsp_stop_one_bit
+		}
+	}
+
+	@Test
+	public void startCodesAreNotEmulated() throws IOException {
+		byte[] yuv = new byte[WIDTH * HEIGHT * 3 / 2]; // zeros are written as 1. the header may still have zero bytes
+		encoder.encode(yuv, 0);
+
+		byte[] sample = output.samples.get(0);
+		int zeros = 0;
+		for (int i = 4; i < sample.length; i++) {
+			assertTrue("emulated start code at " + i, zeros < 2 || (sample[i] & 0xff) > 3 || sample[i] == 3);
+			zeros = sample[i] == 0 ? zeros + 1 : 0;
+		}
+	}
+
+	// samples of the block with the last row and column repeated, zeros written as 1
+	private static byte[] block(byte[] yuv, int planeOffset, int planeWidth, int planeHeight, int left, int top, int size) {
+		byte[] block = new byte[size * size];
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				byte sample = yuv[planeOffset + Math.min(top + y, planeHeight - 1) * planeWidth + Math.min(left + x, planeWidth - 1)];
+				block[y * size + x] = sample == 0 ? 1 : sample;
+			}
+		}
+		return block;
+	}
+
+	// NAL units of an Annex B stream, without the emulation prevention bytes
+	private static List<byte[]> splitNalUnits(byte[] stream) {
+		List<byte[]> nalUnits = new ArrayList<>();
+		ByteArrayOutputStream nalUnit = null;
+		int zeros = 0;
+		for (byte b : stream) {
+			if (zeros >= 2 && b == 1) {
+				if (nalUnit != null) {
+					nalUnits.add(nalUnit.toByteArray());
+				}
+				nalUnit = new ByteArrayOutputStream();
+				zeros = 0;
+				continue;
+			}
+			if (b == 0) {
+				++zeros;
+				continue;
+			}
+			if (nalUnit != null) {
+				for (int i = 0; i < zeros; i++) {
+					nalUnit.write(0);
+				}
+				if (b != 3 || zeros < 2) { // else an emulation prevention byte, left out
+					nalUnit.write(b);
+				}
+			}
+			zeros = 0;
+		}
+		if (nalUnit != null) {
+			nalUnits.add(nalUnit.toByteArray());
+		}
+		return nalUnits;
+	}
+
+	private static class RecordingOutput implements VideoEncoder.Output {
+		byte[] codecConfig;
+		List<byte[]> samples = new ArrayList<>();
+		List<Boolean> keyFrames = new ArrayList<>();
+
+		@Override
+		public void onCodecConfig(ByteBuffer codecConfig) {
+			this.codecConfig = copy(codecConfig);
+		}
+
+		@Override
+		public void onSample(ByteBuffer sample, long presentationTimeUs, boolean keyFrame) {
+			samples.add(copy(sample));
+			keyFrames.add(keyFrame);
+		}
+
+		private static byte[] copy(ByteBuffer buffer) {
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.duplicate().get(bytes);
+			return bytes;
+		}
+	}
+
+	/**
+	 * Reads an rbsp after the NAL header byte
+	 */
+	private static class BitReader {
+		private final byte[] data;
+		private int position = 8;	// in bits
+
+		BitReader(byte[] data) {
+			this.data = data;
+		}
+
+		int bits(int count) {
+			int value = 0;
+			for (int i = 0; i < count; i++, position++) {
+				value = value << 1 | (data[position >> 3] >> (7 - (position & 7)) & 1);
+			}
+			return value;
+		}
+
+		int ue() {
+			int leadingZeros = 0;
+			while (bits(1) == 0) {
+				++leadingZeros;
+			}
+			return (1 << leadingZeros) - 1 + bits(leadingZeros);
+		}
+
+		int se() {
+			int code = ue();
+			return (code & 1) != 0 ? (code + 1) / 2 : -code / 2;
+		}
+
+		void align() {
+			position = (position + 7) & ~7;
+		}
+
+		byte[] bytes(int count) {
+			byte[] bytes = new byte[count];
+			for (int i = 0; i < count; i++) {
+				bytes[i] = (byte) bits(8);
+			}
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+Copyright 2018 NAVER Corp.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+
+package com.naver.mei.sdk.core.webp.encoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WebPMuxerTest {
+	private static final byte[] ALPH = chunk("ALPH", 5);	// odd payload, padded
+	private static final byte[] VP8 = chunk("VP8 ", 20);
+
+	@Test
+	public void framesAreWrappedInAnmfChunks() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		WebPMuxer muxer = new WebPMuxer(out, 0);
+		muxer.addFrame(stillWebP(true), stillWebP(true).length, 0, 0, 20, 10, 100);
+		muxer.addFrame(stillWebP(false), stillWebP(false).length, 5, 3, 8, 6, 250);
+		muxer.finish();
+		assertEquals(2, muxer.getFrameCount());
+
+		ByteBuffer webP = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+		assertFourCC(webP, "RIFF");
+		assertEquals(webP.capacity() - 8, webP.getInt());
+		assertFourCC(webP, "WEBP");
+
+		assertFourCC(webP, "VP8X");
+		assertEquals(10, webP.getInt());
+		assertEquals(0x12, webP.getInt()); // animation and alpha
+		assertEquals(19, get24(webP));
+		assertEquals(9, get24(webP));
+
+		assertFourCC(webP, "ANIM");
+		assertEquals(6, webP.getInt());
+		assertEquals(0, webP.getInt());
+		assertEquals(0, webP.getShort()); // loops forever
+
+		assertFrame(webP, 0, 0, 20, 10, 100, concat(ALPH, VP8));
+		assertFrame(webP, 4, 2, 8, 6, 250, VP8); // 5,3 rounded down to even
+		assertEquals(webP.capacity(), webP.position());
+	}
+
+	@Test
+	public void fileHeaderIsPatchedAtFinish() throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		mux(new WebPMuxer(stream, 3));
+
+		File file = File.createTempFile("muxer", ".webp");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write(new byte[]{1, 2, 3}); // the muxer starts at the current position
+				mux(new WebPMuxer(out, 3));
+			} finally {
+				out.close();
+			}
+
+			byte[] written = new byte[(int) file.length()];
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				in.readFully(written);
+			} finally {
+				in.close();
+			}
+			assertArrayEquals(concat(new byte[]{1, 2, 3}, stream.toByteArray()), written);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void emptyAnimationHasAHeaderOnly() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		WebPMuxer muxer = new WebPMuxer(out, 0);
+		muxer.finish();
+
+		ByteBuffer webP = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(12 + 18 + 14, webP.capacity());
+		assertEquals(webP.capacity() - 8, webP.getInt(4));
+		assertEquals(0, get24(webP, 24));
+		assertEquals(0, get24(webP, 27));
+	}
+
+	@Test
+	public void framesMustFitTheCanvas() throws IOException {
+		WebPMuxer muxer = new WebPMuxer(new ByteArrayOutputStream(), 0);
+		byte[] still = stillWebP(false);
+		muxer.addFrame(still, still.length, 0, 0, 10, 10, 100);
+		try {
+			muxer.addFrame(still, still.length, 4, 0, 8, 8, 100);
+			fail();
+		} catch (IOException expected) {
+		}
+		assertEquals(1, muxer.getFrameCount());
+	}
+
+	@Test
+	public void inputMustBeAWebPImage() throws IOException {
+		WebPMuxer muxer = new WebPMuxer(new ByteArrayOutputStream(), 0);
+		byte[] notWebP = stillWebP(false);
+		notWebP[8] = 'X';
+		assertRejected(muxer, notWebP);
+
+		byte[] noImage = riff(chunk("EXIF", 4));
+		assertRejected(muxer, noImage);
+
+		byte[] truncated = stillWebP(false);
+		assertRejected(muxer, Arrays.copyOf(truncated, 12 + 18 + 8 + 10)); // in the middle of VP8
+	}
+
+	private static void mux(WebPMuxer muxer) throws IOException {
+		byte[] first = stillWebP(true);
+		byte[] second = stillWebP(false);
+		muxer.addFrame(first, first.length, 0, 0, 16, 16, 40);
+		muxer.addFrame(second, second.length, 4, 4, 8, 8, 40);
+		muxer.finish();
+	}
+
+	private static void assertRejected(WebPMuxer muxer, byte[] webP) {
+		try {
+			muxer.addFrame(webP, webP.length, 0, 0, 10, 10, 100);
+			fail();
+		} catch (IOException expected) {
+		}
+	}
+
+	private static void assertFrame(ByteBuffer webP, int x, int y, int width, int height, int duration, byte[] image) {
+		assertFourCC(webP, "ANMF");
+		assertEquals(16 + image.length, webP.getInt());
+		assertEquals(x / 2, get24(webP));
+		assertEquals(y / 2, get24(webP));
+		assertEquals(width - 1, get24(webP));
+		assertEquals(height - 1, get24(webP));
+		assertEquals(duration, get24(webP));
+		assertEquals(2, webP.get()); // no blending
+		byte[] payload = new byte[image.length];
+		webP.get(payload);
+		assertArrayEquals(image, payload);
+	}
+
+	private static void assertFourCC(ByteBuffer buffer, String fourCC) {
+		byte[] bytes = new byte[4];
+		buffer.get(bytes);
+		assertEquals(fourCC, new String(bytes));
+	}
+
+	private static int get24(ByteBuffer buffer) {
+		return (buffer.get() & 0xff) | (buffer.get() & 0xff) << 8 | (buffer.get() & 0xff) << 16;
+	}
+
+	private static int get24(ByteBuffer buffer, int offset) {
+		return (buffer.get(offset) & 0xff) | (buffer.get(offset + 1) & 0xff) << 8 | (buffer.get(offset + 2) & 0xff) << 16;
+	}
+
+	/**
+	 * Still WebP as Bitmap.compress writes it, with VP8X and metadata chunks which the muxer leaves out
+	 */
+	private static byte[] stillWebP(boolean alpha) {
+		byte[] image = alpha ? concat(ALPH, VP8) : VP8;
+		return riff(concat(concat(chunk("VP8X", 10), image), chunk("EXIF", 7)));
+	}
+
+	private static byte[] riff(byte[] chunks) {
+		ByteBuffer buffer = ByteBuffer.allocate(12 + chunks.length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put("RIFF".getBytes());
+		buffer.putInt(4 + chunks.length);
+		buffer.put("WEBP".getBytes());
+		buffer.put(chunks);
+		return buffer.array();
+	}
+
+	private static byte[] chunk(String fourCC, int payloadSize) {
+		ByteBuffer buffer = ByteBuffer.allocate(8 + payloadSize + (payloadSize & 1)).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(fourCC.getBytes());
+		buffer.putInt(payloadSize);
+		for (int i = 0; i < payloadSize; i++) {
+			buffer.put((byte) (fourCC.charAt(0) + i));
+		}
+		return buffer.array();
+	}
+
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+}